@@ -0,0 +1,105 @@
+package com.ffmpeg.common.benchmark;
+
+import com.ffmpeg.common.common.FFmpegExecutor;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VideoOperation 构造命令参数的开销，执行器不启动进程，只把命令交给Blackhole
+ *
+ * @author alan.chen
+ * @date 2020/8/4 11:00 AM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBuildBenchmark {
+
+    private File dir;
+
+    private String input;
+
+    private String output;
+
+    private String bgm;
+
+    private Blackhole blackhole;
+
+    private VideoOperation operation;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        this.blackhole = blackhole;
+        dir = StubFFmpeg.tempDir();
+        input = new File(dir, "in.mp4").getAbsolutePath();
+        output = new File(dir, "out.mp4").getAbsolutePath();
+        bgm = new File(dir, "bgm.mp3").getAbsolutePath();
+
+        Result ok = new Result();
+        ok.setCode(0);
+        FFmpegExecutor executor = task -> {
+            this.blackhole.consume(task.getCommand());
+            return ok;
+        };
+        operation = VideoOperation.builder("ffmpeg", executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        StubFFmpeg.delete(dir);
+    }
+
+    @Benchmark
+    public Result videoScale() {
+        return operation.videoScale(input, "360", "640", output);
+    }
+
+    @Benchmark
+    public Result videoCut() {
+        return operation.videoCut(input, "00:00:02", "00:00:03", output);
+    }
+
+    @Benchmark
+    public Result mergeVideoAndBgmWithOrigin() {
+        return operation.mergeVideoAndBgmWithOrigin(bgm, input, output, 7.1);
+    }
+
+    @Benchmark
+    public Result pipeline() {
+        return operation.pipeline(input)
+                .crop("1080", "1080", "0", "420")
+                .scale("720", "720")
+                .fps(15)
+                .execute(output);
+    }
+
+    @Benchmark
+    public Map<String, Result> multiOutput() {
+        return operation.multiOutput(input)
+                .coverImage(new File(dir, "cover.jpg").getAbsolutePath())
+                .scale("720", "1280", new File(dir, "720.mp4").getAbsolutePath())
+                .scale("360", "640", new File(dir, "360.mp4").getAbsolutePath())
+                .extractAudio(new File(dir, "bgm.aac").getAbsolutePath())
+                .execute();
+    }
+}
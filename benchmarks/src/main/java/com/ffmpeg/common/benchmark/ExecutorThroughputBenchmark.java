@@ -0,0 +1,68 @@
+package com.ffmpeg.common.benchmark;
+
+import com.ffmpeg.common.common.DefaultFFmpegExecutor;
+import com.ffmpeg.common.response.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 16个线程同时提交任务时，DefaultFFmpegExecutor 在不同并发数下的吞吐量
+ *
+ * @author alan.chen
+ * @date 2020/8/4 11:40 AM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class ExecutorThroughputBenchmark {
+
+    @Param({"1", "4", "16"})
+    private int maxConcurrent;
+
+    @Param({"100"})
+    private int stderrLines;
+
+    private File dir;
+
+    private List<String> command;
+
+    private DefaultFFmpegExecutor executor;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = StubFFmpeg.tempDir();
+        command = Collections.singletonList(StubFFmpeg.create(dir, stderrLines));
+        executor = new DefaultFFmpegExecutor(maxConcurrent, 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        StubFFmpeg.delete(dir);
+    }
+
+    @Benchmark
+    public Result execute() {
+        return executor.execute(command);
+    }
+}
@@ -0,0 +1,61 @@
+package com.ffmpeg.common.benchmark;
+
+import com.ffmpeg.common.common.ProcessCommand;
+import com.ffmpeg.common.response.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动进程的开销：ProcessCommand.start 经过默认执行器、启动进程、读取输出、等待退出
+ *
+ * @author alan.chen
+ * @date 2020/8/4 10:40 AM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessSpawnBenchmark {
+
+    private File dir;
+
+    private List<String> command;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = StubFFmpeg.tempDir();
+        command = Collections.singletonList(StubFFmpeg.create(dir, 0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        StubFFmpeg.delete(dir);
+    }
+
+    @Benchmark
+    public Result start() {
+        return ProcessCommand.start(command);
+    }
+
+    @Benchmark
+    public Result launch() {
+        return ProcessCommand.launch(command);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ffmpeg.common.benchmark;
+
+import com.ffmpeg.common.common.ProcessCommand;
+import com.ffmpeg.common.response.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StreamHanlerCommon 读取不同数量的stderr日志的耗时，stderrLines=0 为启动进程的基准开销
+ *
+ * @author alan.chen
+ * @date 2020/8/4 10:50 AM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StderrDrainBenchmark {
+
+    @Param({"0", "1000", "100000"})
+    private int stderrLines;
+
+    private File dir;
+
+    private List<String> command;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = StubFFmpeg.tempDir();
+        command = Collections.singletonList(StubFFmpeg.create(dir, stderrLines));
+    }
+
+    @TearDown
+    public void tearDown() {
+        StubFFmpeg.delete(dir);
+    }
+
+    @Benchmark
+    public Result drain() {
+        return ProcessCommand.launch(command);
+    }
+}
@@ -0,0 +1,57 @@
+package com.ffmpeg.common.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * 模拟ffmpeg的shell脚本，忽略所有参数，向stderr输出固定行数的进度日志后退出，不需要真实的ffmpeg和视频文件
+ *
+ * @author alan.chen
+ * @date 2020/8/4 10:30 AM
+ */
+public final class StubFFmpeg {
+
+    static final String STDERR_LINE = "frame= 1024 fps= 25 q=28.0 size=    2048kB time=00:00:40.96 bitrate= 409.6kbits/s speed=1.02x";
+
+    private StubFFmpeg() {
+    }
+
+    /**
+     * @param dir 脚本所在目录
+     * @param stderrLines 输出到stderr的行数
+     * @return 脚本绝对路径
+     */
+    public static String create(File dir, int stderrLines) throws IOException {
+        File script = new File(dir, "ffmpeg-stub-" + stderrLines + ".sh");
+        StringBuilder content = new StringBuilder("#!/bin/sh\n");
+        if(stderrLines > 0) {
+            content.append("yes '").append(STDERR_LINE).append("' | head -n ").append(stderrLines).append(" >&2\n");
+        }
+        content.append("exit 0\n");
+        Files.write(script.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        if(!script.setExecutable(true)) {
+            throw new IOException("chmod failed: " + script);
+        }
+        return script.getAbsolutePath();
+    }
+
+    public static File tempDir() throws IOException {
+        return Files.createTempDirectory("ffmpeg-bench").toFile();
+    }
+
+    public static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for (File file : files) {
+                if(file.isDirectory()) {
+                    delete(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,78 @@
+package com.ffmpeg.common.benchmark;
+
+import com.ffmpeg.common.video.VideoFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VideoFormatter.writeVideoList 为目录下的大量视频生成concat列表文件的耗时
+ *
+ * @author alan.chen
+ * @date 2020/8/4 11:20 AM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteVideoListBenchmark {
+
+    @Param({"10000"})
+    private int files;
+
+    private File dir;
+
+    private File videoDir;
+
+    private File listFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = StubFFmpeg.tempDir();
+        videoDir = new File(dir, "videos");
+        if(!videoDir.mkdirs()) {
+            throw new IOException("mkdir failed: " + videoDir);
+        }
+        for (int i = 0; i < files; i++) {
+            if(!new File(videoDir, String.format("%05d.mp4", i)).createNewFile()) {
+                throw new IOException("create failed");
+            }
+        }
+        listFile = new File(dir, "list.txt");
+    }
+
+    /**
+     * writeVideoList 以追加的方式写入，每次执行前删除列表文件
+     */
+    @Setup(Level.Invocation)
+    public void resetList() {
+        listFile.delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        StubFFmpeg.delete(dir);
+    }
+
+    @Benchmark
+    public long writeVideoList() {
+        VideoFormatter.writeVideoList(videoDir.getAbsolutePath(), listFile);
+        return listFile.length();
+    }
+}
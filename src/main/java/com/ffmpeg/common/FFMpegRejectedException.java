@@ -0,0 +1,17 @@
+package com.ffmpeg.common;
+
+/**
+ * 执行器拒绝提交的任务时抛出（等待队列已满或排队等待超时）
+ *
+ * @author alan.chen
+ * @date 2020/7/2 10:12 AM
+ */
+public class FFMpegRejectedException extends FFMpegException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FFMpegRejectedException(String message) {
+        super(message);
+    }
+
+}
@@ -1,15 +1,32 @@
 package com.ffmpeg.common.audio;
 
 import com.ffmpeg.common.FFMpegException;
-import com.ffmpeg.common.common.StreamHanlerCommon;
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.common.FFmpegExecutor;
+import com.ffmpeg.common.common.OperationContext;
+import com.ffmpeg.common.common.Pipes;
+import com.ffmpeg.common.common.StdoutHandler;
+import com.ffmpeg.common.metrics.FFmpegMetrics;
+import com.ffmpeg.common.progress.ProgressListener;
 import com.ffmpeg.common.response.Result;
 import com.ffmpeg.common.utils.BaseFileUtil;
 import com.ffmpeg.common.utils.StrUtils;
+import com.ffmpeg.common.video.VideoFormatter;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -27,58 +44,195 @@ public class AudioOperation {
      */
     private String ffmpegEXE;
 
+    /**
+     *  执行器、超时时间、取消句柄等执行参数
+     */
+    private OperationContext context;
+
     public AudioOperation(String ffmpegEXE) {
+        this(ffmpegEXE, null);
+    }
+
+    public AudioOperation(String ffmpegEXE, FFmpegExecutor executor) {
         this.ffmpegEXE = ffmpegEXE;
+        this.context = new OperationContext(executor);
+    }
+
+    private AudioOperation(AudioOperation source, OperationContext context) {
+        this.ffmpegEXE = source.ffmpegEXE;
+        this.context = context;
     }
 
     public static AudioOperation builder(String ffmpegEXE) {
         return new AudioOperation(ffmpegEXE);
     }
 
+    public static AudioOperation builder(String ffmpegEXE, FFmpegExecutor executor) {
+        return new AudioOperation(ffmpegEXE, executor);
+    }
+
+    /**
+     * 使用指定的执行器，返回新的操作对象
+     *
+     * @param executor 进程执行器
+     * @return
+     */
+    public AudioOperation withExecutor(FFmpegExecutor executor) {
+        return new AudioOperation(this, context.withExecutor(executor));
+    }
+
+    /**
+     * 异步API使用指定的线程池，返回新的操作对象
+     *
+     * @param asyncExecutor 线程池
+     * @return
+     */
+    public AudioOperation withAsyncExecutor(Executor asyncExecutor) {
+        return new AudioOperation(this, context.withAsyncExecutor(asyncExecutor));
+    }
+
+    /**
+     * 执行过程中回调进度信息，返回新的操作对象
+     *
+     * @param progressListener 进度回调
+     * @return
+     */
+    public AudioOperation withProgressListener(ProgressListener progressListener) {
+        return new AudioOperation(this, context.withProgressListener(progressListener));
+    }
+
+    /**
+     * 每次执行命令的超时时间，超时后终止进程并返回 {@link Result#CODE_TIMEOUT}，返回新的操作对象
+     *
+     * @param timeout 超时时间，小于等于0表示不限制
+     * @param unit 时间单位
+     * @return
+     */
+    public AudioOperation withTimeout(long timeout, TimeUnit unit) {
+        return new AudioOperation(this, context.withTimeoutMillis(unit.toMillis(timeout)));
+    }
+
+    /**
+     * 使用取消句柄，取消后终止进程并返回 {@link Result#CODE_CANCELLED}，返回新的操作对象
+     *
+     * @param cancelToken 取消句柄
+     * @return
+     */
+    public AudioOperation withCancelToken(CancelToken cancelToken) {
+        return new AudioOperation(this, context.withCancelToken(cancelToken));
+    }
+
+    /**
+     * 每个进程启动、结束时上报监控指标（排队时间、启动耗时、运行耗时、退出码、读写字节数），按方法名分组，返回新的操作对象
+     *
+     * @param metrics 监控指标，例如 {@link com.ffmpeg.common.metrics.InMemoryFFmpegMetrics}
+     * @return
+     */
+    public AudioOperation withMetrics(FFmpegMetrics metrics) {
+        return new AudioOperation(this, context.withMetrics(metrics));
+    }
+
+    /**
+     * 通过执行器执行命令
+     *
+     * @param operation 操作名称，用于监控指标分组
+     * @param commands 命令参数集合
+     * @return
+     */
+    private Result execute(String operation, List<String> commands) {
+        return context.execute(operation, commands);
+    }
+
+    /**
+     * 通过执行器执行命令，stdout交给处理器读取，不输出进度信息
+     *
+     * @param operation 操作名称，用于监控指标分组
+     * @param commands 命令参数集合
+     * @param stdoutHandler stdout处理
+     * @return
+     */
+    Result execute(String operation, List<String> commands, StdoutHandler stdoutHandler) {
+        return context.execute(operation, commands, stdoutHandler);
+    }
+
+    String getFfmpegEXE() {
+        return ffmpegEXE;
+    }
+
+    /**
+     * 在异步线程池中执行同步方法，参考 {@link OperationContext#async}
+     *
+     * @param operation 同步方法
+     * @return
+     */
+    private CompletableFuture<Result> async(Function<AudioOperation, Result> operation) {
+        return context.async(token -> operation.apply(withCancelToken(token)));
+    }
+
 
 
     /**
      * 将多个音频文件拼接为一个音频文件并输出
      *
+     * 输入都是fmt相同的WAV文件并且输出是wav文件时直接拼接data块（{@link WavSplicer}），不启动ffmpeg；
+     * 否则使用concat demuxer直接复制音频流，输入音频的编码参数需要相同
+     *
      * @param bgmOutPath 输出音频文件
      * @param bgmInputPath 输入的音频文件, 多值参数
      * @return
      */
     public Result audioConcat(String bgmOutPath, String... bgmInputPath) {
+        // ffmpeg -f concat -safe 0 -i list.txt -c copy -y out.mp3
         if(StrUtils.checkBlank(bgmOutPath) || bgmInputPath.length <= 0) {
             throw new FFMpegException("请输入正确的音频输入和输出路径");
         }
         BaseFileUtil.checkAndMkdir(bgmOutPath);
+        List<String> bgmList = Arrays.asList(bgmInputPath);
+
+        Result result = new WavSplicer("audioConcat", context.getCancelToken(), context.getMetrics()).concat(bgmList, bgmOutPath);
+        if(result != null) {
+            return result;
+        }
+
+        File listFile;
+        try {
+            listFile = File.createTempFile("audio_concat_", ".txt");
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
         try {
-            List<String> bgmList = Arrays.asList(bgmInputPath);
+            List<File> files = new ArrayList<>(bgmList.size());
+            bgmList.forEach(item -> files.add(new File(item)));
+            VideoFormatter.writeConcatList(files, listFile);
 
             List<String> commands = new ArrayList<>();
             commands.add(ffmpegEXE);
 
             commands.add("-f");
-            commands.add("-concat");
+            commands.add("concat");
+            commands.add("-safe");
+            commands.add("0");
 
-            bgmList.forEach(item -> {
-                commands.add("-i");
-                commands.add(item);
-            });
+            commands.add("-i");
+            commands.add(listFile.getAbsolutePath());
 
             commands.add("-c");
             commands.add("copy");
+            commands.add("-y");
             commands.add(bgmOutPath);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
-
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
+            return execute("audioConcat", commands);
+        } finally {
+            listFile.delete();
         }
     }
 
     /**
      * 通过指定开始时间和结束时间 裁剪音频
      *
+     * 直接复制音频流，音频的每一帧都可以独立解码，裁剪位置误差不超过一帧（mp3约26毫秒）；
+     * 输入输出都是WAV文件时按采样计算字节范围直接复制（{@link WavSplicer}），不启动ffmpeg
+     *
      * @param bgmInputPath 音频输入绝对路径
      * @param bgmOutPath 音频输出绝对路径
      * @param startTime 截取的开始时间
@@ -86,7 +240,7 @@ public class AudioOperation {
      * @return
      */
     public Result audioCut(String bgmInputPath, String bgmOutPath, String startTime, String endTime) {
-//         ffmpeg -i out.mp3 -ss 00:00:00 -t 00:06:38 -acodec copy love3.mp3
+//         ffmpeg -y -i out.mp3 -ss 00:00:00 -to 00:06:38 -acodec copy love3.mp3
         String str = "^([0-1]?[0-9]|2[0-3]):([0-5][0-9]):([0-5][0-9])$";
 
         Pattern pattern = Pattern.compile(str);
@@ -95,21 +249,26 @@ public class AudioOperation {
         if(!matcher.matches() || !matcher1.matches()) {
             throw new FFMpegException("输入的时间格式错误");
         }
-        try {
-            BaseFileUtil.checkAndMkdir(bgmOutPath);
+        BaseFileUtil.checkAndMkdir(bgmOutPath);
 
-            Stream<String> stream = Stream.of(ffmpegEXE, "-i", bgmInputPath, "-ss", startTime, "-t",
-                    endTime, "-acodec", "copy", bgmOutPath);
+        Result result = new WavSplicer("audioCut", context.getCancelToken(), context.getMetrics()).cut(bgmInputPath, bgmOutPath,
+                toSeconds(matcher), toSeconds(matcher1));
+        if(result != null) {
+            return result;
+        }
 
-            List<String> commands = stream.collect(Collectors.toList());
+        // -t 是持续时间，结束时间使用 -to
+        Stream<String> stream = Stream.of(ffmpegEXE, "-y", "-i", bgmInputPath, "-ss", startTime, "-to",
+                endTime, "-acodec", "copy", bgmOutPath);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        List<String> commands = stream.collect(Collectors.toList());
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("audioCut", commands);
+    }
+
+    private static double toSeconds(Matcher matcher) {
+        return Integer.parseInt(matcher.group(1)) * 3600 + Integer.parseInt(matcher.group(2)) * 60
+                + Integer.parseInt(matcher.group(3));
     }
 
 
@@ -126,24 +285,51 @@ public class AudioOperation {
             throw new FFMpegException("请输入正确的路径");
         }
         BaseFileUtil.checkAndMkdir(outAudio);
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("-vn");
-            commands.add(outAudio);
+        commands.add("-vn");
+        commands.add(outAudio);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        return execute("getBgmFromVideo", commands);
+    }
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+    /**
+     * 从视频中提取音频，通过stdin/stdout管道读写数据，不产生临时文件
+     *
+     * @param input 视频数据（mp4等格式需要moov在文件开头）
+     * @param output 输出音频数据，由调用方关闭
+     * @param outputFormat 输出格式，例如 mp3、adts、wav、ogg
+     * @return
+     */
+    public Result getBgmFromVideo(InputStream input, OutputStream output, String outputFormat) {
+        return OperationContext.flushed(getBgmFromVideo(Channels.newChannel(input), Channels.newChannel(output), outputFormat), output);
+    }
+
+    /**
+     * 从视频中提取音频，通过stdin/stdout管道读写数据，不产生临时文件
+     *
+     * @param input 视频数据（mp4等格式需要moov在文件开头）
+     * @param output 输出音频数据，由调用方关闭
+     * @param outputFormat 输出格式，例如 mp3、adts、wav、ogg
+     * @return
+     */
+    public Result getBgmFromVideo(ReadableByteChannel input, WritableByteChannel output, String outputFormat) {
+        //ffmpeg -i pipe:0 -vn -f mp3 pipe:1
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
+
+        commands.add("-i");
+        commands.add(Pipes.STDIN);
+
+        commands.add("-vn");
+        Pipes.addOutput(commands, outputFormat);
+
+        return context.executePipe("getBgmFromVideo", commands, input, output);
     }
 
     /**
@@ -159,23 +345,49 @@ public class AudioOperation {
             throw new FFMpegException("请输入正确的路径");
         }
         BaseFileUtil.checkAndMkdir(outAudio);
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputAudio);
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputAudio);
 
-            commands.add(outAudio);
+        commands.add(outAudio);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        return execute("transFormatAudio", commands);
+    }
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+    /**
+     * 转换音频格式，通过stdin/stdout管道读写数据，不产生临时文件
+     *
+     * @param input 输入音频数据
+     * @param output 输出音频数据，由调用方关闭
+     * @param outputFormat 输出格式，例如 mp3、adts、wav、ogg
+     * @return
+     */
+    public Result transFormatAudio(InputStream input, OutputStream output, String outputFormat) {
+        return OperationContext.flushed(transFormatAudio(Channels.newChannel(input), Channels.newChannel(output), outputFormat), output);
+    }
+
+    /**
+     * 转换音频格式，通过stdin/stdout管道读写数据，不产生临时文件
+     *
+     * @param input 输入音频数据
+     * @param output 输出音频数据，由调用方关闭
+     * @param outputFormat 输出格式，例如 mp3、adts、wav、ogg
+     * @return
+     */
+    public Result transFormatAudio(ReadableByteChannel input, WritableByteChannel output, String outputFormat) {
+        //ffmpeg -i pipe:0 -f mp3 pipe:1
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
+
+        commands.add("-i");
+        commands.add(Pipes.STDIN);
+
+        Pipes.addOutput(commands, outputFormat);
+
+        return context.executePipe("transFormatAudio", commands, input, output);
     }
 
     /**
@@ -191,32 +403,25 @@ public class AudioOperation {
             throw new FFMpegException("请输入正确的路径");
         }
         BaseFileUtil.checkAndMkdir(outAudio);
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputAudio);
-
-            commands.add("-c:a");
-            commands.add("libopencore_amrnb");
-            commands.add("-ac");
-            commands.add("1");
-            commands.add("-ar");
-            commands.add("8000");
-            commands.add("-b:a");
-            commands.add("12.20k");
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputAudio);
 
-            commands.add(outAudio);
+        commands.add("-c:a");
+        commands.add("libopencore_amrnb");
+        commands.add("-ac");
+        commands.add("1");
+        commands.add("-ar");
+        commands.add("8000");
+        commands.add("-b:a");
+        commands.add("12.20k");
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add(outAudio);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("transFormatAmrAudio", commands);
     }
 
 
@@ -233,27 +438,108 @@ public class AudioOperation {
             throw new FFMpegException("请输入正确的路径");
         }
         BaseFileUtil.checkAndMkdir(outAudio);
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputAudio);
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputAudio);
 
-            commands.add("-acodec");
-            commands.add("libmp3lame");
+        commands.add("-acodec");
+        commands.add("libmp3lame");
 
-            commands.add(outAudio);
+        commands.add(outAudio);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        return execute("transFormatToMp3Audio", commands);
+    }
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
+
+    /**
+     * 生成音频波形（每个区间的最小值、最大值和均方根），解码数据通过管道读取，内存占用与音频时长无关，参考 {@link WaveformJob}
+     *
+     * @param inputAudio 输入音频或视频绝对路径
+     * @return 波形任务，设置参数后调用 execute() 执行
+     */
+    public WaveformJob waveform(String inputAudio) {
+        if(StrUtils.checkBlank(inputAudio)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
         }
+        return new WaveformJob(this, inputAudio);
+    }
+
+
+    // ---------------------------------- 异步API ----------------------------------
+
+    /**
+     * 异步执行 {@link #audioConcat(String, String...)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> audioConcatAsync(String bgmOutPath, String... bgmInputPath) {
+        return async(operation -> operation.audioConcat(bgmOutPath, bgmInputPath));
+    }
+
+    /**
+     * 异步执行 {@link #audioCut(String, String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> audioCutAsync(String bgmInputPath, String bgmOutPath, String startTime, String endTime) {
+        return async(operation -> operation.audioCut(bgmInputPath, bgmOutPath, startTime, endTime));
+    }
+
+    /**
+     * 异步执行 {@link #getBgmFromVideo(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> getBgmFromVideoAsync(String inputVideo, String outAudio) {
+        return async(operation -> operation.getBgmFromVideo(inputVideo, outAudio));
+    }
+
+    /**
+     * 异步执行 {@link #getBgmFromVideo(InputStream, OutputStream, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> getBgmFromVideoAsync(InputStream input, OutputStream output, String outputFormat) {
+        return async(operation -> operation.getBgmFromVideo(input, output, outputFormat));
+    }
+
+    /**
+     * 异步执行 {@link #transFormatAudio(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> transFormatAudioAsync(String inputAudio, String outAudio) {
+        return async(operation -> operation.transFormatAudio(inputAudio, outAudio));
     }
 
+    /**
+     * 异步执行 {@link #transFormatAudio(InputStream, OutputStream, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> transFormatAudioAsync(InputStream input, OutputStream output, String outputFormat) {
+        return async(operation -> operation.transFormatAudio(input, output, outputFormat));
+    }
+
+    /**
+     * 异步执行 {@link #transFormatAmrAudio(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> transFormatAmrAudioAsync(String inputAudio, String outAudio) {
+        return async(operation -> operation.transFormatAmrAudio(inputAudio, outAudio));
+    }
+
+    /**
+     * 异步执行 {@link #transFormatToMp3Audio(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> transFormatToMp3AudioAsync(String inputAudio, String outAudio) {
+        return async(operation -> operation.transFormatToMp3Audio(inputAudio, outAudio));
+    }
 
 }
@@ -0,0 +1,380 @@
+package com.ffmpeg.common.audio;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.common.FFmpegExecutor;
+import com.ffmpeg.common.common.FFmpegTask;
+import com.ffmpeg.common.common.ProcessCommand;
+import com.ffmpeg.common.metrics.FFmpegMetrics;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * 背景音乐预转码缓存
+ *
+ * 同一首背景音乐第一次使用时转码为目标编码、采样率和声道（可选响度归一化），保存在缓存目录中，
+ * 之后合成视频时直接 -c:a copy 复制音频流，不再解码和编码背景音乐：
+ * <pre>
+ *  ffmpeg -y -i bgm.mp3 -map 0:a:0 -vn -sn -dn -af loudnorm -c:a aac -ar 44100 -ac 2 -b:a 128k 缓存目录/SHA-1.m4a
+ * </pre>
+ * 缓存文件名是 源文件路径+大小+修改时间+目标参数 的SHA-1，源文件或者目标参数变化后重新转码；
+ * 同一首背景音乐同时多次获取时只启动一个ffmpeg进程。缓存目录的总大小超过上限时按最近使用时间删除旧文件；
+ * 转码进程使用调用方的超时时间、取消句柄和统计（{@link #get(String, long, CancelToken, FFmpegMetrics)}）
+ *
+ * 目标编码需要能被输出视频的封装格式直接复制，例如mp4使用aac
+ *
+ * @author alan.chen
+ * @date 2020/8/12 10:30 AM
+ */
+public class BgmCache {
+
+    public static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+    /**
+     * 等待其他调用方的转码时检查取消的间隔
+     */
+    private static final long WAIT_INTERVAL_MILLIS = 100;
+
+    private static final Pattern CACHE_FILE = Pattern.compile("[0-9a-f]{40}\\.[A-Za-z0-9]+");
+
+    /**
+     *  ffmpeg文件路径
+     */
+    private final String ffmpegEXE;
+
+    /**
+     *  缓存目录
+     */
+    private final File dir;
+
+    /**
+     *  进程执行器，为null时使用全局共享的执行器
+     */
+    private FFmpegExecutor executor;
+
+    /**
+     *  缓存目录的总大小上限（字节）
+     */
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    private String codec = "aac";
+
+    private int sampleRate = 44100;
+
+    private int channels = 2;
+
+    private String bitrate = "128k";
+
+    /**
+     *  是否使用loudnorm滤镜做响度归一化
+     */
+    private boolean loudnorm;
+
+    /**
+     *  缓存文件的扩展名，决定封装格式
+     */
+    private String extension = "m4a";
+
+    private final ConcurrentHashMap<String, CompletableFuture<String>> encoding = new ConcurrentHashMap<>();
+
+    public BgmCache(String ffmpegEXE, String dir) {
+        if(StrUtils.checkBlank(ffmpegEXE) || StrUtils.checkBlank(dir)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        this.ffmpegEXE = ffmpegEXE;
+        this.dir = new File(dir);
+    }
+
+    public static BgmCache builder(String ffmpegEXE, String dir) {
+        return new BgmCache(ffmpegEXE, dir);
+    }
+
+    public void setExecutor(FFmpegExecutor executor) {
+        this.executor = executor;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public void setChannels(int channels) {
+        this.channels = channels;
+    }
+
+    public void setBitrate(String bitrate) {
+        this.bitrate = bitrate;
+    }
+
+    public void setLoudnorm(boolean loudnorm) {
+        this.loudnorm = loudnorm;
+    }
+
+    public void setExtension(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * 获取背景音乐的缓存文件，不存在时转码生成，转码不限时间、不能取消
+     *
+     * @param bgmPath 背景音乐绝对路径
+     * @return 缓存文件绝对路径
+     */
+    public String get(String bgmPath) {
+        return get(bgmPath, 0, null, null);
+    }
+
+    /**
+     * 获取背景音乐的缓存文件，不存在时转码生成
+     *
+     * 其他调用方正在转码同一首背景音乐时等待结果，等待期间同样遵循超时和取消；
+     * 其他调用方的转码被取消或者超时时重新转码
+     *
+     * @param bgmPath 背景音乐绝对路径
+     * @param timeoutMillis 转码的超时时间（毫秒），小于等于0表示不限制
+     * @param cancelToken 取消句柄，取消后终止转码进程，可以为null
+     * @param metrics 执行统计，可以为null
+     * @return 缓存文件绝对路径，超时或者取消时抛出FFMpegException
+     */
+    public String get(String bgmPath, long timeoutMillis, CancelToken cancelToken, FFmpegMetrics metrics) {
+        if(StrUtils.checkBlank(bgmPath)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        File source = new File(bgmPath);
+        if(!source.isFile()) {
+            throw new FFMpegException("bgm not found: " + bgmPath);
+        }
+        String profile = profile();
+        String key = sha1(source.getAbsolutePath() + "|" + source.length() + "|" + source.lastModified() + "|" + profile);
+        File cached = new File(dir, key + "." + extension);
+        while (true) {
+            if(cached.isFile()) {
+                // 最近使用时间，超过上限时先删除最久没有使用的文件
+                cached.setLastModified(System.currentTimeMillis());
+                return cached.getAbsolutePath();
+            }
+
+            CompletableFuture<String> future = new CompletableFuture<>();
+            CompletableFuture<String> running = encoding.putIfAbsent(key, future);
+            if(running != null) {
+                String path = await(running, timeoutMillis, cancelToken);
+                if(path != null) {
+                    return path;
+                }
+                continue;
+            }
+            try {
+                FFmpegTask task = new FFmpegTask(encodeCommands(bgmPath, key));
+                task.setTimeoutMillis(timeoutMillis);
+                task.setCancelToken(cancelToken);
+                task.setMetrics(metrics);
+                String path = encode(task, cached);
+                future.complete(path);
+                return path;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                encoding.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 等待其他调用方的转码
+     *
+     * @return 缓存文件路径，其他调用方的转码被取消或者超时时返回null
+     */
+    private static String await(CompletableFuture<String> running, long timeoutMillis, CancelToken cancelToken) {
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        while (true) {
+            if(cancelToken != null && cancelToken.isCancelled()) {
+                throw new FFMpegException("bgm encode cancelled");
+            }
+            long wait = WAIT_INTERVAL_MILLIS;
+            if(deadline != 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if(remaining <= 0) {
+                    throw new FFMpegException("bgm encode timeout");
+                }
+                wait = Math.min(wait, remaining);
+            }
+            try {
+                return running.get(wait, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 继续等待
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FFMpegException(e);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof AbortedException) {
+                    return null;
+                }
+                throw e.getCause() instanceof FFMpegException ? (FFMpegException) e.getCause() : new FFMpegException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 目标参数，作为缓存key的一部分
+     */
+    private String profile() {
+        return codec + "|" + sampleRate + "|" + channels + "|" + bitrate + "|" + loudnorm + "|" + extension;
+    }
+
+    private List<String> encodeCommands(String bgmPath, String key) {
+        // 先写入临时文件，完成后再改名，其他进程不会读到不完整的文件
+        File temp = new File(dir, key + "." + System.nanoTime() + ".tmp." + extension);
+
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
+
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(bgmPath);
+
+        commands.add("-map");
+        commands.add("0:a:0");
+        commands.add("-vn");
+        commands.add("-sn");
+        commands.add("-dn");
+
+        if(loudnorm) {
+            commands.add("-af");
+            commands.add("loudnorm");
+        }
+
+        commands.add("-c:a");
+        commands.add(codec);
+        commands.add("-ar");
+        commands.add(String.valueOf(sampleRate));
+        commands.add("-ac");
+        commands.add(String.valueOf(channels));
+        if(!StrUtils.checkBlank(bitrate)) {
+            commands.add("-b:a");
+            commands.add(bitrate);
+        }
+
+        commands.add(temp.getAbsolutePath());
+        return commands;
+    }
+
+    private String encode(FFmpegTask task, File cached) {
+        dir.mkdirs();
+        List<String> commands = task.getCommand();
+        File temp = new File(commands.get(commands.size() - 1));
+
+        task.setOperation("bgmCache");
+        FFmpegExecutor current = executor != null ? executor : ProcessCommand.getDefaultExecutor();
+        Result result = current.execute(task);
+        Integer code = result.getCode();
+        if(code == null || code != 0 || !temp.isFile()) {
+            temp.delete();
+            String message = "bgm encode failed, code: " + code + ", " + result.getErrMessage();
+            if(code != null && (code == Result.CODE_CANCELLED || code == Result.CODE_TIMEOUT)) {
+                throw new AbortedException(message);
+            }
+            throw new FFMpegException(message);
+        }
+        try {
+            Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw new FFMpegException(e);
+        }
+        evict(cached);
+        return cached.getAbsolutePath();
+    }
+
+    /**
+     * 总大小超过上限时按修改时间（最近使用时间）删除旧文件，刚生成的文件不删除
+     */
+    private void evict(File keep) {
+        File[] files = dir.listFiles((d, name) -> CACHE_FILE.matcher(name).matches());
+        if(files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if(total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if(total <= maxBytes) {
+                break;
+            }
+            if(file.equals(keep)) {
+                continue;
+            }
+            long length = file.length();
+            if(file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * 删除所有缓存文件
+     */
+    public void clear() {
+        File[] files = dir.listFiles((d, name) -> CACHE_FILE.matcher(name).matches());
+        if(files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 转码被调用方取消或者超时，等待同一个转码的其他调用方重新转码
+     */
+    private static final class AbortedException extends FFMpegException {
+
+        private static final long serialVersionUID = 1L;
+
+        AbortedException(String message) {
+            super(message);
+        }
+    }
+
+    private static String sha1(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new FFMpegException(e);
+        }
+    }
+}
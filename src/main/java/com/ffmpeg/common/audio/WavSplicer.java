@@ -0,0 +1,328 @@
+package com.ffmpeg.common.audio;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.metrics.FFmpegMetrics;
+import com.ffmpeg.common.metrics.TaskSample;
+import com.ffmpeg.common.response.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * WAV（RIFF/WAVE）文件直接按字节裁剪和拼接，不启动ffmpeg进程
+ *
+ * WAV的data块是按块对齐（blockAlign = 声道数 * 每个采样的字节数）排列的采样，
+ * 裁剪是按采样计算字节范围，拼接是fmt块相同时依次复制data块，再写入新的文件头：
+ * <pre>
+ *  RIFF size WAVE | fmt  size 原fmt块 | data size 采样数据...
+ * </pre>
+ * 采样数据使用 {@link FileChannel#transferTo} 复制；非PCM格式（浮点、A-law、µ-law）额外写入fact块（采样数）。
+ * 只处理每个块对齐单元是一个采样的格式：PCM、IEEE浮点、A-law、µ-law，以及子格式为PCM或浮点的WAVE_FORMAT_EXTENSIBLE；
+ * ADPCM、GSM等压缩格式一个块包括多个采样，按采样计算的偏移不正确，和RF64、fmt块不同、输出不是wav文件一样返回null，由ffmpeg处理
+ *
+ * @author alan.chen
+ * @date 2020/8/9 10:30 AM
+ */
+final class WavSplicer {
+
+    /**
+     * RIFF的大小字段是32位无符号整数
+     */
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+
+    private final String operation;
+
+    private final CancelToken cancelToken;
+
+    private final FFmpegMetrics metrics;
+
+    WavSplicer(String operation, CancelToken cancelToken, FFmpegMetrics metrics) {
+        this.operation = operation;
+        this.cancelToken = cancelToken;
+        this.metrics = metrics != null ? metrics : FFmpegMetrics.NOOP;
+    }
+
+    /**
+     * 裁剪 [startSeconds, endSeconds)，结束时间超出时长时截取到结尾
+     */
+    Result cut(String input, String output, double startSeconds, double endSeconds) {
+        if(!isWav(output)) {
+            return null;
+        }
+        Wav wav = Wav.read(new File(input));
+        if(wav == null) {
+            return null;
+        }
+        long start = Math.min(wav.byteOffset(startSeconds), wav.dataSize);
+        long end = Math.max(start, Math.min(wav.byteOffset(endSeconds), wav.dataSize));
+        return write(wav.format, Arrays.asList(new Range(wav.file, wav.dataOffset + start, end - start)), output);
+    }
+
+    Result concat(List<String> inputs, String output) {
+        if(!isWav(output)) {
+            return null;
+        }
+        byte[] format = null;
+        List<Range> ranges = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            Wav wav = Wav.read(new File(input));
+            if(wav == null || (format != null && !Arrays.equals(format, wav.format))) {
+                return null;
+            }
+            format = wav.format;
+            ranges.add(new Range(wav.file, wav.dataOffset, wav.dataSize));
+        }
+        return write(format, ranges, output);
+    }
+
+    private static boolean isWav(String output) {
+        return output.toLowerCase(Locale.ROOT).endsWith(".wav");
+    }
+
+    private Result write(byte[] format, List<Range> ranges, String output) {
+        long dataSize = 0;
+        for (Range range : ranges) {
+            dataSize += range.length;
+        }
+        int pad = (int) (dataSize & 1);
+        boolean fact = Wav.formatTag(format) != Wav.FORMAT_PCM;
+        int factLength = fact ? 12 : 0;
+        long riffSize = 4 + 8 + format.length + factLength + 8 + dataSize + pad;
+        if(riffSize > MAX_RIFF_SIZE) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(12 + 8 + format.length + factLength + 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(Wav.RIFF).putInt((int) riffSize).putInt(Wav.WAVE);
+        header.putInt(Wav.FMT).putInt(format.length).put(format);
+        if(fact) {
+            // 非PCM格式需要fact块，内容是每个声道的采样数
+            int blockAlign = ByteBuffer.wrap(format).order(ByteOrder.LITTLE_ENDIAN).getShort(12) & 0xFFFF;
+            header.putInt(Wav.FACT).putInt(4).putInt((int) (dataSize / blockAlign));
+        }
+        header.putInt(Wav.DATA).putInt((int) dataSize);
+        header.flip();
+
+        metrics.taskStarted(operation);
+        long begin = System.nanoTime();
+        boolean cancelled = false;
+        try (FileChannel out = FileChannel.open(new File(output).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (Range range : ranges) {
+                if(cancelToken != null && cancelToken.isCancelled()) {
+                    cancelled = true;
+                    break;
+                }
+                try (FileChannel in = FileChannel.open(range.file.toPath(), StandardOpenOption.READ)) {
+                    long position = range.offset;
+                    long end = range.offset + range.length;
+                    while (position < end) {
+                        long transferred = in.transferTo(position, end - position, out);
+                        if(transferred <= 0) {
+                            throw new IOException("unexpected end of file: " + range.file);
+                        }
+                        position += transferred;
+                    }
+                }
+            }
+            if(pad == 1) {
+                out.write(ByteBuffer.allocate(1));
+            }
+        } catch (IOException e) {
+            metrics.taskFinished(operation, new TaskSample(0, 0, System.nanoTime() - begin, -1, dataSize, 0));
+            new File(output).delete();
+            throw new FFMpegException(e);
+        }
+
+        Result result = new Result();
+        if(cancelled) {
+            new File(output).delete();
+            result.setCode(Result.CODE_CANCELLED);
+            result.setErrMessage("task cancelled");
+        } else {
+            result.setCode(0);
+            result.setErrMessage("");
+        }
+        metrics.taskFinished(operation, new TaskSample(0, 0, System.nanoTime() - begin, result.getCode(), dataSize,
+                cancelled ? 0 : riffSize + 8));
+        return result;
+    }
+
+    private static final class Range {
+
+        private final File file;
+
+        private final long offset;
+
+        private final long length;
+
+        private Range(File file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * WAV文件的fmt块和data块位置
+     */
+    static final class Wav {
+
+        static final int RIFF = 0x46464952;
+        static final int WAVE = 0x45564157;
+        static final int FMT = 0x20746d66;
+        static final int DATA = 0x61746164;
+        static final int FACT = 0x74636166;
+
+        static final int FORMAT_PCM = 1;
+        static final int FORMAT_IEEE_FLOAT = 3;
+        static final int FORMAT_ALAW = 6;
+        static final int FORMAT_MULAW = 7;
+        static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+        /**
+         * WAVE_FORMAT_EXTENSIBLE子格式GUID除前2个字节（格式编号）以外的部分：xxxx0000-0000-0010-8000-00AA00389B71
+         */
+        private static final byte[] SUBFORMAT_SUFFIX = {0x00, 0x00, 0x00, 0x00, 0x10, 0x00, (byte) 0x80, 0x00,
+                0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71};
+
+        private final File file;
+
+        /**
+         * fmt块的内容，原样写入输出文件
+         */
+        final byte[] format;
+
+        final int sampleRate;
+
+        final int blockAlign;
+
+        final long dataOffset;
+
+        final long dataSize;
+
+        private Wav(File file, byte[] format, int sampleRate, int blockAlign, long dataOffset, long dataSize) {
+            this.file = file;
+            this.format = format;
+            this.sampleRate = sampleRate;
+            this.blockAlign = blockAlign;
+            this.dataOffset = dataOffset;
+            this.dataSize = dataSize;
+        }
+
+        /**
+         * @return 按采样对齐的字节偏移
+         */
+        long byteOffset(double seconds) {
+            return (long) Math.floor(seconds * sampleRate) * blockAlign;
+        }
+
+        /**
+         * @return 格式编号，WAVE_FORMAT_EXTENSIBLE返回子格式的编号，子格式不是标准GUID时返回-1
+         */
+        static int formatTag(byte[] format) {
+            ByteBuffer fmt = ByteBuffer.wrap(format).order(ByteOrder.LITTLE_ENDIAN);
+            int tag = fmt.getShort(0) & 0xFFFF;
+            if(tag != FORMAT_EXTENSIBLE) {
+                return tag;
+            }
+            // cbSize(2) validBits(2) channelMask(4) SubFormat(16)
+            if(format.length < 40 || (fmt.getShort(16) & 0xFFFF) < 22) {
+                return -1;
+            }
+            for (int i = 0; i < SUBFORMAT_SUFFIX.length; i++) {
+                if(format[26 + i] != SUBFORMAT_SUFFIX[i]) {
+                    return -1;
+                }
+            }
+            return fmt.getShort(24) & 0xFFFF;
+        }
+
+        /**
+         * 每个块对齐单元是一个采样（所有声道）的格式
+         */
+        private static boolean isSampleAligned(byte[] format) {
+            int tag = formatTag(format);
+            return tag == FORMAT_PCM || tag == FORMAT_IEEE_FLOAT || tag == FORMAT_ALAW || tag == FORMAT_MULAW;
+        }
+
+        /**
+         * @return 不是WAV文件或者格式不能处理时返回null
+         */
+        static Wav read(File file) {
+            if(!file.isFile()) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long fileSize = channel.size();
+                ByteBuffer buffer = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+                if(!readFully(channel, buffer, 0) || buffer.getInt(0) != RIFF || buffer.getInt(8) != WAVE) {
+                    return null;
+                }
+                byte[] format = null;
+                long position = 12;
+                ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                while (position + 8 <= fileSize) {
+                    chunk.clear();
+                    if(!readFully(channel, chunk, position)) {
+                        return null;
+                    }
+                    int id = chunk.getInt(0);
+                    long size = chunk.getInt(4) & 0xFFFFFFFFL;
+                    long body = position + 8;
+                    if(id == FMT) {
+                        if(size < 16 || size > 1024 || body + size > fileSize) {
+                            return null;
+                        }
+                        ByteBuffer fmt = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+                        if(!readFully(channel, fmt, body)) {
+                            return null;
+                        }
+                        format = fmt.array();
+                    } else if(id == DATA) {
+                        if(format == null || !isSampleAligned(format)) {
+                            return null;
+                        }
+                        ByteBuffer fmt = ByteBuffer.wrap(format).order(ByteOrder.LITTLE_ENDIAN);
+                        int sampleRate = fmt.getInt(4);
+                        int blockAlign = fmt.getShort(12) & 0xFFFF;
+                        if(sampleRate <= 0 || blockAlign <= 0) {
+                            return null;
+                        }
+                        // 管道输出的WAV没有回写大小（0或者0xFFFFFFFF），使用到文件结尾的数据
+                        if(size == 0 || body + size > fileSize) {
+                            size = fileSize - body;
+                        }
+                        size -= size % blockAlign;
+                        return new Wav(file, format, sampleRate, blockAlign, body, size);
+                    }
+                    position = body + size + (size & 1);
+                }
+                return null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if(channel.read(buffer, position + buffer.position()) <= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
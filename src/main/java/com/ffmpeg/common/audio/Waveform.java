@@ -0,0 +1,154 @@
+package com.ffmpeg.common.audio;
+
+import com.ffmpeg.common.FFMpegException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 音频波形，按时间均分为若干区间，每个区间保存采样的最小值、最大值（16位采样值）和均方根（0~1）
+ *
+ * 可以写入紧凑的二进制格式（大端序），每个区间6个字节：
+ * <pre>
+ *  "FFWF" | 版本(int) | 采样率(int) | 总采样数(long) | 区间数(int) | 区间数 * (min short, max short, rms short)
+ * </pre>
+ * rms按 0~32767 保存，读取后精度为 1/32767
+ *
+ * @author alan.chen
+ * @date 2020/8/11 10:20 AM
+ */
+public final class Waveform {
+
+    private static final int MAGIC = 0x46465746;
+
+    private static final int VERSION = 1;
+
+    private final int sampleRate;
+
+    private final long samples;
+
+    private final short[] min;
+
+    private final short[] max;
+
+    private final float[] rms;
+
+    Waveform(int sampleRate, long samples, short[] min, short[] max, float[] rms) {
+        this.sampleRate = sampleRate;
+        this.samples = samples;
+        this.min = min;
+        this.max = max;
+        this.rms = rms;
+    }
+
+    /**
+     * 解码使用的采样率
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 解码得到的总采样数
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * 时长（秒）
+     */
+    public double getDuration() {
+        return sampleRate > 0 ? (double) samples / sampleRate : 0;
+    }
+
+    /**
+     * 区间数，采样数少于设置的区间数时等于采样数
+     */
+    public int getBucketCount() {
+        return min.length;
+    }
+
+    public short[] getMin() {
+        return min;
+    }
+
+    public short[] getMax() {
+        return max;
+    }
+
+    public float[] getRms() {
+        return rms;
+    }
+
+    /**
+     * 写入二进制格式，不关闭输出流
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(sampleRate);
+        out.writeLong(samples);
+        out.writeInt(min.length);
+        for (int i = 0; i < min.length; i++) {
+            out.writeShort(min[i]);
+            out.writeShort(max[i]);
+            out.writeShort(Math.round(Math.min(1f, Math.max(0f, rms[i])) * Short.MAX_VALUE));
+        }
+        out.flush();
+    }
+
+    public void write(File file) {
+        try (OutputStream output = new FileOutputStream(file)) {
+            writeTo(output);
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+    }
+
+    /**
+     * 读取 {@link #writeTo(OutputStream)} 写入的数据，不关闭输入流，只读取波形数据的字节
+     */
+    public static Waveform readFrom(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if(in.readInt() != MAGIC) {
+            throw new IOException("not a waveform file");
+        }
+        int version = in.readInt();
+        if(version != VERSION) {
+            throw new IOException("unsupported waveform version: " + version);
+        }
+        int sampleRate = in.readInt();
+        long samples = in.readLong();
+        int count = in.readInt();
+        if(count < 0) {
+            throw new IOException("invalid bucket count: " + count);
+        }
+        short[] min = new short[count];
+        short[] max = new short[count];
+        float[] rms = new float[count];
+        for (int i = 0; i < count; i++) {
+            min[i] = in.readShort();
+            max[i] = in.readShort();
+            rms[i] = in.readShort() / (float) Short.MAX_VALUE;
+        }
+        return new Waveform(sampleRate, samples, min, max, rms);
+    }
+
+    public static Waveform read(File file) {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            return readFrom(input);
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+    }
+}
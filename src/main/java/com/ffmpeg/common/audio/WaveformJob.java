@@ -0,0 +1,235 @@
+package com.ffmpeg.common.audio;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.common.StdoutHandler;
+import com.ffmpeg.common.response.Result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 生成音频波形，解码为单声道16位PCM通过stdout管道读取，边读取边归并到区间中，不生成中间文件
+ * <pre>
+ *  ffmpeg -i in.mp3 -map 0:a:0 -vn -sn -dn -ac 1 -ar 8000 -f s16le -acodec pcm_s16le pipe:1
+ * </pre>
+ * 读取前不知道总采样数，所以先按每区间1个采样写入 buckets * {@link #FOLD_FACTOR} 个内部区间，
+ * 写满后相邻两个区间合并、每区间的采样数翻倍，内存占用只和区间数有关，与音频时长无关；
+ * 结束时再把内部区间按顺序均分到 buckets 个区间，每个区间的采样数相差不超过1/4
+ *
+ * @author alan.chen
+ * @date 2020/8/11 10:20 AM
+ */
+public class WaveformJob {
+
+    /**
+     * 内部区间数是输出区间数的倍数
+     */
+    static final int FOLD_FACTOR = 8;
+
+    private static final int MAX_BUCKETS = 1 << 20;
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final AudioOperation operation;
+
+    private final String inputAudio;
+
+    private int buckets = 1000;
+
+    private int sampleRate = 8000;
+
+    WaveformJob(AudioOperation operation, String inputAudio) {
+        this.operation = operation;
+        this.inputAudio = inputAudio;
+    }
+
+    /**
+     * 区间数，默认1000
+     */
+    public WaveformJob buckets(int buckets) {
+        if(buckets <= 0 || buckets > MAX_BUCKETS) {
+            throw new FFMpegException("非法参数，区间数需在1到" + MAX_BUCKETS + "之间");
+        }
+        this.buckets = buckets;
+        return this;
+    }
+
+    /**
+     * 解码的采样率，默认8000，波形只用于显示时不需要原始采样率
+     */
+    public WaveformJob sampleRate(int sampleRate) {
+        if(sampleRate <= 0) {
+            throw new FFMpegException("非法参数，采样率需大于0");
+        }
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * 执行解码并生成波形
+     *
+     * @return 波形数据
+     * @throws FFMpegException 执行失败、超时或者取消时抛出，包含退出码和错误信息
+     */
+    public Waveform execute() {
+        Accumulator accumulator = new Accumulator(buckets);
+        Result result = operation.execute("waveform", buildCommands(), accumulator);
+        if(result.getCode() == null || result.getCode() != 0) {
+            throw new FFMpegException("waveform failed, code: " + result.getCode() + ", " + result.getErrMessage());
+        }
+        return accumulator.toWaveform(sampleRate);
+    }
+
+    List<String> buildCommands() {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+        commands.add("-i");
+        commands.add(inputAudio);
+        commands.add("-map");
+        commands.add("0:a:0");
+        commands.add("-vn");
+        commands.add("-sn");
+        commands.add("-dn");
+        commands.add("-ac");
+        commands.add("1");
+        commands.add("-ar");
+        commands.add(String.valueOf(sampleRate));
+        commands.add("-f");
+        commands.add("s16le");
+        commands.add("-acodec");
+        commands.add("pcm_s16le");
+        commands.add("pipe:1");
+        return commands;
+    }
+
+    /**
+     * 从stdout读取小端序16位采样并归并到内部区间
+     */
+    static final class Accumulator implements StdoutHandler {
+
+        private final int buckets;
+
+        private final int capacity;
+
+        private final short[] min;
+
+        private final short[] max;
+
+        private final double[] sumSquares;
+
+        /**
+         * 当前写入的内部区间
+         */
+        private int index;
+
+        /**
+         * 当前区间已写入的采样数
+         */
+        private long count;
+
+        /**
+         * 每个内部区间的采样数
+         */
+        private long samplesPerBucket = 1;
+
+        private long samples;
+
+        Accumulator(int buckets) {
+            this.buckets = buckets;
+            this.capacity = buckets * FOLD_FACTOR;
+            this.min = new short[capacity];
+            this.max = new short[capacity];
+            this.sumSquares = new double[capacity];
+        }
+
+        @Override
+        public void handle(InputStream stdout) throws IOException {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int offset = 0;
+            int len;
+            while ((len = stdout.read(buffer, offset, buffer.length - offset)) != -1) {
+                int end = offset + len;
+                int i = 0;
+                for (; i + 1 < end; i += 2) {
+                    add((short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8)));
+                }
+                // 不完整的采样留到下次读取
+                offset = end - i;
+                if(offset > 0) {
+                    buffer[0] = buffer[i];
+                }
+            }
+        }
+
+        void add(short sample) {
+            if(count == samplesPerBucket) {
+                if(++index == capacity) {
+                    fold();
+                }
+                count = 0;
+            }
+            if(count == 0) {
+                min[index] = sample;
+                max[index] = sample;
+                sumSquares[index] = (double) sample * sample;
+            } else {
+                if(sample < min[index]) {
+                    min[index] = sample;
+                }
+                if(sample > max[index]) {
+                    max[index] = sample;
+                }
+                sumSquares[index] += (double) sample * sample;
+            }
+            count++;
+            samples++;
+        }
+
+        /**
+         * 相邻两个区间合并，写满时所有区间都是完整的
+         */
+        private void fold() {
+            int half = capacity / 2;
+            for (int i = 0; i < half; i++) {
+                int a = i * 2;
+                int b = a + 1;
+                min[i] = (short) Math.min(min[a], min[b]);
+                max[i] = (short) Math.max(max[a], max[b]);
+                sumSquares[i] = sumSquares[a] + sumSquares[b];
+            }
+            index = half;
+            samplesPerBucket *= 2;
+        }
+
+        Waveform toWaveform(int sampleRate) {
+            if(samples == 0) {
+                return new Waveform(sampleRate, 0, new short[0], new short[0], new float[0]);
+            }
+            int stored = index + 1;
+            int outCount = Math.min(buckets, stored);
+            short[] outMin = new short[outCount];
+            short[] outMax = new short[outCount];
+            float[] outRms = new float[outCount];
+            for (int j = 0; j < outCount; j++) {
+                int from = (int) ((long) j * stored / outCount);
+                int to = (int) ((long) (j + 1) * stored / outCount);
+                short lo = min[from];
+                short hi = max[from];
+                double squares = 0;
+                long n = 0;
+                for (int i = from; i < to; i++) {
+                    lo = (short) Math.min(lo, min[i]);
+                    hi = (short) Math.max(hi, max[i]);
+                    squares += sumSquares[i];
+                    n += i == index ? count : samplesPerBucket;
+                }
+                outMin[j] = lo;
+                outMax[j] = hi;
+                outRms[j] = (float) (Math.sqrt(squares / n) / 32768.0);
+            }
+            return new Waveform(sampleRate, samples, outMin, outMax, outRms);
+        }
+    }
+}
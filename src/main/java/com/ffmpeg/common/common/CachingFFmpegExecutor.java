@@ -0,0 +1,518 @@
+package com.ffmpeg.common.common;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.response.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存输出文件的执行器，相同的命令处理相同的输入时不再启动ffmpeg，直接使用缓存的输出文件
+ *
+ * 1. 缓存key：规范化后的命令（去掉输出路径、-progress参数）+ ffmpeg版本 + 每个输入文件的指纹（路径+大小+修改时间，或者文件内容的SHA-256）
+ * 2. 命中时把缓存文件硬链接（不支持时复制）到输出路径
+ * 3. 缓存目录的总大小超过 maxBytes 时按最近最少使用淘汰
+ * 4. 相同key的任务同时到达时只执行一次，其他任务等待结果后直接使用缓存
+ *
+ * 只缓存 只有本地文件输入、只有一个本地文件输出 的命令，管道、网络地址、concat列表、图片序列（%d）等命令直接交给被装饰的执行器。
+ * 滤镜参数中引用的文件（例如 subtitles=xxx.srt）不计入指纹，这类命令不要使用缓存。
+ * 硬链接的输出文件与缓存文件是同一个文件，不要原地修改输出文件；通过本执行器执行的命令在启动前会先删除已存在的输出文件
+ *
+ * @author alan.chen
+ * @date 2020/8/3 10:15 AM
+ */
+public class CachingFFmpegExecutor implements FFmpegExecutor {
+
+    /**
+     * 不带参数值的选项，用于从命令中找出输出文件，遗漏的选项会把下一个参数当作它的值，导致命令无法缓存
+     */
+    private static final Set<String> FLAG_OPTIONS = new HashSet<>(Arrays.asList(
+            "-y", "-n", "-an", "-vn", "-sn", "-dn", "-nostats", "-stats", "-nostdin", "-stdin", "-hide_banner",
+            "-shortest", "-copyts", "-start_at_zero", "-re", "-stream_loop_disable", "-benchmark", "-benchmark_all",
+            "-accurate_seek", "-noaccurate_seek", "-autorotate", "-noautorotate", "-autoscale", "-noautoscale",
+            "-seek_timestamp", "-noseek_timestamp", "-xerror", "-noxerror", "-ignore_unknown", "-copy_unknown",
+            "-copyinkf", "-nocopyinkf", "-fix_sub_duration", "-bitexact", "-psnr", "-vstats", "-debug_ts",
+            "-dump", "-hex", "-report", "-find_stream_info", "-nofind_stream_info"));
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final FFmpegExecutor delegate;
+
+    private final File cacheDir;
+
+    private final long maxBytes;
+
+    /**
+     * 是否使用文件内容的SHA-256作为输入文件指纹，默认使用 路径+大小+修改时间
+     */
+    private volatile boolean contentHash;
+
+    /**
+     * 命中时是否使用硬链接，默认使用，为false或者不支持时复制文件
+     */
+    private volatile boolean hardLink = true;
+
+    /**
+     * 缓存文件名 -> 文件大小，按访问顺序排列
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Result>> running = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, String> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param delegate 实际执行命令的执行器
+     * @param cacheDir 缓存目录，已有的缓存文件会继续使用
+     * @param maxBytes 缓存目录最大字节数
+     */
+    public CachingFFmpegExecutor(FFmpegExecutor delegate, String cacheDir, long maxBytes) {
+        if(delegate == null || cacheDir == null || maxBytes <= 0) {
+            throw new FFMpegException("delegate and cacheDir must not be null, maxBytes must be positive");
+        }
+        this.delegate = delegate;
+        this.cacheDir = new File(cacheDir);
+        this.maxBytes = maxBytes;
+        if(!this.cacheDir.isDirectory() && !this.cacheDir.mkdirs()) {
+            throw new FFMpegException("cacheDir create failed: " + cacheDir);
+        }
+        load();
+    }
+
+    public void setContentHash(boolean contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public void setHardLink(boolean hardLink) {
+        this.hardLink = hardLink;
+    }
+
+    /**
+     * 异步任务的调度交给实际执行命令的执行器
+     */
+    @Override
+    public void dispatch(Runnable job, Executor threads) {
+        delegate.dispatch(job, threads);
+    }
+
+    @Override
+    public Result execute(FFmpegTask task) {
+        CacheKey key = cacheKey(task);
+        if(key == null) {
+            return delegate.execute(task);
+        }
+        while (true) {
+            if(restore(key)) {
+                hitCount.incrementAndGet();
+                return hitResult();
+            }
+            CompletableFuture<Result> future = new CompletableFuture<>();
+            CompletableFuture<Result> other = running.putIfAbsent(key.name, future);
+            if(other == null) {
+                missCount.incrementAndGet();
+                return fill(key, task, future);
+            }
+            Result result = await(other, task);
+            if(result.getCode() == Result.CODE_TIMEOUT || result.getCode() == Result.CODE_CANCELLED) {
+                return result;
+            }
+            // 其他任务执行成功时从缓存获取，失败或者没有写入缓存时自己执行
+        }
+    }
+
+    /**
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return 未命中（实际执行）次数
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return 缓存文件总字节数
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 删除所有缓存文件
+     */
+    public synchronized void clear() {
+        for (String name : entries.keySet()) {
+            new File(cacheDir, name).delete();
+        }
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    private Result fill(CacheKey key, FFmpegTask task, CompletableFuture<Result> future) {
+        Result result = null;
+        try {
+            // 输出文件可能是上次命中时的硬链接，先删除，避免ffmpeg原地覆盖缓存文件
+            Files.deleteIfExists(key.output.toPath());
+            result = delegate.execute(task);
+            if(result.getCode() == 0 && key.output.isFile()) {
+                try {
+                    store(key);
+                } catch (IOException | RuntimeException e) {
+                    // 缓存目录写满、被删除等情况不影响本次执行的结果，只是不缓存
+                    new File(cacheDir, key.name + TEMP_SUFFIX).delete();
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        } finally {
+            running.remove(key.name);
+            future.complete(result != null ? result : failedResult());
+        }
+    }
+
+    /**
+     * 等待相同key的任务结束，等待期间同样遵循超时和取消
+     */
+    private static Result await(CompletableFuture<Result> other, FFmpegTask task) {
+        CompletableFuture<Result> waiter = new CompletableFuture<>();
+        other.whenComplete((result, e) -> waiter.complete(result != null ? result : failedResult()));
+        CancelToken token = task.getCancelToken();
+        Runnable onCancel = () -> waiter.complete(codeResult(Result.CODE_CANCELLED));
+        if(token != null) {
+            token.register(onCancel);
+        }
+        try {
+            if(task.getTimeoutMillis() > 0) {
+                return waiter.get(task.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            }
+            return waiter.get();
+        } catch (TimeoutException e) {
+            return codeResult(Result.CODE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FFMpegException(e);
+        } catch (ExecutionException e) {
+            throw new FFMpegException(e.getCause());
+        } finally {
+            if(token != null) {
+                token.unregister(onCancel);
+            }
+        }
+    }
+
+    /**
+     * 缓存命中时把缓存文件放到输出路径
+     */
+    private boolean restore(CacheKey key) {
+        File cached = new File(cacheDir, key.name);
+        synchronized (this) {
+            if(entries.get(key.name) == null) {
+                return false;
+            }
+        }
+        Path target = key.output.toPath();
+        try {
+            Files.deleteIfExists(target);
+            if(hardLink) {
+                try {
+                    Files.createLink(target, cached.toPath());
+                    cached.setLastModified(System.currentTimeMillis());
+                    return true;
+                } catch (UnsupportedOperationException | IOException e) {
+                    // 跨文件系统等不支持硬链接的情况，复制文件
+                }
+            }
+            Files.copy(cached.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            cached.setLastModified(System.currentTimeMillis());
+            return true;
+        } catch (IOException e) {
+            // 缓存文件刚好被淘汰
+            synchronized (this) {
+                Long size = entries.remove(key.name);
+                if(size != null) {
+                    totalBytes -= size;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 复制输出文件到缓存目录，复制完成后再改名，其他线程不会读到写了一半的文件
+     */
+    private void store(CacheKey key) throws IOException {
+        long size = key.output.length();
+        if(size > maxBytes) {
+            return;
+        }
+        File temp = new File(cacheDir, key.name + TEMP_SUFFIX);
+        Files.copy(key.output.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp.toPath(), new File(cacheDir, key.name).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long old = entries.put(key.name, size);
+            totalBytes += size - (old != null ? old : 0);
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                if(eldest.getKey().equals(key.name)) {
+                    continue;
+                }
+                totalBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iterator.remove();
+            }
+        }
+        for (String name : evicted) {
+            new File(cacheDir, name).delete();
+        }
+    }
+
+    /**
+     * 加载缓存目录中已有的文件，按修改时间作为访问顺序
+     */
+    private void load() {
+        File[] files = cacheDir.listFiles();
+        if(files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        synchronized (this) {
+            for (File file : files) {
+                if(file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                } else if(file.isFile()) {
+                    entries.put(file.getName(), file.length());
+                    totalBytes += file.length();
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析命令中的输入和输出文件，计算缓存key，不能缓存时返回null
+     */
+    CacheKey cacheKey(FFmpegTask task) {
+        if(task.getStdin() != null) {
+            return null;
+        }
+        List<String> command = task.getCommand();
+        List<String> normalized = new ArrayList<>();
+        List<File> inputs = new ArrayList<>();
+        File output = null;
+        String format = null;
+
+        for (int i = 1; i < command.size(); i++) {
+            String arg = command.get(i);
+            if("-progress".equals(arg)) {
+                i++;
+                continue;
+            }
+            if("-nostats".equals(arg)) {
+                continue;
+            }
+            if("-i".equals(arg) && i + 1 < command.size()) {
+                File input = new File(command.get(++i));
+                if("concat".equals(format) || !input.isFile()) {
+                    return null;
+                }
+                inputs.add(input);
+                normalized.add("-i");
+                normalized.add("#" + (inputs.size() - 1));
+                format = null;
+                continue;
+            }
+            if(arg.startsWith("-") && arg.length() > 1 && !FLAG_OPTIONS.contains(arg)) {
+                if(i + 1 >= command.size()) {
+                    return null;
+                }
+                String value = command.get(++i);
+                if("-f".equals(arg)) {
+                    format = value;
+                }
+                normalized.add(arg);
+                normalized.add(value);
+                continue;
+            }
+            if(!arg.startsWith("-")) {
+                if(output != null) {
+                    // 多个输出
+                    return null;
+                }
+                output = new File(arg);
+                normalized.add("output" + extension(arg));
+                continue;
+            }
+            normalized.add(arg);
+        }
+
+        if(inputs.isEmpty() || output == null || !isLocalFile(output)) {
+            return null;
+        }
+        for (File input : inputs) {
+            if(input.getAbsoluteFile().equals(output.getAbsoluteFile())) {
+                return null;
+            }
+        }
+        String version = version(command.get(0));
+        if(version == null) {
+            return null;
+        }
+
+        MessageDigest digest = sha256();
+        update(digest, version);
+        for (String item : normalized) {
+            update(digest, item);
+        }
+        for (File input : inputs) {
+            update(digest, fingerprint(input));
+        }
+        return new CacheKey(hex(digest.digest()) + extension(output.getName()), output);
+    }
+
+    private static boolean isLocalFile(File output) {
+        String path = output.getPath();
+        if(path.contains("://") || path.startsWith("pipe:") || path.contains("%") || "-".equals(path)
+                || path.startsWith("/dev/")) {
+            return false;
+        }
+        File parent = output.getAbsoluteFile().getParentFile();
+        return parent != null && parent.isDirectory();
+    }
+
+    private String fingerprint(File input) {
+        if(!contentHash) {
+            return input.getAbsolutePath() + "|" + input.length() + "|" + input.lastModified();
+        }
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(Pipes.BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * ffmpeg -version 的第一行，每个ffmpeg路径只获取一次
+     */
+    private String version(String ffmpegEXE) {
+        String version = versions.get(ffmpegEXE);
+        if(version != null) {
+            return version;
+        }
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
+        commands.add("-version");
+        FFmpegTask task = new FFmpegTask(commands);
+        StdoutCollector collector = new StdoutCollector();
+        task.setStdoutHandler(collector);
+        Result result = delegate.execute(task);
+        if(result.getCode() != 0) {
+            return null;
+        }
+        String output = collector.toString(StandardCharsets.UTF_8);
+        int end = output.indexOf('\n');
+        version = (end >= 0 ? output.substring(0, end) : output).trim();
+        versions.put(ffmpegEXE, version);
+        return version;
+    }
+
+    private static String extension(String path) {
+        int dot = path.lastIndexOf('.');
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        return dot > slash ? path.substring(dot) : "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static Result hitResult() {
+        Result result = new Result();
+        result.setCode(0);
+        result.setErrMessage("");
+        return result;
+    }
+
+    private static Result failedResult() {
+        return codeResult(-1);
+    }
+
+    private static Result codeResult(int code) {
+        Result result = new Result();
+        result.setCode(code);
+        return result;
+    }
+
+    static final class CacheKey {
+
+        final String name;
+
+        final File output;
+
+        CacheKey(String name, File output) {
+            this.name = name;
+            this.output = output;
+        }
+    }
+}
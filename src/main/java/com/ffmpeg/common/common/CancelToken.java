@@ -0,0 +1,49 @@
+package com.ffmpeg.common.common;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 取消句柄，调用 {@link #cancel()} 后终止所有关联的ffmpeg进程，之后启动的任务直接返回取消结果
+ *
+ * 同一个句柄可以关联多个任务，例如 chunkedTranscode 同时执行的多个分段转码进程和最后的拼接进程
+ *
+ * @author alan.chen
+ * @date 2020/7/14 10:20 AM
+ */
+public class CancelToken {
+
+    private volatile boolean cancelled;
+
+    private final Set<Runnable> callbacks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 取消任务，可以重复调用
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Runnable callback : callbacks) {
+            if(callbacks.remove(callback)) {
+                callback.run();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 注册取消时的回调，已经取消时立即执行
+     */
+    void register(Runnable callback) {
+        callbacks.add(callback);
+        if(cancelled && callbacks.remove(callback)) {
+            callback.run();
+        }
+    }
+
+    void unregister(Runnable callback) {
+        callbacks.remove(callback);
+    }
+}
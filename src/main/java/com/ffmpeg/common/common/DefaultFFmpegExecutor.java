@@ -0,0 +1,228 @@
+package com.ffmpeg.common.common;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.FFMpegRejectedException;
+import com.ffmpeg.common.response.Result;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 有界的ffmpeg进程执行器
+ *
+ * 1. 同时运行的ffmpeg进程数不超过 maxConcurrent
+ * 2. 超出的任务按提交顺序（FIFO，公平信号量）排队等待
+ * 3. 排队数超过 maxQueue，或者排队时间超过 maxWait 时，拒绝任务并抛出 {@link FFMpegRejectedException}
+ * 4. 异步API的任务最多同时交给线程池 maxConcurrent 个，其余的任务保存在队列中（同样计入 maxQueue），
+ *    前面的任务结束后再交给线程池，排队的异步任务不占用线程
+ *
+ * @author alan.chen
+ * @date 2020/7/2 10:20 AM
+ */
+public class DefaultFFmpegExecutor implements FFmpegExecutor {
+
+    private final int maxConcurrent;
+
+    private final int maxQueue;
+
+    /**
+     * 最长排队时间（纳秒），小于等于0表示一直等待
+     */
+    private final long maxWaitNanos;
+
+    private final Semaphore permits;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * 等待交给线程池的异步任务，通过自身加锁
+     */
+    private final ArrayDeque<PendingJob> pending = new ArrayDeque<>();
+
+    /**
+     * 已经交给线程池还没有结束的异步任务数，不超过 maxConcurrent
+     */
+    private int dispatched;
+
+    /**
+     * @param maxConcurrent 同时运行的最大进程数
+     * @param maxQueue 最大排队任务数
+     */
+    public DefaultFFmpegExecutor(int maxConcurrent, int maxQueue) {
+        this(maxConcurrent, maxQueue, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxConcurrent 同时运行的最大进程数
+     * @param maxQueue 最大排队任务数
+     * @param maxWait 最长排队时间，小于等于0表示一直等待
+     * @param unit 时间单位
+     */
+    public DefaultFFmpegExecutor(int maxConcurrent, int maxQueue, long maxWait, TimeUnit unit) {
+        if(maxConcurrent <= 0 || maxQueue < 0) {
+            throw new FFMpegException("maxConcurrent must be positive and maxQueue must not be negative");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.permits = new Semaphore(maxConcurrent, true);
+        StderrScanner.reserve(maxConcurrent);
+    }
+
+    @Override
+    public Result execute(FFmpegTask task) {
+        long start = System.nanoTime();
+        try {
+            acquire();
+        } catch (FFMpegRejectedException e) {
+            // 拒绝的任务也上报，排队已满、排队超时是过载的信号
+            task.setQueueWaitNanos(System.nanoTime() - start);
+            if(task.getMetrics() != null) {
+                new TaskMeter(task, task.getMetrics()).notStarted(Result.CODE_REJECTED);
+            }
+            throw e;
+        }
+        task.setQueueWaitNanos(System.nanoTime() - start);
+        try {
+            return ProcessCommand.launch(task);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void dispatch(Runnable job, Executor threads) {
+        synchronized (pending) {
+            if(dispatched >= maxConcurrent) {
+                if(waiting.get() + pending.size() >= maxQueue) {
+                    throw new FFMpegRejectedException("ffmpeg executor queue is full, maxQueue: " + maxQueue);
+                }
+                pending.add(new PendingJob(job, threads));
+                return;
+            }
+            dispatched++;
+        }
+        try {
+            threads.execute(() -> run(job, threads));
+        } catch (RuntimeException e) {
+            Runnable next = next(null);
+            if(next != null) {
+                run(next, null);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 执行异步任务，结束后继续执行排队的任务
+     */
+    private void run(Runnable job, Executor threads) {
+        Runnable current = job;
+        while (current != null) {
+            try {
+                current.run();
+            } catch (RuntimeException e) {
+                // 异步API在任务中处理异常，这里忽略，保证排队的任务继续执行
+            }
+            current = next(threads);
+        }
+    }
+
+    /**
+     * 结束一个异步任务：把名额交给下一个排队的任务，没有排队的任务时释放名额
+     *
+     * 下一个任务使用同一个线程池时直接在当前线程执行：当前线程还没有回到线程池，
+     * 交给线程池会多创建一个线程
+     *
+     * @param threads 当前线程所属的线程池
+     * @return 由当前线程执行的下一个任务，包括线程池拒绝的任务
+     */
+    private Runnable next(Executor threads) {
+        PendingJob next;
+        synchronized (pending) {
+            next = pending.poll();
+            if(next == null) {
+                dispatched--;
+                return null;
+            }
+        }
+        if(next.threads == threads) {
+            return next.job;
+        }
+        try {
+            next.threads.execute(() -> run(next.job, next.threads));
+            return null;
+        } catch (RuntimeException e) {
+            return next.job;
+        }
+    }
+
+    private void acquire() {
+        try {
+            // 带超时的tryAcquire遵循公平策略，不会插队到排队的任务之前
+            if(permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return;
+            }
+            if(waiting.incrementAndGet() + pendingSize() > maxQueue) {
+                waiting.decrementAndGet();
+                throw new FFMpegRejectedException("ffmpeg executor queue is full, maxQueue: " + maxQueue);
+            }
+            try {
+                if(maxWaitNanos <= 0) {
+                    permits.acquire();
+                } else if(!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                    throw new FFMpegRejectedException("ffmpeg executor wait timeout, maxWait: "
+                            + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + "ms");
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FFMpegException(e);
+        }
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    /**
+     * @return 正在运行的进程数
+     */
+    public int getActiveCount() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return 正在排队的任务数，包括等待交给线程池的异步任务
+     */
+    public int getQueueSize() {
+        return waiting.get() + pendingSize();
+    }
+
+    private int pendingSize() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    private static final class PendingJob {
+
+        private final Runnable job;
+
+        private final Executor threads;
+
+        PendingJob(Runnable job, Executor threads) {
+            this.job = job;
+            this.threads = threads;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ffmpeg.common.common;
+
+import com.ffmpeg.common.response.Result;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * ffmpeg进程执行器
+ *
+ * VideoOperation、AudioOperation 的所有命令都通过执行器启动，
+ * 可以自定义实现来控制进程的并发数、排队方式等，默认实现：{@link DefaultFFmpegExecutor}
+ *
+ * @author alan.chen
+ * @date 2020/7/2 10:08 AM
+ */
+public interface FFmpegExecutor {
+
+    /**
+     * 执行任务，阻塞直到进程结束
+     *
+     * @param task 任务
+     * @return 执行结果信息对象
+     */
+    Result execute(FFmpegTask task);
+
+    /**
+     * 执行命令，阻塞直到进程结束
+     *
+     * @param command 命令参数集合
+     * @return 执行结果信息对象
+     */
+    default Result execute(List<String> command) {
+        return execute(new FFmpegTask(command));
+    }
+
+    /**
+     * 异步API提交任务：由执行器决定什么时候交给线程池，排队的任务不需要占用线程
+     *
+     * 默认直接交给线程池
+     *
+     * @param job 任务，执行一个或多个命令，不抛出异常
+     * @param threads 执行任务的线程池
+     */
+    default void dispatch(Runnable job, Executor threads) {
+        threads.execute(job);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.ffmpeg.common.common;
+
+import com.ffmpeg.common.metrics.FFmpegMetrics;
+
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+/**
+ * 提交给 {@link FFmpegExecutor} 的任务：命令参数以及执行过程中的附加处理
+ *
+ * @author alan.chen
+ * @date 2020/7/10 10:12 AM
+ */
+public class FFmpegTask {
+
+    /**
+     * 命令参数集合
+     */
+    private final List<String> command;
+
+    /**
+     * stdout处理，为null时丢弃stdout
+     */
+    private StdoutHandler stdoutHandler;
+
+    /**
+     * 写入进程stdin的数据（-i pipe:0），为null时直接关闭stdin；由调用方关闭
+     */
+    private ReadableByteChannel stdin;
+
+    /**
+     * 超时时间（毫秒），小于等于0表示不限制
+     */
+    private long timeoutMillis;
+
+    /**
+     * 取消句柄
+     */
+    private CancelToken cancelToken;
+
+    /**
+     * 操作名称，用于监控指标分组
+     */
+    private String operation = "ffmpeg";
+
+    /**
+     * 监控指标，为null时不记录
+     */
+    private FFmpegMetrics metrics;
+
+    /**
+     * 在执行器中排队等待的时间（纳秒），由执行器设置
+     */
+    private long queueWaitNanos;
+
+    public FFmpegTask(List<String> command) {
+        this.command = command;
+    }
+
+    public List<String> getCommand() {
+        return command;
+    }
+
+    public StdoutHandler getStdoutHandler() {
+        return stdoutHandler;
+    }
+
+    public void setStdoutHandler(StdoutHandler stdoutHandler) {
+        this.stdoutHandler = stdoutHandler;
+    }
+
+    public ReadableByteChannel getStdin() {
+        return stdin;
+    }
+
+    public void setStdin(ReadableByteChannel stdin) {
+        this.stdin = stdin;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public CancelToken getCancelToken() {
+        return cancelToken;
+    }
+
+    public void setCancelToken(CancelToken cancelToken) {
+        this.cancelToken = cancelToken;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public FFmpegMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(FFmpegMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    public void setQueueWaitNanos(long queueWaitNanos) {
+        this.queueWaitNanos = queueWaitNanos;
+    }
+}
@@ -0,0 +1,245 @@
+package com.ffmpeg.common.common;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.FFMpegRejectedException;
+import com.ffmpeg.common.metrics.FFmpegMetrics;
+import com.ffmpeg.common.progress.ProgressListener;
+import com.ffmpeg.common.progress.ProgressParser;
+import com.ffmpeg.common.response.Result;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * VideoOperation、AudioOperation 共用的执行参数：执行器、异步线程池、进度回调、超时时间、取消句柄和监控指标
+ *
+ * 不可变对象，withXxx 返回新的对象；命令都通过 {@link #execute} 等方法提交给执行器
+ *
+ * @author alan.chen
+ * @date 2020/8/20 10:30 AM
+ */
+public final class OperationContext {
+
+    /**
+     *  进程执行器，为null时使用全局共享的执行器
+     */
+    private FFmpegExecutor executor;
+
+    /**
+     *  异步API使用的线程池，为null时使用内置的线程池
+     */
+    private Executor asyncExecutor;
+
+    /**
+     *  进度回调，不为null时命令增加 -progress pipe:1 -nostats 参数
+     */
+    private ProgressListener progressListener;
+
+    /**
+     *  每次执行命令的超时时间（毫秒），小于等于0表示不限制
+     */
+    private long timeoutMillis;
+
+    /**
+     *  取消句柄
+     */
+    private CancelToken cancelToken;
+
+    /**
+     *  监控指标，为null时不记录
+     */
+    private FFmpegMetrics metrics;
+
+    /**
+     * @param executor 进程执行器，为null时使用全局共享的执行器
+     */
+    public OperationContext(FFmpegExecutor executor) {
+        this.executor = executor;
+    }
+
+    private OperationContext(OperationContext source) {
+        this.executor = source.executor;
+        this.asyncExecutor = source.asyncExecutor;
+        this.progressListener = source.progressListener;
+        this.timeoutMillis = source.timeoutMillis;
+        this.cancelToken = source.cancelToken;
+        this.metrics = source.metrics;
+    }
+
+    public OperationContext withExecutor(FFmpegExecutor executor) {
+        OperationContext context = new OperationContext(this);
+        context.executor = executor;
+        return context;
+    }
+
+    public OperationContext withAsyncExecutor(Executor asyncExecutor) {
+        OperationContext context = new OperationContext(this);
+        context.asyncExecutor = asyncExecutor;
+        return context;
+    }
+
+    public OperationContext withProgressListener(ProgressListener progressListener) {
+        OperationContext context = new OperationContext(this);
+        context.progressListener = progressListener;
+        return context;
+    }
+
+    public OperationContext withTimeoutMillis(long timeoutMillis) {
+        OperationContext context = new OperationContext(this);
+        context.timeoutMillis = timeoutMillis;
+        return context;
+    }
+
+    public OperationContext withCancelToken(CancelToken cancelToken) {
+        OperationContext context = new OperationContext(this);
+        context.cancelToken = cancelToken;
+        return context;
+    }
+
+    public OperationContext withMetrics(FFmpegMetrics metrics) {
+        OperationContext context = new OperationContext(this);
+        context.metrics = metrics;
+        return context;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public CancelToken getCancelToken() {
+        return cancelToken;
+    }
+
+    public FFmpegMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 通过执行器执行命令，设置了进度回调时从stdout读取进度
+     *
+     * @param operation 操作名称，用于监控指标分组
+     * @param commands 命令参数集合
+     * @return
+     */
+    public Result execute(String operation, List<String> commands) {
+        FFmpegTask task;
+        if(progressListener != null) {
+            List<String> progressCommands = new ArrayList<>(commands.size() + 3);
+            progressCommands.add(commands.get(0));
+            progressCommands.add("-progress");
+            progressCommands.add("pipe:1");
+            progressCommands.add("-nostats");
+            progressCommands.addAll(commands.subList(1, commands.size()));
+            task = new FFmpegTask(progressCommands);
+            task.setStdoutHandler(new ProgressParser(progressListener));
+        } else {
+            task = new FFmpegTask(commands);
+        }
+        return submit(operation, task);
+    }
+
+    /**
+     * 通过执行器执行命令，stdout交给处理器读取，不输出进度信息
+     *
+     * @param operation 操作名称，用于监控指标分组
+     * @param commands 命令参数集合
+     * @param stdoutHandler stdout处理
+     * @return
+     */
+    public Result execute(String operation, List<String> commands, StdoutHandler stdoutHandler) {
+        FFmpegTask task = new FFmpegTask(commands);
+        task.setStdoutHandler(stdoutHandler);
+        return submit(operation, task);
+    }
+
+    /**
+     * 通过执行器执行命令，输入从stdin写入，输出从stdout读取
+     *
+     * stdout用于输出数据，所以不会输出进度信息
+     *
+     * @param operation 操作名称，用于监控指标分组
+     * @param commands 命令参数集合
+     * @param input 写入stdin的数据
+     * @param output stdout写入的通道
+     * @return
+     */
+    public Result executePipe(String operation, List<String> commands, ReadableByteChannel input, WritableByteChannel output) {
+        if(input == null || output == null) {
+            throw new FFMpegException("input and output must not be null");
+        }
+        FFmpegTask task = new FFmpegTask(commands);
+        task.setStdin(input);
+        task.setStdoutHandler(Pipes.toChannel(output));
+        return submit(operation, task);
+    }
+
+    private Result submit(String operation, FFmpegTask task) {
+        task.setTimeoutMillis(timeoutMillis);
+        task.setCancelToken(cancelToken);
+        task.setOperation(operation);
+        task.setMetrics(metrics);
+        FFmpegExecutor current = executor != null ? executor : ProcessCommand.getDefaultExecutor();
+        return current.execute(task);
+    }
+
+    /**
+     * 流的方式执行后刷新输出流
+     */
+    public static Result flushed(Result result, OutputStream output) {
+        try {
+            output.flush();
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+        return result;
+    }
+
+    /**
+     * 在异步线程池中执行同步方法
+     *
+     * 返回的Future调用cancel()时通过取消句柄终止进程，未指定取消句柄时每次调用创建新的句柄；
+     * 通过 {@link FFmpegExecutor#dispatch} 提交，执行器排队已满时Future以 {@link FFMpegRejectedException} 结束
+     *
+     * @param operation 同步方法，参数为本次执行使用的取消句柄
+     * @return
+     */
+    public CompletableFuture<Result> async(Function<CancelToken, Result> operation) {
+        CancelToken token = cancelToken != null ? cancelToken : new CancelToken();
+        CompletableFuture<Result> future = new CompletableFuture<Result>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                // 先结束Future再终止进程，否则进程退出后异步线程可能先以取消结果完成Future
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if(cancelled) {
+                    token.cancel();
+                }
+                return cancelled;
+            }
+        };
+        Executor threads = asyncExecutor != null ? asyncExecutor : ProcessCommand.getDefaultAsyncExecutor();
+        FFmpegExecutor current = executor != null ? executor : ProcessCommand.getDefaultExecutor();
+        try {
+            // 执行器有空闲时才交给线程池，排队时不占用线程
+            current.dispatch(() -> {
+                if(future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(operation.apply(token));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }, threads);
+        } catch (FFMpegRejectedException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
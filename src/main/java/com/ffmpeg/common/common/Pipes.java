@@ -0,0 +1,76 @@
+package com.ffmpeg.common.common;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * 通过stdin/stdout管道输入输出数据（pipe:0 / pipe:1），不需要临时文件
+ *
+ * @author alan.chen
+ * @date 2020/7/24 10:10 AM
+ */
+public class Pipes {
+
+    /**
+     * 管道复制使用的缓冲区大小
+     *
+     * 两端都是 java.io 流包装的通道，数据本来就要经过 byte[] 复制，使用堆内存缓冲区，不分配direct buffer
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final String STDIN = "pipe:0";
+
+    public static final String STDOUT = "pipe:1";
+
+    /**
+     * 复制数据直到输入结束，不关闭输入输出
+     *
+     * @return 复制的字节数
+     */
+    public static long copy(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long total = 0;
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                total += out.write(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * stdout写入到指定通道，通道由调用方关闭
+     */
+    public static StdoutHandler toChannel(WritableByteChannel out) {
+        // stdout由StreamHanlerCommon负责关闭
+        return stdout -> copy(Channels.newChannel(stdout), out);
+    }
+
+    /**
+     * 增加输出到stdout的参数，mp4/mov输出使用分片MP4，不需要回写文件头
+     *
+     * @param commands 命令参数集合
+     * @param format 输出格式，例如 mp4、mpegts、flv、mp3、adts
+     */
+    public static void addOutput(List<String> commands, String format) {
+        if(StrUtils.checkBlank(format)) {
+            throw new FFMpegException("output format must be specified when writing to a pipe");
+        }
+        commands.add("-f");
+        commands.add(format);
+        if("mp4".equals(format) || "mov".equals(format) || "ismv".equals(format)) {
+            commands.add("-movflags");
+            commands.add("frag_keyframe+empty_moov+default_base_moof");
+        }
+        commands.add(STDOUT);
+    }
+}
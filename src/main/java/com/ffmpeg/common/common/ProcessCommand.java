@@ -5,7 +5,14 @@ import com.ffmpeg.common.FFMpegException;
 import com.ffmpeg.common.response.Result;
 
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author alan.chen
@@ -14,20 +21,152 @@ import java.util.List;
 public class ProcessCommand {
 
     /**
-     * 执行命令
+     * 默认最大排队任务数
+     */
+    private static final int DEFAULT_MAX_QUEUE = 1024;
+
+    /**
+     * 全局共享的执行器，默认最多同时运行CPU核数个ffmpeg进程
+     */
+    private static volatile FFmpegExecutor defaultExecutor =
+            new DefaultFFmpegExecutor(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_QUEUE);
+
+    /**
+     * 内置的异步线程池，异步API未指定线程池时使用，线程只负责等待进程结束；
+     * 任务通过 {@link FFmpegExecutor#dispatch} 提交，{@link DefaultFFmpegExecutor} 最多同时使用 maxConcurrent 个线程
+     */
+    private static final ExecutorService DEFAULT_ASYNC_EXECUTOR =
+            Executors.newCachedThreadPool(new NamedThreadFactory("ffmpeg-async-"));
+
+    /**
+     * 执行命令（通过全局共享的执行器）
      *
      * @param command 命令参数集合
      * @return 执行结果信息对象
      */
     public static Result start(List<String> command) {
-        ProcessBuilder builder = new ProcessBuilder(command);
+        return defaultExecutor.execute(command);
+    }
+
+    /**
+     * 直接启动进程并等待结束，不做并发控制，供 {@link FFmpegExecutor} 的实现调用
+     *
+     * @param command 命令参数集合
+     * @return 执行结果信息对象
+     */
+    public static Result launch(List<String> command) {
+        return launch(new FFmpegTask(command));
+    }
+
+    /**
+     * 直接启动进程并等待结束，不做并发控制，供 {@link FFmpegExecutor} 的实现调用
+     *
+     * @param task 任务
+     * @return 执行结果信息对象
+     */
+    public static Result launch(FFmpegTask task) {
+        CancelToken cancelToken = task.getCancelToken();
+        if(cancelToken != null && cancelToken.isCancelled()) {
+            Result result = new Result();
+            result.setCode(Result.CODE_CANCELLED);
+            result.setErrMessage("task cancelled before start");
+            return result;
+        }
+        TaskMeter meter = task.getMetrics() != null ? new TaskMeter(task, task.getMetrics()) : null;
+        ProcessBuilder builder = new ProcessBuilder(task.getCommand());
         Process process = null;
         try {
+            if(meter != null) {
+                meter.spawning();
+            }
             process = builder.start();
-            return StreamHanlerCommon.closeStreamQuietly(process);
         } catch (IOException e) {
+            if(meter != null) {
+                meter.notStarted(Result.CODE_SPAWN_FAILED);
+            }
             throw new FFMpegException(e);
         }
+        ProcessReaper.register(process);
+        if(meter != null) {
+            meter.spawned();
+        }
+
+        // 超时或者取消时终止进程，进程退出后stderr读取结束，再根据终止原因修改状态码
+        AtomicInteger terminatedCode = new AtomicInteger();
+        Process running = process;
+        ScheduledFuture<?> deadline = null;
+        if(task.getTimeoutMillis() > 0) {
+            deadline = ProcessReaper.schedule(() -> {
+                if(terminatedCode.compareAndSet(0, Result.CODE_TIMEOUT)) {
+                    ProcessReaper.terminate(running);
+                }
+            }, task.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        Runnable onCancel = () -> {
+            if(terminatedCode.compareAndSet(0, Result.CODE_CANCELLED)) {
+                ProcessReaper.terminate(running);
+            }
+        };
+        if(cancelToken != null) {
+            cancelToken.register(onCancel);
+        }
+        int exitCode = -1;
+        try {
+            ReadableByteChannel stdin = meter != null ? meter.stdin(task.getStdin()) : task.getStdin();
+            StdoutHandler stdoutHandler = meter != null ? meter.stdout(task.getStdoutHandler()) : task.getStdoutHandler();
+            Result result = StreamHanlerCommon.closeStreamQuietly(process, StreamHanlerCommon.DEFAULT_TAIL_BYTES,
+                    stdin, stdoutHandler);
+            if(terminatedCode.get() != 0) {
+                result.setCode(terminatedCode.get());
+            }
+            exitCode = result.getCode();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            int code = terminatedCode.get();
+            if(code != 0) {
+                // 终止进程时JDK会关闭进程的输入输出流，还没有读取完的流抛出Stream closed，按终止原因返回结果
+                Result result = new Result();
+                result.setCode(code);
+                result.setErrMessage(code == Result.CODE_TIMEOUT ? "task timeout" : "task cancelled");
+                exitCode = code;
+                return result;
+            }
+            if(e instanceof IOException) {
+                throw new FFMpegException(e);
+            }
+            throw (RuntimeException) e;
+        } finally {
+            if(meter != null) {
+                meter.finished(exitCode);
+            }
+            if(deadline != null) {
+                deadline.cancel(false);
+            }
+            if(cancelToken != null) {
+                cancelToken.unregister(onCancel);
+            }
+            ProcessReaper.unregister(process);
+        }
+    }
+
+    public static FFmpegExecutor getDefaultExecutor() {
+        return defaultExecutor;
+    }
+
+    /**
+     * 替换全局共享的执行器
+     *
+     * @param executor 执行器
+     */
+    public static void setDefaultExecutor(FFmpegExecutor executor) {
+        if(executor == null) {
+            throw new FFMpegException("executor must not be null");
+        }
+        defaultExecutor = executor;
+    }
+
+    public static Executor getDefaultAsyncExecutor() {
+        return DEFAULT_ASYNC_EXECUTOR;
     }
 
 }
@@ -0,0 +1,169 @@
+package com.ffmpeg.common.common;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 负责终止ffmpeg进程：
+ *
+ * 1. 先发送SIGTERM（ffmpeg收到后会正常结束并写完文件尾），超过宽限时间仍未退出则发送SIGKILL
+ * 2. 运行在Java 9+时同时终止进程的所有子进程
+ * 3. JVM退出时终止所有仍在运行的进程
+ *
+ * @author alan.chen
+ * @date 2020/7/14 10:45 AM
+ */
+public class ProcessReaper {
+
+    /**
+     * SIGTERM之后等待进程退出的默认时间
+     */
+    public static final long DEFAULT_GRACE_MILLIS = 5000;
+
+    private static volatile long graceMillis = DEFAULT_GRACE_MILLIS;
+
+    private static final Set<Process> RUNNING = ConcurrentHashMap.newKeySet();
+
+    private static final ScheduledExecutorService SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("ffmpeg-reaper-"));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ProcessReaper::reapAll, "ffmpeg-shutdown-reaper"));
+    }
+
+    public static void setGraceMillis(long graceMillis) {
+        ProcessReaper.graceMillis = graceMillis;
+    }
+
+    public static long getGraceMillis() {
+        return graceMillis;
+    }
+
+    /**
+     * @return 正在运行的进程数
+     */
+    public static int runningCount() {
+        return RUNNING.size();
+    }
+
+    static void register(Process process) {
+        RUNNING.add(process);
+    }
+
+    static void unregister(Process process) {
+        RUNNING.remove(process);
+    }
+
+    static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return SCHEDULER.schedule(task, delay, unit);
+    }
+
+    /**
+     * 异步终止进程及其子进程：SIGTERM，超过宽限时间后SIGKILL
+     */
+    public static void terminate(Process process) {
+        List<Object> descendants = descendants(process);
+        process.destroy();
+        destroyHandles(descendants, false);
+        SCHEDULER.schedule(() -> {
+            destroyHandles(descendants, true);
+            if(process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }, graceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * JVM退出时终止所有进程，最多等待一个宽限时间
+     */
+    private static void reapAll() {
+        List<Process> processes = new ArrayList<>(RUNNING);
+        if(processes.isEmpty()) {
+            return;
+        }
+        List<Object> descendants = new ArrayList<>();
+        for (Process process : processes) {
+            descendants.addAll(descendants(process));
+            process.destroy();
+        }
+        destroyHandles(descendants, false);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+        for (Process process : processes) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0 || !process.waitFor(remaining, TimeUnit.NANOSECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+            }
+        }
+        destroyHandles(descendants, true);
+    }
+
+    /**
+     * 通过反射获取子进程（Java 9+ 的 ProcessHandle），Java 8 返回空集合
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> descendants(Process process) {
+        Method toHandle = ProcessHandleMethods.TO_HANDLE;
+        if(toHandle == null) {
+            return new ArrayList<>();
+        }
+        try {
+            Object handle = toHandle.invoke(process);
+            Stream<Object> stream = (Stream<Object>) ProcessHandleMethods.DESCENDANTS.invoke(handle);
+            return stream.collect(Collectors.toList());
+        } catch (Exception e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private static void destroyHandles(List<Object> handles, boolean force) {
+        Method method = force ? ProcessHandleMethods.DESTROY_FORCIBLY : ProcessHandleMethods.DESTROY;
+        for (Object handle : handles) {
+            try {
+                method.invoke(handle);
+            } catch (Exception e) {
+                // 子进程可能已经退出
+            }
+        }
+    }
+
+    private static class ProcessHandleMethods {
+
+        static final Method TO_HANDLE;
+        static final Method DESCENDANTS;
+        static final Method DESTROY;
+        static final Method DESTROY_FORCIBLY;
+
+        static {
+            Method toHandle = null;
+            Method descendants = null;
+            Method destroy = null;
+            Method destroyForcibly = null;
+            try {
+                Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+                toHandle = Process.class.getMethod("toHandle");
+                descendants = handleClass.getMethod("descendants");
+                destroy = handleClass.getMethod("destroy");
+                destroyForcibly = handleClass.getMethod("destroyForcibly");
+            } catch (Exception e) {
+                toHandle = null;
+            }
+            TO_HANDLE = toHandle;
+            DESCENDANTS = descendants;
+            DESTROY = destroy;
+            DESTROY_FORCIBLY = destroyForcibly;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.ffmpeg.common.common;
+
+import com.ffmpeg.common.progress.ProgressParser;
+import com.ffmpeg.common.response.Result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读取ffmpeg的stderr：原始字节写入 {@link TailBuffer}，同时在字节缓冲区中按 \r \n 切分行，
+ * 直接解析到基本类型字段，不为每行创建字符串：
+ * <pre>
+ *  Duration: 00:10:01.03, start: 0.000000, bitrate: 4132 kb/s                         输入时长
+ *  frame= 1234 fps=240 q=28.0 size=  2048kB time=00:00:41.20 bitrate= 407.2kbits/s speed=8.01x
+ *  Error while decoding stream #0:0: Invalid data found when processing input         错误行数
+ * </pre>
+ * 只有保留的stderr末尾会在结束时转换为字符串。
+ *
+ * 缓冲区（包括 {@link StreamHanlerCommon#DEFAULT_TAIL_BYTES} 的TailBuffer）从池中获取，用完后归还，
+ * 池的大小不小于 {@link DefaultFFmpegExecutor} 的最大并发数
+ *
+ * @author alan.chen
+ * @date 2020/8/10 10:15 AM
+ */
+final class StderrScanner {
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * 只解析每行的前面部分，统计行不会超过这个长度
+     */
+    private static final int LINE_BUFFER_SIZE = 1024;
+
+    private static final byte[] KEY_DURATION = bytes("Duration:");
+    private static final byte[] KEY_FRAME = bytes("frame=");
+    private static final byte[] KEY_TIME = bytes("time=");
+    private static final byte[] KEY_SPEED = bytes("speed=");
+
+    private static final byte[][] ERROR_MARKERS = {
+            bytes("Error"), bytes("error"), bytes("Invalid"), bytes("No such file"), bytes("failed")
+    };
+
+    private static final ConcurrentLinkedQueue<StderrScanner> POOL = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private static volatile int poolCapacity = Runtime.getRuntime().availableProcessors();
+
+    private final TailBuffer tail;
+
+    private final boolean pooled;
+
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+
+    private final byte[] discardBuffer = new byte[READ_BUFFER_SIZE];
+
+    private final byte[] line = new byte[LINE_BUFFER_SIZE];
+
+    private int lineLength;
+
+    private long frames;
+
+    private double time;
+
+    private double speed;
+
+    private double duration;
+
+    private int errorLines;
+
+    private StderrScanner(int tailBytes, boolean pooled) {
+        this.tail = new TailBuffer(tailBytes);
+        this.pooled = pooled;
+        reset();
+    }
+
+    /**
+     * 池的大小至少为capacity，{@link DefaultFFmpegExecutor} 按最大并发数调用
+     */
+    static void reserve(int capacity) {
+        if(capacity > poolCapacity) {
+            synchronized (POOL) {
+                poolCapacity = Math.max(poolCapacity, capacity);
+            }
+        }
+    }
+
+    /**
+     * 获取扫描器，默认大小的TailBuffer从池中获取
+     */
+    static StderrScanner acquire(int tailBytes) {
+        if(tailBytes != StreamHanlerCommon.DEFAULT_TAIL_BYTES) {
+            return new StderrScanner(tailBytes, false);
+        }
+        StderrScanner scanner = POOL.poll();
+        if(scanner == null) {
+            return new StderrScanner(tailBytes, true);
+        }
+        POOLED.decrementAndGet();
+        return scanner;
+    }
+
+    /**
+     * 归还到池中，池满时丢弃
+     */
+    void release() {
+        if(!pooled) {
+            return;
+        }
+        reset();
+        if(POOLED.incrementAndGet() <= poolCapacity) {
+            POOL.offer(this);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    private void reset() {
+        tail.clear();
+        lineLength = 0;
+        frames = -1;
+        time = -1;
+        speed = -1;
+        duration = -1;
+        errorLines = 0;
+    }
+
+    /**
+     * 读取stderr直到结束
+     */
+    void scan(InputStream stderr) throws IOException {
+        int len;
+        while ((len = stderr.read(readBuffer)) != -1) {
+            tail.write(readBuffer, 0, len);
+            for (int i = 0; i < len; i++) {
+                byte b = readBuffer[i];
+                if(b == '\n' || b == '\r') {
+                    parseLine();
+                    lineLength = 0;
+                } else if(lineLength < line.length) {
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        parseLine();
+        lineLength = 0;
+    }
+
+    /**
+     * 读取并丢弃剩余的数据
+     */
+    void discard(InputStream in) throws IOException {
+        while (in.read(discardBuffer) != -1) {
+            // 只读取不保存
+        }
+    }
+
+    /**
+     * 写入解析结果和stderr末尾的输出
+     */
+    void apply(Result result) {
+        result.setErrMessage(tail.toString().trim());
+        result.setFrames(frames);
+        result.setTime(time);
+        result.setSpeed(speed);
+        result.setDuration(duration);
+        result.setErrorLines(errorLines);
+    }
+
+    private void parseLine() {
+        if(lineLength == 0) {
+            return;
+        }
+        int frame = indexOf(KEY_FRAME, 0);
+        if(frame >= 0) {
+            // 统计行，同一行内依次出现
+            frames = ProgressParser.parseLong(line, skipSpaces(frame + KEY_FRAME.length), lineLength);
+            int timeIndex = indexOf(KEY_TIME, frame);
+            if(timeIndex >= 0) {
+                time = parseClock(skipSpaces(timeIndex + KEY_TIME.length));
+            }
+            int speedIndex = indexOf(KEY_SPEED, frame);
+            if(speedIndex >= 0) {
+                speed = ProgressParser.parseDouble(line, skipSpaces(speedIndex + KEY_SPEED.length), lineLength);
+            }
+            return;
+        }
+        int durationIndex = indexOf(KEY_DURATION, 0);
+        if(durationIndex >= 0) {
+            if(duration < 0) {
+                // 多个输入时取第一个
+                duration = parseClock(skipSpaces(durationIndex + KEY_DURATION.length));
+            }
+            return;
+        }
+        for (byte[] marker : ERROR_MARKERS) {
+            if(indexOf(marker, 0) >= 0) {
+                errorLines++;
+                return;
+            }
+        }
+    }
+
+    private int skipSpaces(int index) {
+        while (index < lineLength && line[index] == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * 解析 HH:MM:SS.ss，N/A 时返回-1
+     */
+    private double parseClock(int start) {
+        boolean negative = start < lineLength && line[start] == '-';
+        int i = negative ? start + 1 : start;
+        double seconds = 0;
+        for (int part = 0; part < 2; part++) {
+            long value = ProgressParser.parseLong(line, i, lineLength);
+            if(value < 0) {
+                return -1;
+            }
+            seconds = (seconds + value) * 60;
+            while (i < lineLength && line[i] != ':') {
+                i++;
+            }
+            if(i == lineLength) {
+                return -1;
+            }
+            i++;
+        }
+        double value = ProgressParser.parseDouble(line, i, lineLength);
+        if(value < 0) {
+            return -1;
+        }
+        seconds += value;
+        return negative ? -seconds : seconds;
+    }
+
+    private int indexOf(byte[] key, int from) {
+        outer:
+        for (int i = from; i <= lineLength - key.length; i++) {
+            for (int j = 0; j < key.length; j++) {
+                if(line[i + j] != key[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,34 @@
+package com.ffmpeg.common.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 把stdout全部保存到内存中，只用于输出较小的命令（ffprobe、ffmpeg -version等）
+ *
+ * @author alan.chen
+ * @date 2020/7/20 3:20 PM
+ */
+public class StdoutCollector implements StdoutHandler {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Override
+    public void handle(InputStream stdout) throws IOException {
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = stdout.read(buffer)) != -1) {
+            output.write(buffer, 0, len);
+        }
+    }
+
+    public String toString(Charset charset) {
+        try {
+            return output.toString(charset.name());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.ffmpeg.common.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 处理ffmpeg进程的stdout，在独立线程中与stderr同时读取
+ *
+ * 实现类必须把流读取到结束（即使不再需要数据），否则进程会因为管道写满而阻塞
+ *
+ * @author alan.chen
+ * @date 2020/7/10 10:05 AM
+ */
+public interface StdoutHandler {
+
+    void handle(InputStream stdout) throws IOException;
+
+}
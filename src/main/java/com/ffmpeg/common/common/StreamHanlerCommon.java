@@ -2,9 +2,19 @@ package com.ffmpeg.common.common;
 
 import com.ffmpeg.common.response.Result;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @auther alan.chen
@@ -12,29 +22,177 @@ import java.io.InputStreamReader;
  */
 public class StreamHanlerCommon {
 
+    /**
+     * 默认保留stderr最后64KB的输出
+     */
+    public static final int DEFAULT_TAIL_BYTES = 64 * 1024;
+
+    /**
+     * 异常结束时等待stdout线程退出的最长时间，超时的线程可能阻塞在处理器中
+     */
+    private static final long STDOUT_AWAIT_MILLIS = 10_000;
+
+    /**
+     * 读写stdin/stdout的线程池，stdout和stderr同时读取，避免任一管道写满导致进程阻塞
+     */
+    private static final ExecutorService PIPE_EXECUTOR =
+            Executors.newCachedThreadPool(new NamedThreadFactory("ffmpeg-pipe-"));
+
     /**
      * 释放流
      */
     public static Result closeStreamQuietly(Process proc) throws IOException {
+        return closeStreamQuietly(proc, DEFAULT_TAIL_BYTES, null, null);
+    }
+
+    /**
+     * 释放流，同时读取stdout和stderr直到进程结束
+     *
+     * @param proc 进程
+     * @param tailBytes stderr保留的最大字节数，超出的部分只保留最后的输出
+     * @param stdin 写入stdin的数据，为null时直接关闭stdin
+     * @param stdoutHandler stdout处理，为null时丢弃stdout
+     * @return 执行结果，errMessage为stderr最后的输出，同时包括从stderr解析的帧数、时间、速度等信息
+     */
+    public static Result closeStreamQuietly(Process proc, int tailBytes, ReadableByteChannel stdin,
+                                            StdoutHandler stdoutHandler) throws IOException {
         Result result = new Result();
-        StringBuffer output = new StringBuffer();
-        BufferedReader stdout = null;
+        StderrScanner scanner = StderrScanner.acquire(tailBytes);
+        InputStream stderr = proc.getErrorStream();
+        InputStream stdout = proc.getInputStream();
+        // stdout线程开始执行后才会结束，用来确认线程不再使用scanner
+        AtomicBoolean stdoutStarted = new AtomicBoolean();
+        CountDownLatch stdoutFinished = new CountDownLatch(1);
+        Future<?> stdoutTask = null;
         try {
-            stdout = new BufferedReader(new InputStreamReader(proc.getErrorStream()));
-            String line;
-            while ((line = stdout.readLine()) != null) {
-                output.append(line).append(System.lineSeparator());
+            Future<?> stdinTask = null;
+            if(stdin == null) {
+                // ffmpeg不需要从stdin读取数据，直接关闭
+                proc.getOutputStream().close();
+            } else {
+                stdinTask = PIPE_EXECUTOR.submit(() -> {
+                    writeStdin(proc, stdin);
+                    return null;
+                });
+            }
+
+            stdoutTask = PIPE_EXECUTOR.submit(() -> {
+                if(!stdoutStarted.compareAndSet(false, true)) {
+                    // 已经在启动前被取消
+                    return null;
+                }
+                try {
+                    if(stdoutHandler != null) {
+                        try {
+                            stdoutHandler.handle(stdout);
+                        } catch (Throwable e) {
+                            // 处理失败时终止进程，并继续读取剩余的数据，否则进程阻塞在写stdout上，stderr读不到结束
+                            proc.destroy();
+                            discardQuietly(scanner, stdout);
+                            throw e;
+                        }
+                    }
+                    // 处理器提前返回时继续读取剩余的数据
+                    scanner.discard(stdout);
+                    return null;
+                } finally {
+                    stdoutFinished.countDown();
+                }
+            });
+
+            try {
+                scanner.scan(stderr);
+            } catch (IOException e) {
+                // stdout处理失败时会终止进程，stderr随之被关闭，优先抛出处理器的异常
+                proc.destroy();
+                try {
+                    stdoutTask.get(STDOUT_AWAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException timeout) {
+                    // 处理器没有结束，抛出读取stderr的异常
+                }
+                throw e;
             }
+            stdoutTask.get();
+
             int code = proc.waitFor();
+            if(stdinTask != null && !stdinTask.isDone()) {
+                // 进程已经退出，输入源可能还阻塞在读取上，中断写入线程
+                stdinTask.cancel(true);
+            }
             result.setCode(code);
-            result.setErrMessage(output.toString().trim());
+            scanner.apply(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            proc.destroy();
+            throw new RuntimeException(e);
         } catch (Exception e) {
+            // stdout处理失败（例如输出通道被关闭）时终止进程
+            proc.destroy();
             throw new RuntimeException(e);
         } finally {
-            if(stdout != null) {
-               stdout.close();
+            stderr.close();
+            stdout.close();
+            // 读取stderr失败时stdout线程可能还在使用scanner的缓冲区，结束后才能放回池中
+            if(stdoutTask == null || awaitStdout(stdoutTask, stdoutStarted, stdoutFinished)) {
+                scanner.release();
             }
         }
         return result;
     }
+
+    /**
+     * 取消stdout线程并等待结束，进程已经终止，stdout会很快读到结束
+     *
+     * @return 线程是否已经结束，没有结束时scanner不放回池中
+     */
+    private static boolean awaitStdout(Future<?> stdoutTask, AtomicBoolean started, CountDownLatch finished) {
+        if(started.compareAndSet(false, true)) {
+            // 线程还没有开始执行，不会再使用scanner
+            stdoutTask.cancel(false);
+            return true;
+        }
+        if(finished.getCount() == 0) {
+            return true;
+        }
+        stdoutTask.cancel(true);
+        boolean interrupted = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STDOUT_AWAIT_MILLIS);
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    return false;
+                }
+                try {
+                    return finished.await(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void discardQuietly(StderrScanner scanner, InputStream stdout) {
+        try {
+            scanner.discard(stdout);
+        } catch (IOException e) {
+            // 进程已经终止
+        }
+    }
+
+    /**
+     * 写入stdin直到数据结束，进程提前退出（不再读取输入）时忽略管道关闭的异常
+     */
+    private static void writeStdin(Process proc, ReadableByteChannel stdin) {
+        try (OutputStream out = proc.getOutputStream();
+             WritableByteChannel channel = Channels.newChannel(out)) {
+            Pipes.copy(stdin, channel);
+        } catch (IOException e) {
+            // ffmpeg已经退出或者关闭了stdin
+        }
+    }
 }
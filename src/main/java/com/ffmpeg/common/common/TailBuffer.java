@@ -0,0 +1,96 @@
+package com.ffmpeg.common.common;
+
+import java.nio.charset.Charset;
+
+/**
+ * 固定容量的字节环形缓冲区，只保留最后写入的 capacity 个字节
+ *
+ * 用于保存ffmpeg的stderr输出，无论进程运行多久，占用的内存都是固定的
+ *
+ * @author alan.chen
+ * @date 2020/7/8 2:15 PM
+ */
+public class TailBuffer {
+
+    private final byte[] buffer;
+
+    /**
+     * 下一个写入位置
+     */
+    private int position;
+
+    /**
+     * 是否已经写满一圈（有数据被覆盖）
+     */
+    private boolean wrapped;
+
+    public TailBuffer(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public void write(byte[] b, int off, int len) {
+        if(len >= buffer.length) {
+            System.arraycopy(b, off + len - buffer.length, buffer, 0, buffer.length);
+            position = 0;
+            wrapped = true;
+            return;
+        }
+        int first = Math.min(len, buffer.length - position);
+        System.arraycopy(b, off, buffer, position, first);
+        if(first < len) {
+            System.arraycopy(b, off + first, buffer, 0, len - first);
+        }
+        int end = position + len;
+        if(end >= buffer.length) {
+            wrapped = true;
+        }
+        position = end % buffer.length;
+    }
+
+    /**
+     * 清空内容，缓冲区可以重复使用
+     */
+    public void clear() {
+        position = 0;
+        wrapped = false;
+    }
+
+    public int size() {
+        return wrapped ? buffer.length : position;
+    }
+
+    /**
+     * 按写入顺序复制缓冲区的内容
+     */
+    public byte[] toByteArray() {
+        if(!wrapped) {
+            byte[] bytes = new byte[position];
+            System.arraycopy(buffer, 0, bytes, 0, position);
+            return bytes;
+        }
+        byte[] bytes = new byte[buffer.length];
+        System.arraycopy(buffer, position, bytes, 0, buffer.length - position);
+        System.arraycopy(buffer, 0, bytes, buffer.length - position, position);
+        return bytes;
+    }
+
+    /**
+     * 转换为字符串，数据被覆盖过时丢弃第一个不完整的行
+     */
+    public String toString(Charset charset) {
+        byte[] bytes = toByteArray();
+        int start = 0;
+        if(wrapped) {
+            while (start < bytes.length && bytes[start] != '\n') {
+                start++;
+            }
+            start = Math.min(start + 1, bytes.length);
+        }
+        return new String(bytes, start, bytes.length - start, charset);
+    }
+
+    @Override
+    public String toString() {
+        return toString(Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,134 @@
+package com.ffmpeg.common.common;
+
+import com.ffmpeg.common.metrics.FFmpegMetrics;
+import com.ffmpeg.common.metrics.TaskSample;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录一次进程执行的监控指标，只在任务设置了 {@link FFmpegMetrics} 时创建
+ *
+ * 读取字节数 = -i 本地输入文件大小 + 写入stdin的字节数，
+ * 写出字节数 = 输出到 pipe:1 时为stdout的字节数，否则为最后一个参数（输出文件）的大小
+ *
+ * @author alan.chen
+ * @date 2020/8/5 2:10 PM
+ */
+final class TaskMeter {
+
+    private final FFmpegTask task;
+
+    private final FFmpegMetrics metrics;
+
+    private final AtomicLong stdinBytes = new AtomicLong();
+
+    private final AtomicLong stdoutBytes = new AtomicLong();
+
+    private long spawnStart;
+
+    private long spawnNanos;
+
+    TaskMeter(FFmpegTask task, FFmpegMetrics metrics) {
+        this.task = task;
+        this.metrics = metrics;
+    }
+
+    void spawning() {
+        spawnStart = System.nanoTime();
+    }
+
+    void spawned() {
+        spawnNanos = System.nanoTime() - spawnStart;
+        metrics.taskStarted(task.getOperation());
+    }
+
+    /**
+     * 任务没有启动进程，code为 Result.CODE_REJECTED 或者 Result.CODE_SPAWN_FAILED
+     */
+    void notStarted(int code) {
+        long spawn = spawnStart != 0 ? System.nanoTime() - spawnStart : 0;
+        metrics.taskNotStarted(task.getOperation(), new TaskSample(task.getQueueWaitNanos(), spawn, 0, code, 0, 0));
+    }
+
+    void finished(int exitCode) {
+        long runNanos = System.nanoTime() - spawnStart - spawnNanos;
+        long bytesIn = stdinBytes.get();
+        List<String> command = task.getCommand();
+        for (int i = 1; i < command.size() - 1; i++) {
+            if("-i".equals(command.get(i))) {
+                File input = new File(command.get(i + 1));
+                if(input.isFile()) {
+                    bytesIn += input.length();
+                }
+            }
+        }
+        long bytesOut;
+        String last = command.get(command.size() - 1);
+        if(Pipes.STDOUT.equals(last)) {
+            bytesOut = stdoutBytes.get();
+        } else {
+            File output = new File(last);
+            bytesOut = output.isFile() ? output.length() : 0;
+        }
+        metrics.taskFinished(task.getOperation(),
+                new TaskSample(task.getQueueWaitNanos(), spawnNanos, runNanos, exitCode, bytesIn, bytesOut));
+    }
+
+    ReadableByteChannel stdin(ReadableByteChannel stdin) {
+        if(stdin == null) {
+            return null;
+        }
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                int len = stdin.read(dst);
+                if(len > 0) {
+                    stdinBytes.addAndGet(len);
+                }
+                return len;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return stdin.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                stdin.close();
+            }
+        };
+    }
+
+    StdoutHandler stdout(StdoutHandler handler) {
+        if(handler == null) {
+            return null;
+        }
+        return stdout -> handler.handle(new FilterInputStream(stdout) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if(b >= 0) {
+                    stdoutBytes.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if(n > 0) {
+                    stdoutBytes.addAndGet(n);
+                }
+                return n;
+            }
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package com.ffmpeg.common.metrics;
+
+/**
+ * ffmpeg任务的监控指标上报接口
+ *
+ * 通过 VideoOperation.withMetrics / AudioOperation.withMetrics 设置后，每个进程启动和结束时回调，
+ * 可以自定义实现上报到已有的监控系统，默认实现：{@link InMemoryFFmpegMetrics}
+ *
+ * 回调在执行任务的线程中同步调用，实现需要线程安全并且尽量轻量
+ *
+ * @author alan.chen
+ * @date 2020/8/5 10:10 AM
+ */
+public interface FFmpegMetrics {
+
+    /**
+     * 不记录任何指标
+     */
+    FFmpegMetrics NOOP = new FFmpegMetrics() {
+        @Override
+        public void taskStarted(String operation) {
+        }
+
+        @Override
+        public void taskFinished(String operation, TaskSample sample) {
+        }
+
+        @Override
+        public void taskNotStarted(String operation, TaskSample sample) {
+        }
+    };
+
+    /**
+     * 进程已启动
+     *
+     * @param operation 操作名称，例如 videoScale
+     */
+    void taskStarted(String operation);
+
+    /**
+     * 进程已结束（包括超时、取消），与 {@link #taskStarted(String)} 成对调用
+     *
+     * @param operation 操作名称
+     * @param sample 本次执行的指标
+     */
+    void taskFinished(String operation, TaskSample sample);
+
+    /**
+     * 任务没有启动进程：被执行器拒绝（退出码 Result.CODE_REJECTED，包括排队时间）
+     * 或者启动进程失败（退出码 Result.CODE_SPAWN_FAILED），不会调用 {@link #taskStarted(String)}
+     *
+     * 默认按一次启动和结束记录，不需要区分时可以不实现
+     *
+     * @param operation 操作名称
+     * @param sample 本次执行的指标，运行耗时和读写字节数为0
+     */
+    default void taskNotStarted(String operation, TaskSample sample) {
+        taskStarted(operation);
+        taskFinished(operation, sample);
+    }
+}
@@ -0,0 +1,76 @@
+package com.ffmpeg.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LatencyHistogram} 某一时刻的快照，数值单位为纳秒
+ *
+ * @author alan.chen
+ * @date 2020/8/5 10:40 AM
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long count, long sum, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * 百分位数，返回所在桶的上限（不超过最大值）
+     *
+     * @param percentile 0 ~ 100，例如 99 表示P99
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (long item : counts) {
+            total += item;
+        }
+        if(total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= Math.max(rank, 1)) {
+                return Math.min(LatencyHistogram.bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count
+                + ", mean=" + TimeUnit.NANOSECONDS.toMillis((long) getMean()) + "ms"
+                + ", p50=" + TimeUnit.NANOSECONDS.toMillis(getPercentile(50)) + "ms"
+                + ", p99=" + TimeUnit.NANOSECONDS.toMillis(getPercentile(99)) + "ms"
+                + ", max=" + TimeUnit.NANOSECONDS.toMillis(max) + "ms";
+    }
+}
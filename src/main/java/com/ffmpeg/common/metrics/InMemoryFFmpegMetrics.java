@@ -0,0 +1,99 @@
+package com.ffmpeg.common.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存中的监控指标，按操作名称分别统计，全部使用 LongAdder 记录，不加锁
+ *
+ * 通过 {@link #snapshot()} 定时获取快照导出到监控系统，统计值从创建开始累计
+ *
+ * @author alan.chen
+ * @date 2020/8/5 11:00 AM
+ */
+public class InMemoryFFmpegMetrics implements FFmpegMetrics {
+
+    private final ConcurrentHashMap<String, OperationStats> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public void taskStarted(String operation) {
+        stats(operation).inFlight.increment();
+    }
+
+    @Override
+    public void taskFinished(String operation, TaskSample sample) {
+        OperationStats item = stats(operation);
+        item.inFlight.decrement();
+        item.queueWait.record(sample.getQueueWaitNanos());
+        item.spawn.record(sample.getSpawnNanos());
+        item.run.record(sample.getRunNanos());
+        item.exitCodes.computeIfAbsent(sample.getExitCode(), code -> new LongAdder()).increment();
+        item.bytesIn.add(sample.getBytesIn());
+        item.bytesOut.add(sample.getBytesOut());
+    }
+
+    /**
+     * 只记录排队时间、启动耗时和退出码，不计入进程数和运行耗时
+     */
+    @Override
+    public void taskNotStarted(String operation, TaskSample sample) {
+        OperationStats item = stats(operation);
+        item.queueWait.record(sample.getQueueWaitNanos());
+        if(sample.getSpawnNanos() > 0) {
+            item.spawn.record(sample.getSpawnNanos());
+        }
+        item.exitCodes.computeIfAbsent(sample.getExitCode(), code -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return 所有操作的快照，按操作名称排序
+     */
+    public Map<String, OperationSnapshot> snapshot() {
+        Map<String, OperationSnapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return 指定操作的快照，没有记录时返回null
+     */
+    public OperationSnapshot snapshot(String operation) {
+        OperationStats item = stats.get(operation);
+        return item == null ? null : item.snapshot(operation);
+    }
+
+    private OperationStats stats(String operation) {
+        OperationStats item = stats.get(operation);
+        return item != null ? item : stats.computeIfAbsent(operation, key -> new OperationStats());
+    }
+
+    private static class OperationStats {
+
+        final LongAdder inFlight = new LongAdder();
+
+        final LatencyHistogram queueWait = new LatencyHistogram();
+
+        final LatencyHistogram spawn = new LatencyHistogram();
+
+        final LatencyHistogram run = new LatencyHistogram();
+
+        final ConcurrentHashMap<Integer, LongAdder> exitCodes = new ConcurrentHashMap<>();
+
+        final LongAdder bytesIn = new LongAdder();
+
+        final LongAdder bytesOut = new LongAdder();
+
+        OperationSnapshot snapshot(String operation) {
+            Map<Integer, Long> codes = new TreeMap<>();
+            for (Map.Entry<Integer, LongAdder> entry : exitCodes.entrySet()) {
+                codes.put(entry.getKey(), entry.getValue().sum());
+            }
+            return new OperationSnapshot(operation, inFlight.sum(), queueWait.snapshot(), spawn.snapshot(),
+                    run.snapshot(), codes, bytesIn.sum(), bytesOut.sum());
+        }
+    }
+}
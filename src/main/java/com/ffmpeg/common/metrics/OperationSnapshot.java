@@ -0,0 +1,109 @@
+package com.ffmpeg.common.metrics;
+
+import java.util.Map;
+
+/**
+ * 某个操作的监控指标快照
+ *
+ * @author alan.chen
+ * @date 2020/8/5 11:10 AM
+ */
+public class OperationSnapshot {
+
+    private final String operation;
+
+    private final long inFlight;
+
+    private final HistogramSnapshot queueWait;
+
+    private final HistogramSnapshot spawn;
+
+    private final HistogramSnapshot run;
+
+    private final Map<Integer, Long> exitCodes;
+
+    private final long bytesIn;
+
+    private final long bytesOut;
+
+    OperationSnapshot(String operation, long inFlight, HistogramSnapshot queueWait, HistogramSnapshot spawn,
+                      HistogramSnapshot run, Map<Integer, Long> exitCodes, long bytesIn, long bytesOut) {
+        this.operation = operation;
+        this.inFlight = inFlight;
+        this.queueWait = queueWait;
+        this.spawn = spawn;
+        this.run = run;
+        this.exitCodes = exitCodes;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return 正在运行的进程数
+     */
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return 已结束的进程数
+     */
+    public long getCount() {
+        return run.getCount();
+    }
+
+    /**
+     * @return 退出码不为0的任务数（包括超时、取消、被执行器拒绝、启动失败）
+     */
+    public long getFailureCount() {
+        long failures = 0;
+        for (Map.Entry<Integer, Long> entry : exitCodes.entrySet()) {
+            if(entry.getKey() != 0) {
+                failures += entry.getValue();
+            }
+        }
+        return failures;
+    }
+
+    public HistogramSnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    public HistogramSnapshot getSpawn() {
+        return spawn;
+    }
+
+    public HistogramSnapshot getRun() {
+        return run;
+    }
+
+    /**
+     * @return 退出码 -> 次数
+     */
+    public Map<Integer, Long> getExitCodes() {
+        return exitCodes;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    @Override
+    public String toString() {
+        return operation + "{inFlight=" + inFlight
+                + ", exitCodes=" + exitCodes
+                + ", bytesIn=" + bytesIn
+                + ", bytesOut=" + bytesOut
+                + ", queueWait=[" + queueWait + "]"
+                + ", spawn=[" + spawn + "]"
+                + ", run=[" + run + "]}";
+    }
+}
@@ -0,0 +1,73 @@
+package com.ffmpeg.common.metrics;
+
+/**
+ * 一次ffmpeg进程执行的指标
+ *
+ * @author alan.chen
+ * @date 2020/8/5 10:15 AM
+ */
+public class TaskSample {
+
+    /**
+     * 在执行器中排队等待的时间（纳秒）
+     */
+    private final long queueWaitNanos;
+
+    /**
+     * 启动进程的耗时（纳秒）
+     */
+    private final long spawnNanos;
+
+    /**
+     * 进程启动到结束的耗时（纳秒）
+     */
+    private final long runNanos;
+
+    /**
+     * 退出码，超时、取消时为 Result 中对应的状态码
+     */
+    private final int exitCode;
+
+    /**
+     * 读取的字节数：输入文件大小 + 写入stdin的字节数
+     */
+    private final long bytesIn;
+
+    /**
+     * 写出的字节数：输出文件大小或者stdout输出的字节数
+     */
+    private final long bytesOut;
+
+    public TaskSample(long queueWaitNanos, long spawnNanos, long runNanos, int exitCode, long bytesIn, long bytesOut) {
+        this.queueWaitNanos = queueWaitNanos;
+        this.spawnNanos = spawnNanos;
+        this.runNanos = runNanos;
+        this.exitCode = exitCode;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+    }
+
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    public long getSpawnNanos() {
+        return spawnNanos;
+    }
+
+    public long getRunNanos() {
+        return runNanos;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+}
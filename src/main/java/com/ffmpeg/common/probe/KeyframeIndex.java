@@ -0,0 +1,282 @@
+package com.ffmpeg.common.probe;
+
+import com.ffmpeg.common.common.StdoutHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 视频关键帧索引：关键帧的时间（微秒）和在文件中的字节位置，升序保存在基本类型数组中，查找为二分查找 O(log n)
+ *
+ * 通过 {@link MediaProbe#keyframeIndex(String)} 获取，索引文件格式（大端）：
+ * <pre>
+ *  magic "FFKI" | version int | 源文件大小 long | 源文件修改时间 long | 关键帧数 int | (时间 long, 位置 long) * 关键帧数
+ * </pre>
+ * 源文件大小或者修改时间变化后索引失效
+ *
+ * @author alan.chen
+ * @date 2020/8/7 10:20 AM
+ */
+public class KeyframeIndex {
+
+    private static final int MAGIC = 0x46464B49;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+
+    private final long sourceSize;
+
+    private final long sourceModified;
+
+    /**
+     * 关键帧时间（微秒），升序
+     */
+    private final long[] timesUs;
+
+    /**
+     * 关键帧在文件中的字节位置，未知时为-1
+     */
+    private final long[] offsets;
+
+    KeyframeIndex(long sourceSize, long sourceModified, long[] timesUs, long[] offsets) {
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.timesUs = timesUs;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @return 关键帧数量
+     */
+    public int size() {
+        return timesUs.length;
+    }
+
+    /**
+     * @return 第i个关键帧的时间（秒）
+     */
+    public double timeAt(int i) {
+        return timesUs[i] / 1e6;
+    }
+
+    /**
+     * @return 第i个关键帧在文件中的字节位置，未知时为-1
+     */
+    public long offsetAt(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * @return 时间小于等于seconds的最后一个关键帧序号，没有时返回-1
+     */
+    public int floorIndex(double seconds) {
+        int i = Arrays.binarySearch(timesUs, toMicros(seconds));
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * @return 时间大于等于seconds的第一个关键帧序号，没有时返回-1
+     */
+    public int ceilIndex(double seconds) {
+        int i = Arrays.binarySearch(timesUs, toMicros(seconds));
+        int index = i >= 0 ? i : -i - 1;
+        return index < timesUs.length ? index : -1;
+    }
+
+    /**
+     * @return 时间小于等于seconds的最后一个关键帧时间（秒），没有时返回-1
+     */
+    public double floor(double seconds) {
+        int i = floorIndex(seconds);
+        return i < 0 ? -1 : timeAt(i);
+    }
+
+    /**
+     * @return 时间大于等于seconds的第一个关键帧时间（秒），没有时返回-1
+     */
+    public double ceil(double seconds) {
+        int i = ceilIndex(seconds);
+        return i < 0 ? -1 : timeAt(i);
+    }
+
+    /**
+     * @return 时间在 [start, end] 范围内的关键帧时间（秒），升序
+     */
+    public double[] between(double start, double end) {
+        int from = ceilIndex(start);
+        int to = floorIndex(end);
+        if(from < 0 || to < from) {
+            return new double[0];
+        }
+        double[] result = new double[to - from + 1];
+        for (int i = from; i <= to; i++) {
+            result[i - from] = timeAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return 源文件大小、修改时间与索引一致时返回true
+     */
+    public boolean isValid(File source) {
+        return source.length() == sourceSize && source.lastModified() == sourceModified;
+    }
+
+    private static long toMicros(double seconds) {
+        return Math.round(seconds * 1e6);
+    }
+
+    /**
+     * 写入索引文件，先写临时文件再改名
+     */
+    void write(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + timesUs.length * 16);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified).putInt(timesUs.length);
+        for (int i = 0; i < timesUs.length; i++) {
+            buffer.putLong(timesUs[i]).putLong(offsets[i]);
+        }
+        buffer.flip();
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取索引文件，格式不正确时返回null
+     */
+    static KeyframeIndex read(File file) throws IOException {
+        if(!file.isFile() || file.length() < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // 读取整个文件
+            }
+        }
+        buffer.flip();
+        if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        long size = buffer.getLong();
+        long modified = buffer.getLong();
+        int count = buffer.getInt();
+        if(count < 0 || buffer.remaining() != count * 16L) {
+            return null;
+        }
+        long[] times = new long[count];
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = buffer.getLong();
+            offsets[i] = buffer.getLong();
+        }
+        return new KeyframeIndex(size, modified, times, offsets);
+    }
+
+    /**
+     * 解析 ffprobe -show_entries packet=pts_time,dts_time,pos,flags -of csv=p=0 的输出，只保留关键帧，
+     * 直接从stdout按字节解析，不保存完整输出
+     */
+    static class Builder implements StdoutHandler {
+
+        private long[] times = new long[256];
+
+        private long[] offsets = new long[256];
+
+        private int size;
+
+        private final StringBuilder line = new StringBuilder(64);
+
+        @Override
+        public void handle(InputStream stdout) throws IOException {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = stdout.read(buffer)) != -1) {
+                for (int i = 0; i < len; i++) {
+                    char c = (char) (buffer[i] & 0xFF);
+                    if(c == '\n') {
+                        parseLine();
+                        line.setLength(0);
+                    } else if(c != '\r') {
+                        line.append(c);
+                    }
+                }
+            }
+            parseLine();
+            line.setLength(0);
+        }
+
+        /**
+         * pts_time,dts_time,pos,flags
+         */
+        void parseLine() {
+            if(line.indexOf("K") < 0) {
+                return;
+            }
+            String[] fields = line.toString().split(",");
+            if(fields.length < 4 || fields[3].indexOf('K') < 0) {
+                return;
+            }
+            double time = parseDouble(fields[0]);
+            if(Double.isNaN(time)) {
+                time = parseDouble(fields[1]);
+            }
+            if(Double.isNaN(time)) {
+                return;
+            }
+            double offset = parseDouble(fields[2]);
+            if(size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            times[size] = toMicros(time);
+            offsets[size] = Double.isNaN(offset) ? -1 : (long) offset;
+            size++;
+        }
+
+        KeyframeIndex build(long sourceSize, long sourceModified) {
+            long[] sortedTimes = Arrays.copyOf(times, size);
+            long[] sortedOffsets = Arrays.copyOf(offsets, size);
+            boolean sorted = true;
+            for (int i = 1; i < size && sorted; i++) {
+                sorted = sortedTimes[i - 1] <= sortedTimes[i];
+            }
+            if(!sorted) {
+                // 关键帧按解码顺序输出，个别容器的时间戳可能乱序
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+                for (int i = 0; i < size; i++) {
+                    sortedTimes[i] = times[order[i]];
+                    sortedOffsets[i] = offsets[order[i]];
+                }
+            }
+            return new KeyframeIndex(sourceSize, sourceModified, sortedTimes, sortedOffsets);
+        }
+
+        private static double parseDouble(String value) {
+            try {
+                return Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                // N/A
+                return Double.NaN;
+            }
+        }
+    }
+}
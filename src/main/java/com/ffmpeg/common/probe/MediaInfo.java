@@ -0,0 +1,197 @@
+package com.ffmpeg.common.probe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 媒体文件信息，数值未知时为 -1
+ *
+ * @author alan.chen
+ * @date 2020/7/20 2:30 PM
+ */
+public class MediaInfo {
+
+    /**
+     * 文件路径
+     */
+    private String path;
+
+    /**
+     * 容器格式名称，例如 mov,mp4,m4a,3gp,3g2,mj2
+     */
+    private String formatName;
+
+    /**
+     * 时长（秒）
+     */
+    private double duration = -1;
+
+    /**
+     * 文件大小（字节）
+     */
+    private long size = -1;
+
+    /**
+     * 总码率（bit/s）
+     */
+    private long bitRate = -1;
+
+    /**
+     * 视频关键帧平均间隔（秒），根据文件开头一段时间内的关键帧计算
+     */
+    private double keyframeInterval = -1;
+
+    /**
+     * MP4/MOV的moov是否在mdat之前（可以边下载边播放），只有 {@link Mp4BoxReader} 获取时有值
+     */
+    private Boolean moovAtFront;
+
+    private List<StreamInfo> streams = new ArrayList<>();
+
+    /**
+     * @return 第一路视频流（不包括封面图片），没有时返回null
+     */
+    public StreamInfo getVideoStream() {
+        for (StreamInfo stream : streams) {
+            if(stream.isVideo()) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 第一路音频流，没有时返回null
+     */
+    public StreamInfo getAudioStream() {
+        for (StreamInfo stream : streams) {
+            if(stream.isAudio()) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    public boolean hasVideo() {
+        return getVideoStream() != null;
+    }
+
+    public boolean hasAudio() {
+        return getAudioStream() != null;
+    }
+
+    /**
+     * @return 是否有封面图片
+     */
+    public boolean hasAttachedPic() {
+        for (StreamInfo stream : streams) {
+            if(stream.isAttachedPic()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getWidth() {
+        StreamInfo video = getVideoStream();
+        return video != null ? video.getWidth() : -1;
+    }
+
+    public int getHeight() {
+        StreamInfo video = getVideoStream();
+        return video != null ? video.getHeight() : -1;
+    }
+
+    public double getFps() {
+        StreamInfo video = getVideoStream();
+        return video != null ? video.getFps() : -1;
+    }
+
+    public String getVideoCodec() {
+        StreamInfo video = getVideoStream();
+        return video != null ? video.getCodecName() : null;
+    }
+
+    public String getAudioCodec() {
+        StreamInfo audio = getAudioStream();
+        return audio != null ? audio.getCodecName() : null;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getFormatName() {
+        return formatName;
+    }
+
+    public void setFormatName(String formatName) {
+        this.formatName = formatName;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public void setDuration(double duration) {
+        this.duration = duration;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getBitRate() {
+        return bitRate;
+    }
+
+    public void setBitRate(long bitRate) {
+        this.bitRate = bitRate;
+    }
+
+    public double getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public void setKeyframeInterval(double keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public Boolean getMoovAtFront() {
+        return moovAtFront;
+    }
+
+    public void setMoovAtFront(Boolean moovAtFront) {
+        this.moovAtFront = moovAtFront;
+    }
+
+    public List<StreamInfo> getStreams() {
+        return streams;
+    }
+
+    public void setStreams(List<StreamInfo> streams) {
+        this.streams = streams;
+    }
+
+    @Override
+    public String toString() {
+        return "MediaInfo{" +
+                "path='" + path + '\'' +
+                ", formatName='" + formatName + '\'' +
+                ", duration=" + duration +
+                ", size=" + size +
+                ", bitRate=" + bitRate +
+                ", keyframeInterval=" + keyframeInterval +
+                ", moovAtFront=" + moovAtFront +
+                ", streams=" + streams +
+                '}';
+    }
+}
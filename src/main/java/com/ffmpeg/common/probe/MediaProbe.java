@@ -0,0 +1,635 @@
+package com.ffmpeg.common.probe;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.common.FFmpegExecutor;
+import com.ffmpeg.common.common.FFmpegTask;
+import com.ffmpeg.common.common.ProcessCommand;
+import com.ffmpeg.common.common.StdoutCollector;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.JsonParser;
+import com.ffmpeg.common.utils.LruCache;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 通过ffprobe获取媒体文件信息
+ *
+ * 本地文件的结果按 路径+大小+修改时间 缓存在LRU缓存中，文件变化后自动重新获取；
+ * 同一个文件同时多次获取时只启动一个ffprobe进程；
+ * 关键帧索引见 {@link #keyframeIndex(String)}
+ *
+ * ffprobe进程有超时时间（{@link #setTimeoutMillis(long)}），网络地址卡住或者ffprobe没有响应时不会一直阻塞；
+ * 传入取消句柄时取消后终止进程，等待其他调用方结果的线程同样检查自己的取消句柄
+ *
+ * @author alan.chen
+ * @date 2020/7/20 3:30 PM
+ */
+public class MediaProbe {
+
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    public static final int DEFAULT_INDEX_CACHE_SIZE = 64;
+
+    /**
+     *  默认的关键帧索引目录，在系统临时目录下，避免在媒体目录里生成额外的文件（只读挂载的目录也无法写入）
+     */
+    public static final String DEFAULT_KEYFRAME_INDEX_DIR = new File(System.getProperty("java.io.tmpdir"), "ffmpeg-common-kfi").getAbsolutePath();
+
+    /**
+     * 默认读取文件开头10秒的数据包计算关键帧间隔
+     */
+    public static final int DEFAULT_KEYFRAME_SCAN_SECONDS = 10;
+
+    /**
+     * 获取媒体文件信息的默认超时时间
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * 生成关键帧索引的默认超时时间，需要读取整个文件的数据包，比获取信息慢
+     */
+    public static final long DEFAULT_KEYFRAME_INDEX_TIMEOUT_MILLIS = 60_000;
+
+    /**
+     * 等待其他调用方的结果时检查取消的间隔
+     */
+    private static final long WAIT_INTERVAL_MILLIS = 100;
+
+    /**
+     *  ffprobe文件路径
+     */
+    private final String ffprobeEXE;
+
+    /**
+     *  进程执行器，为null时使用全局共享的执行器
+     */
+    private FFmpegExecutor executor;
+
+    /**
+     *  读取文件开头多少秒的数据包计算关键帧间隔，小于等于0表示不计算
+     */
+    private int keyframeScanSeconds = DEFAULT_KEYFRAME_SCAN_SECONDS;
+
+    /**
+     *  获取媒体文件信息的超时时间（毫秒），小于等于0表示不限制
+     */
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     *  生成关键帧索引的超时时间（毫秒），小于等于0表示不限制
+     */
+    private long keyframeIndexTimeoutMillis = DEFAULT_KEYFRAME_INDEX_TIMEOUT_MILLIS;
+
+    private final LruCache<String, MediaInfo> cache;
+
+    private final ConcurrentHashMap<String, CompletableFuture<MediaInfo>> probing = new ConcurrentHashMap<>();
+
+    /**
+     *  关键帧索引文件的目录，为空时使用 {@link #DEFAULT_KEYFRAME_INDEX_DIR}，不写入源文件所在的目录
+     */
+    private String keyframeIndexDir;
+
+    private final LruCache<String, KeyframeIndex> indexCache = new LruCache<>(DEFAULT_INDEX_CACHE_SIZE);
+
+    private final ConcurrentHashMap<String, CompletableFuture<KeyframeIndex>> indexing = new ConcurrentHashMap<>();
+
+    public MediaProbe(String ffprobeEXE) {
+        this(ffprobeEXE, DEFAULT_CACHE_SIZE);
+    }
+
+    public MediaProbe(String ffprobeEXE, int cacheSize) {
+        if(StrUtils.checkBlank(ffprobeEXE)) {
+            throw new FFMpegException("ffprobeEXE must not be null");
+        }
+        this.ffprobeEXE = ffprobeEXE;
+        this.cache = new LruCache<>(cacheSize);
+    }
+
+    public static MediaProbe builder(String ffprobeEXE) {
+        return new MediaProbe(ffprobeEXE);
+    }
+
+    public static MediaProbe builder(String ffprobeEXE, int cacheSize) {
+        return new MediaProbe(ffprobeEXE, cacheSize);
+    }
+
+    public void setExecutor(FFmpegExecutor executor) {
+        this.executor = executor;
+    }
+
+    public void setKeyframeScanSeconds(int keyframeScanSeconds) {
+        this.keyframeScanSeconds = keyframeScanSeconds;
+    }
+
+    public void setKeyframeIndexDir(String keyframeIndexDir) {
+        this.keyframeIndexDir = keyframeIndexDir;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void setKeyframeIndexTimeoutMillis(long keyframeIndexTimeoutMillis) {
+        this.keyframeIndexTimeoutMillis = keyframeIndexTimeoutMillis;
+    }
+
+    /**
+     * 获取媒体文件信息，返回的对象会被缓存共享，不要修改
+     *
+     * @param path 文件绝对路径或者网络地址（网络地址不缓存）
+     * @return 媒体文件信息
+     */
+    public MediaInfo probe(String path) {
+        return probe(path, null);
+    }
+
+    /**
+     * 获取媒体文件信息，返回的对象会被缓存共享，不要修改
+     *
+     * 其他调用方正在获取同一个文件时等待结果，其他调用方被取消时重新获取
+     *
+     * @param path 文件绝对路径或者网络地址（网络地址不缓存）
+     * @param cancelToken 取消句柄，取消后终止ffprobe进程并抛出FFMpegException，可以为null
+     * @return 媒体文件信息
+     */
+    public MediaInfo probe(String path, CancelToken cancelToken) {
+        if(StrUtils.checkBlank(path)) {
+            throw new FFMpegException("path must not be null");
+        }
+        File file = new File(path);
+        if(!file.isFile()) {
+            return doProbe(path, cancelToken);
+        }
+        String key = cacheKey(file);
+        while (true) {
+            MediaInfo cached = cache.get(key);
+            if(cached != null) {
+                return cached;
+            }
+
+            CompletableFuture<MediaInfo> future = new CompletableFuture<>();
+            CompletableFuture<MediaInfo> running = probing.putIfAbsent(key, future);
+            if(running != null) {
+                MediaInfo info = await(running, cancelToken);
+                if(info != null) {
+                    return info;
+                }
+                continue;
+            }
+            try {
+                MediaInfo info = doProbe(path, cancelToken);
+                cache.put(key, info);
+                future.complete(info);
+                return info;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                probing.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 快速获取媒体文件信息：本地MP4/MOV文件直接读取box（{@link Mp4BoxReader}），不启动进程，
+     * 不包括pix_fmt、各路流的码率，关键帧间隔按整个文件计算；其他文件或者解析失败时使用 {@link #probe(String)}
+     *
+     * @param path 文件绝对路径或者网络地址
+     * @return 媒体文件信息
+     */
+    public MediaInfo quickProbe(String path) {
+        if(StrUtils.checkBlank(path)) {
+            throw new FFMpegException("path must not be null");
+        }
+        MediaInfo info = Mp4BoxReader.read(path);
+        return info != null ? info : probe(path);
+    }
+
+    /**
+     * 获取时间范围内视频关键帧的时间，本地文件使用 {@link #keyframeIndex(String)}
+     *
+     * @param path 文件绝对路径
+     * @param start 开始时间（秒）
+     * @param end 结束时间（秒）
+     * @return 关键帧时间（秒），升序
+     */
+    public double[] keyframes(String path, double start, double end) {
+        return keyframeIndex(path, null).between(start, end);
+    }
+
+    /**
+     * 获取视频关键帧索引
+     *
+     * 本地文件先查内存缓存，再读取索引文件（{@link #setKeyframeIndexDir(String)}），源文件大小和修改时间一致时直接使用；
+     * 否则用ffprobe读取一遍所有视频数据包（只解封装不解码）生成索引并写入索引文件，写入失败时忽略。
+     * 同一个文件同时多次获取时只启动一个ffprobe进程
+     *
+     * @param path 文件绝对路径或者网络地址（网络地址不缓存）
+     * @return 关键帧索引
+     */
+    public KeyframeIndex keyframeIndex(String path) {
+        return keyframeIndex(path, null);
+    }
+
+    /**
+     * 获取视频关键帧索引，见 {@link #keyframeIndex(String)}
+     *
+     * @param path 文件绝对路径或者网络地址（网络地址不缓存）
+     * @param cancelToken 取消句柄，取消后终止ffprobe进程并抛出FFMpegException，可以为null
+     * @return 关键帧索引
+     */
+    public KeyframeIndex keyframeIndex(String path, CancelToken cancelToken) {
+        if(StrUtils.checkBlank(path)) {
+            throw new FFMpegException("path must not be null");
+        }
+        File file = new File(path);
+        if(!file.isFile()) {
+            return buildKeyframeIndex(path, -1, -1, cancelToken);
+        }
+        String key = cacheKey(file);
+        while (true) {
+            KeyframeIndex cached = indexCache.get(key);
+            if(cached != null) {
+                return cached;
+            }
+
+            CompletableFuture<KeyframeIndex> future = new CompletableFuture<>();
+            CompletableFuture<KeyframeIndex> running = indexing.putIfAbsent(key, future);
+            if(running != null) {
+                KeyframeIndex index = await(running, cancelToken);
+                if(index != null) {
+                    return index;
+                }
+                continue;
+            }
+            try {
+                long size = file.length();
+                long modified = file.lastModified();
+                File indexFile = indexFile(file);
+                KeyframeIndex index = readKeyframeIndex(indexFile);
+                if(index == null || !index.isValid(file)) {
+                    index = buildKeyframeIndex(path, size, modified, cancelToken);
+                    try {
+                        index.write(indexFile);
+                    } catch (IOException | RuntimeException e) {
+                        // 目录只读等情况不持久化，只使用内存缓存
+                    }
+                }
+                indexCache.put(key, index);
+                future.complete(index);
+                return index;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                indexing.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 等待其他调用方的结果，ffprobe进程有超时时间，只需要检查自己的取消句柄
+     *
+     * @return 结果，其他调用方被取消时返回null
+     */
+    private static <T> T await(CompletableFuture<T> running, CancelToken cancelToken) {
+        while (true) {
+            if(cancelToken != null && cancelToken.isCancelled()) {
+                throw new FFMpegException("ffprobe cancelled");
+            }
+            try {
+                return running.get(WAIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 继续等待
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FFMpegException(e);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof CancelledException) {
+                    return null;
+                }
+                throw e.getCause() instanceof FFMpegException ? (FFMpegException) e.getCause() : new FFMpegException(e.getCause());
+            }
+        }
+    }
+
+    private static KeyframeIndex readKeyframeIndex(File indexFile) {
+        try {
+            return KeyframeIndex.read(indexFile);
+        } catch (IOException | RuntimeException e) {
+            // 索引文件损坏时重新生成
+            return null;
+        }
+    }
+
+    /**
+     * 索引文件路径：索引目录/源文件路径的SHA-1.kfi
+     */
+    private File indexFile(File source) {
+        File dir = new File(StrUtils.checkBlank(keyframeIndexDir) ? DEFAULT_KEYFRAME_INDEX_DIR : keyframeIndexDir);
+        dir.mkdirs();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + 4);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(dir, name.append(".kfi").toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new FFMpegException(e);
+        }
+    }
+
+    private KeyframeIndex buildKeyframeIndex(String path, long size, long modified, CancelToken cancelToken) {
+        // ffprobe -v error -select_streams v:0 -show_entries packet=pts_time,dts_time,pos,flags -of csv=p=0 input.mp4
+        List<String> commands = new ArrayList<>();
+        commands.add(ffprobeEXE);
+
+        commands.add("-v");
+        commands.add("error");
+
+        commands.add("-select_streams");
+        commands.add("v:0");
+
+        commands.add("-show_entries");
+        commands.add("packet=pts_time,dts_time,pos,flags");
+
+        commands.add("-of");
+        commands.add("csv=p=0");
+
+        commands.add(path);
+
+        FFmpegTask task = new FFmpegTask(commands);
+        KeyframeIndex.Builder builder = new KeyframeIndex.Builder();
+        task.setStdoutHandler(builder);
+        task.setTimeoutMillis(keyframeIndexTimeoutMillis);
+        execute(task, cancelToken);
+        return builder.build(size, modified);
+    }
+
+    /**
+     * 删除文件的缓存
+     */
+    public void invalidate(String path) {
+        File file = new File(path);
+        if(file.isFile()) {
+            cache.remove(cacheKey(file));
+            indexCache.remove(cacheKey(file));
+        }
+    }
+
+    public void clearCache() {
+        cache.clear();
+        indexCache.clear();
+    }
+
+    private static String cacheKey(File file) {
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    private MediaInfo doProbe(String path, CancelToken cancelToken) {
+        // ffprobe -v error -print_format json -show_format -show_streams -show_data_hash sha256
+        //         -show_entries packet=stream_index,pts_time,flags -read_intervals %+10 input.mp4
+        List<String> commands = new ArrayList<>();
+        commands.add(ffprobeEXE);
+
+        commands.add("-v");
+        commands.add("error");
+
+        commands.add("-print_format");
+        commands.add("json");
+
+        commands.add("-show_format");
+        commands.add("-show_streams");
+
+        // 输出extradata_hash，用于比较SPS/PPS是否相同
+        commands.add("-show_data_hash");
+        commands.add("sha256");
+
+        if(keyframeScanSeconds > 0) {
+            commands.add("-show_entries");
+            commands.add("packet=stream_index,pts_time,flags");
+            commands.add("-read_intervals");
+            commands.add("%+" + keyframeScanSeconds);
+        }
+
+        commands.add(path);
+
+        FFmpegTask task = new FFmpegTask(commands);
+        StdoutCollector collector = new StdoutCollector();
+        task.setStdoutHandler(collector);
+        task.setTimeoutMillis(timeoutMillis);
+        execute(task, cancelToken);
+        MediaInfo info = parse(collector.toString(StandardCharsets.UTF_8));
+        info.setPath(path);
+        return info;
+    }
+
+    /**
+     * 通过执行器执行ffprobe，失败时抛出FFMpegException，被取消时抛出 {@link CancelledException}
+     */
+    private void execute(FFmpegTask task, CancelToken cancelToken) {
+        task.setCancelToken(cancelToken);
+        FFmpegExecutor current = executor != null ? executor : ProcessCommand.getDefaultExecutor();
+        Result result = current.execute(task);
+        Integer code = result.getCode();
+        if(code == null || code != 0) {
+            String message = "ffprobe failed, code: " + code + ", " + result.getErrMessage();
+            if(code != null && code == Result.CODE_CANCELLED) {
+                throw new CancelledException(message);
+            }
+            throw new FFMpegException(message);
+        }
+    }
+
+    /**
+     * ffprobe被调用方取消，等待同一个文件的其他调用方重新获取
+     */
+    private static final class CancelledException extends FFMpegException {
+
+        private static final long serialVersionUID = 1L;
+
+        CancelledException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 解析ffprobe的json输出
+     *
+     * @param json ffprobe -print_format json 的输出
+     * @return 媒体文件信息
+     */
+    @SuppressWarnings("unchecked")
+    public static MediaInfo parse(String json) {
+        Map<String, Object> root = JsonParser.parseObject(json);
+        MediaInfo info = new MediaInfo();
+
+        Object formatValue = root.get("format");
+        if(formatValue instanceof Map) {
+            Map<String, Object> format = (Map<String, Object>) formatValue;
+            info.setFormatName(getString(format, "format_name"));
+            info.setDuration(getDouble(format, "duration"));
+            info.setSize(getLong(format, "size"));
+            info.setBitRate(getLong(format, "bit_rate"));
+        }
+
+        List<StreamInfo> streams = new ArrayList<>();
+        Object streamsValue = root.get("streams");
+        if(streamsValue instanceof List) {
+            for (Object item : (List<Object>) streamsValue) {
+                streams.add(parseStream((Map<String, Object>) item));
+            }
+        }
+        info.setStreams(streams);
+
+        StreamInfo video = info.getVideoStream();
+        Object packetsValue = root.get("packets");
+        if(video != null && packetsValue instanceof List) {
+            info.setKeyframeInterval(keyframeInterval((List<Object>) packetsValue, video.getIndex()));
+        }
+        return info;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StreamInfo parseStream(Map<String, Object> map) {
+        StreamInfo stream = new StreamInfo();
+        stream.setIndex((int) getLong(map, "index"));
+        stream.setCodecType(getString(map, "codec_type"));
+        stream.setCodecName(getString(map, "codec_name"));
+        stream.setCodecTag(getString(map, "codec_tag_string"));
+        stream.setWidth((int) getLong(map, "width"));
+        stream.setHeight((int) getLong(map, "height"));
+        String frameRate = getString(map, "avg_frame_rate");
+        double fps = parseRational(frameRate);
+        if(fps <= 0) {
+            frameRate = getString(map, "r_frame_rate");
+            fps = parseRational(frameRate);
+        }
+        stream.setFps(fps);
+        stream.setFrameRate(fps > 0 ? frameRate : null);
+        stream.setProfile(getString(map, "profile"));
+        stream.setLevel((int) getLong(map, "level"));
+        stream.setTimeBase(getString(map, "time_base"));
+        stream.setExtradataSize((int) getLong(map, "extradata_size"));
+        stream.setExtradataHash(getString(map, "extradata_hash"));
+        stream.setBitRate(getLong(map, "bit_rate"));
+        stream.setPixFmt(getString(map, "pix_fmt"));
+        stream.setSampleRate((int) getLong(map, "sample_rate"));
+        stream.setChannels((int) getLong(map, "channels"));
+        stream.setDuration(getDouble(map, "duration"));
+
+        Object tags = map.get("tags");
+        if(tags instanceof Map) {
+            long rotate = getLong((Map<String, Object>) tags, "rotate");
+            stream.setRotation(rotate == -1 ? 0 : (int) rotate);
+        }
+        Object disposition = map.get("disposition");
+        if(disposition instanceof Map) {
+            stream.setAttachedPic(getLong((Map<String, Object>) disposition, "attached_pic") == 1);
+        }
+        return stream;
+    }
+
+    /**
+     * 根据关键帧的时间计算平均间隔
+     */
+    @SuppressWarnings("unchecked")
+    private static double keyframeInterval(List<Object> packets, int videoIndex) {
+        double first = -1;
+        double last = -1;
+        int keyframes = 0;
+        for (Object item : packets) {
+            Map<String, Object> packet = (Map<String, Object>) item;
+            if(getLong(packet, "stream_index") != videoIndex) {
+                continue;
+            }
+            String flags = getString(packet, "flags");
+            double pts = getDouble(packet, "pts_time");
+            if(flags == null || flags.indexOf('K') < 0 || pts < 0) {
+                continue;
+            }
+            if(first < 0) {
+                first = pts;
+            }
+            last = pts;
+            keyframes++;
+        }
+        if(keyframes < 2) {
+            return -1;
+        }
+        return (last - first) / (keyframes - 1);
+    }
+
+    /**
+     * 解析 30000/1001 格式的帧率
+     */
+    private static double parseRational(String value) {
+        if(StrUtils.checkBlank(value)) {
+            return -1;
+        }
+        int slash = value.indexOf('/');
+        try {
+            if(slash < 0) {
+                return Double.parseDouble(value);
+            }
+            double num = Double.parseDouble(value.substring(0, slash));
+            double den = Double.parseDouble(value.substring(slash + 1));
+            return den == 0 ? -1 : num / den;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getString(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    /**
+     * ffprobe的数值有的是数字，有的是字符串，统一转换，无法转换时返回-1
+     */
+    private static long getLong(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        if(value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if(value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static double getDouble(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        if(value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if(value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
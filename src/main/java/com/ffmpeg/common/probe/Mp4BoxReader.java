@@ -0,0 +1,430 @@
+package com.ffmpeg.common.probe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 不启动进程，直接读取MP4/MOV（ISO-BMFF）的box获取媒体信息
+ *
+ * 只读取顶层box的头部定位moov并检查文件是否完整，moov整体读入内存（较大时使用内存映射），再按绝对位置解析：
+ * <pre>
+ *  ftyp
+ *  moov
+ *   ├─ mvhd                          时长
+ *   ├─ trak
+ *   │   ├─ tkhd                      显示尺寸、旋转角度
+ *   │   └─ mdia
+ *   │       ├─ mdhd                  轨道时长
+ *   │       ├─ hdlr                  轨道类型 vide/soun
+ *   │       └─ minf/stbl
+ *   │           ├─ stsd              编码FourCC、宽高、采样率、声道数
+ *   │           ├─ stts              帧数，计算帧率
+ *   │           └─ stss              关键帧，计算关键帧间隔
+ *   └─ udta/meta/ilst/covr           封面图片
+ *  mdat
+ * </pre>
+ * 不解析编码参数（pix_fmt、码率等），需要时使用 {@link MediaProbe#probe(String)}
+ *
+ * @author alan.chen
+ * @date 2020/8/7 4:10 PM
+ */
+public final class Mp4BoxReader {
+
+    public static final String FORMAT_NAME = "mov,mp4,m4a,3gp,3g2,mj2";
+
+    /**
+     * moov小于1MB时读入堆内存，否则使用内存映射
+     */
+    private static final int MAX_HEAP_MOOV = 1 << 20;
+
+    private static final int FTYP = 0x66747970;
+    private static final int MOOV = 0x6d6f6f76;
+    private static final int MDAT = 0x6d646174;
+    private static final int FREE = 0x66726565;
+    private static final int SKIP = 0x736b6970;
+    private static final int WIDE = 0x77696465;
+    private static final int MVHD = 0x6d766864;
+    private static final int TRAK = 0x7472616b;
+    private static final int TKHD = 0x746b6864;
+    private static final int MDIA = 0x6d646961;
+    private static final int MDHD = 0x6d646864;
+    private static final int HDLR = 0x68646c72;
+    private static final int MINF = 0x6d696e66;
+    private static final int STBL = 0x7374626c;
+    private static final int STSD = 0x73747364;
+    private static final int STTS = 0x73747473;
+    private static final int STSS = 0x73747373;
+    private static final int UDTA = 0x75647461;
+    private static final int META = 0x6d657461;
+    private static final int ILST = 0x696c7374;
+    private static final int COVR = 0x636f7672;
+    private static final int DATA = 0x64617461;
+
+    private static final int VIDE = 0x76696465;
+    private static final int SOUN = 0x736f756e;
+    private static final int SBTL = 0x7362746c;
+    private static final int SUBT = 0x73756274;
+    private static final int TEXT = 0x74657874;
+
+    private final ByteBuffer moov;
+
+    private final List<StreamInfo> streams = new ArrayList<>();
+
+    private double duration = -1;
+
+    private double keyframeInterval = -1;
+
+    private String coverCodec;
+
+    /**
+     * 正在解析的轨道
+     */
+    private StreamInfo track;
+
+    private int handler;
+
+    private long trackTimescale;
+
+    private long trackSamples;
+
+    private int displayWidth;
+
+    private int displayHeight;
+
+    private long firstKeyframe;
+
+    private long lastKeyframe;
+
+    private long keyframes;
+
+    private Mp4BoxReader(ByteBuffer moov) {
+        this.moov = moov;
+    }
+
+    /**
+     * 读取本地MP4/MOV文件的媒体信息
+     *
+     * @param path 文件绝对路径
+     * @return 媒体信息；不是MP4/MOV、文件不完整或者解析失败时返回null
+     */
+    public static MediaInfo read(String path) {
+        File file = new File(path);
+        if(!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel, path);
+        } catch (IOException | RuntimeException e) {
+            // box大小不正确时会越界，按不能解析处理
+            return null;
+        }
+    }
+
+    private static MediaInfo read(FileChannel channel, String path) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long position = 0;
+        boolean mdat = false;
+        MediaInfo info = null;
+        while (position + 8 <= fileSize) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, position + header.position()) > 0) {
+                // 读取box头
+            }
+            header.flip();
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            int type = header.getInt(4);
+            int headerSize = 8;
+            if(size == 1) {
+                if(header.limit() < 16) {
+                    return null;
+                }
+                size = header.getLong(8);
+                headerSize = 16;
+            } else if(size == 0) {
+                size = fileSize - position;
+            }
+            if(size < headerSize || position + size > fileSize) {
+                // 文件不完整
+                return null;
+            }
+            if(position == 0 && type != FTYP && type != MOOV && type != MDAT && type != FREE && type != SKIP && type != WIDE) {
+                return null;
+            }
+            if(type == MOOV) {
+                long length = size - headerSize;
+                if(length > Integer.MAX_VALUE) {
+                    return null;
+                }
+                info = new Mp4BoxReader(load(channel, position + headerSize, (int) length)).parse();
+                if(info == null) {
+                    return null;
+                }
+                info.setMoovAtFront(!mdat);
+            }
+            if(type == MDAT) {
+                mdat = true;
+            }
+            position += size;
+        }
+        if(info != null) {
+            // 所有顶层box都完整
+            info.setPath(path);
+            info.setSize(fileSize);
+            info.setBitRate((long) (fileSize * 8 / info.getDuration()));
+        }
+        return info;
+    }
+
+    private static ByteBuffer load(FileChannel channel, long position, int length) throws IOException {
+        if(length > MAX_HEAP_MOOV) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // 读取整个moov
+        }
+        if(buffer.hasRemaining()) {
+            throw new IOException("unexpected end of file");
+        }
+        return buffer;
+    }
+
+    private MediaInfo parse() {
+        walk(0, moov.limit(), MOOV);
+        if(duration <= 0 || streams.isEmpty()) {
+            // 分片MP4（moof）等情况
+            return null;
+        }
+        if(coverCodec != null) {
+            StreamInfo cover = new StreamInfo();
+            cover.setIndex(streams.size());
+            cover.setCodecType(StreamInfo.TYPE_VIDEO);
+            cover.setCodecName(coverCodec);
+            cover.setAttachedPic(true);
+            streams.add(cover);
+        }
+        MediaInfo info = new MediaInfo();
+        info.setFormatName(FORMAT_NAME);
+        info.setDuration(duration);
+        info.setKeyframeInterval(keyframeInterval);
+        info.setStreams(streams);
+        return info;
+    }
+
+    private void walk(int start, int end, int parent) {
+        int position = start;
+        while (position + 8 <= end) {
+            long size = moov.getInt(position) & 0xFFFFFFFFL;
+            int type = moov.getInt(position + 4);
+            int headerSize = 8;
+            if(size == 1) {
+                size = moov.getLong(position + 8);
+                headerSize = 16;
+            } else if(size == 0) {
+                size = end - position;
+            }
+            if(size < headerSize || position + size > end) {
+                throw new IllegalArgumentException("invalid box size: " + size);
+            }
+            int boxEnd = (int) (position + size);
+            box(type, parent, position + headerSize, boxEnd);
+            position = boxEnd;
+        }
+    }
+
+    private void box(int type, int parent, int body, int end) {
+        switch (type) {
+            case MVHD:
+                long timescale = moov.getInt(body + (moov.get(body) == 1 ? 20 : 12)) & 0xFFFFFFFFL;
+                long length = moov.get(body) == 1 ? moov.getLong(body + 24) : moov.getInt(body + 16) & 0xFFFFFFFFL;
+                duration = timescale > 0 ? (double) length / timescale : -1;
+                break;
+            case TRAK:
+                startTrack();
+                walk(body, end, type);
+                endTrack();
+                break;
+            case TKHD:
+                int matrix = body + 4 + (moov.get(body) == 1 ? 32 : 20) + 16;
+                double a = moov.getInt(matrix) / 65536.0;
+                double b = moov.getInt(matrix + 4) / 65536.0;
+                int rotation = (int) Math.round(Math.toDegrees(Math.atan2(b, a)));
+                track.setRotation((rotation % 360 + 360) % 360);
+                displayWidth = moov.getInt(matrix + 36) >>> 16;
+                displayHeight = moov.getInt(matrix + 40) >>> 16;
+                break;
+            case MDIA:
+            case MINF:
+            case STBL:
+                if(track != null) {
+                    walk(body, end, type);
+                }
+                break;
+            case MDHD:
+                trackTimescale = moov.getInt(body + (moov.get(body) == 1 ? 20 : 12)) & 0xFFFFFFFFL;
+                long trackLength = moov.get(body) == 1 ? moov.getLong(body + 24) : moov.getInt(body + 16) & 0xFFFFFFFFL;
+                if(trackTimescale > 0) {
+                    track.setDuration((double) trackLength / trackTimescale);
+                }
+                break;
+            case HDLR:
+                if(parent == MDIA) {
+                    handler = moov.getInt(body + 8);
+                }
+                break;
+            case STSD:
+                sampleEntry(body + 8);
+                break;
+            case STTS:
+                int entries = moov.getInt(body + 4);
+                for (int i = 0; i < entries; i++) {
+                    trackSamples += moov.getInt(body + 8 + i * 8) & 0xFFFFFFFFL;
+                }
+                break;
+            case STSS:
+                keyframes = moov.getInt(body + 4) & 0xFFFFFFFFL;
+                if(keyframes > 0) {
+                    firstKeyframe = moov.getInt(body + 8) & 0xFFFFFFFFL;
+                    lastKeyframe = moov.getInt(body + 8 + (int) (keyframes - 1) * 4) & 0xFFFFFFFFL;
+                }
+                break;
+            case UDTA:
+            case ILST:
+                if(parent == MOOV || parent == META) {
+                    walk(body, end, type);
+                }
+                break;
+            case META:
+                if(parent == UDTA || parent == MOOV) {
+                    // MP4的meta是full box，QuickTime的不是
+                    walk(moov.getInt(body + 4) == HDLR ? body : body + 4, end, type);
+                }
+                break;
+            case COVR:
+                if(parent == ILST && end - body >= 16 && moov.getInt(body + 4) == DATA) {
+                    int dataType = moov.getInt(body + 8) & 0xFFFFFF;
+                    coverCodec = dataType == 14 ? "png" : dataType == 27 ? "bmp" : "mjpeg";
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void startTrack() {
+        track = new StreamInfo();
+        track.setIndex(streams.size());
+        handler = 0;
+        trackTimescale = 0;
+        trackSamples = 0;
+        displayWidth = 0;
+        displayHeight = 0;
+        keyframes = 0;
+    }
+
+    private void endTrack() {
+        if(handler == VIDE) {
+            track.setCodecType(StreamInfo.TYPE_VIDEO);
+            if(track.getWidth() <= 0) {
+                track.setWidth(displayWidth);
+                track.setHeight(displayHeight);
+            }
+            if(trackSamples > 0 && track.getDuration() > 0) {
+                double frameDuration = track.getDuration() / trackSamples;
+                track.setFps(1 / frameDuration);
+                if(keyframeInterval < 0 && keyframes > 1) {
+                    keyframeInterval = (lastKeyframe - firstKeyframe) * frameDuration / (keyframes - 1);
+                }
+            }
+        } else if(handler == SOUN) {
+            track.setCodecType(StreamInfo.TYPE_AUDIO);
+            track.setWidth(-1);
+            track.setHeight(-1);
+        } else if(handler == SBTL || handler == SUBT || handler == TEXT) {
+            track.setCodecType("subtitle");
+        } else {
+            track.setCodecType("data");
+        }
+        streams.add(track);
+        track = null;
+    }
+
+    /**
+     * 解析stsd的第一个sample entry
+     */
+    private void sampleEntry(int entry) {
+        int format = moov.getInt(entry + 4);
+        String tag = fourcc(format);
+        track.setCodecTag(tag);
+        track.setCodecName(codecName(tag));
+        if(handler == VIDE) {
+            track.setWidth(moov.getShort(entry + 32) & 0xFFFF);
+            track.setHeight(moov.getShort(entry + 34) & 0xFFFF);
+        } else if(handler == SOUN) {
+            track.setChannels(moov.getShort(entry + 24) & 0xFFFF);
+            track.setSampleRate(moov.getShort(entry + 32) & 0xFFFF);
+        }
+    }
+
+    private static String fourcc(int value) {
+        char[] chars = new char[4];
+        for (int i = 0; i < 4; i++) {
+            chars[i] = (char) ((value >>> (24 - i * 8)) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * FourCC 转换为ffprobe的codec_name，未知时返回null
+     */
+    static String codecName(String tag) {
+        switch (tag) {
+            case "avc1":
+            case "avc3":
+                return "h264";
+            case "hvc1":
+            case "hev1":
+                return "hevc";
+            case "av01":
+                return "av1";
+            case "vp09":
+                return "vp9";
+            case "mp4v":
+                return "mpeg4";
+            case "jpeg":
+                return "mjpeg";
+            case "apch":
+            case "apcn":
+            case "apcs":
+            case "apco":
+            case "ap4h":
+                return "prores";
+            case "mp4a":
+                return "aac";
+            case ".mp3":
+                return "mp3";
+            case "ac-3":
+                return "ac3";
+            case "ec-3":
+                return "eac3";
+            case "Opus":
+                return "opus";
+            case "fLaC":
+                return "flac";
+            case "alac":
+                return "alac";
+            case "sowt":
+                return "pcm_s16le";
+            case "twos":
+                return "pcm_s16be";
+            default:
+                return null;
+        }
+    }
+}
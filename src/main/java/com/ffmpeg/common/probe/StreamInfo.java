@@ -0,0 +1,281 @@
+package com.ffmpeg.common.probe;
+
+/**
+ * 媒体文件中一路流的信息，数值未知时为 -1
+ *
+ * @author alan.chen
+ * @date 2020/7/20 2:40 PM
+ */
+public class StreamInfo {
+
+    public static final String TYPE_VIDEO = "video";
+    public static final String TYPE_AUDIO = "audio";
+
+    private int index;
+
+    /**
+     * 流类型：video、audio、subtitle、data
+     */
+    private String codecType;
+
+    /**
+     * 编码名称，例如 h264、aac
+     */
+    private String codecName;
+
+    /**
+     * 编码标签（FourCC），例如 avc1、mp4a
+     */
+    private String codecTag;
+
+    private int width = -1;
+
+    private int height = -1;
+
+    /**
+     * 平均帧率
+     */
+    private double fps = -1;
+
+    /**
+     * 平均帧率的原始分数，例如 30000/1001
+     */
+    private String frameRate;
+
+    /**
+     * 编码档次，例如 High、Main
+     */
+    private String profile;
+
+    /**
+     * 编码级别，例如 h264 的 31 表示 3.1
+     */
+    private int level = -1;
+
+    /**
+     * 时间基，例如 1/15360
+     */
+    private String timeBase;
+
+    /**
+     * 编码参数（extradata，h264为SPS/PPS）的字节数
+     */
+    private int extradataSize = -1;
+
+    /**
+     * 编码参数的SHA-256（ffprobe -show_data_hash sha256），例如 SHA256:9f86d0...，长度相同的SPS/PPS内容也可能不同
+     */
+    private String extradataHash;
+
+    /**
+     * 码率（bit/s）
+     */
+    private long bitRate = -1;
+
+    /**
+     * 像素格式，例如 yuv420p
+     */
+    private String pixFmt;
+
+    private int sampleRate = -1;
+
+    private int channels = -1;
+
+    /**
+     * 时长（秒）
+     */
+    private double duration = -1;
+
+    /**
+     * 旋转角度（tags.rotate）
+     */
+    private int rotation;
+
+    /**
+     * 是否为封面图片（attached_pic）
+     */
+    private boolean attachedPic;
+
+    public boolean isVideo() {
+        return TYPE_VIDEO.equals(codecType) && !attachedPic;
+    }
+
+    public boolean isAudio() {
+        return TYPE_AUDIO.equals(codecType);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getCodecType() {
+        return codecType;
+    }
+
+    public void setCodecType(String codecType) {
+        this.codecType = codecType;
+    }
+
+    public String getCodecName() {
+        return codecName;
+    }
+
+    public void setCodecName(String codecName) {
+        this.codecName = codecName;
+    }
+
+    public String getCodecTag() {
+        return codecTag;
+    }
+
+    public void setCodecTag(String codecTag) {
+        this.codecTag = codecTag;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    public void setFps(double fps) {
+        this.fps = fps;
+    }
+
+    public String getFrameRate() {
+        return frameRate;
+    }
+
+    public void setFrameRate(String frameRate) {
+        this.frameRate = frameRate;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(String profile) {
+        this.profile = profile;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public String getTimeBase() {
+        return timeBase;
+    }
+
+    public void setTimeBase(String timeBase) {
+        this.timeBase = timeBase;
+    }
+
+    public int getExtradataSize() {
+        return extradataSize;
+    }
+
+    public void setExtradataSize(int extradataSize) {
+        this.extradataSize = extradataSize;
+    }
+
+    public String getExtradataHash() {
+        return extradataHash;
+    }
+
+    public void setExtradataHash(String extradataHash) {
+        this.extradataHash = extradataHash;
+    }
+
+    public long getBitRate() {
+        return bitRate;
+    }
+
+    public void setBitRate(long bitRate) {
+        this.bitRate = bitRate;
+    }
+
+    public String getPixFmt() {
+        return pixFmt;
+    }
+
+    public void setPixFmt(String pixFmt) {
+        this.pixFmt = pixFmt;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public void setChannels(int channels) {
+        this.channels = channels;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public void setDuration(double duration) {
+        this.duration = duration;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    public void setRotation(int rotation) {
+        this.rotation = rotation;
+    }
+
+    public boolean isAttachedPic() {
+        return attachedPic;
+    }
+
+    public void setAttachedPic(boolean attachedPic) {
+        this.attachedPic = attachedPic;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamInfo{" +
+                "index=" + index +
+                ", codecType='" + codecType + '\'' +
+                ", codecName='" + codecName + '\'' +
+                ", width=" + width +
+                ", height=" + height +
+                ", fps=" + fps +
+                ", bitRate=" + bitRate +
+                ", sampleRate=" + sampleRate +
+                ", channels=" + channels +
+                '}';
+    }
+}
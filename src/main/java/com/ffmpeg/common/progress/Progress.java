@@ -0,0 +1,126 @@
+package com.ffmpeg.common.progress;
+
+/**
+ * ffmpeg -progress 输出的进度信息，数值不可用（N/A）时为 -1
+ *
+ * @author alan.chen
+ * @date 2020/7/10 10:26 AM
+ */
+public class Progress {
+
+    /**
+     * 已经输出的帧数
+     */
+    private long frame = -1;
+
+    /**
+     * 编码速度（帧/秒）
+     */
+    private double fps = -1;
+
+    /**
+     * 码率（kbits/s）
+     */
+    private double bitrate = -1;
+
+    /**
+     * 已经输出的字节数
+     */
+    private long totalSize = -1;
+
+    /**
+     * 已经输出的时长（微秒）
+     */
+    private long outTimeUs = -1;
+
+    /**
+     * 编码速度相对于播放速度的倍数
+     */
+    private double speed = -1;
+
+    /**
+     * 是否为最后一帧进度信息
+     */
+    private boolean end;
+
+    public Progress copy() {
+        Progress copy = new Progress();
+        copy.frame = frame;
+        copy.fps = fps;
+        copy.bitrate = bitrate;
+        copy.totalSize = totalSize;
+        copy.outTimeUs = outTimeUs;
+        copy.speed = speed;
+        copy.end = end;
+        return copy;
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    public void setFrame(long frame) {
+        this.frame = frame;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    public void setFps(double fps) {
+        this.fps = fps;
+    }
+
+    public double getBitrate() {
+        return bitrate;
+    }
+
+    public void setBitrate(double bitrate) {
+        this.bitrate = bitrate;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public void setTotalSize(long totalSize) {
+        this.totalSize = totalSize;
+    }
+
+    public long getOutTimeUs() {
+        return outTimeUs;
+    }
+
+    public void setOutTimeUs(long outTimeUs) {
+        this.outTimeUs = outTimeUs;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public boolean isEnd() {
+        return end;
+    }
+
+    public void setEnd(boolean end) {
+        this.end = end;
+    }
+
+    @Override
+    public String toString() {
+        return "Progress{" +
+                "frame=" + frame +
+                ", fps=" + fps +
+                ", bitrate=" + bitrate +
+                ", totalSize=" + totalSize +
+                ", outTimeUs=" + outTimeUs +
+                ", speed=" + speed +
+                ", end=" + end +
+                '}';
+    }
+}
@@ -0,0 +1,18 @@
+package com.ffmpeg.common.progress;
+
+/**
+ * ffmpeg执行进度回调
+ *
+ * @author alan.chen
+ * @date 2020/7/10 10:30 AM
+ */
+public interface ProgressListener {
+
+    /**
+     * 收到一帧完整的进度信息时回调，在读取stdout的线程中执行，不要做耗时操作
+     *
+     * @param progress 进度信息，同一个任务的回调复用同一个对象，需要保存时请调用 {@link Progress#copy()}
+     */
+    void onProgress(Progress progress);
+
+}
@@ -0,0 +1,187 @@
+package com.ffmpeg.common.progress;
+
+import com.ffmpeg.common.common.StdoutHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 解析 ffmpeg -progress pipe:1 输出的 key=value 行
+ *
+ * 直接在字节缓冲区中按行切分和解析数值，不为每行创建字符串，
+ * 每读到 progress=continue/end 时回调一次 {@link ProgressListener}
+ *
+ * @author alan.chen
+ * @date 2020/7/10 10:40 AM
+ */
+public class ProgressParser implements StdoutHandler {
+
+    private static final byte[] KEY_FRAME = key("frame");
+    private static final byte[] KEY_FPS = key("fps");
+    private static final byte[] KEY_BITRATE = key("bitrate");
+    private static final byte[] KEY_TOTAL_SIZE = key("total_size");
+    private static final byte[] KEY_OUT_TIME_US = key("out_time_us");
+    private static final byte[] KEY_OUT_TIME_MS = key("out_time_ms");
+    private static final byte[] KEY_SPEED = key("speed");
+    private static final byte[] KEY_PROGRESS = key("progress");
+    private static final byte[] VALUE_END = key("end");
+
+    /**
+     * 单行最大长度，-progress 的行都很短，超长的行直接丢弃
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    private final ProgressListener listener;
+
+    private final Progress progress = new Progress();
+
+    public ProgressParser(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void handle(InputStream stdout) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int limit = 0;
+        int len;
+        while ((len = stdout.read(buffer, limit, buffer.length - limit)) != -1) {
+            limit += len;
+            int lineStart = 0;
+            for (int i = 0; i < limit; i++) {
+                if(buffer[i] == '\n') {
+                    parseLine(buffer, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            if(lineStart == 0 && limit == buffer.length) {
+                // 超长行，丢弃
+                limit = 0;
+            } else {
+                System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+                limit -= lineStart;
+            }
+        }
+        if(limit > 0) {
+            parseLine(buffer, 0, limit);
+        }
+    }
+
+    /**
+     * 解析一行 key=value
+     *
+     * @param buf 缓冲区
+     * @param start 行开始位置
+     * @param end 行结束位置（不包含）
+     */
+    void parseLine(byte[] buf, int start, int end) {
+        if(end > start && buf[end - 1] == '\r') {
+            end--;
+        }
+        int eq = -1;
+        for (int i = start; i < end; i++) {
+            if(buf[i] == '=') {
+                eq = i;
+                break;
+            }
+        }
+        if(eq < 0) {
+            return;
+        }
+        int valueStart = eq + 1;
+        // 值前面可能有空格，例如 "speed=   1x"
+        while (valueStart < end && buf[valueStart] == ' ') {
+            valueStart++;
+        }
+        if(matches(buf, start, eq, KEY_FRAME)) {
+            progress.setFrame(parseLong(buf, valueStart, end));
+        } else if(matches(buf, start, eq, KEY_FPS)) {
+            progress.setFps(parseDouble(buf, valueStart, end));
+        } else if(matches(buf, start, eq, KEY_BITRATE)) {
+            progress.setBitrate(parseDouble(buf, valueStart, end));
+        } else if(matches(buf, start, eq, KEY_TOTAL_SIZE)) {
+            progress.setTotalSize(parseLong(buf, valueStart, end));
+        } else if(matches(buf, start, eq, KEY_OUT_TIME_US) || matches(buf, start, eq, KEY_OUT_TIME_MS)) {
+            // 旧版本ffmpeg的out_time_ms实际单位也是微秒
+            progress.setOutTimeUs(parseLong(buf, valueStart, end));
+        } else if(matches(buf, start, eq, KEY_SPEED)) {
+            progress.setSpeed(parseDouble(buf, valueStart, end));
+        } else if(matches(buf, start, eq, KEY_PROGRESS)) {
+            progress.setEnd(matches(buf, valueStart, end, VALUE_END));
+            listener.onProgress(progress);
+        }
+    }
+
+    private static boolean matches(byte[] buf, int start, int end, byte[] key) {
+        if(end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if(buf[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析整数前缀，没有数字时（N/A）返回-1
+     */
+    public static long parseLong(byte[] buf, int start, int end) {
+        boolean negative = start < end && buf[start] == '-';
+        int i = negative ? start + 1 : start;
+        long value = 0;
+        int digits = 0;
+        for (; i < end; i++) {
+            int d = buf[i] - '0';
+            if(d < 0 || d > 9) {
+                break;
+            }
+            value = value * 10 + d;
+            digits++;
+        }
+        if(digits == 0) {
+            return -1;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 解析小数前缀，忽略单位后缀（kbits/s、x），没有数字时（N/A）返回-1
+     */
+    public static double parseDouble(byte[] buf, int start, int end) {
+        long integer = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean dot = false;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buf[i];
+            if(b == '.' && !dot) {
+                dot = true;
+                continue;
+            }
+            int d = b - '0';
+            if(d < 0 || d > 9) {
+                break;
+            }
+            if(dot) {
+                if(scale < 1_000_000_000L) {
+                    fraction = fraction * 10 + d;
+                    scale *= 10;
+                }
+            } else {
+                integer = integer * 10 + d;
+            }
+            digits++;
+        }
+        if(digits == 0) {
+            return -1;
+        }
+        return integer + (double) fraction / scale;
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+}
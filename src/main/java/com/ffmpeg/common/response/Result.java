@@ -7,7 +7,32 @@ package com.ffmpeg.common.response;
 public class Result {
 
     /**
-     * 状态码： 0 正常 其他：异常
+     * 执行超时，进程已被终止
+     */
+    public static final int CODE_TIMEOUT = -10;
+
+    /**
+     * 任务被取消，进程已被终止或者未启动
+     */
+    public static final int CODE_CANCELLED = -11;
+
+    /**
+     * 进程正常结束，但没有生成输出文件
+     */
+    public static final int CODE_OUTPUT_MISSING = -12;
+
+    /**
+     * 执行器拒绝任务（排队已满或者排队超时），只用于监控指标，调用方收到 FFMpegRejectedException
+     */
+    public static final int CODE_REJECTED = -13;
+
+    /**
+     * 启动进程失败（例如ffmpeg路径错误），只用于监控指标，调用方收到 FFMpegException
+     */
+    public static final int CODE_SPAWN_FAILED = -14;
+
+    /**
+     * 状态码： 0 正常 {@link #CODE_TIMEOUT} 超时 {@link #CODE_CANCELLED} 取消 {@link #CODE_OUTPUT_MISSING} 没有输出 其他：异常
      */
     private Integer code;
 
@@ -16,6 +41,31 @@ public class Result {
      */
     private String errMessage;
 
+    /**
+     * stderr最后一次统计的帧数，未知时为-1
+     */
+    private long frames = -1;
+
+    /**
+     * stderr最后一次统计的已处理时长（秒），未知时为-1
+     */
+    private double time = -1;
+
+    /**
+     * stderr最后一次统计的处理速度（倍速），未知时为-1
+     */
+    private double speed = -1;
+
+    /**
+     * stderr中第一个输入的时长（秒），未知时为-1
+     */
+    private double duration = -1;
+
+    /**
+     * stderr中包含错误信息（Error、Invalid、failed等）的行数，退出码为0时也可能有解码错误
+     */
+    private int errorLines;
+
 
     public Integer getCode() {
         return code;
@@ -32,4 +82,44 @@ public class Result {
     public void setErrMessage(String errMessage) {
         this.errMessage = errMessage;
     }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public void setFrames(long frames) {
+        this.frames = frames;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public void setTime(double time) {
+        this.time = time;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public void setDuration(double duration) {
+        this.duration = duration;
+    }
+
+    public int getErrorLines() {
+        return errorLines;
+    }
+
+    public void setErrorLines(int errorLines) {
+        this.errorLines = errorLines;
+    }
 }
@@ -2,6 +2,7 @@ package com.ffmpeg.common.utils;
 
 import java.io.File;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
 /**
@@ -20,13 +21,11 @@ public class BaseFileUtil {
         }
     }
 
+    /**
+     * 目录下是否有文件（不包括子目录和隐藏文件），找到第一个就返回，不读取整个目录
+     */
     public static boolean hashFile(String path) {
-        File file = new File(path);
-        if(file.isDirectory()) {
-            File[] files = file.listFiles();
-            return files != null && files.length > 0;
-        }
-        return false;
+        return DirectoryScanner.hasFile(path, null);
     }
 
     public static File[] listFiles(String path) {
@@ -45,19 +44,39 @@ public class BaseFileUtil {
             if(files[i].isHidden()) {
                 continue;
             }
-            String filename = files[i].getName();
-            String suffix = filename.substring(filename.lastIndexOf("."));
-            set.add(suffix);
+            set.add(suffix(files[i].getName()));
         }
         return set.size() == 1;
     }
 
     public static boolean isMpgOrMpeg(File[] files) {
-        String file = files[0].getName();
-        if(VIDEO_SUFFIX_MPG.endsWith(file) || VIDEO_SUFFIX_MPEG.endsWith(file)) {
-            return true;
+        return files.length > 0 && isMpgOrMpeg(files[0].getName());
+    }
+
+    public static boolean isMpgOrMpeg(String filename) {
+        String suffix = suffix(filename).toLowerCase(Locale.ROOT);
+        return suffix.equals("." + VIDEO_SUFFIX_MPG) || suffix.equals("." + VIDEO_SUFFIX_MPEG);
+    }
+
+    /**
+     * 文件后缀（包括点），没有后缀时返回空字符串
+     */
+    public static String suffix(String filename) {
+        int index = filename.lastIndexOf('.');
+        return index < 0 ? "" : filename.substring(index);
+    }
+
+    /**
+     * 删除目录及目录下的文件（只删除一层）
+     */
+    public static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for (File file : files) {
+                file.delete();
+            }
         }
-        return false;
+        dir.delete();
     }
 
 }
@@ -0,0 +1,151 @@
+package com.ffmpeg.common.utils;
+
+import com.ffmpeg.common.FFMpegException;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 目录扫描：使用 {@link DirectoryStream} 遍历一次目录，按glob过滤文件名，跳过子目录和隐藏文件，结果按自然顺序排序
+ *
+ * 自然顺序把文件名中的连续数字按数值比较，例如 2.ts 在 10.ts 之前，而不是按字符排在 10.ts 之后：
+ * <pre>
+ *  1.ts 2.ts 10.ts 11.ts           video_9.mp4 video_10.mp4
+ * </pre>
+ * 不创建File数组，也不为排序创建子字符串，目录下有几万个文件时也只遍历一次
+ *
+ * @author alan.chen
+ * @date 2020/8/14 10:20 AM
+ */
+public final class DirectoryScanner {
+
+    /**
+     * 文件名的自然顺序比较器
+     */
+    public static final Comparator<String> NATURAL_ORDER = DirectoryScanner::compareNatural;
+
+    private DirectoryScanner() {
+    }
+
+    /**
+     * 扫描目录下的文件
+     *
+     * @param dir 目录路径
+     * @param glob 文件名过滤，例如 *.ts、*.{mp4,mov}，为空时不过滤
+     * @return 按文件名自然顺序排序的文件，目录不存在时抛出异常
+     */
+    public static List<Path> scan(String dir, String glob) {
+        Path path = Paths.get(dir);
+        if(!Files.isDirectory(path)) {
+            throw new FFMpegException("directory not found: " + dir);
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, StrUtils.checkBlank(glob) ? "*" : glob)) {
+            for (Path item : stream) {
+                if(isHidden(item) || !Files.isRegularFile(item)) {
+                    continue;
+                }
+                files.add(item);
+            }
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+        files.sort((a, b) -> compareNatural(a.getFileName().toString(), b.getFileName().toString()));
+        return files;
+    }
+
+    /**
+     * 目录下是否有符合条件的文件，找到第一个就返回
+     */
+    public static boolean hasFile(String dir, String glob) {
+        Path path = Paths.get(dir);
+        if(!Files.isDirectory(path)) {
+            return false;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, StrUtils.checkBlank(glob) ? "*" : glob)) {
+            for (Path item : stream) {
+                if(!isHidden(item) && Files.isRegularFile(item)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+    }
+
+    private static boolean isHidden(Path path) {
+        if(path.getFileName().toString().startsWith(".")) {
+            return true;
+        }
+        try {
+            return Files.isHidden(path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 自然顺序比较：连续数字按数值比较（忽略前导0），数值相同时前导0少的在前，其他字符逐个比较
+     */
+    public static int compareNatural(String a, String b) {
+        int i = 0;
+        int j = 0;
+        int lengthA = a.length();
+        int lengthB = b.length();
+        while (i < lengthA && j < lengthB) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if(isDigit(ca) && isDigit(cb)) {
+                int startA = i;
+                int startB = j;
+                while (i < lengthA && a.charAt(i) == '0') {
+                    i++;
+                }
+                while (j < lengthB && b.charAt(j) == '0') {
+                    j++;
+                }
+                int digitsA = i;
+                int digitsB = j;
+                while (digitsA < lengthA && isDigit(a.charAt(digitsA))) {
+                    digitsA++;
+                }
+                while (digitsB < lengthB && isDigit(b.charAt(digitsB))) {
+                    digitsB++;
+                }
+                // 去掉前导0后位数多的数值大
+                int diff = (digitsA - i) - (digitsB - j);
+                if(diff != 0) {
+                    return diff;
+                }
+                while (i < digitsA) {
+                    int c = a.charAt(i++) - b.charAt(j++);
+                    if(c != 0) {
+                        return c;
+                    }
+                }
+                int zeros = (digitsA - startA) - (digitsB - startB);
+                if(zeros != 0) {
+                    return zeros;
+                }
+                continue;
+            }
+            if(ca != cb) {
+                return ca - cb;
+            }
+            i++;
+            j++;
+        }
+        return (lengthA - i) - (lengthB - j);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,211 @@
+package com.ffmpeg.common.utils;
+
+import com.ffmpeg.common.FFMpegException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 简单的JSON解析，只用于解析ffprobe的输出，不引入第三方依赖
+ *
+ * 对象解析为 Map，数组解析为 List，数字解析为 Long 或 Double
+ *
+ * @author alan.chen
+ * @date 2020/7/20 2:10 PM
+ */
+public class JsonParser {
+
+    private final String json;
+
+    private int pos;
+
+    private JsonParser(String json) {
+        this.json = json;
+    }
+
+    public static Object parse(String json) {
+        JsonParser parser = new JsonParser(json);
+        parser.skipWhitespace();
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if(parser.pos != json.length()) {
+            throw parser.error("unexpected content");
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String json) {
+        Object value = parse(json);
+        if(!(value instanceof Map)) {
+            throw new FFMpegException("json is not an object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private Object readValue() {
+        if(pos >= json.length()) {
+            throw error("unexpected end");
+        }
+        char c = json.charAt(pos);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                return readNumber();
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if(peek() == '}') {
+            pos++;
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            consume(':');
+            skipWhitespace();
+            map.put(key, readValue());
+            skipWhitespace();
+            char c = next();
+            if(c == '}') {
+                return map;
+            }
+            if(c != ',') {
+                throw error("expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> list = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if(peek() == ']') {
+            pos++;
+            return list;
+        }
+        while (true) {
+            skipWhitespace();
+            list.add(readValue());
+            skipWhitespace();
+            char c = next();
+            if(c == ']') {
+                return list;
+            }
+            if(c != ',') {
+                throw error("expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() {
+        consume('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            char c = next();
+            if(c == '"') {
+                return sb.toString();
+            }
+            if(c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char escape = next();
+            switch (escape) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if(pos + 4 > json.length()) {
+                        throw error("invalid unicode escape");
+                    }
+                    sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(escape);
+            }
+        }
+    }
+
+    private Number readNumber() {
+        int start = pos;
+        boolean decimal = false;
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if(c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if(!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            pos++;
+        }
+        if(start == pos) {
+            throw error("unexpected character");
+        }
+        String number = json.substring(start, pos);
+        if(decimal) {
+            return Double.parseDouble(number);
+        }
+        return Long.parseLong(number);
+    }
+
+    private void expect(String literal) {
+        if(!json.startsWith(literal, pos)) {
+            throw error("expected " + literal);
+        }
+        pos += literal.length();
+    }
+
+    private void consume(char c) {
+        if(next() != c) {
+            throw error("expected '" + c + "'");
+        }
+    }
+
+    private char peek() {
+        if(pos >= json.length()) {
+            throw error("unexpected end");
+        }
+        return json.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private FFMpegException error(String message) {
+        return new FFMpegException("invalid json at " + pos + ": " + message);
+    }
+}
@@ -0,0 +1,270 @@
+package com.ffmpeg.common.video;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.BaseFileUtil;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 长视频分段并行转码
+ *
+ * 单个ffmpeg进程转码长视频时只能用到部分CPU，分段并行转码步骤：
+ * <pre>
+ *  1. 按关键帧切分视频流（不重新编码）：
+ *     ffmpeg -y -i in.mp4 -map 0:v:0 -c copy -f segment -segment_time 30 -reset_timestamps 1 chunk_%05d.mkv
+ *  2. 多个进程同时转码各分段（只处理画面）：
+ *     ffmpeg -y -i chunk_00000.mkv -an -vf scale=360:640 -vcodec h264 part_00000.mkv
+ *  3. concat demuxer 无损拼接画面，音频从原视频一次编码，避免分段编码音频时每段开头的静音（priming）和时间戳不连续：
+ *     ffmpeg -f concat -safe 0 -i parts.txt -i in.mp4 -map 0:v -map 1:a? -c:v copy -acodec aac -y out.mp4
+ * </pre>
+ *
+ * 分段时间戳从0开始，拼接时由 concat demuxer 按分段时长重新计算，所以输出时间轴连续。
+ * 并行的进程数量同时受 parallelism 和进程执行器的并发数限制，每个分段转码都会应用超时和取消句柄，中间步骤不回调进度
+ *
+ * @author alan.chen
+ * @date 2020/7/30 11:05 AM
+ */
+public class ChunkedTranscodeJob {
+
+    private static final String CHUNK_PREFIX = "chunk_";
+
+    private static final String PART_PREFIX = "part_";
+
+    private static final String CHUNK_SUFFIX = ".mkv";
+
+    private final VideoOperation operation;
+
+    private final String inputVideo;
+
+    private int segmentSeconds = 30;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private String videoFilter;
+
+    private List<String> videoOptions = Arrays.asList("-vcodec", "h264");
+
+    private List<String> audioOptions = Arrays.asList("-acodec", "aac");
+
+    private String workDir;
+
+    ChunkedTranscodeJob(VideoOperation operation, String inputVideo) {
+        this.operation = operation;
+        this.inputVideo = inputVideo;
+    }
+
+    /**
+     * 每个分段的时长（秒），实际在该时间之后的第一个关键帧切分，默认30秒
+     */
+    public ChunkedTranscodeJob segmentSeconds(int segmentSeconds) {
+        if(segmentSeconds <= 0) {
+            throw new FFMpegException("非法参数，分段时长需大于0");
+        }
+        this.segmentSeconds = segmentSeconds;
+        return this;
+    }
+
+    /**
+     * 同时转码的分段数量，默认CPU核数
+     */
+    public ChunkedTranscodeJob parallelism(int parallelism) {
+        if(parallelism <= 0) {
+            throw new FFMpegException("非法参数，并行数量需大于0");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * 视频缩放，同 {@link VideoOperation#videoScale(String, String, String, String)}
+     */
+    public ChunkedTranscodeJob scale(String outWidth, String outHeight) {
+        return videoFilter("scale=" + outWidth + ":" + outHeight);
+    }
+
+    /**
+     * 画面滤镜，例如 scale=360:640、crop=1080:1080:0:420，多个滤镜使用逗号分隔
+     */
+    public ChunkedTranscodeJob videoFilter(String videoFilter) {
+        this.videoFilter = videoFilter;
+        return this;
+    }
+
+    /**
+     * 分段转码的视频参数，默认 -vcodec h264
+     */
+    public ChunkedTranscodeJob videoOptions(String... options) {
+        this.videoOptions = Arrays.asList(options);
+        return this;
+    }
+
+    /**
+     * 音频参数，默认 -acodec aac，不需要重新编码时使用 -acodec copy
+     */
+    public ChunkedTranscodeJob audioOptions(String... options) {
+        this.audioOptions = Arrays.asList(options);
+        return this;
+    }
+
+    /**
+     * 分段文件的临时目录，默认在系统临时目录下创建，执行结束后删除分段文件
+     */
+    public ChunkedTranscodeJob workDir(String workDir) {
+        this.workDir = workDir;
+        return this;
+    }
+
+    /**
+     * 执行转码
+     *
+     * @param outputVideo 输出视频绝对路径
+     * @return 切分、转码、拼接任一步骤失败时返回该步骤的结果
+     */
+    public Result execute(String outputVideo) {
+        if(StrUtils.checkBlank(outputVideo)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        BaseFileUtil.checkAndMkdir(outputVideo);
+
+        File dir = createWorkDir();
+        try {
+            // 中间步骤的进度没有意义，只回调最后拼接的进度
+            VideoOperation chunkOperation = operation.withProgressListener(null);
+
+            Result result = chunkOperation.execute("chunkedTranscode.split", splitCommands(dir));
+            if(result.getCode() != 0) {
+                return result;
+            }
+            List<File> chunks = listFiles(dir, CHUNK_PREFIX);
+            if(chunks.isEmpty()) {
+                Result missing = new Result();
+                missing.setCode(Result.CODE_OUTPUT_MISSING);
+                missing.setErrMessage(result.getErrMessage());
+                return missing;
+            }
+
+            List<File> parts = new ArrayList<>(chunks.size());
+            List<List<String>> commandsList = new ArrayList<>(chunks.size());
+            for (File chunk : chunks) {
+                File part = new File(dir, PART_PREFIX + chunk.getName().substring(CHUNK_PREFIX.length()));
+                parts.add(part);
+                commandsList.add(transcodeCommands(chunk, part));
+            }
+            for (Result item : chunkOperation.executeAll("chunkedTranscode.chunk", commandsList, parallelism, true)) {
+                if(item != null && item.getCode() != 0) {
+                    return item;
+                }
+            }
+
+            File partList = new File(dir, "parts.txt");
+            VideoFormatter.writeConcatList(parts, partList);
+            return operation.execute("chunkedTranscode.concat", concatCommands(partList, outputVideo));
+        } finally {
+            BaseFileUtil.deleteDir(dir);
+        }
+    }
+
+    List<String> splitCommands(File dir) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
+
+        commands.add("-map");
+        commands.add("0:v:0");
+        commands.add("-c");
+        commands.add("copy");
+
+        commands.add("-f");
+        commands.add("segment");
+        commands.add("-segment_time");
+        commands.add(String.valueOf(segmentSeconds));
+        commands.add("-reset_timestamps");
+        commands.add("1");
+
+        commands.add(new File(dir, CHUNK_PREFIX + "%05d" + CHUNK_SUFFIX).getAbsolutePath());
+        return commands;
+    }
+
+    List<String> transcodeCommands(File chunk, File part) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(chunk.getAbsolutePath());
+
+        commands.add("-an");
+        if(StrUtils.checkNotBlank(videoFilter)) {
+            commands.add("-vf");
+            commands.add(videoFilter);
+        }
+        commands.addAll(videoOptions);
+
+        commands.add(part.getAbsolutePath());
+        return commands;
+    }
+
+    List<String> concatCommands(File partList, String outputVideo) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        // 与 mergeMultiVideosByFile 相同的 concat demuxer 拼接，同时从原视频映射音频，省去一次中间文件
+        commands.add("-f");
+        commands.add("concat");
+        commands.add("-safe");
+        commands.add("0");
+        commands.add("-i");
+        commands.add(partList.getAbsolutePath());
+
+        commands.add("-i");
+        commands.add(inputVideo);
+
+        commands.add("-map");
+        commands.add("0:v");
+        commands.add("-map");
+        commands.add("1:a?");
+
+        commands.add("-c:v");
+        commands.add("copy");
+        commands.addAll(audioOptions);
+
+        commands.add("-y");
+        commands.add(outputVideo);
+        return commands;
+    }
+
+    private File createWorkDir() {
+        try {
+            if(StrUtils.checkNotBlank(workDir)) {
+                File parent = new File(workDir);
+                if(!parent.exists() && !parent.mkdirs()) {
+                    throw new FFMpegException("workDir create failed: " + workDir);
+                }
+                return Files.createTempDirectory(parent.toPath(), "ffmpeg_chunks_").toFile();
+            }
+            return Files.createTempDirectory("ffmpeg_chunks_").toFile();
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+    }
+
+    private static List<File> listFiles(File dir, String prefix) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix));
+        if(files == null) {
+            return new ArrayList<>();
+        }
+        // 分段序号固定5位，按名称排序即按时间排序
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+}
@@ -0,0 +1,50 @@
+package com.ffmpeg.common.video;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * direct ByteBuffer 池，按容量分组复用
+ *
+ * direct buffer 的分配和释放（依赖GC）都比较慢，同样尺寸的视频连续处理时复用缓冲区；
+ * 池中缓冲区的总大小不超过 {@link #MAX_POOLED_BYTES}，超出时直接丢弃
+ *
+ * @author alan.chen
+ * @date 2020/8/10 3:00 PM
+ */
+final class DirectBufferPool {
+
+    static final long MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+    private static final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>> POOL = new ConcurrentHashMap<>();
+
+    private static final AtomicLong POOLED_BYTES = new AtomicLong();
+
+    private DirectBufferPool() {
+    }
+
+    /**
+     * @return position为0、limit为capacity的缓冲区
+     */
+    static ByteBuffer acquire(int capacity) {
+        ConcurrentLinkedQueue<ByteBuffer> queue = POOL.get(capacity);
+        ByteBuffer buffer = queue != null ? queue.poll() : null;
+        if(buffer == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        POOLED_BYTES.addAndGet(-capacity);
+        buffer.clear();
+        return buffer;
+    }
+
+    static void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if(POOLED_BYTES.addAndGet(capacity) > MAX_POOLED_BYTES) {
+            POOLED_BYTES.addAndGet(-capacity);
+            return;
+        }
+        POOL.computeIfAbsent(capacity, key -> new ConcurrentLinkedQueue<>()).offer(buffer);
+    }
+}
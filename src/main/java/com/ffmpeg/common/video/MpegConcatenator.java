@@ -0,0 +1,330 @@
+package com.ffmpeg.common.video;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.metrics.FFmpegMetrics;
+import com.ffmpeg.common.metrics.TaskSample;
+import com.ffmpeg.common.response.Result;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * MPEG-TS / MPEG-PS 文件直接按字节拼接，不启动ffmpeg进程
+ *
+ * ffmpeg 的 concat: 协议本身就是把文件按顺序拼成一个字节流，流结构相同时可以直接拼接文件：
+ * <ul>
+ *     <li>TS：每个文件由完整的188字节包组成，解析开头的PAT/PMT，节目、PID、PCR PID和stream_type都相同</li>
+ *     <li>PS：解析开头的pack header和PES，MPEG-1/MPEG-2类型和stream_id集合都相同</li>
+ * </ul>
+ * 使用 {@link FileChannel#transferTo} 零拷贝写入输出文件，速度只受磁盘带宽限制；
+ * 不修正continuity_counter和时间戳，与 concat: 协议的输入相同
+ *
+ * @author alan.chen
+ * @date 2020/8/8 11:00 AM
+ */
+final class MpegConcatenator {
+
+    private static final int TS_PACKET_SIZE = 188;
+
+    private static final byte TS_SYNC = 0x47;
+
+    /**
+     * 只读取文件开头256KB检查流结构
+     */
+    private static final int SCAN_BYTES = 256 * 1024;
+
+    /**
+     * 每次transferTo的字节数，之间检查是否取消
+     */
+    private static final long TRANSFER_BYTES = 64L * 1024 * 1024;
+
+    private final String operation;
+
+    private final CancelToken cancelToken;
+
+    private final FFmpegMetrics metrics;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+
+    MpegConcatenator(String operation, CancelToken cancelToken, FFmpegMetrics metrics) {
+        this.operation = operation;
+        this.cancelToken = cancelToken;
+        this.metrics = metrics != null ? metrics : FFmpegMetrics.NOOP;
+    }
+
+    /**
+     * @return 拼接结果；输入不是本地文件、格式与输出文件后缀不一致或者流结构不同时返回null，由ffmpeg处理
+     */
+    Result concat(List<String> inputs, String output) {
+        String signature = null;
+        long bytesIn = 0;
+        try {
+            for (String input : inputs) {
+                File file = new File(input);
+                if(!file.isFile()) {
+                    return null;
+                }
+                String current = signature(file);
+                if(current == null || (signature != null && !signature.equals(current))) {
+                    return null;
+                }
+                signature = current;
+                bytesIn += file.length();
+            }
+        } catch (IOException | RuntimeException e) {
+            // 数据损坏时越界，由ffmpeg处理
+            return null;
+        }
+        if(signature == null || !matchesSuffix(signature.substring(0, signature.indexOf(':')), output)) {
+            return null;
+        }
+
+        metrics.taskStarted(operation);
+        long start = System.nanoTime();
+        Result result = new Result();
+        try (FileChannel out = FileChannel.open(new File(output).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String input : inputs) {
+                if(!transfer(new File(input), out)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            metrics.taskFinished(operation, new TaskSample(0, 0, System.nanoTime() - start, -1, bytesIn, 0));
+            new File(output).delete();
+            throw new FFMpegException(e);
+        }
+        if(cancelToken != null && cancelToken.isCancelled()) {
+            new File(output).delete();
+            result.setCode(Result.CODE_CANCELLED);
+            result.setErrMessage("task cancelled");
+        } else {
+            result.setCode(0);
+            result.setErrMessage("");
+        }
+        metrics.taskFinished(operation, new TaskSample(0, 0, System.nanoTime() - start, result.getCode(), bytesIn,
+                result.getCode() == 0 ? bytesIn : 0));
+        return result;
+    }
+
+    /**
+     * @return 取消时返回false
+     */
+    private boolean transfer(File input, FileChannel out) throws IOException {
+        try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                if(cancelToken != null && cancelToken.isCancelled()) {
+                    return false;
+                }
+                position += in.transferTo(position, Math.min(TRANSFER_BYTES, size - position), out);
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesSuffix(String format, String output) {
+        String name = output.toLowerCase(Locale.ROOT);
+        if("ts".equals(format)) {
+            return name.endsWith(".ts");
+        }
+        return name.endsWith(".mpg") || name.endsWith(".mpeg");
+    }
+
+    /**
+     * 读取文件开头，返回 格式:流结构，不能识别时返回null
+     */
+    private String signature(File file) throws IOException {
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // 读取文件开头
+            }
+        }
+        buffer.flip();
+        if(buffer.limit() >= TS_PACKET_SIZE && buffer.get(0) == TS_SYNC) {
+            if(file.length() % TS_PACKET_SIZE != 0) {
+                // 最后一个包不完整，拼接后会错位
+                return null;
+            }
+            return tsSignature();
+        }
+        if(buffer.limit() >= 14 && buffer.getInt(0) == 0x000001BA) {
+            return psSignature();
+        }
+        return null;
+    }
+
+    /**
+     * 解析PAT和PMT：ts:PMT PID/PCR PID/stream_type=PID,...;
+     * 只支持一个包内的section，开头找不到所有PMT时返回null
+     */
+    private String tsSignature() {
+        int[] pmtPids = null;
+        String[] programs = null;
+        int found = 0;
+        for (int packet = 0; packet + TS_PACKET_SIZE <= buffer.limit(); packet += TS_PACKET_SIZE) {
+            if(buffer.get(packet) != TS_SYNC) {
+                return null;
+            }
+            int b1 = buffer.get(packet + 1) & 0xFF;
+            int pid = ((b1 & 0x1F) << 8) | (buffer.get(packet + 2) & 0xFF);
+            boolean payloadStart = (b1 & 0x40) != 0;
+            int section = sectionStart(packet, payloadStart);
+            if(section < 0) {
+                continue;
+            }
+            if(pid == 0 && pmtPids == null && (buffer.get(section) & 0xFF) == 0x00) {
+                pmtPids = parsePat(section, packet + TS_PACKET_SIZE);
+                if(pmtPids == null || pmtPids.length == 0) {
+                    return null;
+                }
+                programs = new String[pmtPids.length];
+                continue;
+            }
+            if(pmtPids == null) {
+                continue;
+            }
+            for (int i = 0; i < pmtPids.length; i++) {
+                if(pmtPids[i] == pid && programs[i] == null && (buffer.get(section) & 0xFF) == 0x02) {
+                    programs[i] = parsePmt(pid, section, packet + TS_PACKET_SIZE);
+                    if(programs[i] == null) {
+                        return null;
+                    }
+                    found++;
+                }
+            }
+            if(found == pmtPids.length) {
+                StringBuilder signature = new StringBuilder("ts:");
+                for (String program : programs) {
+                    signature.append(program).append(';');
+                }
+                return signature.toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return PSI section 的开始位置，不是section开头的包返回-1
+     */
+    private int sectionStart(int packet, boolean payloadStart) {
+        if(!payloadStart) {
+            return -1;
+        }
+        int adaptation = (buffer.get(packet + 3) >> 4) & 0x3;
+        if((adaptation & 0x1) == 0) {
+            return -1;
+        }
+        int payload = packet + 4;
+        if((adaptation & 0x2) != 0) {
+            payload += 1 + (buffer.get(payload) & 0xFF);
+        }
+        if(payload >= packet + TS_PACKET_SIZE) {
+            return -1;
+        }
+        int section = payload + 1 + (buffer.get(payload) & 0xFF);
+        return section + 3 <= packet + TS_PACKET_SIZE ? section : -1;
+    }
+
+    private int sectionEnd(int section, int packetEnd) {
+        int length = ((buffer.get(section + 1) & 0x0F) << 8) | (buffer.get(section + 2) & 0xFF);
+        int end = section + 3 + length - 4;
+        return end <= packetEnd ? end : -1;
+    }
+
+    private int[] parsePat(int section, int packetEnd) {
+        int end = sectionEnd(section, packetEnd);
+        if(end < 0) {
+            return null;
+        }
+        TreeSet<Integer> pids = new TreeSet<>();
+        for (int i = section + 8; i + 4 <= end; i += 4) {
+            int program = ((buffer.get(i) & 0xFF) << 8) | (buffer.get(i + 1) & 0xFF);
+            if(program != 0) {
+                pids.add(((buffer.get(i + 2) & 0x1F) << 8) | (buffer.get(i + 3) & 0xFF));
+            }
+        }
+        int[] result = new int[pids.size()];
+        int index = 0;
+        for (Integer pid : pids) {
+            result[index++] = pid;
+        }
+        return result;
+    }
+
+    private String parsePmt(int pmtPid, int section, int packetEnd) {
+        int end = sectionEnd(section, packetEnd);
+        if(end < 0) {
+            return null;
+        }
+        int pcrPid = ((buffer.get(section + 8) & 0x1F) << 8) | (buffer.get(section + 9) & 0xFF);
+        int infoLength = ((buffer.get(section + 10) & 0x0F) << 8) | (buffer.get(section + 11) & 0xFF);
+        StringBuilder program = new StringBuilder().append(pmtPid).append('/').append(pcrPid);
+        for (int i = section + 12 + infoLength; i + 5 <= end; ) {
+            int streamType = buffer.get(i) & 0xFF;
+            int pid = ((buffer.get(i + 1) & 0x1F) << 8) | (buffer.get(i + 2) & 0xFF);
+            int esInfoLength = ((buffer.get(i + 3) & 0x0F) << 8) | (buffer.get(i + 4) & 0xFF);
+            program.append('/').append(streamType).append('=').append(pid);
+            i += 5 + esInfoLength;
+        }
+        return program.toString();
+    }
+
+    /**
+     * 按pack header和PES长度遍历：ps:mpeg1|mpeg2:stream_id,...
+     */
+    private String psSignature() {
+        boolean mpeg2 = (buffer.get(4) & 0xC0) == 0x40;
+        TreeSet<Integer> streamIds = new TreeSet<>();
+        int position = 0;
+        while (position + 6 <= buffer.limit()) {
+            int startCode = buffer.getInt(position);
+            if((startCode >>> 8) != 0x000001) {
+                return null;
+            }
+            int id = startCode & 0xFF;
+            if(id == 0xB9) {
+                // program end
+                break;
+            }
+            if(id == 0xBA) {
+                boolean packMpeg2 = (buffer.get(position + 4) & 0xC0) == 0x40;
+                if(packMpeg2 != mpeg2) {
+                    return null;
+                }
+                if(!mpeg2) {
+                    position += 12;
+                } else if(position + 14 <= buffer.limit()) {
+                    position += 14 + (buffer.get(position + 13) & 0x07);
+                } else {
+                    break;
+                }
+                continue;
+            }
+            if(id < 0xBB) {
+                return null;
+            }
+            if(id == 0xBD || (id >= 0xC0 && id <= 0xEF)) {
+                streamIds.add(id);
+            }
+            position += 6 + (buffer.getShort(position + 4) & 0xFFFF);
+        }
+        if(streamIds.isEmpty()) {
+            return null;
+        }
+        StringBuilder signature = new StringBuilder("ps:").append(mpeg2 ? "mpeg2" : "mpeg1");
+        for (Integer id : streamIds) {
+            signature.append(',').append(Integer.toHexString(id));
+        }
+        return signature.toString();
+    }
+}
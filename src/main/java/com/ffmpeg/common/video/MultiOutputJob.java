@@ -0,0 +1,236 @@
+package com.ffmpeg.common.video;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.probe.MediaInfo;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.BaseFileUtil;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对同一个视频生成多个输出（封面图、多种尺寸、去除音频、提取音频等），只启动一个ffmpeg进程，输入只解码一次
+ *
+ * 需要处理画面的输出通过 split 滤镜共享解码后的画面，不需要处理的输出直接复制流
+ *
+ * <pre>
+ *  ffmpeg -y -i in.mp4 -filter_complex "[0:v]split=2[v0][v1];[v0]select=gte(t\,1)[o0];[v1]scale=360:640[o1]"
+ *         -map [o0] -frames:v 1 cover.jpg
+ *         -map [o1] -map 0:a? -acodec aac -vcodec h264 360.mp4
+ *         -map 0:v -an -vcodec copy nosound.mp4
+ *         -map 0:a? -vn bgm.mp3
+ * </pre>
+ * 设置了 {@link VideoOperation#withMediaProbe} 并且输入没有音频时，不生成提取音频的输出（返回 {@link Result#CODE_OUTPUT_MISSING}），
+ * 否则ffmpeg会因为输出文件没有任何流而整体失败
+ *
+ * @author alan.chen
+ * @date 2020/7/28 10:30 AM
+ */
+public class MultiOutputJob {
+
+    private final VideoOperation operation;
+
+    private final String inputVideo;
+
+    private final List<Output> outputs = new ArrayList<>();
+
+    MultiOutputJob(VideoOperation operation, String inputVideo) {
+        this.operation = operation;
+        this.inputVideo = inputVideo;
+    }
+
+    /**
+     * 获取视频第1秒的画面作为封面图，同 {@link VideoOperation#getVideoCoverImg(String, String)}
+     *
+     * @param coverOut 图片输出路径
+     */
+    public MultiOutputJob coverImage(String coverOut) {
+        List<String> options = new ArrayList<>();
+        options.add("-frames:v");
+        options.add("1");
+        return addOutput("select=gte(t\\,1)", options, coverOut);
+    }
+
+    /**
+     * 视频缩放，同 {@link VideoOperation#videoScale(String, String, String, String)}
+     *
+     * @param outWidth 处理之后的视频的宽度
+     * @param outHeight 处理之后的视频高度
+     * @param outputVideo 处理之后生成的新的视频绝对路径
+     */
+    public MultiOutputJob scale(String outWidth, String outHeight, String outputVideo) {
+        List<String> options = new ArrayList<>();
+        options.add("-map");
+        options.add("0:a?");
+        options.add("-acodec");
+        options.add("aac");
+        options.add("-vcodec");
+        options.add("h264");
+        return addOutput("scale=" + outWidth + ":" + outHeight, options, outputVideo);
+    }
+
+    /**
+     * 去除视频的音频，同 {@link VideoOperation#wipeAudio(String, String)}
+     *
+     * @param outputVideo 输出视频绝对路径
+     */
+    public MultiOutputJob wipeAudio(String outputVideo) {
+        List<String> options = new ArrayList<>();
+        options.add("-map");
+        options.add("0:v");
+        options.add("-an");
+        options.add("-vcodec");
+        options.add("copy");
+        return addOutput(null, options, outputVideo);
+    }
+
+    /**
+     * 从视频中提取音频，同 AudioOperation.getBgmFromVideo(String, String)
+     *
+     * @param outAudio 输出音频绝对路径
+     */
+    public MultiOutputJob extractAudio(String outAudio) {
+        List<String> options = new ArrayList<>();
+        options.add("-map");
+        options.add("0:a?");
+        options.add("-vn");
+        return addOutput(null, options, outAudio, true);
+    }
+
+    /**
+     * 自定义输出
+     *
+     * @param videoFilter 画面滤镜，例如 crop=1080:1080:0:420，为null时不处理画面（需要在options中指定 -map）
+     * @param options 输出参数，例如 -vcodec h264
+     * @param outputPath 输出绝对路径
+     */
+    public MultiOutputJob addOutput(String videoFilter, List<String> options, String outputPath) {
+        return addOutput(videoFilter, options, outputPath, false);
+    }
+
+    private MultiOutputJob addOutput(String videoFilter, List<String> options, String outputPath, boolean audioOnly) {
+        if(StrUtils.checkBlank(outputPath)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        outputs.add(new Output(videoFilter, options, outputPath, audioOnly));
+        return this;
+    }
+
+    /**
+     * 执行任务
+     *
+     * @return 每个输出对应的结果，key为输出路径，按添加顺序排列；
+     *         进程失败时所有输出返回进程的结果，进程成功但没有生成某个输出、或者输入没有音频不生成提取音频的输出时，
+     *         该输出的code为 {@link Result#CODE_OUTPUT_MISSING}
+     */
+    public Map<String, Result> execute() {
+        if(outputs.isEmpty()) {
+            throw new FFMpegException("至少需要一个输出");
+        }
+        for (Output output : outputs) {
+            BaseFileUtil.checkAndMkdir(output.path);
+        }
+        MediaInfo info = operation.probeIfPresent(inputVideo);
+        List<Output> included = new ArrayList<>();
+        for (Output output : outputs) {
+            if(!output.audioOnly || info == null || info.getAudioStream() != null) {
+                included.add(output);
+            }
+        }
+        Result result = included.isEmpty() ? null : operation.execute("multiOutput", buildCommands(included));
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (Output output : outputs) {
+            Result item = new Result();
+            File file = new File(output.path);
+            if(!included.contains(output)) {
+                item.setCode(Result.CODE_OUTPUT_MISSING);
+                item.setErrMessage("input has no audio stream");
+            } else if(result.getCode() == 0 && (!file.isFile() || file.length() == 0)) {
+                item.setCode(Result.CODE_OUTPUT_MISSING);
+                item.setErrMessage(result.getErrMessage());
+            } else {
+                item.setCode(result.getCode());
+                item.setErrMessage(result.getErrMessage());
+            }
+            results.put(output.path, item);
+        }
+        return results;
+    }
+
+    List<String> buildCommands(List<Output> outputs) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
+
+        List<Output> filtered = new ArrayList<>();
+        for (Output output : outputs) {
+            if(output.videoFilter != null) {
+                filtered.add(output);
+            }
+        }
+        if(!filtered.isEmpty()) {
+            commands.add("-filter_complex");
+            commands.add(filterGraph(filtered));
+        }
+
+        int label = 0;
+        for (Output output : outputs) {
+            if(output.videoFilter != null) {
+                commands.add("-map");
+                commands.add("[o" + label++ + "]");
+            }
+            commands.addAll(output.options);
+            commands.add(output.path);
+        }
+        return commands;
+    }
+
+    /**
+     * [0:v]split=2[v0][v1];[v0]filter0[o0];[v1]filter1[o1]
+     */
+    private static String filterGraph(List<Output> filtered) {
+        StringBuilder graph = new StringBuilder();
+        if(filtered.size() == 1) {
+            return graph.append("[0:v]").append(filtered.get(0).videoFilter).append("[o0]").toString();
+        }
+        graph.append("[0:v]split=").append(filtered.size());
+        for (int i = 0; i < filtered.size(); i++) {
+            graph.append("[v").append(i).append("]");
+        }
+        for (int i = 0; i < filtered.size(); i++) {
+            graph.append(";[v").append(i).append("]")
+                    .append(filtered.get(i).videoFilter)
+                    .append("[o").append(i).append("]");
+        }
+        return graph.toString();
+    }
+
+    private static class Output {
+
+        final String videoFilter;
+
+        final List<String> options;
+
+        final String path;
+
+        /**
+         * 只输出音频，输入没有音频时不生成
+         */
+        final boolean audioOnly;
+
+        Output(String videoFilter, List<String> options, String path, boolean audioOnly) {
+            this.videoFilter = videoFilter;
+            this.options = options;
+            this.path = path;
+            this.audioOnly = audioOnly;
+        }
+    }
+}
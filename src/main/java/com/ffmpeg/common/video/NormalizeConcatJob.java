@@ -0,0 +1,514 @@
+package com.ffmpeg.common.video;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.probe.MediaInfo;
+import com.ffmpeg.common.probe.StreamInfo;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.BaseFileUtil;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 合并分辨率、帧率、编码不同的多个视频
+ *
+ * concat demuxer 无损拼接要求所有视频的编码参数相同，否则合成视频不正确。步骤：
+ * <pre>
+ *  1. 通过 {@link VideoOperation#withMediaProbe} 获取每个视频的信息，与目标参数
+ *     （h264/yuv420p、宽高、帧率，aac、采样率、声道）一致的视频不转码
+ *  2. 所有视频都一致并且SPS/PPS（ffprobe的extradata_hash）、时间基相同时，concat demuxer 直接拼接原文件
+ *  3. 否则只把不一致的视频并行转码为TS，缩放后居中补黑边，没有音频的补静音，档次和级别使用目标参数所在视频的：
+ *     ffmpeg -y -i in.mov -map 0:v:0 -map 0:a:0 -vf scale=720:1280:force_original_aspect_ratio=decrease,pad=720:1280:(ow-iw)/2:(oh-ih)/2,setsar=1,fps=30000/1001
+ *            -pix_fmt yuv420p -c:v h264 -profile:v high -level 3.1 -c:a aac -ar 44100 -ac 2 -f mpegts part_00001.ts
+ *     一致的视频只复制转封装为TS，SPS/PPS写入每个关键帧前：
+ *     ffmpeg -y -i in.mp4 -map 0:v:0 -map 0:a:0 -c copy -bsf:v h264_mp4toannexb -f mpegts part_00000.ts
+ *  4. concat demuxer 复制拼接所有TS，输出为MP4/MOV时使用 avc3 标记，表示SPS/PPS在码流中
+ * </pre>
+ * 转码后的视频与原文件的SPS/PPS不同，MP4在文件头（avcC）只保存一份编码参数，直接混合拼接后无法正常解码，
+ * 所以中间文件使用TS，每段自带编码参数；耗时只和需要转码的视频有关，一致的视频只有复制的开销。
+ * 没有设置目标参数时，选择已经符合编码要求的视频中总时长最多的一组宽高、帧率和音频参数，
+ * 都不符合时使用第一个视频的宽高和帧率；帧率使用ffprobe输出的分数，30000/1001 不会变成 29.970
+ *
+ * @author alan.chen
+ * @date 2020/8/13 10:40 AM
+ */
+public class NormalizeConcatJob {
+
+    private static final String VIDEO_CODEC = "h264";
+
+    private static final String PIX_FMT = "yuv420p";
+
+    private static final String AUDIO_CODEC = "aac";
+
+    private static final String PART_PREFIX = "part_";
+
+    /**
+     * 文件头只保存一份编码参数的格式，拼接TS时使用 avc3 标记
+     */
+    private static final List<String> AVC3_SUFFIXES = Arrays.asList(".mp4", ".m4v", ".mov");
+
+    private final VideoOperation operation;
+
+    private final List<String> inputs;
+
+    private int width;
+
+    private int height;
+
+    private double fps;
+
+    private int sampleRate;
+
+    private int channels;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private List<String> videoOptions = new ArrayList<>();
+
+    private String workDir;
+
+    NormalizeConcatJob(VideoOperation operation, List<String> inputs) {
+        this.operation = operation;
+        this.inputs = inputs;
+    }
+
+    /**
+     * 输出的宽高，默认见类说明
+     */
+    public NormalizeConcatJob size(int width, int height) {
+        if(width <= 0 || height <= 0 || width % 2 != 0 || height % 2 != 0) {
+            throw new FFMpegException("非法参数，宽高需为大于0的偶数");
+        }
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    /**
+     * 输出的帧率
+     */
+    public NormalizeConcatJob fps(double fps) {
+        if(fps <= 0) {
+            throw new FFMpegException("非法参数，帧率需大于0");
+        }
+        this.fps = fps;
+        return this;
+    }
+
+    /**
+     * 输出音频的采样率和声道数
+     */
+    public NormalizeConcatJob audio(int sampleRate, int channels) {
+        if(sampleRate <= 0 || channels <= 0) {
+            throw new FFMpegException("非法参数，采样率和声道数需大于0");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        return this;
+    }
+
+    /**
+     * 同时转码的视频数量，默认CPU核数
+     */
+    public NormalizeConcatJob parallelism(int parallelism) {
+        if(parallelism <= 0) {
+            throw new FFMpegException("非法参数，并行数量需大于0");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * 转码的其他视频参数，例如 -preset veryfast -crf 23
+     */
+    public NormalizeConcatJob videoOptions(String... options) {
+        this.videoOptions = Arrays.asList(options);
+        return this;
+    }
+
+    /**
+     * 转码文件的临时目录，默认在系统临时目录下创建，执行结束后删除
+     */
+    public NormalizeConcatJob workDir(String workDir) {
+        this.workDir = workDir;
+        return this;
+    }
+
+    /**
+     * 执行合并
+     *
+     * @param outputVideo 输出视频绝对路径
+     * @return 转码、拼接任一步骤失败时返回该步骤的结果
+     */
+    public Result execute(String outputVideo) {
+        if(StrUtils.checkBlank(outputVideo)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        BaseFileUtil.checkAndMkdir(outputVideo);
+
+        List<MediaInfo> infos = probeAll();
+        Profile target = target(infos);
+        if(sameParameterSets(infos, target)) {
+            return concatOriginals(outputVideo);
+        }
+
+        File dir = createWorkDir();
+        try {
+            List<File> parts = new ArrayList<>(inputs.size());
+            List<List<String>> commandsList = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                MediaInfo info = infos.get(i);
+                File part = new File(dir, String.format(Locale.ROOT, "%s%05d.ts", PART_PREFIX, i));
+                parts.add(part);
+                commandsList.add(target.matches(info) ? remuxCommands(inputs.get(i), part)
+                        : normalizeCommands(inputs.get(i), info, target, part));
+            }
+
+            // 中间步骤的进度没有意义，只回调最后拼接的进度
+            VideoOperation partOperation = operation.withProgressListener(null);
+            for (Result item : partOperation.executeAll("normalizeConcat.normalize", commandsList, parallelism, true)) {
+                if(item != null && item.getCode() != 0) {
+                    return item;
+                }
+            }
+
+            File listFile = new File(dir, "parts.txt");
+            VideoFormatter.writeConcatList(parts, listFile);
+            return operation.execute("normalizeConcat", concatCommands(listFile, outputVideo));
+        } finally {
+            BaseFileUtil.deleteDir(dir);
+        }
+    }
+
+    /**
+     * 所有视频都与目标参数一致，并且SPS/PPS和时间基都相同（没有extradata_hash时认为不同）
+     */
+    private static boolean sameParameterSets(List<MediaInfo> infos, Profile target) {
+        StreamInfo first = infos.get(0).getVideoStream();
+        for (MediaInfo info : infos) {
+            StreamInfo video = info.getVideoStream();
+            if(!target.matches(info) || StrUtils.checkBlank(video.getExtradataHash())
+                    || !video.getExtradataHash().equals(first.getExtradataHash())
+                    || !Objects.equals(video.getTimeBase(), first.getTimeBase())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Result concatOriginals(String outputVideo) {
+        File dir = createWorkDir();
+        try {
+            List<File> files = new ArrayList<>(inputs.size());
+            for (String input : inputs) {
+                files.add(new File(input));
+            }
+            File listFile = new File(dir, "parts.txt");
+            VideoFormatter.writeConcatList(files, listFile);
+            return operation.mergeMultiVideosByFile(listFile, outputVideo);
+        } finally {
+            BaseFileUtil.deleteDir(dir);
+        }
+    }
+
+    private List<MediaInfo> probeAll() {
+        List<CompletableFuture<MediaInfo>> futures = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            futures.add(CompletableFuture.supplyAsync(() -> operation.probe(input), VideoOperation.getWorkerExecutor()));
+        }
+        List<MediaInfo> infos = new ArrayList<>(inputs.size());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                MediaInfo info = futures.get(i).join();
+                if(info.getVideoStream() == null) {
+                    throw new FFMpegException("no video stream: " + inputs.get(i));
+                }
+                infos.add(info);
+            }
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new FFMpegException(e.getCause());
+        }
+        return infos;
+    }
+
+    /**
+     * 目标参数：设置的参数优先，其余取符合编码要求的视频中总时长最多的一组，档次和级别取这一组的第一个视频
+     */
+    Profile target(List<MediaInfo> infos) {
+        Map<Profile, Double> durations = new LinkedHashMap<>();
+        for (MediaInfo info : infos) {
+            Profile profile = Profile.of(info);
+            if(profile != null) {
+                durations.merge(profile, Math.max(info.getDuration(), 0.001), Double::sum);
+            }
+        }
+        Profile best = null;
+        double bestDuration = -1;
+        for (Map.Entry<Profile, Double> entry : durations.entrySet()) {
+            if(entry.getValue() > bestDuration) {
+                best = entry.getKey();
+                bestDuration = entry.getValue();
+            }
+        }
+        if(best == null) {
+            StreamInfo video = infos.get(0).getVideoStream();
+            int rotation = video.getRotation();
+            boolean swap = rotation == 90 || rotation == 270;
+            best = new Profile(even(swap ? video.getHeight() : video.getWidth()), even(swap ? video.getWidth() : video.getHeight()),
+                    video.getFps() > 0 ? frameRate(video) : "25", 44100, 2, null, -1);
+        }
+        return new Profile(width > 0 ? width : best.width, height > 0 ? height : best.height,
+                fps > 0 ? rational(fps) : best.frameRate, sampleRate > 0 ? sampleRate : best.sampleRate,
+                channels > 0 ? channels : best.channels, best.profile, best.level);
+    }
+
+    /**
+     * 帧率分数，没有时使用小数
+     */
+    private static String frameRate(StreamInfo video) {
+        return StrUtils.checkNotBlank(video.getFrameRate()) ? video.getFrameRate() : rational(video.getFps());
+    }
+
+    private static String rational(double fps) {
+        return BigDecimal.valueOf(fps).stripTrailingZeros().toPlainString();
+    }
+
+    private static int even(int value) {
+        return Math.max(2, value - value % 2);
+    }
+
+    List<String> normalizeCommands(String input, MediaInfo info, Profile target, File part) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(input);
+
+        boolean silent = info.getAudioStream() == null;
+        if(silent) {
+            // 没有音频时补静音，拼接的文件需要有相同的流
+            commands.add("-f");
+            commands.add("lavfi");
+            commands.add("-i");
+            commands.add("anullsrc=channel_layout=" + (target.channels == 1 ? "mono" : "stereo")
+                    + ":sample_rate=" + target.sampleRate);
+        }
+
+        commands.add("-map");
+        commands.add("0:v:0");
+        commands.add("-map");
+        commands.add(silent ? "1:a" : "0:a:0");
+
+        commands.add("-vf");
+        commands.add(String.format(Locale.ROOT,
+                "scale=%d:%d:force_original_aspect_ratio=decrease,pad=%d:%d:(ow-iw)/2:(oh-ih)/2,setsar=1,fps=%s",
+                target.width, target.height, target.width, target.height, target.frameRate));
+        commands.add("-pix_fmt");
+        commands.add(PIX_FMT);
+        commands.add("-c:v");
+        commands.add(VIDEO_CODEC);
+        String profile = encoderProfile(target.profile);
+        if(profile != null) {
+            commands.add("-profile:v");
+            commands.add(profile);
+        }
+        if(target.level > 0) {
+            commands.add("-level");
+            commands.add(target.level / 10 + "." + target.level % 10);
+        }
+        commands.addAll(videoOptions);
+
+        commands.add("-c:a");
+        commands.add(AUDIO_CODEC);
+        commands.add("-ar");
+        commands.add(String.valueOf(target.sampleRate));
+        commands.add("-ac");
+        commands.add(String.valueOf(target.channels));
+
+        if(silent) {
+            commands.add("-shortest");
+        }
+
+        commands.add("-f");
+        commands.add("mpegts");
+        commands.add(part.getAbsolutePath());
+        return commands;
+    }
+
+    /**
+     * ffprobe输出的档次转换为编码器的参数，yuv420p只有这三种
+     */
+    private static String encoderProfile(String profile) {
+        if(profile == null) {
+            return null;
+        }
+        switch (profile) {
+            case "Baseline":
+            case "Constrained Baseline":
+                return "baseline";
+            case "Main":
+                return "main";
+            case "High":
+                return "high";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 与目标参数一致的视频只转封装为TS，不转码
+     */
+    List<String> remuxCommands(String input, File part) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(input);
+
+        commands.add("-map");
+        commands.add("0:v:0");
+        commands.add("-map");
+        commands.add("0:a:0");
+
+        commands.add("-c");
+        commands.add("copy");
+        // MP4的SPS/PPS在文件头，转为Annex B并写入每个关键帧前
+        commands.add("-bsf:v");
+        commands.add("h264_mp4toannexb");
+
+        commands.add("-f");
+        commands.add("mpegts");
+        commands.add(part.getAbsolutePath());
+        return commands;
+    }
+
+    private List<String> concatCommands(File listFile, String outputVideo) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-f");
+        commands.add("concat");
+        commands.add("-safe");
+        commands.add("0");
+        commands.add("-i");
+        commands.add(listFile.getAbsolutePath());
+
+        commands.add("-c");
+        commands.add("copy");
+        if(AVC3_SUFFIXES.contains(BaseFileUtil.suffix(outputVideo).toLowerCase(Locale.ROOT))) {
+            // 每段的SPS/PPS不同，使用码流中的编码参数
+            commands.add("-tag:v");
+            commands.add("avc3");
+            commands.add("-bsf:a");
+            commands.add("aac_adtstoasc");
+        }
+
+        commands.add("-y");
+        commands.add(outputVideo);
+        return commands;
+    }
+
+    private File createWorkDir() {
+        try {
+            if(StrUtils.checkNotBlank(workDir)) {
+                File parent = new File(workDir);
+                if(!parent.exists() && !parent.mkdirs()) {
+                    throw new FFMpegException("workDir create failed: " + workDir);
+                }
+                return Files.createTempDirectory(parent.toPath(), "ffmpeg_normalize_").toFile();
+            }
+            return Files.createTempDirectory("ffmpeg_normalize_").toFile();
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+    }
+
+    /**
+     * 拼接需要一致的流参数，编码固定为 h264/yuv420p 和 aac；档次和级别只作为转码参数，不参与比较，
+     * SPS/PPS在TS中随码流传输，不同的档次、级别可以拼接
+     */
+    static final class Profile {
+
+        private final int width;
+
+        private final int height;
+
+        /**
+         * 帧率分数，例如 30000/1001
+         */
+        private final String frameRate;
+
+        private final int sampleRate;
+
+        private final int channels;
+
+        private final String profile;
+
+        private final int level;
+
+        Profile(int width, int height, String frameRate, int sampleRate, int channels, String profile, int level) {
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.profile = profile;
+            this.level = level;
+        }
+
+        /**
+         * @return 编码不符合要求（需要转码）时返回null
+         */
+        static Profile of(MediaInfo info) {
+            StreamInfo video = info.getVideoStream();
+            StreamInfo audio = info.getAudioStream();
+            if(video == null || audio == null || video.getRotation() != 0
+                    || !VIDEO_CODEC.equals(video.getCodecName()) || !PIX_FMT.equals(video.getPixFmt())
+                    || !AUDIO_CODEC.equals(audio.getCodecName())
+                    || video.getWidth() <= 0 || video.getHeight() <= 0 || video.getFps() <= 0) {
+                return null;
+            }
+            return new Profile(video.getWidth(), video.getHeight(), frameRate(video), audio.getSampleRate(), audio.getChannels(),
+                    video.getProfile(), video.getLevel());
+        }
+
+        boolean matches(MediaInfo info) {
+            return equals(of(info));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Profile)) {
+                return false;
+            }
+            Profile other = (Profile) o;
+            return width == other.width && height == other.height && Objects.equals(frameRate, other.frameRate)
+                    && sampleRate == other.sampleRate && channels == other.channels;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, frameRate, sampleRate, channels);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.ffmpeg.common.video;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 解码后的一帧原始图像，参考 {@link RawFrameJob}
+ *
+ * 同一个任务的所有帧复用同一个对象和缓冲区，只在回调期间有效，需要保留时复制数据
+ *
+ * @author alan.chen
+ * @date 2020/8/10 3:20 PM
+ */
+public final class RawFrame {
+
+    private final int width;
+
+    private final int height;
+
+    private final RawFrameJob.PixelFormat pixelFormat;
+
+    private final ByteBuffer buffer;
+
+    private long index;
+
+    private double timestamp;
+
+    RawFrame(int width, int height, RawFrameJob.PixelFormat pixelFormat, ByteBuffer buffer) {
+        this.width = width;
+        this.height = height;
+        this.pixelFormat = pixelFormat;
+        this.buffer = buffer;
+    }
+
+    void set(long index, double timestamp) {
+        this.index = index;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return 像素数据（direct buffer），按行排列，每行 width * 每像素字节数，position为0，limit为帧大小
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return 帧序号，从0开始
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * @return 帧在原视频中的时间（秒），按帧率计算
+     */
+    public double getTimestamp() {
+        return timestamp;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public RawFrameJob.PixelFormat getPixelFormat() {
+        return pixelFormat;
+    }
+}
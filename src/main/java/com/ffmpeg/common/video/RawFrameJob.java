@@ -0,0 +1,279 @@
+package com.ffmpeg.common.video;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.probe.MediaInfo;
+import com.ffmpeg.common.response.Result;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 解码视频，通过stdout管道逐帧读取原始像素数据，不生成图片文件
+ * <pre>
+ *  ffmpeg -ss 10.000 -i in.mp4 -t 60.000 -map 0:v:0 -an -sn -dn -vf fps=2,scale=320:180 -f rawvideo -pix_fmt gray pipe:1
+ * </pre>
+ * 每帧大小固定（width * height * 每像素字节数），读入从 {@link DirectBufferPool} 获取的direct buffer，在读取线程中同步回调；
+ * 回调处理慢时不再读取管道，ffmpeg写满管道后自动暂停，不会积压数据。回调抛出异常时终止进程，execute() 抛出该异常
+ *
+ * 不设置 size() 时通过 {@link VideoOperation#withMediaProbe} 获取视频宽高（按旋转角度交换），
+ * 不设置 fps() 时按视频的平均帧率计算时间戳，都没有时时间戳为-1
+ *
+ * @author alan.chen
+ * @date 2020/8/10 3:40 PM
+ */
+public class RawFrameJob {
+
+    /**
+     * 输出像素格式
+     */
+    public enum PixelFormat {
+
+        /**
+         * 灰度，每像素1字节
+         */
+        GRAY("gray", 1),
+
+        /**
+         * RGB，每像素3字节
+         */
+        RGB24("rgb24", 3);
+
+        private final String name;
+
+        private final int bytesPerPixel;
+
+        PixelFormat(String name, int bytesPerPixel) {
+            this.name = name;
+            this.bytesPerPixel = bytesPerPixel;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getBytesPerPixel() {
+            return bytesPerPixel;
+        }
+    }
+
+    private final VideoOperation operation;
+
+    private final String inputVideo;
+
+    private PixelFormat pixelFormat = PixelFormat.GRAY;
+
+    private int width;
+
+    private int height;
+
+    private double fps;
+
+    private double startSeconds;
+
+    private double durationSeconds;
+
+    private long maxFrames;
+
+    RawFrameJob(VideoOperation operation, String inputVideo) {
+        this.operation = operation;
+        this.inputVideo = inputVideo;
+    }
+
+    /**
+     * 像素格式，默认 {@link PixelFormat#GRAY}
+     */
+    public RawFrameJob pixelFormat(PixelFormat pixelFormat) {
+        if(pixelFormat == null) {
+            throw new FFMpegException("非法参数，像素格式不能为空");
+        }
+        this.pixelFormat = pixelFormat;
+        return this;
+    }
+
+    /**
+     * 缩放到指定宽高
+     */
+    public RawFrameJob size(int width, int height) {
+        if(width <= 0 || height <= 0) {
+            throw new FFMpegException("非法参数，宽高需大于0");
+        }
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    /**
+     * 每秒输出的帧数，例如 fps(1) 每秒一帧，默认输出所有帧
+     */
+    public RawFrameJob fps(double fps) {
+        if(fps <= 0) {
+            throw new FFMpegException("非法参数，帧率需大于0");
+        }
+        this.fps = fps;
+        return this;
+    }
+
+    /**
+     * 开始时间（秒）
+     */
+    public RawFrameJob start(double startSeconds) {
+        if(startSeconds < 0) {
+            throw new FFMpegException("非法参数，开始时间不能小于0");
+        }
+        this.startSeconds = startSeconds;
+        return this;
+    }
+
+    /**
+     * 读取的时长（秒），默认到视频结尾
+     */
+    public RawFrameJob duration(double durationSeconds) {
+        if(durationSeconds <= 0) {
+            throw new FFMpegException("非法参数，时长需大于0");
+        }
+        this.durationSeconds = durationSeconds;
+        return this;
+    }
+
+    /**
+     * 最多输出的帧数
+     */
+    public RawFrameJob maxFrames(long maxFrames) {
+        if(maxFrames <= 0) {
+            throw new FFMpegException("非法参数，帧数需大于0");
+        }
+        this.maxFrames = maxFrames;
+        return this;
+    }
+
+    /**
+     * 执行解码，每一帧回调一次
+     *
+     * @param consumer 帧回调，帧对象和缓冲区只在回调期间有效，抛出异常时终止进程并抛出该异常
+     * @return 执行结果
+     */
+    public Result execute(Consumer<RawFrame> consumer) {
+        if(consumer == null) {
+            throw new FFMpegException("consumer must not be null");
+        }
+        int outWidth = width;
+        int outHeight = height;
+        double frameRate = fps;
+        if(outWidth <= 0 || frameRate <= 0) {
+            MediaInfo info = outWidth <= 0 ? operation.probe(inputVideo) : operation.probeIfPresent(inputVideo);
+            if(info != null && info.getVideoStream() != null) {
+                if(outWidth <= 0) {
+                    int rotation = info.getVideoStream().getRotation();
+                    boolean swap = rotation == 90 || rotation == 270;
+                    outWidth = swap ? info.getHeight() : info.getWidth();
+                    outHeight = swap ? info.getWidth() : info.getHeight();
+                }
+                if(frameRate <= 0) {
+                    frameRate = info.getFps();
+                }
+            }
+            if(outWidth <= 0 || outHeight <= 0) {
+                throw new FFMpegException("unknown video size: " + inputVideo);
+            }
+        }
+
+        long frameSize = (long) outWidth * outHeight * pixelFormat.getBytesPerPixel();
+        if(frameSize > Integer.MAX_VALUE) {
+            throw new FFMpegException("frame too large: " + outWidth + "x" + outHeight);
+        }
+        ByteBuffer buffer = DirectBufferPool.acquire((int) frameSize);
+        RawFrame frame = new RawFrame(outWidth, outHeight, pixelFormat, buffer);
+        double timeBase = frameRate > 0 ? frameRate : -1;
+        AtomicReference<RuntimeException> consumerError = new AtomicReference<>();
+        try {
+            return operation.execute("rawFrames", buildCommands(), stdout -> {
+                ReadableByteChannel channel = Channels.newChannel(stdout);
+                long index = 0;
+                while (true) {
+                    buffer.clear();
+                    try {
+                        readFully(channel, buffer);
+                    } catch (EOFException e) {
+                        // 结束，最后不完整的帧丢弃
+                        return;
+                    }
+                    buffer.flip();
+                    frame.set(index, timeBase > 0 ? startSeconds + index / timeBase : -1);
+                    try {
+                        consumer.accept(frame);
+                    } catch (RuntimeException e) {
+                        consumerError.set(e);
+                        throw e;
+                    }
+                    index++;
+                }
+            });
+        } catch (RuntimeException e) {
+            // 执行器包装了回调的异常，抛出原始异常
+            throw consumerError.get() != null ? consumerError.get() : e;
+        } finally {
+            DirectBufferPool.release(buffer);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    List<String> buildCommands() {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        if(startSeconds > 0) {
+            commands.add("-ss");
+            commands.add(String.format(Locale.ROOT, "%.3f", startSeconds));
+        }
+        commands.add("-i");
+        commands.add(inputVideo);
+        if(durationSeconds > 0) {
+            commands.add("-t");
+            commands.add(String.format(Locale.ROOT, "%.3f", durationSeconds));
+        }
+
+        commands.add("-map");
+        commands.add("0:v:0");
+        commands.add("-an");
+        commands.add("-sn");
+        commands.add("-dn");
+
+        List<String> filters = new ArrayList<>();
+        if(fps > 0) {
+            filters.add("fps=" + fps);
+        }
+        if(width > 0) {
+            filters.add("scale=" + width + ":" + height);
+        }
+        if(!filters.isEmpty()) {
+            commands.add("-vf");
+            commands.add(String.join(",", filters));
+        }
+        if(maxFrames > 0) {
+            commands.add("-frames:v");
+            commands.add(String.valueOf(maxFrames));
+        }
+
+        commands.add("-f");
+        commands.add("rawvideo");
+        commands.add("-pix_fmt");
+        commands.add(pixelFormat.getName());
+        commands.add("pipe:1");
+        return commands;
+    }
+}
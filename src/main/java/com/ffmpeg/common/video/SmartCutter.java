@@ -0,0 +1,285 @@
+package com.ffmpeg.common.video;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.probe.MediaInfo;
+import com.ffmpeg.common.probe.StreamInfo;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.BaseFileUtil;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按关键帧智能裁剪：中间完整的GOP直接复制，只重新编码开头和结尾不完整的GOP，再无损拼接
+ *
+ * <pre>
+ *  start      k1                          k2       end
+ *    |--编码--|-----------复制-------------|--编码--|
+ *
+ *  ffmpeg -y -ss start -i in.mp4 -t (k1-start) -map 0:v:0 -an -c:v libx264 -crf 18 -f mpegts 0.ts
+ *  ffmpeg -y -ss k1 -i in.mp4 -t (k2-k1) -map 0:v:0 -an -c:v copy -f mpegts 1.ts
+ *  ffmpeg -y -ss k2 -i in.mp4 -t (end-k2) -map 0:v:0 -an -c:v libx264 -crf 18 -f mpegts 2.ts
+ *  ffmpeg -f concat -safe 0 -i list.txt -ss start -t (end-start) -i in.ts -map 0:v -map 1:a? -c:v copy -acodec aac -y out.ts
+ * </pre>
+ *
+ * 三段同时执行，分段使用mpegts，每段自带编码参数（SPS/PPS），拼接后可以正常解码；
+ * 音频在最后一步从原视频按时间范围重新编码，没有分段边界
+ *
+ * 重新编码的片段和复制的片段编码参数不同，MP4/MOV/MKV等在文件头只保存一份编码参数（avcC/hvcC）的格式无法拼接，
+ * 所以只有输出为TS并且编码器在 {@link #ENCODERS} 中时才分段；否则开头和结尾都在关键帧上时直接复制，不在关键帧上时整段重新编码
+ *
+ * @author alan.chen
+ * @date 2020/8/6 2:30 PM
+ */
+final class SmartCutter {
+
+    /**
+     * 小于1毫秒的片段忽略
+     */
+    private static final double EPSILON = 0.001;
+
+    /**
+     * 解码器对应的编码器及参数，只包括可以在TS中拼接的编码，其他编码整段重新编码，使用输出格式默认的编码器
+     */
+    private static final Map<String, String[]> ENCODERS = new HashMap<>();
+
+    static {
+        ENCODERS.put("h264", new String[]{"libx264", "-crf", "18", "-preset", "fast"});
+        ENCODERS.put("hevc", new String[]{"libx265", "-crf", "20", "-preset", "fast"});
+        ENCODERS.put("mpeg2video", new String[]{"mpeg2video"});
+        ENCODERS.put("mpeg4", new String[]{"mpeg4"});
+    }
+
+    /**
+     * 可以拼接不同编码参数片段的输出格式
+     */
+    private static final Set<String> SPLICE_SUFFIXES = new HashSet<>(Arrays.asList(".ts", ".m2ts", ".mts"));
+
+    private final VideoOperation operation;
+
+    SmartCutter(VideoOperation operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * @param keyframes 时间范围内的关键帧时间，升序
+     */
+    Result cut(String inputVideo, MediaInfo info, double[] keyframes, double start, double end, String outputVideo) {
+        StreamInfo video = info.getVideoStream();
+        if(video == null) {
+            throw new FFMpegException("input has no video stream: " + inputVideo);
+        }
+
+        if(keyframes.length == 0 || keyframes[keyframes.length - 1] - keyframes[0] < EPSILON) {
+            // 时间范围内没有完整的GOP，全部重新编码
+            return operation.execute("smartCut.encode", encodeCommands(inputVideo, video, start, end, outputVideo));
+        }
+        double k1 = keyframes[0];
+        double k2 = keyframes[keyframes.length - 1];
+        boolean head = k1 - start > EPSILON;
+        boolean tail = end - k2 > EPSILON;
+        if((head || tail) && !canSplice(video, outputVideo)) {
+            return operation.execute("smartCut.encode", encodeCommands(inputVideo, video, start, end, outputVideo));
+        }
+
+        File dir;
+        try {
+            dir = Files.createTempDirectory("ffmpeg_smartcut_").toFile();
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+        try {
+            List<File> segments = new ArrayList<>();
+            List<List<String>> commandsList = new ArrayList<>();
+            if(head) {
+                commandsList.add(segmentEncodeCommands(inputVideo, video, start, k1, segment(dir, segments)));
+            }
+            commandsList.add(copyCommands(inputVideo, k1, k2, segment(dir, segments)));
+            if(tail) {
+                commandsList.add(segmentEncodeCommands(inputVideo, video, k2, end, segment(dir, segments)));
+            }
+
+            VideoOperation segmentOperation = operation.withProgressListener(null);
+            for (Result result : segmentOperation.executeAll("smartCut.segment", commandsList, commandsList.size(), true)) {
+                if(result != null && result.getCode() != 0) {
+                    return result;
+                }
+            }
+
+            File list = new File(dir, "list.txt");
+            VideoFormatter.writeConcatList(segments, list);
+            return operation.execute("smartCut.concat", concatCommands(list, inputVideo, start, end, outputVideo));
+        } finally {
+            BaseFileUtil.deleteDir(dir);
+        }
+    }
+
+    private static boolean canSplice(StreamInfo video, String outputVideo) {
+        return ENCODERS.containsKey(video.getCodecName())
+                && SPLICE_SUFFIXES.contains(BaseFileUtil.suffix(outputVideo).toLowerCase(Locale.ROOT));
+    }
+
+    private static File segment(File dir, List<File> segments) {
+        File segment = new File(dir, segments.size() + ".ts");
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * 整段重新编码视频和音频
+     */
+    private List<String> encodeCommands(String inputVideo, StreamInfo video, double start, double end, String outputVideo) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-y");
+        commands.add("-ss");
+        commands.add(seconds(start));
+
+        commands.add("-i");
+        commands.add(inputVideo);
+
+        commands.add("-t");
+        commands.add(seconds(end - start));
+
+        commands.add("-map");
+        commands.add("0:v:0");
+        commands.add("-map");
+        commands.add("0:a?");
+        commands.add("-sn");
+        commands.add("-dn");
+
+        String[] encoder = ENCODERS.get(video.getCodecName());
+        if(encoder != null) {
+            commands.add("-c:v");
+            commands.addAll(Arrays.asList(encoder));
+        }
+        addQualityOptions(commands, video, encoder);
+        commands.add("-acodec");
+        commands.add("aac");
+
+        commands.add(outputVideo);
+        return commands;
+    }
+
+    private List<String> segmentEncodeCommands(String inputVideo, StreamInfo video, double start, double end, File segment) {
+        List<String> commands = segmentCommands(inputVideo, seconds(start), end - start);
+
+        String[] encoder = ENCODERS.get(video.getCodecName());
+        commands.add("-c:v");
+        commands.addAll(Arrays.asList(encoder));
+        addQualityOptions(commands, video, encoder);
+
+        commands.add("-f");
+        commands.add("mpegts");
+        commands.add(segment.getAbsolutePath());
+        return commands;
+    }
+
+    /**
+     * 没有设置crf的编码器按原视频码率编码
+     */
+    private static void addQualityOptions(List<String> commands, StreamInfo video, String[] encoder) {
+        if((encoder == null || encoder.length == 1) && video.getBitRate() > 0) {
+            commands.add("-b:v");
+            commands.add(String.valueOf(video.getBitRate()));
+        }
+        if(StrUtils.checkNotBlank(video.getPixFmt())) {
+            commands.add("-pix_fmt");
+            commands.add(video.getPixFmt());
+        }
+    }
+
+    /**
+     * 开始时间向上取整到微秒，保证不小于关键帧的时间，否则会定位到前一个关键帧，多复制一个GOP
+     */
+    private List<String> copyCommands(String inputVideo, double start, double end, File segment) {
+        List<String> commands = segmentCommands(inputVideo, ceilSeconds(start), end - start);
+
+        commands.add("-c:v");
+        commands.add("copy");
+
+        commands.add("-f");
+        commands.add("mpegts");
+        commands.add(segment.getAbsolutePath());
+        return commands;
+    }
+
+    /**
+     * -ss 放在 -i 之前：复制时直接定位到关键帧，重新编码时解码到准确的时间点
+     */
+    private List<String> segmentCommands(String inputVideo, String start, double duration) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-y");
+        commands.add("-ss");
+        commands.add(start);
+
+        commands.add("-i");
+        commands.add(inputVideo);
+
+        commands.add("-t");
+        commands.add(seconds(duration));
+
+        commands.add("-map");
+        commands.add("0:v:0");
+        commands.add("-an");
+        commands.add("-sn");
+        commands.add("-dn");
+        return commands;
+    }
+
+    private List<String> concatCommands(File list, String inputVideo, double start, double end, String outputVideo) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-f");
+        commands.add("concat");
+        commands.add("-safe");
+        commands.add("0");
+        commands.add("-i");
+        commands.add(list.getAbsolutePath());
+
+        commands.add("-ss");
+        commands.add(seconds(start));
+        commands.add("-t");
+        commands.add(seconds(end - start));
+        commands.add("-i");
+        commands.add(inputVideo);
+
+        commands.add("-map");
+        commands.add("0:v");
+        commands.add("-map");
+        commands.add("1:a?");
+
+        commands.add("-c:v");
+        commands.add("copy");
+        commands.add("-acodec");
+        commands.add("aac");
+
+        commands.add("-y");
+        commands.add(outputVideo);
+        return commands;
+    }
+
+    private static String seconds(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static String ceilSeconds(double value) {
+        return BigDecimal.valueOf(value).setScale(6, RoundingMode.CEILING).toPlainString();
+    }
+}
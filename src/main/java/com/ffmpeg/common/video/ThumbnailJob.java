@@ -0,0 +1,183 @@
+package com.ffmpeg.common.video;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.probe.KeyframeIndex;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 按时间点截取多张图片
+ *
+ * {@link VideoOperation#getVideoCoverImgs(Integer, String, Integer, Integer, String)} 会解码截图时间段内的所有画面，
+ * 长视频稀疏截图时大部分解码都是浪费。这里每个时间点单独启动一个进程，-ss 放在 -i 之前，直接定位到时间点之前的关键帧，只解码一帧：
+ * <pre>
+ *  ffmpeg -ss 600.000000 -y -i in.mp4 -frames:v 1 -vf scale=160:-2 -q:v 2 001.jpg
+ * </pre>
+ * 多个进程并行执行，同时执行的进程数量同时受 parallelism 和进程执行器的并发数限制
+ *
+ * @author alan.chen
+ * @date 2020/7/30 4:40 PM
+ */
+public class ThumbnailJob {
+
+    private final VideoOperation operation;
+
+    private final String inputVideo;
+
+    private final List<Double> timestamps = new ArrayList<>();
+
+    private double intervalSeconds;
+
+    private String scale;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private boolean snapToKeyframe;
+
+    ThumbnailJob(VideoOperation operation, String inputVideo) {
+        this.operation = operation;
+        this.inputVideo = inputVideo;
+    }
+
+    /**
+     * 添加截图的时间点（秒）
+     */
+    public ThumbnailJob at(double... seconds) {
+        for (double second : seconds) {
+            if(second < 0) {
+                throw new FFMpegException("非法参数，截图时间不能小于0");
+            }
+            timestamps.add(second);
+        }
+        return this;
+    }
+
+    /**
+     * 在整个视频时长内每隔指定秒数截一张图，从0秒开始，视频时长通过 {@link VideoOperation#withMediaProbe} 获取
+     */
+    public ThumbnailJob every(double intervalSeconds) {
+        if(intervalSeconds <= 0) {
+            throw new FFMpegException("非法参数，截图间隔需大于0");
+        }
+        this.intervalSeconds = intervalSeconds;
+        return this;
+    }
+
+    /**
+     * 图片尺寸，例如 scale("160", "-2") 宽度160，高度按比例
+     */
+    public ThumbnailJob scale(String outWidth, String outHeight) {
+        this.scale = "scale=" + outWidth + ":" + outHeight;
+        return this;
+    }
+
+    /**
+     * 同时执行的进程数量，默认CPU核数
+     */
+    public ThumbnailJob parallelism(int parallelism) {
+        if(parallelism <= 0) {
+            throw new FFMpegException("非法参数，并行数量需大于0");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * 截图时间点对齐到之前最近的关键帧，只解码关键帧一帧，截图时间最多提前一个GOP，默认false；
+     * 关键帧通过 {@link com.ffmpeg.common.probe.MediaProbe#keyframeIndex(String)} 获取
+     */
+    public ThumbnailJob snapToKeyframe(boolean snapToKeyframe) {
+        this.snapToKeyframe = snapToKeyframe;
+        return this;
+    }
+
+    /**
+     * 执行截图
+     *
+     * @param coverOutPath 截图生成的路径（图片名称会以001 002... 命名，按时间点顺序）
+     * @return 每张图片对应的结果，key为图片路径，按时间点顺序排列；时间点超出视频时长时没有图片，code为 {@link Result#CODE_OUTPUT_MISSING}
+     */
+    public Map<String, Result> execute(String coverOutPath) {
+        if(StrUtils.checkBlank(coverOutPath)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        List<Double> points = points();
+        if(points.isEmpty()) {
+            throw new FFMpegException("至少需要一个截图时间点");
+        }
+        new File(coverOutPath).mkdirs();
+
+        List<String> paths = new ArrayList<>(points.size());
+        List<List<String>> commandsList = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            String path = coverOutPath + File.separator + String.format(Locale.ROOT, "%03d.jpg", i + 1);
+            paths.add(path);
+            commandsList.add(buildCommands(points.get(i), path));
+        }
+        List<Result> results = operation.withProgressListener(null).executeAll("thumbnails", commandsList, parallelism, false);
+
+        Map<String, Result> outputs = new LinkedHashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            Result result = results.get(i);
+            File file = new File(paths.get(i));
+            if(result.getCode() == 0 && (!file.isFile() || file.length() == 0)) {
+                result.setCode(Result.CODE_OUTPUT_MISSING);
+            }
+            outputs.put(paths.get(i), result);
+        }
+        return outputs;
+    }
+
+    private List<Double> points() {
+        List<Double> points = new ArrayList<>(timestamps);
+        if(intervalSeconds > 0) {
+            double duration = operation.probe(inputVideo).getDuration();
+            for (long i = 0; i * intervalSeconds < duration; i++) {
+                points.add(i * intervalSeconds);
+            }
+        }
+        if(snapToKeyframe) {
+            KeyframeIndex index = operation.keyframeIndex(inputVideo);
+            for (int i = 0; i < points.size(); i++) {
+                double keyframe = index.floor(points.get(i));
+                if(keyframe >= 0) {
+                    points.set(i, keyframe);
+                }
+            }
+        }
+        return points;
+    }
+
+    List<String> buildCommands(double second, String coverOut) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-ss");
+        commands.add(String.format(Locale.ROOT, "%.6f", second));
+
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
+
+        commands.add("-frames:v");
+        commands.add("1");
+
+        if(scale != null) {
+            commands.add("-vf");
+            commands.add(scale);
+        }
+
+        commands.add("-q:v");
+        commands.add("2");
+
+        commands.add(coverOut);
+        return commands;
+    }
+}
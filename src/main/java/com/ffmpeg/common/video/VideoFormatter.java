@@ -1,9 +1,13 @@
 package com.ffmpeg.common.video;
 
 import com.ffmpeg.common.FFMpegException;
-import com.ffmpeg.common.utils.BaseFileUtil;
+import com.ffmpeg.common.utils.DirectoryScanner;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 /**
@@ -39,19 +43,41 @@ public class VideoFormatter {
         return temp;
     }
 
+    /**
+     * 目录下的文件按文件名自然顺序（{@link DirectoryScanner}）追加写入concat demuxer的列表文件，路径中的单引号会被转义
+     *
+     * @param sourcePath 视频文件目录
+     * @param file 列表文件
+     */
     public static void writeVideoList(String sourcePath, File file) {
-        File[] files = BaseFileUtil.listFiles(sourcePath);
-        try(FileWriter fw = new FileWriter(file, true);
-            BufferedWriter bw = new BufferedWriter(fw)) {
+        List<Path> files = DirectoryScanner.scan(sourcePath, null);
+        try(BufferedWriter bw = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Path item : files) {
+                bw.write(concatEntry(item.toAbsolutePath().toString()));
+                bw.newLine();
+            }
+        } catch (IOException e) {
+            throw new FFMpegException(e);
+        }
+    }
 
+    private static String concatEntry(String path) {
+        return "file '" + path.replace("'", "'\\''") + "'";
+    }
 
+    /**
+     * 生成concat demuxer的列表文件（覆盖已有内容），路径中的单引号会被转义
+     *
+     * @param files 按顺序拼接的文件
+     * @param listFile 列表文件
+     */
+    public static void writeConcatList(List<File> files, File listFile) {
+        try(BufferedWriter bw = Files.newBufferedWriter(listFile.toPath(), StandardCharsets.UTF_8)) {
             for (File item : files) {
-                if(!item.isHidden()) {
-                    bw.write("file " + item.getAbsolutePath());
-                    bw.newLine();
-                }
+                bw.write(concatEntry(item.getAbsolutePath()));
+                bw.newLine();
             }
-            bw.flush();
         } catch (IOException e) {
             throw new FFMpegException(e);
         }
@@ -1,17 +1,43 @@
 package com.ffmpeg.common.video;
 
 import com.ffmpeg.common.FFMpegException;
-import com.ffmpeg.common.common.ProcessCommand;
-import com.ffmpeg.common.common.StreamHanlerCommon;
+import com.ffmpeg.common.audio.BgmCache;
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.common.FFmpegExecutor;
+import com.ffmpeg.common.common.NamedThreadFactory;
+import com.ffmpeg.common.common.OperationContext;
+import com.ffmpeg.common.common.Pipes;
+import com.ffmpeg.common.common.StdoutHandler;
+import com.ffmpeg.common.metrics.FFmpegMetrics;
+import com.ffmpeg.common.probe.KeyframeIndex;
+import com.ffmpeg.common.probe.MediaInfo;
+import com.ffmpeg.common.probe.MediaProbe;
+import com.ffmpeg.common.progress.ProgressListener;
 import com.ffmpeg.common.response.Result;
 import com.ffmpeg.common.utils.BaseFileUtil;
+import com.ffmpeg.common.utils.DirectoryScanner;
 import com.ffmpeg.common.utils.StrUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  *
@@ -20,19 +46,342 @@ import java.util.List;
  */
 public class VideoOperation {
 
+    /**
+     *  executeAll等内部并行步骤使用的线程池，与异步API的线程池分开：
+     *  外层调用本身在异步线程池中执行时，等待内部步骤不会因为线程池已满而死锁
+     */
+    private static final ExecutorService WORKER_EXECUTOR =
+            Executors.newCachedThreadPool(new NamedThreadFactory("ffmpeg-worker-"));
+
     /**
      *  ffmpeg文件路径
      */
     private String ffmpegEXE;
 
+    /**
+     *  执行器、超时时间、取消句柄等执行参数
+     */
+    private OperationContext context;
+
+    /**
+     *  获取输入文件信息，不传视频秒数等参数时使用
+     */
+    private MediaProbe mediaProbe;
+
+    /**
+     *  背景音乐预转码缓存，为null时每次直接使用原背景音乐
+     */
+    private BgmCache bgmCache;
+
     public VideoOperation(String ffmpegEXE) {
+        this(ffmpegEXE, null);
+    }
+
+    public VideoOperation(String ffmpegEXE, FFmpegExecutor executor) {
         this.ffmpegEXE = ffmpegEXE;
+        this.context = new OperationContext(executor);
+    }
+
+    private VideoOperation(VideoOperation source, OperationContext context) {
+        this.ffmpegEXE = source.ffmpegEXE;
+        this.context = context;
+        this.mediaProbe = source.mediaProbe;
+        this.bgmCache = source.bgmCache;
     }
 
     public static VideoOperation builder(String ffmpegEXE) {
         return new VideoOperation(ffmpegEXE);
     }
 
+    public static VideoOperation builder(String ffmpegEXE, FFmpegExecutor executor) {
+        return new VideoOperation(ffmpegEXE, executor);
+    }
+
+    /**
+     * 使用指定的执行器，返回新的操作对象
+     *
+     * @param executor 进程执行器
+     * @return
+     */
+    public VideoOperation withExecutor(FFmpegExecutor executor) {
+        return new VideoOperation(this, context.withExecutor(executor));
+    }
+
+    /**
+     * 异步API使用指定的线程池，返回新的操作对象
+     *
+     * @param asyncExecutor 线程池
+     * @return
+     */
+    public VideoOperation withAsyncExecutor(Executor asyncExecutor) {
+        return new VideoOperation(this, context.withAsyncExecutor(asyncExecutor));
+    }
+
+    /**
+     * 执行过程中回调进度信息，返回新的操作对象
+     *
+     * @param progressListener 进度回调
+     * @return
+     */
+    public VideoOperation withProgressListener(ProgressListener progressListener) {
+        return new VideoOperation(this, context.withProgressListener(progressListener));
+    }
+
+    /**
+     * 每次执行命令的超时时间，超时后终止进程并返回 {@link Result#CODE_TIMEOUT}，返回新的操作对象
+     *
+     * @param timeout 超时时间，小于等于0表示不限制
+     * @param unit 时间单位
+     * @return
+     */
+    public VideoOperation withTimeout(long timeout, TimeUnit unit) {
+        return new VideoOperation(this, context.withTimeoutMillis(unit.toMillis(timeout)));
+    }
+
+    /**
+     * 使用取消句柄，取消后终止进程并返回 {@link Result#CODE_CANCELLED}，返回新的操作对象
+     *
+     * @param cancelToken 取消句柄
+     * @return
+     */
+    public VideoOperation withCancelToken(CancelToken cancelToken) {
+        return new VideoOperation(this, context.withCancelToken(cancelToken));
+    }
+
+    /**
+     * 每个进程启动、结束时上报监控指标（排队时间、启动耗时、运行耗时、退出码、读写字节数），按方法名分组，返回新的操作对象
+     *
+     * @param metrics 监控指标，例如 {@link com.ffmpeg.common.metrics.InMemoryFFmpegMetrics}
+     * @return
+     */
+    public VideoOperation withMetrics(FFmpegMetrics metrics) {
+        return new VideoOperation(this, context.withMetrics(metrics));
+    }
+
+    String getFfmpegEXE() {
+        return ffmpegEXE;
+    }
+
+    /**
+     * 内部并行步骤使用的线程池，不使用 {@link #withAsyncExecutor} 设置的线程池，避免外层任务占满线程池后互相等待
+     */
+    static Executor getWorkerExecutor() {
+        return WORKER_EXECUTOR;
+    }
+
+    /**
+     * 对视频依次进行裁剪、缩放、调节帧数、旋转等处理，所有处理合并为一个滤镜链，只执行一次，参考 {@link VideoPipeline}
+     *
+     * @param inputVideo 原始视频绝对路径
+     * @return 处理流程，添加处理步骤后调用 execute() 执行
+     */
+    public VideoPipeline pipeline(String inputVideo) {
+        if(StrUtils.checkBlank(inputVideo)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        return new VideoPipeline(this, inputVideo);
+    }
+
+    /**
+     * 长视频分段并行转码，按关键帧切分后多个进程同时转码，参考 {@link ChunkedTranscodeJob}
+     *
+     * @param inputVideo 原始视频绝对路径
+     * @return 转码任务，设置参数后调用 execute() 执行
+     */
+    public ChunkedTranscodeJob chunkedTranscode(String inputVideo) {
+        if(StrUtils.checkBlank(inputVideo)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        return new ChunkedTranscodeJob(this, inputVideo);
+    }
+
+    /**
+     * 按时间点截取多张图片，每张图片单独快速定位后只解码一帧，多个进程并行执行，参考 {@link ThumbnailJob}
+     *
+     * @param inputVideo 原始视频绝对路径
+     * @return 截图任务，设置时间点后调用 execute() 执行
+     */
+    public ThumbnailJob thumbnails(String inputVideo) {
+        if(StrUtils.checkBlank(inputVideo)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        return new ThumbnailJob(this, inputVideo);
+    }
+
+    /**
+     * 解码视频，通过管道逐帧读取原始像素数据，不生成图片文件，参考 {@link RawFrameJob}
+     *
+     * @param inputVideo 原始视频绝对路径
+     * @return 读帧任务，设置参数后调用 execute() 执行
+     */
+    public RawFrameJob rawFrames(String inputVideo) {
+        if(StrUtils.checkBlank(inputVideo)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        return new RawFrameJob(this, inputVideo);
+    }
+
+    /**
+     * 合并分辨率、帧率、编码不同的多个视频，只转码与目标参数不一致的视频，参考 {@link NormalizeConcatJob}
+     *
+     * @param inputVideos 按顺序合并的视频绝对路径，需要设置 {@link #withMediaProbe}
+     * @return 合并任务，设置参数后调用 execute() 执行
+     */
+    public NormalizeConcatJob normalizeConcat(List<String> inputVideos) {
+        if(inputVideos == null || inputVideos.isEmpty()) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        for (String inputVideo : inputVideos) {
+            if(StrUtils.checkBlank(inputVideo)) {
+                throw new FFMpegException("请输入正确参数，参数不能为空");
+            }
+        }
+        return new NormalizeConcatJob(this, new ArrayList<>(inputVideos));
+    }
+
+    /**
+     * 对同一个视频生成多个输出，只解码一次，参考 {@link MultiOutputJob}
+     *
+     * @param inputVideo 原始视频绝对路径
+     * @return 多输出任务，添加输出后调用 execute() 执行
+     */
+    public MultiOutputJob multiOutput(String inputVideo) {
+        if(StrUtils.checkBlank(inputVideo)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        return new MultiOutputJob(this, inputVideo);
+    }
+
+    /**
+     * 使用MediaProbe获取输入文件信息，返回新的操作对象
+     *
+     * @param mediaProbe 媒体信息获取对象
+     * @return
+     */
+    public VideoOperation withMediaProbe(MediaProbe mediaProbe) {
+        VideoOperation operation = new VideoOperation(this, context);
+        operation.mediaProbe = mediaProbe;
+        return operation;
+    }
+
+    /**
+     * 合成背景音乐时使用预转码的缓存文件，音频流直接复制，返回新的操作对象
+     *
+     * @param bgmCache 背景音乐缓存，转码的目标编码需要能被输出视频的封装格式复制
+     * @return
+     */
+    public VideoOperation withBgmCache(BgmCache bgmCache) {
+        VideoOperation operation = new VideoOperation(this, context);
+        operation.bgmCache = bgmCache;
+        return operation;
+    }
+
+    /**
+     * 获取输入文件信息，取消句柄同时用于ffprobe进程
+     */
+    MediaInfo probe(String input) {
+        if(mediaProbe == null) {
+            throw new FFMpegException("mediaProbe must be set, see withMediaProbe()");
+        }
+        return mediaProbe.probe(input, context.getCancelToken());
+    }
+
+    /**
+     * 获取输入文件信息，没有设置mediaProbe时返回null
+     */
+    MediaInfo probeIfPresent(String input) {
+        return mediaProbe != null ? mediaProbe.probe(input, context.getCancelToken()) : null;
+    }
+
+    /**
+     * 获取输入文件的关键帧索引
+     */
+    KeyframeIndex keyframeIndex(String input) {
+        if(mediaProbe == null) {
+            throw new FFMpegException("mediaProbe must be set, see withMediaProbe()");
+        }
+        return mediaProbe.keyframeIndex(input, context.getCancelToken());
+    }
+
+    /**
+     * 通过执行器执行命令，同一个包中的组合任务（MultiOutputJob等）也通过此方法执行
+     *
+     * @param operation 操作名称，用于监控指标分组
+     * @param commands 命令参数集合
+     * @return
+     */
+    Result execute(String operation, List<String> commands) {
+        return context.execute(operation, commands);
+    }
+
+    /**
+     * 通过执行器执行命令，stdout交给处理器读取，不输出进度信息
+     *
+     * @param operation 操作名称，用于监控指标分组
+     * @param commands 命令参数集合
+     * @param stdoutHandler stdout处理
+     * @return
+     */
+    Result execute(String operation, List<String> commands, StdoutHandler stdoutHandler) {
+        return context.execute(operation, commands, stdoutHandler);
+    }
+
+    /**
+     * 在内部的工作线程池中使用多个线程并行执行多条命令，线程从同一个队列中领取命令，同时执行的进程数量不超过parallelism
+     *
+     * @param operation 操作名称，用于监控指标分组
+     * @param commandsList 命令集合
+     * @param parallelism 并行数量
+     * @param stopOnFailure 为true时任一命令失败后不再领取新的命令，未执行的命令结果为null
+     * @return 与命令顺序对应的结果
+     */
+    List<Result> executeAll(String operation, List<List<String>> commandsList, int parallelism, boolean stopOnFailure) {
+        Result[] results = new Result[commandsList.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        int workers = Math.min(parallelism, commandsList.size());
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+        for (int i = 0; i < workers; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                int index;
+                while(!(stopOnFailure && failed.get()) && (index = next.getAndIncrement()) < results.length) {
+                    Result result = execute(operation, commandsList.get(index));
+                    results[index] = result;
+                    if(result.getCode() != 0) {
+                        failed.set(true);
+                    }
+                }
+            }, getWorkerExecutor());
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new FFMpegException(e.getCause());
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 背景音乐第一次使用时的转码使用本操作的超时时间、取消句柄和统计
+     */
+    private String cachedBgm(String bgmPath) {
+        return bgmCache.get(bgmPath, context.getTimeoutMillis(), context.getCancelToken(), context.getMetrics());
+    }
+
+    /**
+     * 在异步线程池中执行同步方法，参考 {@link OperationContext#async}
+     *
+     * @param operation 同步方法
+     * @return
+     */
+    private CompletableFuture<Result> async(Function<VideoOperation, Result> operation) {
+        return context.async(token -> operation.apply(withCancelToken(token)));
+    }
+
 
     /**
      *  视频转换格式
@@ -46,39 +395,72 @@ public class VideoOperation {
         //  ffmpeg -i input.mp4 -y out.mp4
         // ffmpeg -i in.mov -vcodec copy -acodec copy out.mp4  // mov --> mp4
         // ffmpeg -i in.flv -vcodec copy -acodec copy out.mp4
-        try {
-            if(StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(outputVideo)) {
-                throw new FFMpegException("videoInputFullPath or videoOutFullPath must not be null");
-            }
-            BaseFileUtil.checkAndMkdir(inputVideo);
+        if(StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(outputVideo)) {
+            throw new FFMpegException("videoInputFullPath or videoOutFullPath must not be null");
+        }
+        BaseFileUtil.checkAndMkdir(inputVideo);
 
-            List<String> commands = new ArrayList<String>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<String>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("-vcodec");
-            commands.add("copy");
-            commands.add("-acodec");
+        commands.add("-vcodec");
+        commands.add("copy");
+        commands.add("-acodec");
 
-            //commands.add("-y");
-            commands.add("copy");
-            commands.add(outputVideo);
+        //commands.add("-y");
+        commands.add("copy");
+        commands.add(outputVideo);
 
-            ProcessBuilder builder = new ProcessBuilder(commands).redirectErrorStream(true);
-            Process proc = builder.start();
+        return execute("videoConvert", commands);
+    }
 
-            return StreamHanlerCommon.closeStreamQuietly(proc);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+    /**
+     *  视频转换格式，通过stdin/stdout管道读写数据，不产生临时文件
+     *
+     * @param input 原始视频数据（mp4等格式需要moov在文件开头）
+     * @param output 输出视频数据，由调用方关闭
+     * @param outputFormat 输出格式，需要支持流式输出，例如 mp4（输出分片MP4）、mpegts、flv
+     * @return result 返回执行code和message
+     */
+    public Result videoConvert(InputStream input, OutputStream output, String outputFormat) {
+        return OperationContext.flushed(videoConvert(Channels.newChannel(input), Channels.newChannel(output), outputFormat), output);
+    }
+
+    /**
+     *  视频转换格式，通过stdin/stdout管道读写数据，不产生临时文件
+     *
+     * @param input 原始视频数据（mp4等格式需要moov在文件开头）
+     * @param output 输出视频数据，由调用方关闭
+     * @param outputFormat 输出格式，需要支持流式输出，例如 mp4（输出分片MP4）、mpegts、flv
+     * @return result 返回执行code和message
+     */
+    public Result videoConvert(ReadableByteChannel input, WritableByteChannel output, String outputFormat) {
+        // ffmpeg -i pipe:0 -vcodec copy -acodec copy -f mpegts pipe:1
+        List<String> commands = new ArrayList<String>();
+        commands.add(ffmpegEXE);
+
+        commands.add("-i");
+        commands.add(Pipes.STDIN);
+
+        commands.add("-vcodec");
+        commands.add("copy");
+        commands.add("-acodec");
+        commands.add("copy");
+
+        Pipes.addOutput(commands, outputFormat);
+
+        return context.executePipe("videoConvert", commands, input, output);
     }
 
     /**
      * 保留视频原声合成音频
      *
+     * 设置了 {@link #withBgmCache} 时混音使用缓存的背景音乐，采样率和声道已经转换，只需要解码（混音后的音频仍需要编码）
+     *
      * @param bgm 背景音乐路径
      * @param inputVideo 输入音频路径
      * @param outputVideo 输出视频路径
@@ -87,37 +469,42 @@ public class VideoOperation {
      */
     public Result mergeVideoAndBgmWithOrigin(String bgm, String inputVideo, String outputVideo, double seconds) {
 //     保留原声合并音视频 ffmpeg -i bgm.mp3 -i input.mp4 -t 6 -filter_complex amix=inputs=2 output.mp4
-        try {
-            if(StrUtils.checkBlank(bgm) || StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(outputVideo) || seconds <= 0) {
-                throw new FFMpegException("请输入正确参数，参数不能为空");
-            }
-            BaseFileUtil.checkAndMkdir(outputVideo);
+        if(StrUtils.checkBlank(bgm) || StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(outputVideo) || seconds <= 0) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        BaseFileUtil.checkAndMkdir(outputVideo);
 
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-i");
-            commands.add(bgm);
+        commands.add("-i");
+        commands.add(bgmCache != null ? cachedBgm(bgm) : bgm);
 
-            commands.add("-i");
-            commands.add(inputVideo);
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("-t");
-            commands.add(String.valueOf(seconds));
+        commands.add("-t");
+        commands.add(String.valueOf(seconds));
 
-            commands.add("-filter_complex");
-            commands.add("amix=inputs=2");
+        commands.add("-filter_complex");
+        commands.add("amix=inputs=2");
 
-            commands.add("-y");
-            commands.add(outputVideo);
+        commands.add("-y");
+        commands.add(outputVideo);
 
-            ProcessBuilder builder= new ProcessBuilder(commands);
-            Process process = builder.start();
+        return execute("mergeVideoAndBgmWithOrigin", commands);
+    }
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+    /**
+     * 保留视频原声合成音频，输出视频的秒数为原视频的时长（通过MediaProbe获取）
+     *
+     * @param bgm 背景音乐路径
+     * @param inputVideo 输入视频路径
+     * @param outputVideo 输出视频路径
+     * @return
+     */
+    public Result mergeVideoAndBgmWithOrigin(String bgm, String inputVideo, String outputVideo) {
+        return mergeVideoAndBgmWithOrigin(bgm, inputVideo, outputVideo, probe(inputVideo).getDuration());
     }
 
     /**
@@ -129,39 +516,34 @@ public class VideoOperation {
      */
     public Result getVideoCoverImg(String inputVideo, String coverOut) {
 //        ffmpeg -ss 00:00:01 -y -i input.mp4 -vframes 1 out.jpg
-        try {
-            if(StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(coverOut)) {
-                throw new FFMpegException("请输入视频路径或封面图片输入参数");
-            }
-            BaseFileUtil.checkAndMkdir(coverOut);
-
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        if(StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(coverOut)) {
+            throw new FFMpegException("请输入视频路径或封面图片输入参数");
+        }
+        BaseFileUtil.checkAndMkdir(coverOut);
 
-            commands.add("-ss");
-            commands.add("00:00:01");
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
+        commands.add("-ss");
+        commands.add("00:00:01");
 
-            commands.add("-vframes");
-            commands.add("1");
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add(coverOut);
+        commands.add("-vframes");
+        commands.add("1");
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add(coverOut);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("getVideoCoverImg", commands);
     }
 
     /**
      * 对视频的指定秒开始截图，可截多张图
      *
+     * 会解码截图时间段内的所有画面，长视频稀疏截图（如进度条预览图）使用 {@link #thumbnails(String)}
+     *
      * @param startSeconds 多少秒开始截图
      * @param inputVideo 需要截图的视频绝对路径
      * @param everySecondImg 每秒截多少张图
@@ -171,43 +553,36 @@ public class VideoOperation {
      */
     public Result getVideoCoverImgs(Integer startSeconds, String inputVideo,Integer everySecondImg, Integer seconds,String coverOutPath) {
 //        ffmpeg -y -ss 0 -i 2222.mp4 -f image2 -r 1 -t 3 -q:a 1 ./%2d.jpg
-        try {
-            if(StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(coverOutPath) || everySecondImg <= 0 || startSeconds <= 0 || seconds <= 0) {
-                throw new FFMpegException("请输入正确参数，参数不能为空");
-            }
-            BaseFileUtil.checkAndMkdir(coverOutPath);
-
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        if(StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(coverOutPath) || everySecondImg <= 0 || startSeconds <= 0 || seconds <= 0) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        BaseFileUtil.checkAndMkdir(coverOutPath);
 
-            commands.add("-y");
-            commands.add("-ss");
-            commands.add(String.valueOf(startSeconds));
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-i");
-            commands.add(inputVideo);
+        commands.add("-y");
+        commands.add("-ss");
+        commands.add(String.valueOf(startSeconds));
 
-            commands.add("-f");
-            commands.add("image2");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("-r");
-            commands.add(String.valueOf(everySecondImg));
+        commands.add("-f");
+        commands.add("image2");
 
-            commands.add("-t");
-            commands.add(String.valueOf(seconds));
+        commands.add("-r");
+        commands.add(String.valueOf(everySecondImg));
 
-            commands.add("-q:a");
-            commands.add("1");
+        commands.add("-t");
+        commands.add(String.valueOf(seconds));
 
-            commands.add(coverOutPath + "/%3d.jpg");
+        commands.add("-q:a");
+        commands.add("1");
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add(coverOutPath + "/%3d.jpg");
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("getVideoCoverImgs", commands);
     }
 
     /**
@@ -224,27 +599,20 @@ public class VideoOperation {
         }
         BaseFileUtil.checkAndMkdir(outputVideo);
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
-
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-an");
-            commands.add("-vcodec");
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("copy");
-            commands.add(outputVideo);
+        commands.add("-an");
+        commands.add("-vcodec");
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add("copy");
+        commands.add(outputVideo);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("wipeAudio", commands);
     }
 
     /**
@@ -264,32 +632,71 @@ public class VideoOperation {
         }
         BaseFileUtil.checkAndMkdir(outputVideo);
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("-vf");
-            commands.add("scale="+ outWidth + ":" + outHeight);
+        commands.add("-vf");
+        commands.add("scale="+ outWidth + ":" + outHeight);
 
-            commands.add("-acodec");
-            commands.add("aac");
+        commands.add("-acodec");
+        commands.add("aac");
 
-            commands.add("-vcodec");
-            commands.add("h264");
+        commands.add("-vcodec");
+        commands.add("h264");
 
-            commands.add(outputVideo);
+        commands.add(outputVideo);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        return execute("videoScale", commands);
+    }
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+    /**
+     * 视频缩放，通过stdin/stdout管道读写数据，不产生临时文件
+     *
+     * @param input 原始视频数据（mp4等格式需要moov在文件开头）
+     * @param outWidth 处理之后的视频的宽度
+     * @param outHeight 处理之后的视频高度
+     * @param output 输出视频数据，由调用方关闭
+     * @param outputFormat 输出格式，需要支持流式输出，例如 mp4（输出分片MP4）、mpegts、flv
+     * @return
+     */
+    public Result videoScale(InputStream input, String outWidth, String outHeight, OutputStream output, String outputFormat) {
+        return OperationContext.flushed(videoScale(Channels.newChannel(input), outWidth, outHeight, Channels.newChannel(output), outputFormat), output);
+    }
+
+    /**
+     * 视频缩放，通过stdin/stdout管道读写数据，不产生临时文件
+     *
+     * @param input 原始视频数据（mp4等格式需要moov在文件开头）
+     * @param outWidth 处理之后的视频的宽度
+     * @param outHeight 处理之后的视频高度
+     * @param output 输出视频数据，由调用方关闭
+     * @param outputFormat 输出格式，需要支持流式输出，例如 mp4（输出分片MP4）、mpegts、flv
+     * @return
+     */
+    public Result videoScale(ReadableByteChannel input, String outWidth, String outHeight, WritableByteChannel output, String outputFormat) {
+//       ffmpeg -i pipe:0 -vf scale=360:640 -acodec aac -vcodec h264 -f mpegts pipe:1
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
+
+        commands.add("-i");
+        commands.add(Pipes.STDIN);
+
+        commands.add("-vf");
+        commands.add("scale="+ outWidth + ":" + outHeight);
+
+        commands.add("-acodec");
+        commands.add("aac");
+
+        commands.add("-vcodec");
+        commands.add("h264");
+
+        Pipes.addOutput(commands, outputFormat);
+
+        return context.executePipe("videoScale", commands, input, output);
     }
 
     /**
@@ -308,29 +715,22 @@ public class VideoOperation {
         }
         BaseFileUtil.checkAndMkdir(outputVideo);
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
-
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-strict");
-            commands.add("-2");
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("-vf");
-            commands.add("crop=" + outWidth + ":" + outHeight + ":" + x + ":" + y);
+        commands.add("-strict");
+        commands.add("-2");
 
-            commands.add(outputVideo);
+        commands.add("-vf");
+        commands.add("crop=" + outWidth + ":" + outHeight + ":" + x + ":" + y);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add(outputVideo);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("videoCrop", commands);
     }
 
     /**
@@ -354,31 +754,24 @@ public class VideoOperation {
             throw new FFMpegException("非法参数，旋转角度需为-> 1：180deg or 2：90deg");
         }
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("-vf");
+        commands.add("-vf");
 
-            if(StrUtils.checkNotBlank(outWidth) && StrUtils.checkNotBlank(outHeight)) {
-                commands.add("rotate=PI/"+ angleNum + ":ow=" + outWidth + ":oh" + outHeight);
-            } else {
-                commands.add("rotate=PI/"+ angleNum);
-            }
-
-            commands.add(outputVideo);
+        if(StrUtils.checkNotBlank(outWidth) && StrUtils.checkNotBlank(outHeight)) {
+            commands.add("rotate=PI/"+ angleNum + ":ow=" + outWidth + ":oh" + outHeight);
+        } else {
+            commands.add("rotate=PI/"+ angleNum);
+        }
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add(outputVideo);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("videoRotate", commands);
     }
 
     /**
@@ -396,28 +789,21 @@ public class VideoOperation {
         }
         BaseFileUtil.checkAndMkdir(outputVideo);
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
-
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            if(StrUtils.checkNotBlank(outputVideo)) {
-                commands.add("-r");
-                commands.add(String.valueOf(fps));
-            }
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add(outputVideo);
+        if(StrUtils.checkNotBlank(outputVideo)) {
+            commands.add("-r");
+            commands.add(String.valueOf(fps));
+        }
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add(outputVideo);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("videoFps", commands);
     }
 
     /**
@@ -434,27 +820,20 @@ public class VideoOperation {
         }
         BaseFileUtil.checkAndMkdir(outputVideo);
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
-
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(gif);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-vf");
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(gif);
 
-            commands.add("scale=420:-2,format=yuv420p");
+        commands.add("-vf");
 
-            commands.add(outputVideo);
+        commands.add("scale=420:-2,format=yuv420p");
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add(outputVideo);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("gifConvertToVideo", commands);
     }
 
     /**
@@ -472,36 +851,31 @@ public class VideoOperation {
             throw new FFMpegException("请输入正确参数，参数不能为空");
         }
         BaseFileUtil.checkAndMkdir(outputGif);
-        try {
-            BaseFileUtil.checkAndMkdir(outputGif);
-
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
-
-            commands.add("-y");
-            commands.add("-i");
-            commands.add(inputVideo);
-
-            if(highQuality) {
-                commands.add("-b");
-                commands.add("2048k");
-            }
+        BaseFileUtil.checkAndMkdir(outputGif);
 
-            commands.add(outputGif);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
+        if(highQuality) {
+            commands.add("-b");
+            commands.add("2048k");
         }
+
+        commands.add(outputGif);
+
+        return execute("videoConvertToGif", commands);
     }
 
 
     /**
      * 对视频的播放时间进行裁剪
      *
+     * 直接复制流，不重新编码，开始位置会对齐到关键帧，需要精确到帧时使用 {@link #smartCut(String, double, double, String)}
+     *
      * @param inputVideo 原始需要操作视频的绝对路径
      * @param startTime 开始裁剪的时间 支持格式： 2  或  00:00:02 从2秒开始
      * @param seconds  剪裁持续的时间 支持格式： 3 或 00:00:03 持续3秒
@@ -516,36 +890,51 @@ public class VideoOperation {
         }
         BaseFileUtil.checkAndMkdir(outputVideo);
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-y");
-            commands.add("-ss");
-            commands.add(startTime);
+        commands.add("-y");
+        commands.add("-ss");
+        commands.add(startTime);
 
-            commands.add("-t");
-            commands.add(seconds);
+        commands.add("-t");
+        commands.add(seconds);
 
-            commands.add("-accurate_seek");
+        commands.add("-accurate_seek");
 
-            commands.add("-i");
-            commands.add(inputVideo);
+        commands.add("-i");
+        commands.add(inputVideo);
 
-            commands.add("-codec");
-            commands.add("-copy");
-            commands.add("-avoid_negative_ts");
-            commands.add("1");
+        commands.add("-c");
+        commands.add("copy");
+        commands.add("-avoid_negative_ts");
+        commands.add("1");
 
-            commands.add(outputVideo);
+        commands.add(outputVideo);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        return execute("videoCut", commands);
+    }
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
+    /**
+     * 精确裁剪视频：中间完整的GOP直接复制，只重新编码开头和结尾不完整的GOP，速度接近直接复制，同时精确到帧，参考 {@link SmartCutter}
+     *
+     * 需要设置 {@link #withMediaProbe(MediaProbe)} 获取关键帧；只有输出为TS时才分段拼接，其他格式开头或结尾不在关键帧上时整段重新编码
+     *
+     * @param inputVideo 原始需要操作视频的绝对路径
+     * @param startSeconds 开始时间（秒）
+     * @param endSeconds 结束时间（秒）
+     * @param outputVideo 输出视频的绝对路径
+     * @return
+     */
+    public Result smartCut(String inputVideo, double startSeconds, double endSeconds, String outputVideo) {
+        if(StrUtils.checkBlank(inputVideo) || StrUtils.checkBlank(outputVideo) || startSeconds < 0 || endSeconds <= startSeconds) {
+            throw new FFMpegException("请输入正确参数，参数不能为空，结束时间需大于开始时间");
         }
+        BaseFileUtil.checkAndMkdir(outputVideo);
+        MediaInfo info = probe(inputVideo);
+        double end = info.getDuration() > 0 ? Math.min(endSeconds, info.getDuration()) : endSeconds;
+        double[] keyframes = keyframeIndex(inputVideo).between(startSeconds, end);
+        return new SmartCutter(this).cut(inputVideo, info, keyframes, startSeconds, end, outputVideo);
     }
 
     /**
@@ -554,6 +943,8 @@ public class VideoOperation {
      * （此方法在Mac平台无效,ffmpeg version 4.2.1-tessus），暂不清楚是否ffmpeg版本问题
      *  Mac平台使用方法：convertorWithBgmNoOriginCommon()
      *
+     *  设置了 {@link #withBgmCache} 时使用缓存的背景音乐，指定视频流和背景音乐的音频流，音频直接复制
+     *
      * @param videoInputPath 原始视频绝对路径
      * @param videoOutPath  处理之后视频输出路径
      * @param bgmInputPath  添加的背景音乐绝对路径
@@ -562,100 +953,95 @@ public class VideoOperation {
      */
     public Result mergeVideoAndBgmNoOrigin(String videoInputPath, String videoOutPath, String bgmInputPath, double seconds) {
 //        ffmpeg -i input.mp4 -i bgm.mp3 -t 7 -y out.mp4
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-i");
-            commands.add(videoInputPath);
+        commands.add("-i");
+        commands.add(videoInputPath);
 
-            commands.add("-i");
-            commands.add(bgmInputPath);
+        commands.add("-i");
+        commands.add(bgmCache != null ? cachedBgm(bgmInputPath) : bgmInputPath);
 
-            commands.add("-t");
-            commands.add(String.valueOf(seconds));
+        if(bgmCache != null) {
+            commands.add("-map");
+            commands.add("0:v");
+            commands.add("-map");
+            commands.add("1:a");
+            commands.add("-c:a");
+            commands.add("copy");
+        }
 
-            commands.add("-y");
-            commands.add(videoOutPath);
+        commands.add("-t");
+        commands.add(String.valueOf(seconds));
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add("-y");
+        commands.add(videoOutPath);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("mergeVideoAndBgmNoOrigin", commands);
+    }
+
+    /**
+     *  视频合并音频，给视频加上背景音乐，并不保留视频原声，输出视频的秒数为原视频的时长（通过MediaProbe获取）
+     *
+     * @param videoInputPath 原始视频绝对路径
+     * @param videoOutPath  处理之后视频输出路径
+     * @param bgmInputPath  添加的背景音乐绝对路径
+     * @return
+     */
+    public Result mergeVideoAndBgmNoOrigin(String videoInputPath, String videoOutPath, String bgmInputPath) {
+        return mergeVideoAndBgmNoOrigin(videoInputPath, videoOutPath, bgmInputPath, probe(videoInputPath).getDuration());
     }
 
     /**
      * 视频合并音频，给视频加上背景音乐，并不保留视频原声，此方法比较通用，并且Mac可以使用
      *
+     * 只启动一个进程：视频流直接复制，音频使用背景音乐，不再生成去除音频的中间文件；
+     * 设置了 {@link #withBgmCache} 时使用缓存的背景音乐，音频流也直接复制
+     *
      * @param videoInputPath  原始视频绝对路径
      * @param videoOutPath  处理之后视频输出路径
-     * @param noSoundVideoPath  原始视频去除音频的输出绝对路径
+     * @param noSoundVideoPath  已不再使用（不再生成中间文件），保留参数兼容旧版本
      * @param bgmInputPath  添加的背景音乐绝对路径
      * @param seconds   输出视频的秒数
      * @return
      */
     public Result convertorWithBgmNoOriginCommon(String videoInputPath, String videoOutPath, String noSoundVideoPath, String bgmInputPath, double seconds) {
-//        ffmpeg -i hi.mp4 -c:v copy -an nosound.mp4
-//        ffmpeg -i nosound.mp4 -i songs.mp3 -t 7.1 -c copy output.mp4
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
-
-            commands.add("-y");
-
-            commands.add("-i");
-            commands.add(videoInputPath);
-
-            commands.add("-c:v");
-            commands.add("copy");
-            commands.add("-an");
-            commands.add(noSoundVideoPath);
+//        ffmpeg -y -i hi.mp4 -i songs.mp3 -map 0:v -map 1:a -c:v copy -t 7.1 output.mp4
+        if(StrUtils.checkBlank(videoInputPath) || StrUtils.checkBlank(videoOutPath) || StrUtils.checkBlank(bgmInputPath) || seconds <= 0) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        BaseFileUtil.checkAndMkdir(videoOutPath);
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            StreamHanlerCommon.closeStreamQuietly(process);
+        commands.add("-y");
 
-            // 转换nosound.mp4 为背景音乐的mp4
-            return convertNoSoundVideoToBgmVideo(videoOutPath,noSoundVideoPath,bgmInputPath,seconds);
-        } catch (Exception e) {
-            throw new FFMpegException(e.getMessage());
-        }
-    }
+        commands.add("-i");
+        commands.add(videoInputPath);
 
-    /**
-     * 将没有背景音乐的video转换为有背景音乐video
-     * 无声视频加上背景音乐
-     *
-     * @param videoOutPath
-     * @param noSoundVideoPath
-     * @param bgmInputPath
-     * @param seconds
-     * @throws IOException
-     */
-    private Result convertNoSoundVideoToBgmVideo(String videoOutPath, String noSoundVideoPath,String bgmInputPath, double seconds) throws IOException {
-        List<String> commands2 = new ArrayList<>();
-        commands2.add(ffmpegEXE);
+        commands.add("-i");
+        commands.add(bgmCache != null ? cachedBgm(bgmInputPath) : bgmInputPath);
 
-        commands2.add("-i");
-        commands2.add(noSoundVideoPath);
+        commands.add("-map");
+        commands.add("0:v");
+        commands.add("-map");
+        commands.add("1:a");
 
-        commands2.add("-i");
-        commands2.add(bgmInputPath);
+        commands.add("-c:v");
+        commands.add("copy");
 
-        commands2.add("-t");
-        commands2.add(String.valueOf(seconds));
+        if(bgmCache != null) {
+            commands.add("-c:a");
+            commands.add("copy");
+        }
 
-        commands2.add("-y");
-        commands2.add(videoOutPath);
+        commands.add("-t");
+        commands.add(String.valueOf(seconds));
 
-        ProcessBuilder builder2 = new ProcessBuilder(commands2);
-        Process process2 = builder2.start();
+        commands.add(videoOutPath);
 
-        return StreamHanlerCommon.closeStreamQuietly(process2);
+        return execute("convertorWithBgmNoOriginCommon", commands);
     }
 
     /**
@@ -673,36 +1059,29 @@ public class VideoOperation {
             throw new FFMpegException("请输入正确参数，参数不能为空");
         }
         BaseFileUtil.checkAndMkdir(videoOutPath);
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
-
-            commands.add("-i");
-            commands.add(videoInputPath);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-i");
-            commands.add(imagePath);
+        commands.add("-i");
+        commands.add(videoInputPath);
 
-            commands.add("-map");
-            commands.add("1");
-            commands.add("-map");
-            commands.add("0");
-            commands.add("-c");
-            commands.add("copy");
-            commands.add("-disposition:0");
-            commands.add("attached_pic");
+        commands.add("-i");
+        commands.add(imagePath);
 
-            commands.add("-y");
-            commands.add(videoOutPath);
+        commands.add("-map");
+        commands.add("1");
+        commands.add("-map");
+        commands.add("0");
+        commands.add("-c");
+        commands.add("copy");
+        commands.add("-disposition:0");
+        commands.add("attached_pic");
 
-            // TODO 使用单例模式、或者将该对象定义为静态属性变量即可，不用每次new
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add("-y");
+        commands.add(videoOutPath);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        // TODO 使用单例模式、或者将该对象定义为静态属性变量即可，不用每次new
+        return execute("transformVideoCover", commands);
     }
 
     /**
@@ -731,39 +1110,35 @@ public class VideoOperation {
             throw new FFMpegException("videoListFile not found");
         }
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
-
-            commands.add("-f");
-            commands.add("concat");
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-safe");
-            commands.add("0");
+        commands.add("-f");
+        commands.add("concat");
 
-            commands.add("-protocol_whitelist");
-            commands.add("file,http,https,tcp,tls");
-            commands.add("-i");
-            commands.add(videoListFile.getAbsolutePath());
-            commands.add("-c");
-            commands.add("copy");
+        commands.add("-safe");
+        commands.add("0");
 
-            commands.add("-y");
-            commands.add(videoOutPath);
+        commands.add("-protocol_whitelist");
+        commands.add("file,http,https,tcp,tls");
+        commands.add("-i");
+        commands.add(videoListFile.getAbsolutePath());
+        commands.add("-c");
+        commands.add("copy");
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add("-y");
+        commands.add(videoOutPath);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e.getMessage());
-        }
+        return execute("mergeMultiOnlineVideos", commands);
     }
 
 
     /**
      * 合并多个视频文件(此方法只适用ts格式文件,或者mpg/mpeg格式文件)
      *
+     * 输入都是本地文件、PAT/PMT（PS为stream_id）相同且输出文件后缀与输入格式一致时，直接拼接文件（{@link MpegConcatenator}），
+     * 不启动ffmpeg，也不回调进度；否则使用ffmpeg的 concat: 协议
+     *
      * @param fileNameList 需要合并的视频文件集合，文件名称为绝对路径
      * @param videoOutPath 视频输出绝对路径
      * @return 返回结果code和信息
@@ -778,28 +1153,27 @@ public class VideoOperation {
         }
         BaseFileUtil.checkAndMkdir(videoOutPath);
 
-        String filenames = VideoFormatter.fileNameFormat(fileNameList);
+        // 本地文件的流结构相同时直接拼接文件，不启动进程
+        Result result = new MpegConcatenator("mergeMultiVideosOfTsOrMpegFormat", context.getCancelToken(), context.getMetrics()).concat(fileNameList, videoOutPath);
+        if(result != null) {
+            return result;
+        }
 
-        try {
-            List<String> commands = new ArrayList<>();
-            commands.add(ffmpegEXE);
+        String filenames = VideoFormatter.fileNameFormat(fileNameList);
 
-            commands.add("-i");
-            commands.add("concat:" + filenames);
+        List<String> commands = new ArrayList<>();
+        commands.add(ffmpegEXE);
 
-            commands.add("-c");
-            commands.add("copy");
+        commands.add("-i");
+        commands.add("concat:" + filenames);
 
-            commands.add("-y");
-            commands.add(videoOutPath);
+        commands.add("-c");
+        commands.add("copy");
 
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            Process process = builder.start();
+        commands.add("-y");
+        commands.add(videoOutPath);
 
-            return StreamHanlerCommon.closeStreamQuietly(process);
-        } catch (IOException e) {
-            throw new FFMpegException(e);
-        }
+        return execute("mergeMultiVideosOfTsOrMpegFormat", commands);
     }
 
     /**
@@ -815,7 +1189,7 @@ public class VideoOperation {
      *  文件示例：docs/video-example/video-example.txt
      *
      *
-     * @apiNote 注意： 合并的视频必须相同的分辨率和格式！！！否则合成视频不正确
+     * @apiNote 注意： 合并的视频必须相同的分辨率和格式！！！否则合成视频不正确，不同时使用 {@link #normalizeConcat(List)}
      *
      * @param videoOutPath 视频输出绝对路径文件名
      * @return
@@ -846,51 +1220,302 @@ public class VideoOperation {
         commands.add("-y");
         commands.add(videoOutPath);
 
-        return ProcessCommand.start(commands);
+        return execute("mergeMultiVideosByFile", commands);
     }
 
     /**
      * 根据文件目录，自动合并该目录下所有视频
      *
-     * 合成的顺序按照文件名称进行排序，建议将名称命名为序号001、002、003...
-     *
-     * TODO 增加排序
+     * 合成的顺序按照文件名称的自然顺序（{@link DirectoryScanner}），例如 2.ts 在 10.ts 之前
      *
      * @param dir 视频文件目录绝对路径
      * @param videoOutPath 视频输出绝对路径
      * @return
      */
     public Result autoMergeMultiVideosByDir(String dir, String videoOutPath) {
+        return autoMergeMultiVideosByDir(dir, null, videoOutPath);
+    }
+
+    /**
+     * 根据文件目录，自动合并该目录下文件名符合glob的视频，只遍历一次目录
+     *
+     * 合成的顺序按照文件名称的自然顺序（{@link DirectoryScanner}），例如 2.ts 在 10.ts 之前；
+     * mpg/mpeg文件使用 {@link #mergeMultiVideosOfTsOrMpegFormat}，其他文件的列表逐行写入临时列表文件后使用 concat demuxer 合并
+     *
+     * @param dir 视频文件目录绝对路径
+     * @param glob 文件名过滤，例如 *.ts、segment_*.mp4，为空时合并所有文件
+     * @param videoOutPath 视频输出绝对路径
+     * @return
+     */
+    public Result autoMergeMultiVideosByDir(String dir, String glob, String videoOutPath) {
+        if(StrUtils.checkBlank(dir) || StrUtils.checkBlank(videoOutPath)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
         // 遍历文件夹
-        if(!BaseFileUtil.hashFile(dir)) {
+        List<Path> files = DirectoryScanner.scan(dir, glob);
+        if(files.isEmpty()) {
             throw new FFMpegException("File must be not null");
         }
         BaseFileUtil.checkAndMkdir(videoOutPath);
         // 判断文件是否统一后缀，如果不统一后缀，抛出异常
-        File[] files = BaseFileUtil.listFiles(dir);
-
-        if(!BaseFileUtil.unifySuffix(files)) {
-            throw new FFMpegException("All video files must have the same suffix");
+        String suffix = BaseFileUtil.suffix(files.get(0).getFileName().toString());
+        List<File> videos = new ArrayList<>(files.size());
+        for (Path file : files) {
+            if(!suffix.equals(BaseFileUtil.suffix(file.getFileName().toString()))) {
+                throw new FFMpegException("All video files must have the same suffix");
+            }
+            videos.add(file.toAbsolutePath().toFile());
         }
 
         // 如果是mpg/mpeg文件可以直接转换调用方法合并
-        if(BaseFileUtil.isMpgOrMpeg(files)) {
-            // 合并mpg/mpeg
-            return mergeMultiVideosOfTsOrMpegFormat(Arrays.asList(BaseFileUtil.list(dir)), videoOutPath);
+        if(BaseFileUtil.isMpgOrMpeg(suffix)) {
+            List<String> fileNameList = new ArrayList<>(videos.size());
+            for (File video : videos) {
+                fileNameList.add(video.getAbsolutePath());
+            }
+            return mergeMultiVideosOfTsOrMpegFormat(fileNameList, videoOutPath);
         }
 
         File tempVideoFile = null;
         try {
-            tempVideoFile = VideoFormatter.createTempVideoFile(dir);
+            tempVideoFile = File.createTempFile("video_temp_", ".txt");
+            VideoFormatter.writeConcatList(videos, tempVideoFile);
 
             return mergeMultiVideosByFile(tempVideoFile, videoOutPath);
         } catch (IOException e) {
             throw new FFMpegException(e);
         } finally {
             if(tempVideoFile != null) {
-                tempVideoFile.deleteOnExit();
+                tempVideoFile.delete();
             }
         }
     }
 
+    // ---------------------------------- 异步API ----------------------------------
+
+    /**
+     * 异步执行 {@link #videoConvert(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoConvertAsync(String inputVideo, String outputVideo) {
+        return async(operation -> operation.videoConvert(inputVideo, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #videoConvert(InputStream, OutputStream, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoConvertAsync(InputStream input, OutputStream output, String outputFormat) {
+        return async(operation -> operation.videoConvert(input, output, outputFormat));
+    }
+
+    /**
+     * 异步执行 {@link #mergeVideoAndBgmWithOrigin(String, String, String, double)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> mergeVideoAndBgmWithOriginAsync(String bgm, String inputVideo, String outputVideo, double seconds) {
+        return async(operation -> operation.mergeVideoAndBgmWithOrigin(bgm, inputVideo, outputVideo, seconds));
+    }
+
+    /**
+     * 异步执行 {@link #mergeVideoAndBgmWithOrigin(String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> mergeVideoAndBgmWithOriginAsync(String bgm, String inputVideo, String outputVideo) {
+        return async(operation -> operation.mergeVideoAndBgmWithOrigin(bgm, inputVideo, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #getVideoCoverImg(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> getVideoCoverImgAsync(String inputVideo, String coverOut) {
+        return async(operation -> operation.getVideoCoverImg(inputVideo, coverOut));
+    }
+
+    /**
+     * 异步执行 {@link #getVideoCoverImgs(Integer, String, Integer, Integer, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> getVideoCoverImgsAsync(Integer startSeconds, String inputVideo, Integer everySecondImg, Integer seconds, String coverOutPath) {
+        return async(operation -> operation.getVideoCoverImgs(startSeconds, inputVideo, everySecondImg, seconds, coverOutPath));
+    }
+
+    /**
+     * 异步执行 {@link #wipeAudio(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> wipeAudioAsync(String inputVideo, String outputVideo) {
+        return async(operation -> operation.wipeAudio(inputVideo, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #videoScale(String, String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoScaleAsync(String inputVideo, String outWidth, String outHeight, String outputVideo) {
+        return async(operation -> operation.videoScale(inputVideo, outWidth, outHeight, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #videoScale(InputStream, String, String, OutputStream, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoScaleAsync(InputStream input, String outWidth, String outHeight, OutputStream output, String outputFormat) {
+        return async(operation -> operation.videoScale(input, outWidth, outHeight, output, outputFormat));
+    }
+
+    /**
+     * 异步执行 {@link #videoCrop(String, String, String, String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoCropAsync(String inputVideo, String outWidth, String outHeight, String x, String y, String outputVideo) {
+        return async(operation -> operation.videoCrop(inputVideo, outWidth, outHeight, x, y, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #videoRotate(String, Integer, String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoRotateAsync(String inputVideo, Integer angleNum, String outWidth, String outHeight, String outputVideo) {
+        return async(operation -> operation.videoRotate(inputVideo, angleNum, outWidth, outHeight, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #videoFps(String, Integer, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoFpsAsync(String inputVideo, Integer fps, String outputVideo) {
+        return async(operation -> operation.videoFps(inputVideo, fps, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #gifConvertToVideo(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> gifConvertToVideoAsync(String gif, String outputVideo) {
+        return async(operation -> operation.gifConvertToVideo(gif, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #videoConvertToGif(String, String, boolean)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoConvertToGifAsync(String inputVideo, String outputGif, boolean highQuality) {
+        return async(operation -> operation.videoConvertToGif(inputVideo, outputGif, highQuality));
+    }
+
+    /**
+     * 异步执行 {@link #videoCut(String, String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> videoCutAsync(String inputVideo, String startTime, String seconds, String outputVideo) {
+        return async(operation -> operation.videoCut(inputVideo, startTime, seconds, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #smartCut(String, double, double, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> smartCutAsync(String inputVideo, double startSeconds, double endSeconds, String outputVideo) {
+        return async(operation -> operation.smartCut(inputVideo, startSeconds, endSeconds, outputVideo));
+    }
+
+    /**
+     * 异步执行 {@link #mergeVideoAndBgmNoOrigin(String, String, String, double)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> mergeVideoAndBgmNoOriginAsync(String videoInputPath, String videoOutPath, String bgmInputPath, double seconds) {
+        return async(operation -> operation.mergeVideoAndBgmNoOrigin(videoInputPath, videoOutPath, bgmInputPath, seconds));
+    }
+
+    /**
+     * 异步执行 {@link #mergeVideoAndBgmNoOrigin(String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> mergeVideoAndBgmNoOriginAsync(String videoInputPath, String videoOutPath, String bgmInputPath) {
+        return async(operation -> operation.mergeVideoAndBgmNoOrigin(videoInputPath, videoOutPath, bgmInputPath));
+    }
+
+    /**
+     * 异步执行 {@link #convertorWithBgmNoOriginCommon(String, String, String, String, double)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> convertorWithBgmNoOriginCommonAsync(String videoInputPath, String videoOutPath, String noSoundVideoPath, String bgmInputPath, double seconds) {
+        return async(operation -> operation.convertorWithBgmNoOriginCommon(videoInputPath, videoOutPath, noSoundVideoPath, bgmInputPath, seconds));
+    }
+
+    /**
+     * 异步执行 {@link #transformVideoCover(String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> transformVideoCoverAsync(String videoInputPath, String imagePath, String videoOutPath) {
+        return async(operation -> operation.transformVideoCover(videoInputPath, imagePath, videoOutPath));
+    }
+
+    /**
+     * 异步执行 {@link #mergeMultiOnlineVideos(File, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> mergeMultiOnlineVideosAsync(File videoListFile, String videoOutPath) {
+        return async(operation -> operation.mergeMultiOnlineVideos(videoListFile, videoOutPath));
+    }
+
+    /**
+     * 异步执行 {@link #mergeMultiVideosOfTsOrMpegFormat(List, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> mergeMultiVideosOfTsOrMpegFormatAsync(List<String> fileNameList, String videoOutPath) {
+        return async(operation -> operation.mergeMultiVideosOfTsOrMpegFormat(fileNameList, videoOutPath));
+    }
+
+    /**
+     * 异步执行 {@link #mergeMultiVideosByFile(File, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> mergeMultiVideosByFileAsync(File videoListFile, String videoOutPath) {
+        return async(operation -> operation.mergeMultiVideosByFile(videoListFile, videoOutPath));
+    }
+
+    /**
+     * 异步执行 {@link #autoMergeMultiVideosByDir(String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> autoMergeMultiVideosByDirAsync(String dir, String videoOutPath) {
+        return async(operation -> operation.autoMergeMultiVideosByDir(dir, videoOutPath));
+    }
+
+    /**
+     * 异步执行 {@link #autoMergeMultiVideosByDir(String, String, String)}
+     *
+     * @return 执行完成时返回结果，参数错误或者执行异常时以FFMpegException异常结束，cancel()会终止进程
+     */
+    public CompletableFuture<Result> autoMergeMultiVideosByDirAsync(String dir, String glob, String videoOutPath) {
+        return async(operation -> operation.autoMergeMultiVideosByDir(dir, glob, videoOutPath));
+    }
+
 }
@@ -0,0 +1,131 @@
+package com.ffmpeg.common.video;
+
+import com.ffmpeg.common.FFMpegException;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.BaseFileUtil;
+import com.ffmpeg.common.utils.StrUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 视频处理流程：记录裁剪、缩放、调节帧数、旋转等步骤，调用 {@link #execute(String)} 时合并为一个 -vf 滤镜链执行
+ *
+ * 多次调用 videoCrop、videoScale、videoFps、videoRotate 时每一步都要解码、编码并写出中间文件，
+ * 合并之后只解码、编码一次，没有中间文件，也不会因为多次编码降低画质
+ *
+ * <pre>
+ *  ffmpeg -y -i in.mp4 -vf crop=1080:1080:0:420,scale=720:720,fps=15,rotate=PI/2 out.mp4
+ * </pre>
+ *
+ * @author alan.chen
+ * @date 2020/7/29 4:10 PM
+ */
+public class VideoPipeline {
+
+    private final VideoOperation operation;
+
+    private final String inputVideo;
+
+    private final List<String> filters = new ArrayList<>();
+
+    private final List<String> outputOptions = new ArrayList<>();
+
+    VideoPipeline(VideoOperation operation, String inputVideo) {
+        this.operation = operation;
+        this.inputVideo = inputVideo;
+    }
+
+    /**
+     * 视频的页面长宽进行裁剪，同 {@link VideoOperation#videoCrop(String, String, String, String, String, String)}
+     */
+    public VideoPipeline crop(String outWidth, String outHeight, String x, String y) {
+        return filter("crop=" + outWidth + ":" + outHeight + ":" + x + ":" + y);
+    }
+
+    /**
+     * 视频缩放，同 {@link VideoOperation#videoScale(String, String, String, String)}
+     */
+    public VideoPipeline scale(String outWidth, String outHeight) {
+        return filter("scale=" + outWidth + ":" + outHeight);
+    }
+
+    /**
+     * 调节视频帧数，同 {@link VideoOperation#videoFps(String, Integer, String)}
+     */
+    public VideoPipeline fps(Integer fps) {
+        if(fps == null || fps <= 0) {
+            throw new FFMpegException("非法参数，帧数需大于0");
+        }
+        return filter("fps=" + fps);
+    }
+
+    /**
+     * 视频角度旋转，同 {@link VideoOperation#videoRotate(String, Integer, String, String, String)}
+     *
+     * @param angleNum 旋转的角度，1：180度 2：90度
+     * @param outWidth 输出视频的宽度，如果不指定，默认是输入视频的宽度
+     * @param outHeight 输出视频的高度，如果不指定，默认是输入视频的高度
+     */
+    public VideoPipeline rotate(Integer angleNum, String outWidth, String outHeight) {
+        if(angleNum == null || (angleNum != 1 && angleNum != 2)) {
+            throw new FFMpegException("非法参数，旋转角度需为-> 1：180deg or 2：90deg");
+        }
+        if(StrUtils.checkNotBlank(outWidth) && StrUtils.checkNotBlank(outHeight)) {
+            return filter("rotate=PI/" + angleNum + ":ow=" + outWidth + ":oh=" + outHeight);
+        }
+        return filter("rotate=PI/" + angleNum);
+    }
+
+    /**
+     * 自定义滤镜，例如 hflip、format=yuv420p
+     */
+    public VideoPipeline filter(String filter) {
+        if(StrUtils.checkBlank(filter)) {
+            throw new FFMpegException("filter must not be null");
+        }
+        filters.add(filter);
+        return this;
+    }
+
+    /**
+     * 输出参数，例如 "-vcodec", "h264", "-acodec", "copy"
+     */
+    public VideoPipeline outputOptions(String... options) {
+        outputOptions.addAll(Arrays.asList(options));
+        return this;
+    }
+
+    /**
+     * 执行所有步骤
+     *
+     * @param outputVideo 处理之后生成的新的视频绝对路径
+     * @return
+     */
+    public Result execute(String outputVideo) {
+        if(StrUtils.checkBlank(outputVideo)) {
+            throw new FFMpegException("请输入正确参数，参数不能为空");
+        }
+        BaseFileUtil.checkAndMkdir(outputVideo);
+        return operation.execute("pipeline", buildCommands(outputVideo));
+    }
+
+    List<String> buildCommands(String outputVideo) {
+        List<String> commands = new ArrayList<>();
+        commands.add(operation.getFfmpegEXE());
+
+        commands.add("-y");
+        commands.add("-i");
+        commands.add(inputVideo);
+
+        if(!filters.isEmpty()) {
+            commands.add("-vf");
+            commands.add(String.join(",", filters));
+        }
+
+        commands.addAll(outputOptions);
+        commands.add(outputVideo);
+        return commands;
+    }
+}
@@ -0,0 +1,193 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.audio.AudioOperation;
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.common.DefaultFFmpegExecutor;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 使用shell脚本模拟执行很久的ffmpeg（记录进程号后等待30秒），验证异步API的取消和异常
+ *
+ * @author alan.chen
+ * @date 2020/7/15 2:30 PM
+ */
+public class AsyncTest {
+
+    private File dir;
+
+    private File pid;
+
+    private String ffmpeg;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_async_test").toFile();
+        pid = new File(dir, "pid");
+        File script = new File(dir, "ffmpeg.sh");
+        String content = "#!/bin/sh\n"
+                + "echo $$ > '" + pid.getAbsolutePath() + "'\n"
+                + "exec sleep 30\n";
+        Files.write(script.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(script.setExecutable(true));
+        ffmpeg = script.getAbsolutePath();
+    }
+
+    private String path(String name) {
+        return new File(dir, name).getAbsolutePath();
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if(System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    /**
+     * 等待进程启动，返回进程的 /proc 目录
+     */
+    private File started() throws Exception {
+        Assert.assertTrue(waitFor(() -> pid.length() > 0));
+        return new File("/proc/" + new String(Files.readAllBytes(pid.toPath()), StandardCharsets.UTF_8).trim());
+    }
+
+    @Test(timeout = 20000)
+    public void videoCancelTest() throws Exception {
+        CompletableFuture<Result> future = VideoOperation.builder(ffmpeg).wipeAudioAsync(path("in.mp4"), path("out.mp4"));
+        File proc = started();
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(future.isCancelled());
+        // cancel() 通过取消句柄终止进程
+        Assert.assertTrue(waitFor(() -> !proc.exists()));
+    }
+
+    @Test(timeout = 20000)
+    public void audioCancelTest() throws Exception {
+        CompletableFuture<Result> future = AudioOperation.builder(ffmpeg).transFormatAudioAsync(path("in.amr"), path("out.mp3"));
+        File proc = started();
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(waitFor(() -> !proc.exists()));
+    }
+
+    @Test(timeout = 20000)
+    public void sharedTokenTest() throws Exception {
+        CancelToken token = new CancelToken();
+        CompletableFuture<Result> future = VideoOperation.builder(ffmpeg).withCancelToken(token)
+                .wipeAudioAsync(path("in.mp4"), path("out.mp4"));
+        started();
+        // 通过指定的句柄取消时Future正常结束，返回取消的结果
+        token.cancel();
+        Assert.assertEquals(Integer.valueOf(Result.CODE_CANCELLED), future.get(5, TimeUnit.SECONDS).getCode());
+    }
+
+    @Test(timeout = 20000)
+    public void cancelBeforeStartTest() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            single.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            CompletableFuture<Result> future = VideoOperation.builder(ffmpeg).withAsyncExecutor(single)
+                    .wipeAudioAsync(path("in.mp4"), path("out.mp4"));
+            // 还在排队时取消，之后不再启动进程
+            Assert.assertTrue(future.cancel(true));
+            release.countDown();
+            single.shutdown();
+            Assert.assertTrue(single.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertFalse(pid.exists());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void exceptionTest() throws Exception {
+        CompletableFuture<Result> video = VideoOperation.builder(ffmpeg).wipeAudioAsync(null, path("out.mp4"));
+        CompletableFuture<Result> audio = AudioOperation.builder(ffmpeg).audioCutAsync(path("in.mp3"), path("out.mp3"), "abc", "00:00:10");
+        for (CompletableFuture<Result> future : new CompletableFuture[]{video, audio}) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail("exception expected");
+            } catch (ExecutionException e) {
+                // 参数错误以FFMpegException异常结束
+                Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof FFMpegException);
+            }
+        }
+        Assert.assertFalse(pid.exists());
+    }
+
+    @Test(timeout = 30000)
+    public void boundedThreadsTest() throws Exception {
+        File script = new File(dir, "quick.sh");
+        Files.write(script.toPath(), "#!/bin/sh\nsleep 0.05\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(script.setExecutable(true));
+        DefaultFFmpegExecutor executor = new DefaultFFmpegExecutor(2, 100);
+        ThreadPoolExecutor threads = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        try {
+            VideoOperation operation = VideoOperation.builder(script.getAbsolutePath(), executor).withAsyncExecutor(threads);
+            List<CompletableFuture<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                futures.add(operation.wipeAudioAsync(path("in.mp4"), path("out" + i + ".mp4")));
+            }
+            for (CompletableFuture<Result> future : futures) {
+                Assert.assertEquals(Integer.valueOf(0), future.get(20, TimeUnit.SECONDS).getCode());
+            }
+            // 排队的任务不占用线程，线程数不超过同时运行的进程数
+            Assert.assertTrue(String.valueOf(threads.getLargestPoolSize()), threads.getLargestPoolSize() <= 2);
+            Assert.assertEquals(0, executor.getQueueSize());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void queueFullTest() throws Exception {
+        DefaultFFmpegExecutor executor = new DefaultFFmpegExecutor(1, 1);
+        VideoOperation operation = VideoOperation.builder(ffmpeg, executor);
+        CompletableFuture<Result> running = operation.wipeAudioAsync(path("in.mp4"), path("out1.mp4"));
+        File proc = started();
+        CompletableFuture<Result> queued = operation.wipeAudioAsync(path("in.mp4"), path("out2.mp4"));
+        CompletableFuture<Result> rejected = operation.wipeAudioAsync(path("in.mp4"), path("out3.mp4"));
+        Assert.assertEquals(1, executor.getQueueSize());
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            Assert.fail("exception expected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof FFMpegRejectedException);
+        }
+        // 排队时取消，轮到时不再启动进程
+        Assert.assertTrue(queued.cancel(true));
+        Assert.assertTrue(running.cancel(true));
+        Assert.assertTrue(waitFor(() -> !proc.exists()));
+        Assert.assertTrue(waitFor(() -> executor.getQueueSize() == 0 && executor.getActiveCount() == 0));
+        Assert.assertEquals(proc.getName(), new String(Files.readAllBytes(pid.toPath()), StandardCharsets.UTF_8).trim());
+    }
+}
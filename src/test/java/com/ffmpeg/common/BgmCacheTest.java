@@ -0,0 +1,144 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.audio.BgmCache;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 使用shell脚本模拟的ffmpeg，每次执行记录参数，并向最后一个参数（输出文件）写入数据
+ *
+ * @author alan.chen
+ * @date 2020/8/12 3:20 PM
+ */
+public class BgmCacheTest {
+
+    private File dir;
+
+    private File log;
+
+    private String ffmpeg;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_bgm_test").toFile();
+        log = new File(dir, "log");
+        File script = new File(dir, "ffmpeg.sh");
+        String content = "#!/bin/sh\n"
+                + "echo \"$*\" >> '" + log.getAbsolutePath() + "'\n"
+                + "for last; do true; done\n"
+                + "echo 0123456789 > \"$last\"\n";
+        Files.write(script.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(script.setExecutable(true));
+        ffmpeg = script.getAbsolutePath();
+    }
+
+    private File bgm(String name) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), name.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void cacheTest() throws IOException {
+        File cacheDir = new File(dir, "cache");
+        BgmCache cache = BgmCache.builder(ffmpeg, cacheDir.getAbsolutePath());
+        File a = bgm("a.mp3");
+        String cached = cache.get(a.getAbsolutePath());
+        Assert.assertTrue(new File(cached).isFile());
+        Assert.assertTrue(cached.endsWith(".m4a"));
+        Assert.assertEquals(cached, cache.get(a.getAbsolutePath()));
+        Assert.assertEquals(1, Files.readAllLines(log.toPath()).size());
+
+        // 目标参数不同时重新转码
+        cache.setLoudnorm(true);
+        String normalized = cache.get(a.getAbsolutePath());
+        Assert.assertNotEquals(cached, normalized);
+        Assert.assertTrue(Files.readAllLines(log.toPath()).get(1).contains("loudnorm"));
+
+        // 超过上限时删除最久没有使用的文件
+        cache.setMaxBytes(15);
+        Assert.assertTrue(new File(cached).setLastModified(System.currentTimeMillis() - 60_000));
+        cache.get(bgm("b.mp3").getAbsolutePath());
+        Assert.assertFalse(new File(cached).exists());
+        Assert.assertEquals(1, cacheDir.list().length);
+    }
+
+    @Test
+    public void mergeTest() throws IOException {
+        BgmCache cache = BgmCache.builder(ffmpeg, new File(dir, "cache").getAbsolutePath());
+        VideoOperation operation = VideoOperation.builder(ffmpeg).withBgmCache(cache);
+        File bgm = bgm("bgm.mp3");
+        String video = new File(dir, "in.mp4").getAbsolutePath();
+        for (int i = 0; i < 2; i++) {
+            Result result = operation.convertorWithBgmNoOriginCommon(video, new File(dir, "out" + i + ".mp4").getAbsolutePath(),
+                    null, bgm.getAbsolutePath(), 5);
+            Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        }
+        List<String> lines = Files.readAllLines(log.toPath());
+        // 背景音乐只转码一次
+        Assert.assertEquals(3, lines.size());
+        Assert.assertTrue(lines.get(2).contains("-c:a copy"));
+        Assert.assertFalse(lines.get(2).contains(bgm.getAbsolutePath()));
+    }
+
+    private File slowFFmpeg(File pid) throws IOException {
+        File script = new File(dir, "slow.sh");
+        String content = "#!/bin/sh\n"
+                + "echo $$ > '" + pid.getAbsolutePath() + "'\n"
+                + "exec sleep 30\n";
+        Files.write(script.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(script.setExecutable(true));
+        return script;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if(System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    @Test(timeout = 20000)
+    public void timeoutTest() throws IOException {
+        File slow = slowFFmpeg(new File(dir, "pid"));
+        File cacheDir = new File(dir, "cache");
+        BgmCache cache = BgmCache.builder(slow.getAbsolutePath(), cacheDir.getAbsolutePath());
+        try {
+            cache.get(bgm("a.mp3").getAbsolutePath(), 300, null, null);
+            Assert.fail("timeout expected");
+        } catch (FFMpegException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("bgm encode failed"));
+        }
+        Assert.assertEquals(0, cacheDir.list().length);
+    }
+
+    @Test(timeout = 20000)
+    public void asyncCancelTest() throws Exception {
+        File pid = new File(dir, "pid");
+        File slow = slowFFmpeg(pid);
+        BgmCache cache = BgmCache.builder(slow.getAbsolutePath(), new File(dir, "cache").getAbsolutePath());
+        VideoOperation operation = VideoOperation.builder(slow.getAbsolutePath()).withBgmCache(cache);
+        CompletableFuture<Result> future = operation.mergeVideoAndBgmNoOriginAsync(new File(dir, "in.mp4").getAbsolutePath(),
+                new File(dir, "out.mp4").getAbsolutePath(), bgm("bgm.mp3").getAbsolutePath(), 5);
+        // 第一次使用背景音乐，转码进程启动后取消
+        Assert.assertTrue(waitFor(() -> pid.length() > 0));
+        File proc = new File("/proc/" + new String(Files.readAllBytes(pid.toPath()), StandardCharsets.UTF_8).trim());
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(waitFor(() -> !proc.exists()));
+    }
+}
@@ -0,0 +1,145 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.common.CachingFFmpegExecutor;
+import com.ffmpeg.common.common.DefaultFFmpegExecutor;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 使用shell脚本模拟ffmpeg：复制 -i 的输入文件到最后一个参数，并记录执行次数
+ *
+ * @author alan.chen
+ * @date 2020/8/3 3:20 PM
+ */
+public class CachingFFmpegExecutorTest {
+
+    private File dir;
+
+    private File ffmpeg;
+
+    private File counter;
+
+    private File input;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_cache_test").toFile();
+        counter = new File(dir, "count");
+        ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "if [ \"$1\" = \"-version\" ]; then echo 'ffmpeg version test'; exit 0; fi\n"
+                + "echo run >> '" + counter.getAbsolutePath() + "'\n"
+                + "sleep 0.2\n"
+                + "while [ $# -gt 1 ]; do if [ \"$1\" = \"-i\" ]; then in=\"$2\"; fi; shift; done\n"
+                + "cp \"$in\" \"$1\"\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        input = new File(dir, "in.mp4");
+        Files.write(input.toPath(), new byte[1000]);
+    }
+
+    private List<String> command(String output) {
+        return Arrays.asList(ffmpeg.getAbsolutePath(), "-y", "-i", input.getAbsolutePath(), "-vf", "scale=360:640", output);
+    }
+
+    private int runs() throws IOException {
+        return counter.exists() ? Files.readAllLines(counter.toPath()).size() : 0;
+    }
+
+    @Test
+    public void hitTest() throws IOException {
+        CachingFFmpegExecutor executor = new CachingFFmpegExecutor(new DefaultFFmpegExecutor(4, 16),
+                new File(dir, "cache").getAbsolutePath(), 1 << 20);
+        File out1 = new File(dir, "out1.mp4");
+        File out2 = new File(dir, "out2.mp4");
+
+        Assert.assertEquals(Integer.valueOf(0), executor.execute(command(out1.getAbsolutePath())).getCode());
+        Assert.assertEquals(Integer.valueOf(0), executor.execute(command(out2.getAbsolutePath())).getCode());
+        Assert.assertEquals(1, runs());
+        Assert.assertEquals(1000, out2.length());
+        Assert.assertEquals(1, executor.getHitCount());
+
+        // 参数不同时不命中
+        executor.execute(Arrays.asList(ffmpeg.getAbsolutePath(), "-y", "-i", input.getAbsolutePath(), out2.getAbsolutePath()));
+        Assert.assertEquals(2, runs());
+    }
+
+    @Test
+    public void concurrentFillTest() throws IOException {
+        CachingFFmpegExecutor executor = new CachingFFmpegExecutor(new DefaultFFmpegExecutor(4, 16),
+                new File(dir, "cache").getAbsolutePath(), 1 << 20);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[4];
+        for (int i = 0; i < futures.length; i++) {
+            String output = new File(dir, "out" + i + ".mp4").getAbsolutePath();
+            futures[i] = CompletableFuture.supplyAsync(() -> executor.execute(command(output)));
+        }
+        for (CompletableFuture<?> future : futures) {
+            Assert.assertEquals(Integer.valueOf(0), ((Result) future.join()).getCode());
+        }
+        Assert.assertEquals(1, runs());
+    }
+
+    @Test
+    public void storeFailureTest() throws IOException {
+        File cacheDir = new File(dir, "cache");
+        CachingFFmpegExecutor executor = new CachingFFmpegExecutor(new DefaultFFmpegExecutor(4, 16),
+                cacheDir.getAbsolutePath(), 1 << 20);
+        // 缓存目录被替换为普通文件，写入缓存失败时仍然返回执行结果
+        Assert.assertTrue(cacheDir.delete());
+        Files.write(cacheDir.toPath(), new byte[1]);
+        File out = new File(dir, "out.mp4");
+
+        Result result = executor.execute(command(out.getAbsolutePath()));
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        Assert.assertEquals(1000, out.length());
+        Assert.assertEquals(0, executor.getTotalBytes());
+    }
+
+    @Test
+    public void evictTest() throws IOException {
+        CachingFFmpegExecutor executor = new CachingFFmpegExecutor(new DefaultFFmpegExecutor(4, 16),
+                new File(dir, "cache").getAbsolutePath(), 1500);
+        executor.execute(command(new File(dir, "a.mp4").getAbsolutePath()));
+        executor.execute(Arrays.asList(ffmpeg.getAbsolutePath(), "-y", "-i", input.getAbsolutePath(),
+                new File(dir, "b.mp4").getAbsolutePath()));
+        Assert.assertEquals(1000, executor.getTotalBytes());
+
+        // 第一个缓存已被淘汰
+        executor.execute(command(new File(dir, "c.mp4").getAbsolutePath()));
+        Assert.assertEquals(3, runs());
+    }
+
+    @Test
+    public void operationCommandTest() throws IOException {
+        CachingFFmpegExecutor executor = new CachingFFmpegExecutor(new DefaultFFmpegExecutor(4, 16),
+                new File(dir, "cache").getAbsolutePath(), 1 << 20);
+        VideoOperation operation = VideoOperation.builder(ffmpeg.getAbsolutePath(), executor);
+        String in = input.getAbsolutePath();
+
+        // videoCut在 -i 前有不带值的 -accurate_seek，仍然能找到输入和输出文件
+        Assert.assertEquals(Integer.valueOf(0), operation.videoCut(in, "2", "3", new File(dir, "cut1.mp4").getAbsolutePath()).getCode());
+        File cut = new File(dir, "cut2.mp4");
+        Assert.assertEquals(Integer.valueOf(0), operation.videoCut(in, "2", "3", cut.getAbsolutePath()).getCode());
+        Assert.assertEquals(1, runs());
+        Assert.assertEquals(1, executor.getHitCount());
+        Assert.assertEquals(1000, cut.length());
+
+        Assert.assertEquals(Integer.valueOf(0), operation.videoConvert(in, new File(dir, "convert1.mov").getAbsolutePath()).getCode());
+        File convert = new File(dir, "convert2.mov");
+        Assert.assertEquals(Integer.valueOf(0), operation.videoConvert(in, convert.getAbsolutePath()).getCode());
+        Assert.assertEquals(2, runs());
+        Assert.assertEquals(2, executor.getHitCount());
+        Assert.assertEquals(1000, convert.length());
+    }
+}
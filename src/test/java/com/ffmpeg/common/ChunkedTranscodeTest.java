@@ -0,0 +1,104 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * 使用shell脚本模拟的ffmpeg：切分时按输出文件名模板生成3个分段，其他命令向最后一个参数写入数据，
+ * 并复制拼接用的列表文件
+ *
+ * @author alan.chen
+ * @date 2020/7/30 4:40 PM
+ */
+public class ChunkedTranscodeTest {
+
+    private File dir;
+
+    private File log;
+
+    private File list;
+
+    private String input;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_chunk_test").toFile();
+        log = new File(dir, "log");
+        list = new File(dir, "list");
+        input = new File(dir, "in.mp4").getAbsolutePath();
+    }
+
+    private VideoOperation operation(String failOn) throws IOException {
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "echo \"$*\" >> '" + log.getAbsolutePath() + "'\n"
+                + "case \"$*\" in *'" + failOn + "'*) exit 1 ;; esac\n"
+                + "prev=\n"
+                + "for arg; do if [ \"$prev\" = \"-i\" ] && [ \"${arg##*.}\" = \"txt\" ]; then cp \"$arg\" '" + list.getAbsolutePath() + "'; fi; prev=$arg; done\n"
+                + "case \"$*\" in\n"
+                + "  *' -f segment '*) for i in 0 1 2; do echo chunk > \"$(printf \"$prev\" $i)\"; done ;;\n"
+                + "  *) echo ffmpeg > \"$prev\" ;;\n"
+                + "esac\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        return VideoOperation.builder(ffmpeg.getAbsolutePath());
+    }
+
+    @Test
+    public void transcodeTest() throws IOException {
+        File out = new File(dir, "out.mp4");
+        File work = new File(dir, "work");
+        Result result = operation("no-such-arg").chunkedTranscode(input)
+                .segmentSeconds(10)
+                .parallelism(2)
+                .scale("360", "640")
+                .workDir(work.getAbsolutePath())
+                .execute(out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        List<String> lines = Files.readAllLines(log.toPath());
+        // 切分一次，3个分段转码，拼接一次
+        Assert.assertEquals(5, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).startsWith("-y -i " + input
+                + " -map 0:v:0 -c copy -f segment -segment_time 10 -reset_timestamps 1 "));
+        Assert.assertTrue(lines.get(0), lines.get(0).endsWith("chunk_%05d.mkv"));
+        for (String line : lines.subList(1, 4)) {
+            Assert.assertTrue(line, line.matches("-y -i \\S+/chunk_0000[0-2]\\.mkv -an -vf scale=360:640 -vcodec h264 \\S+/part_0000[0-2]\\.mkv"));
+        }
+        String concat = lines.get(4);
+        Assert.assertTrue(concat, concat.startsWith("-f concat -safe 0 -i "));
+        Assert.assertTrue(concat, concat.endsWith(" -i " + input + " -map 0:v -map 1:a? -c:v copy -acodec aac -y " + out.getAbsolutePath()));
+
+        // 列表按分段顺序排列，执行结束后删除分段文件
+        List<String> parts = Files.readAllLines(list.toPath());
+        Assert.assertEquals(3, parts.size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(parts.get(i), parts.get(i).endsWith("part_0000" + i + ".mkv'"));
+        }
+        Assert.assertEquals(0, work.list().length);
+    }
+
+    @Test
+    public void chunkFailureTest() throws IOException {
+        File out = new File(dir, "out.mp4");
+        Result result = operation("chunk_00001.mkv -an").chunkedTranscode(input)
+                .parallelism(1)
+                .execute(out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(1), result.getCode());
+
+        // 分段转码失败时不再拼接
+        for (String line : Files.readAllLines(log.toPath())) {
+            Assert.assertFalse(line, line.contains("-f concat"));
+        }
+        Assert.assertFalse(out.exists());
+    }
+}
@@ -0,0 +1,85 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.utils.BaseFileUtil;
+import com.ffmpeg.common.utils.DirectoryScanner;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author alan.chen
+ * @date 2020/8/14 3:10 PM
+ */
+public class DirectoryScannerTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_scan_test").toFile();
+    }
+
+    private void touch(String... names) throws IOException {
+        for (String name : names) {
+            Files.write(new File(dir, name).toPath(), name.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void naturalOrderTest() {
+        List<String> names = new ArrayList<>(Arrays.asList("10.ts", "2.ts", "1.ts", "video_010.mp4", "video_9.mp4",
+                "video_10.mp4", "a.ts", "11.ts"));
+        names.sort(DirectoryScanner.NATURAL_ORDER);
+        Assert.assertEquals(Arrays.asList("1.ts", "2.ts", "10.ts", "11.ts", "a.ts", "video_9.mp4", "video_10.mp4",
+                "video_010.mp4"), names);
+
+        Assert.assertTrue(BaseFileUtil.isMpgOrMpeg("record.MPG"));
+        Assert.assertFalse(BaseFileUtil.isMpgOrMpeg("mpg"));
+    }
+
+    @Test
+    public void scanTest() throws IOException {
+        touch("10.ts", "2.ts", "1.ts", ".hidden.ts", "list.txt");
+        Assert.assertTrue(new File(dir, "sub.ts").mkdir());
+
+        List<Path> files = DirectoryScanner.scan(dir.getAbsolutePath(), "*.ts");
+        Assert.assertEquals(3, files.size());
+        Assert.assertEquals("1.ts", files.get(0).getFileName().toString());
+        Assert.assertEquals("10.ts", files.get(2).getFileName().toString());
+        Assert.assertEquals(4, DirectoryScanner.scan(dir.getAbsolutePath(), null).size());
+    }
+
+    @Test
+    public void autoMergeTest() throws IOException {
+        touch("10.mp4", "2.mp4", "1.mp4");
+        File work = Files.createTempDirectory("ffmpeg_scan_bin").toFile();
+        File list = new File(work, "list");
+        File ffmpeg = new File(work, "ffmpeg.sh");
+        // 复制 -i 后面的列表文件
+        String script = "#!/bin/sh\n"
+                + "prev=\n"
+                + "for arg; do if [ \"$prev\" = \"-i\" ]; then cp \"$arg\" '" + list.getAbsolutePath() + "'; fi; prev=$arg; done\n"
+                + "echo ffmpeg > \"$prev\"\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+
+        Result result = VideoOperation.builder(ffmpeg.getAbsolutePath())
+                .autoMergeMultiVideosByDir(dir.getAbsolutePath(), "*.mp4", new File(work, "out.mp4").getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        List<String> lines = Files.readAllLines(list.toPath());
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals("file '" + new File(dir, "1.mp4").getAbsolutePath() + "'", lines.get(0));
+        Assert.assertTrue(lines.get(2).endsWith("10.mp4'"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.common.DefaultFFmpegExecutor;
+import com.ffmpeg.common.response.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author alan.chen
+ * @date 2020/7/2 3:40 PM
+ */
+public class FFmpegExecutorTest {
+
+    @Test
+    public void rejectWhenQueueFullTest() throws InterruptedException {
+        DefaultFFmpegExecutor executor = new DefaultFFmpegExecutor(1, 0);
+        Thread running = new Thread(() -> executor.execute(Arrays.asList("sleep", "1")));
+        running.start();
+        while (executor.getActiveCount() == 0) {
+            Thread.sleep(10);
+        }
+        try {
+            executor.execute(Arrays.asList("sleep", "0"));
+            Assert.fail("expected FFMpegRejectedException");
+        } catch (FFMpegRejectedException e) {
+            System.out.println(e.getMessage());
+        }
+        running.join();
+        Assert.assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    public void rejectWhenWaitTimeoutTest() throws InterruptedException {
+        DefaultFFmpegExecutor executor = new DefaultFFmpegExecutor(1, 1, 100, TimeUnit.MILLISECONDS);
+        Thread running = new Thread(() -> executor.execute(Arrays.asList("sleep", "1")));
+        running.start();
+        while (executor.getActiveCount() == 0) {
+            Thread.sleep(10);
+        }
+        try {
+            executor.execute(Arrays.asList("sleep", "0"));
+            Assert.fail("expected FFMpegRejectedException");
+        } catch (FFMpegRejectedException e) {
+            Assert.assertEquals(0, executor.getQueueSize());
+        }
+        running.join();
+
+        Result result = executor.execute(Arrays.asList("sleep", "0"));
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+    }
+}
@@ -0,0 +1,102 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.common.DefaultFFmpegExecutor;
+import com.ffmpeg.common.common.FFmpegTask;
+import com.ffmpeg.common.common.ProcessCommand;
+import com.ffmpeg.common.metrics.HistogramSnapshot;
+import com.ffmpeg.common.metrics.InMemoryFFmpegMetrics;
+import com.ffmpeg.common.metrics.LatencyHistogram;
+import com.ffmpeg.common.metrics.OperationSnapshot;
+import com.ffmpeg.common.response.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author alan.chen
+ * @date 2020/8/5 4:30 PM
+ */
+public class FFmpegMetricsTest {
+
+    @Test
+    public void histogramTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1000, snapshot.getCount());
+        Assert.assertEquals(1000_000, snapshot.getMax());
+        Assert.assertEquals(500_500, snapshot.getMean(), 0.001);
+        // 桶的相对误差不超过12.5%
+        Assert.assertEquals(500_000, snapshot.getPercentile(50), 500_000 * 0.125);
+        Assert.assertEquals(990_000, snapshot.getPercentile(99), 990_000 * 0.125);
+        Assert.assertEquals(1000_000, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void processTest() {
+        InMemoryFFmpegMetrics metrics = new InMemoryFFmpegMetrics();
+        for (int code = 0; code < 2; code++) {
+            FFmpegTask task = new FFmpegTask(Arrays.asList("sh", "-c", "exit " + code));
+            task.setOperation("videoScale");
+            task.setMetrics(metrics);
+            ProcessCommand.launch(task);
+        }
+        OperationSnapshot snapshot = metrics.snapshot("videoScale");
+        Assert.assertEquals(2, snapshot.getCount());
+        Assert.assertEquals(1, snapshot.getFailureCount());
+        Assert.assertEquals(0, snapshot.getInFlight());
+        Assert.assertEquals(Long.valueOf(1), snapshot.getExitCodes().get(0));
+        Assert.assertTrue(snapshot.getSpawn().getMax() > 0);
+        Assert.assertNull(metrics.snapshot("videoCut"));
+    }
+
+    @Test(timeout = 20000)
+    public void notStartedTest() throws InterruptedException {
+        InMemoryFFmpegMetrics metrics = new InMemoryFFmpegMetrics();
+        DefaultFFmpegExecutor executor = new DefaultFFmpegExecutor(1, 0);
+        CancelToken token = new CancelToken();
+        FFmpegTask running = new FFmpegTask(Arrays.asList("sleep", "10"));
+        running.setCancelToken(token);
+        CompletableFuture<Result> future = CompletableFuture.supplyAsync(() -> executor.execute(running));
+        while (executor.getActiveCount() == 0) {
+            Thread.sleep(10);
+        }
+
+        // 执行器拒绝的任务
+        FFmpegTask rejected = new FFmpegTask(Arrays.asList("sh", "-c", "exit 0"));
+        rejected.setOperation("videoScale");
+        rejected.setMetrics(metrics);
+        try {
+            executor.execute(rejected);
+            Assert.fail("rejected expected");
+        } catch (FFMpegRejectedException e) {
+            // 排队已满
+        }
+        token.cancel();
+        future.join();
+
+        // 启动进程失败的任务
+        FFmpegTask missing = new FFmpegTask(Arrays.asList("/nonexistent/ffmpeg", "-version"));
+        missing.setOperation("videoScale");
+        missing.setMetrics(metrics);
+        try {
+            executor.execute(missing);
+            Assert.fail("spawn failure expected");
+        } catch (FFMpegException e) {
+            // 文件不存在
+        }
+
+        OperationSnapshot snapshot = metrics.snapshot("videoScale");
+        Assert.assertEquals(Long.valueOf(1), snapshot.getExitCodes().get(Result.CODE_REJECTED));
+        Assert.assertEquals(Long.valueOf(1), snapshot.getExitCodes().get(Result.CODE_SPAWN_FAILED));
+        Assert.assertEquals(2, snapshot.getFailureCount());
+        Assert.assertEquals(2, snapshot.getQueueWait().getCount());
+        Assert.assertEquals(0, snapshot.getCount());
+        Assert.assertEquals(0, snapshot.getInFlight());
+    }
+}
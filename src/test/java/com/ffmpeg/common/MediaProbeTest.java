@@ -0,0 +1,276 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.probe.KeyframeIndex;
+import com.ffmpeg.common.probe.MediaInfo;
+import com.ffmpeg.common.probe.MediaProbe;
+import com.ffmpeg.common.probe.Mp4BoxReader;
+import com.ffmpeg.common.response.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * @author alan.chen
+ * @date 2020/7/21 10:15 AM
+ */
+public class MediaProbeTest {
+
+    private static final String FFPROBE_OUTPUT = "{\n" +
+            "    \"packets\": [\n" +
+            "        { \"stream_index\": 0, \"pts_time\": \"0.000000\", \"flags\": \"K_\" },\n" +
+            "        { \"stream_index\": 1, \"pts_time\": \"0.000000\", \"flags\": \"K_\" },\n" +
+            "        { \"stream_index\": 0, \"pts_time\": \"0.033367\", \"flags\": \"__\" },\n" +
+            "        { \"stream_index\": 0, \"pts_time\": \"2.002000\", \"flags\": \"K_\" },\n" +
+            "        { \"stream_index\": 0, \"pts_time\": \"4.004000\", \"flags\": \"K_\" }\n" +
+            "    ],\n" +
+            "    \"streams\": [\n" +
+            "        {\n" +
+            "            \"index\": 0,\n" +
+            "            \"codec_name\": \"h264\",\n" +
+            "            \"codec_type\": \"video\",\n" +
+            "            \"codec_tag_string\": \"avc1\",\n" +
+            "            \"width\": 1920,\n" +
+            "            \"height\": 1080,\n" +
+            "            \"r_frame_rate\": \"30000/1001\",\n" +
+            "            \"avg_frame_rate\": \"30000/1001\",\n" +
+            "            \"duration\": \"10.010000\",\n" +
+            "            \"bit_rate\": \"4000000\",\n" +
+            "            \"extradata_size\": 48,\n" +
+            "            \"extradata_hash\": \"SHA256:5e0a1b\",\n" +
+            "            \"disposition\": { \"default\": 1, \"attached_pic\": 0 },\n" +
+            "            \"tags\": { \"rotate\": \"90\", \"handler_name\": \"VideoHandler\\u0020\" }\n" +
+            "        },\n" +
+            "        {\n" +
+            "            \"index\": 1,\n" +
+            "            \"codec_name\": \"aac\",\n" +
+            "            \"codec_type\": \"audio\",\n" +
+            "            \"sample_rate\": \"44100\",\n" +
+            "            \"channels\": 2,\n" +
+            "            \"bit_rate\": \"128000\"\n" +
+            "        }\n" +
+            "    ],\n" +
+            "    \"format\": {\n" +
+            "        \"format_name\": \"mov,mp4,m4a,3gp,3g2,mj2\",\n" +
+            "        \"duration\": \"10.010000\",\n" +
+            "        \"size\": \"5171046\",\n" +
+            "        \"bit_rate\": \"4132704\"\n" +
+            "    }\n" +
+            "}";
+
+    @Test
+    public void parseTest() {
+        MediaInfo info = MediaProbe.parse(FFPROBE_OUTPUT);
+        Assert.assertEquals("mov,mp4,m4a,3gp,3g2,mj2", info.getFormatName());
+        Assert.assertEquals(10.01, info.getDuration(), 0.0001);
+        Assert.assertEquals(5171046, info.getSize());
+        Assert.assertEquals(1920, info.getWidth());
+        Assert.assertEquals(1080, info.getHeight());
+        Assert.assertEquals(29.97, info.getFps(), 0.01);
+        Assert.assertEquals("h264", info.getVideoCodec());
+        Assert.assertEquals("aac", info.getAudioCodec());
+        Assert.assertEquals(90, info.getVideoStream().getRotation());
+        Assert.assertEquals(48, info.getVideoStream().getExtradataSize());
+        Assert.assertEquals("SHA256:5e0a1b", info.getVideoStream().getExtradataHash());
+        Assert.assertEquals(44100, info.getAudioStream().getSampleRate());
+        Assert.assertEquals(2.002, info.getKeyframeInterval(), 0.0001);
+    }
+
+    @Test
+    public void keyframeIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("ffmpeg_index_test").toFile();
+        File counter = new File(dir, "count");
+        File ffprobe = new File(dir, "ffprobe.sh");
+        // pts_time,dts_time,pos,flags
+        String script = "#!/bin/sh\n"
+                + "echo run >> '" + counter.getAbsolutePath() + "'\n"
+                + "printf '0.000000,0.000000,48,K_\\n0.033367,0.033367,900,__\\nN/A,2.002000,5000,K_\\n"
+                + "6.006000,6.006000,15000,K_\\n4.004000,4.004000,10000,K_\\n'\n";
+        Files.write(ffprobe.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffprobe.setExecutable(true));
+        File video = new File(dir, "in.mp4");
+        Files.write(video.toPath(), new byte[100]);
+
+        MediaProbe probe = new MediaProbe(ffprobe.getAbsolutePath());
+        probe.setKeyframeIndexDir(new File(dir, "index").getAbsolutePath());
+        KeyframeIndex index = probe.keyframeIndex(video.getAbsolutePath());
+        Assert.assertEquals(4, index.size());
+        Assert.assertEquals(2.002, index.floor(3), 0.0001);
+        Assert.assertEquals(4.004, index.ceil(3), 0.0001);
+        Assert.assertEquals(10000, index.offsetAt(index.floorIndex(5)));
+        Assert.assertEquals(-1, index.ceil(7), 0.0001);
+        Assert.assertArrayEquals(new double[]{2.002, 4.004}, probe.keyframes(video.getAbsolutePath(), 1, 5), 0.0001);
+
+        // 新实例从索引文件读取，不再执行ffprobe
+        MediaProbe other = new MediaProbe(ffprobe.getAbsolutePath());
+        other.setKeyframeIndexDir(new File(dir, "index").getAbsolutePath());
+        Assert.assertEquals(4, other.keyframeIndex(video.getAbsolutePath()).size());
+        Assert.assertEquals(1, Files.readAllLines(counter.toPath()).size());
+
+        // 源文件变化后重新生成
+        Files.write(video.toPath(), new byte[200]);
+        other.keyframeIndex(video.getAbsolutePath());
+        Assert.assertEquals(2, Files.readAllLines(counter.toPath()).size());
+
+        // 默认索引目录在临时目录下，不在源文件旁边生成文件
+        new MediaProbe(ffprobe.getAbsolutePath()).keyframeIndex(video.getAbsolutePath());
+        Assert.assertFalse(new File(video.getAbsolutePath() + ".kfi").exists());
+        Assert.assertTrue(new File(MediaProbe.DEFAULT_KEYFRAME_INDEX_DIR).isDirectory());
+    }
+
+    private static byte[] box(String type, byte[]... children) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] child : children) {
+            body.write(child);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(body.size() + 8);
+        data.writeBytes(type);
+        body.writeTo(data);
+        return out.toByteArray();
+    }
+
+    private static byte[] ints(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    @Test
+    public void mp4BoxReaderTest() throws IOException {
+        // tkhd version 0: 20字节 + 16字节，矩阵旋转90度，显示尺寸 1080x1920
+        byte[] tkhd = box("tkhd", ints(0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0x10000, 0, -0x10000, 0, 0, 0, 0, 0, 0x40000000,
+                1080 << 16, 1920 << 16));
+        byte[] mdhd = box("mdhd", ints(0, 0, 0, 30000, 300300, 0));
+        byte[] hdlr = box("hdlr", ints(0, 0), "vide".getBytes(StandardCharsets.US_ASCII), ints(0, 0, 0, 0));
+        // avc1 sample entry: 宽高在entry的第32字节
+        byte[] avc1 = box("avc1", new byte[24], new byte[]{7, (byte) 0x80, 4, 0x38}, new byte[50]);
+        byte[] stsd = box("stsd", ints(0, 1), avc1);
+        byte[] stts = box("stts", ints(0, 1, 300, 1001));
+        byte[] stss = box("stss", ints(0, 6, 1, 61, 121, 181, 241, 301));
+        byte[] video = box("trak", tkhd, box("mdia", mdhd, hdlr, box("minf", box("stbl", stsd, stts, stss))));
+
+        byte[] mp4a = box("mp4a", new byte[16], new byte[]{0, 2, 0, 16, 0, 0, 0, 0, (byte) 0xAC, 0x44, 0, 0});
+        byte[] audio = box("trak", box("tkhd", new byte[84]), box("mdia", box("mdhd", ints(0, 0, 0, 44100, 441441, 0)),
+                box("hdlr", ints(0, 0), "soun".getBytes(StandardCharsets.US_ASCII), ints(0, 0, 0, 0)),
+                box("minf", box("stbl", box("stsd", ints(0, 1), mp4a)))));
+
+        byte[] covr = box("covr", box("data", ints(13, 0), new byte[]{(byte) 0xFF, (byte) 0xD8}));
+        byte[] udta = box("udta", box("meta", ints(0), box("hdlr", new byte[25]), box("ilst", covr)));
+        byte[] mvhd = box("mvhd", ints(0, 0, 0, 1000, 10010), new byte[80]);
+
+        File file = File.createTempFile("ffmpeg_box_test", ".mp4");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(box("ftyp", "isom".getBytes(StandardCharsets.US_ASCII), ints(0x200)));
+            out.write(box("moov", mvhd, video, audio, udta));
+            out.write(box("mdat", new byte[1000]));
+        }
+
+        MediaInfo info = Mp4BoxReader.read(file.getAbsolutePath());
+        Assert.assertNotNull(info);
+        Assert.assertEquals(10.01, info.getDuration(), 0.0001);
+        Assert.assertEquals(Boolean.TRUE, info.getMoovAtFront());
+        Assert.assertEquals(1920, info.getWidth());
+        Assert.assertEquals(1080, info.getHeight());
+        Assert.assertEquals(29.97, info.getFps(), 0.01);
+        Assert.assertEquals(2.002, info.getKeyframeInterval(), 0.0001);
+        Assert.assertEquals("h264", info.getVideoCodec());
+        Assert.assertEquals(90, info.getVideoStream().getRotation());
+        Assert.assertEquals("aac", info.getAudioCodec());
+        Assert.assertEquals(44100, info.getAudioStream().getSampleRate());
+        Assert.assertEquals(2, info.getAudioStream().getChannels());
+        Assert.assertTrue(info.hasAttachedPic());
+
+        // 文件不完整时返回null，由ffprobe处理
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(file.length() - 10);
+        }
+        Assert.assertNull(Mp4BoxReader.read(file.getAbsolutePath()));
+        file.delete();
+    }
+
+    private static File slowProbe(File dir) throws IOException {
+        File ffprobe = new File(dir, "ffprobe.sh");
+        String script = "#!/bin/sh\n"
+                + "echo run >> '" + new File(dir, "count").getAbsolutePath() + "'\n"
+                + "exec sleep 30\n";
+        Files.write(ffprobe.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffprobe.setExecutable(true));
+        return ffprobe;
+    }
+
+    @Test(timeout = 20000)
+    public void timeoutTest() throws IOException {
+        File dir = Files.createTempDirectory("ffmpeg_probe_timeout_test").toFile();
+        File video = new File(dir, "in.mp4");
+        Files.write(video.toPath(), new byte[100]);
+        MediaProbe probe = new MediaProbe(slowProbe(dir).getAbsolutePath());
+        probe.setTimeoutMillis(300);
+        probe.setKeyframeIndexTimeoutMillis(300);
+        probe.setKeyframeIndexDir(new File(dir, "index").getAbsolutePath());
+
+        // ffprobe没有响应时按超时时间终止，不会一直阻塞
+        for (Runnable call : new Runnable[]{() -> probe.probe(video.getAbsolutePath()),
+                () -> probe.keyframeIndex(video.getAbsolutePath())}) {
+            try {
+                call.run();
+                Assert.fail("timeout expected");
+            } catch (FFMpegException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("code: " + Result.CODE_TIMEOUT));
+            }
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void cancelTest() throws Exception {
+        File dir = Files.createTempDirectory("ffmpeg_probe_cancel_test").toFile();
+        File counter = new File(dir, "count");
+        File video = new File(dir, "in.mp4");
+        Files.write(video.toPath(), new byte[100]);
+        MediaProbe probe = new MediaProbe(slowProbe(dir).getAbsolutePath());
+
+        CancelToken owner = new CancelToken();
+        CancelToken waiter = new CancelToken();
+        CompletableFuture<MediaInfo> first = CompletableFuture.supplyAsync(() -> probe.probe(video.getAbsolutePath(), owner));
+        while (!counter.exists()) {
+            Thread.sleep(10);
+        }
+        CompletableFuture<MediaInfo> second = CompletableFuture.supplyAsync(() -> probe.probe(video.getAbsolutePath(), waiter));
+
+        // 等待同一个文件的调用方只检查自己的取消句柄，不启动新的进程
+        waiter.cancel();
+        try {
+            second.join();
+            Assert.fail("cancel expected");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof FFMpegException);
+        }
+        Assert.assertFalse(first.isDone());
+        Assert.assertEquals(1, Files.readAllLines(counter.toPath()).size());
+
+        // 取消后终止ffprobe进程
+        owner.cancel();
+        try {
+            first.join();
+            Assert.fail("cancel expected");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof FFMpegException);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * 构造只有PAT、PMT和空包的TS文件，流结构不同时使用shell脚本模拟的ffmpeg
+ *
+ * @author alan.chen
+ * @date 2020/8/8 3:30 PM
+ */
+public class MpegConcatTest {
+
+    private File dir;
+
+    private File counter;
+
+    private VideoOperation operation;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_concat_test").toFile();
+        counter = new File(dir, "count");
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "echo run >> '" + counter.getAbsolutePath() + "'\n"
+                + "for last; do true; done\n"
+                + "echo ffmpeg > \"$last\"\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        operation = VideoOperation.builder(ffmpeg.getAbsolutePath());
+    }
+
+    private static byte[] packet(int pid, int... section) {
+        byte[] packet = new byte[188];
+        Arrays.fill(packet, (byte) 0xFF);
+        packet[0] = 0x47;
+        packet[1] = (byte) (0x40 | (pid >> 8));
+        packet[2] = (byte) pid;
+        packet[3] = 0x10;
+        packet[4] = 0;
+        for (int i = 0; i < section.length; i++) {
+            packet[5 + i] = (byte) section[i];
+        }
+        return packet;
+    }
+
+    /**
+     * PAT指向PMT 0x1000，PMT包含一路视频 0x100 和一路音频 0x101
+     */
+    private File ts(String name, int videoStreamType) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(packet(0, 0x00, 0xB0, 13, 0, 1, 0xC1, 0, 0, 0, 1, 0xF0, 0x00, 0, 0, 0, 0));
+        out.write(packet(0x1000, 0x02, 0xB0, 23, 0, 1, 0xC1, 0, 0, 0xE1, 0x00, 0xF0, 0x00,
+                videoStreamType, 0xE1, 0x00, 0xF0, 0x00, 0x0F, 0xE1, 0x01, 0xF0, 0x00, 0, 0, 0, 0));
+        for (int i = 0; i < 10; i++) {
+            out.write(packet(0x100, 0, 0, 1, 0xE0));
+        }
+        File file = new File(dir, name);
+        Files.write(file.toPath(), out.toByteArray());
+        return file;
+    }
+
+    @Test
+    public void nativeConcatTest() throws IOException {
+        File a = ts("a.ts", 0x1B);
+        File b = ts("b.ts", 0x1B);
+        File out = new File(dir, "out.ts");
+        Result result = operation.mergeMultiVideosOfTsOrMpegFormat(Arrays.asList(a.getAbsolutePath(), b.getAbsolutePath()),
+                out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        Assert.assertFalse(counter.exists());
+        Assert.assertEquals(a.length() + b.length(), out.length());
+    }
+
+    @Test
+    public void fallbackTest() throws IOException {
+        // H.264 和 HEVC 不能直接拼接
+        File a = ts("a.ts", 0x1B);
+        File b = ts("b.ts", 0x24);
+        File out = new File(dir, "out.ts");
+        operation.mergeMultiVideosOfTsOrMpegFormat(Arrays.asList(a.getAbsolutePath(), b.getAbsolutePath()), out.getAbsolutePath());
+        Assert.assertTrue(counter.exists());
+
+        // 输出格式不同
+        File mp4 = new File(dir, "out.mp4");
+        operation.mergeMultiVideosOfTsOrMpegFormat(Arrays.asList(a.getAbsolutePath(), a.getAbsolutePath()), mp4.getAbsolutePath());
+        Assert.assertEquals(2, Files.readAllLines(counter.toPath()).size());
+    }
+}
@@ -0,0 +1,104 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.probe.MediaProbe;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 使用shell脚本模拟的ffmpeg（记录参数，向输出目录下的每个参数写入数据）和ffprobe（输出视频旁边的 .json 文件）
+ *
+ * @author alan.chen
+ * @date 2020/7/28 4:10 PM
+ */
+public class MultiOutputTest {
+
+    private File dir;
+
+    private File out;
+
+    private File log;
+
+    private File ffmpeg;
+
+    private File ffprobe;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_multi_test").toFile();
+        out = new File(dir, "out");
+        log = new File(dir, "log");
+        ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "echo \"$*\" >> '" + log.getAbsolutePath() + "'\n"
+                + "for arg; do case \"$arg\" in '" + out.getAbsolutePath() + "'/*) echo x > \"$arg\" ;; esac; done\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        ffprobe = new File(dir, "ffprobe.sh");
+        String probeScript = "#!/bin/sh\n"
+                + "for last; do true; done\n"
+                + "cat \"$last.json\"\n";
+        Files.write(ffprobe.toPath(), probeScript.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffprobe.setExecutable(true));
+    }
+
+    private String output(String name) {
+        return new File(out, name).getAbsolutePath();
+    }
+
+    @Test
+    public void commandTest() throws IOException {
+        String input = new File(dir, "in.mp4").getAbsolutePath();
+        Map<String, Result> results = VideoOperation.builder(ffmpeg.getAbsolutePath()).multiOutput(input)
+                .coverImage(output("cover.jpg"))
+                .scale("360", "640", output("360.mp4"))
+                .wipeAudio(output("nosound.mp4"))
+                .extractAudio(output("bgm.mp3"))
+                .execute();
+
+        List<String> lines = Files.readAllLines(log.toPath());
+        Assert.assertEquals(1, lines.size());
+        Assert.assertEquals("-y -i " + input
+                + " -filter_complex [0:v]split=2[v0][v1];[v0]select=gte(t\\,1)[o0];[v1]scale=360:640[o1]"
+                + " -map [o0] -frames:v 1 " + output("cover.jpg")
+                + " -map [o1] -map 0:a? -acodec aac -vcodec h264 " + output("360.mp4")
+                + " -map 0:v -an -vcodec copy " + output("nosound.mp4")
+                + " -map 0:a? -vn " + output("bgm.mp3"), lines.get(0));
+        Assert.assertEquals(4, results.size());
+        for (Result result : results.values()) {
+            Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        }
+    }
+
+    @Test
+    public void silentInputTest() throws IOException {
+        File input = new File(dir, "silent.mp4");
+        Files.write(input.toPath(), new byte[100]);
+        String json = "{\"streams\": [{\"index\": 0, \"codec_type\": \"video\", \"codec_name\": \"h264\", "
+                + "\"width\": 720, \"height\": 1280}], \"format\": {\"duration\": \"5.0\"}}";
+        Files.write(new File(dir, "silent.mp4.json").toPath(), json.getBytes(StandardCharsets.UTF_8));
+
+        // 没有音频时不生成提取音频的输出，其他输出正常执行
+        Map<String, Result> results = VideoOperation.builder(ffmpeg.getAbsolutePath())
+                .withMediaProbe(new MediaProbe(ffprobe.getAbsolutePath()))
+                .multiOutput(input.getAbsolutePath())
+                .scale("360", "640", output("360.mp4"))
+                .extractAudio(output("bgm.mp3"))
+                .execute();
+
+        String line = Files.readAllLines(log.toPath()).get(0);
+        Assert.assertTrue(line, line.contains("-filter_complex [0:v]scale=360:640[o0] -map [o0]"));
+        Assert.assertFalse(line, line.contains("bgm.mp3"));
+        Assert.assertEquals(Integer.valueOf(0), results.get(output("360.mp4")).getCode());
+        Assert.assertEquals(Integer.valueOf(Result.CODE_OUTPUT_MISSING), results.get(output("bgm.mp3")).getCode());
+    }
+}
@@ -0,0 +1,201 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.probe.MediaProbe;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用shell脚本模拟的ffprobe（输出视频旁边的 .json 文件）和ffmpeg（记录参数，向最后一个参数写入数据）
+ *
+ * @author alan.chen
+ * @date 2020/8/13 3:30 PM
+ */
+public class NormalizeConcatTest {
+
+    private File dir;
+
+    private File log;
+
+    private VideoOperation operation;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_normalize_test").toFile();
+        log = new File(dir, "log");
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "echo \"$*\" >> '" + log.getAbsolutePath() + "'\n"
+                + "for last; do true; done\n"
+                + "echo ffmpeg > \"$last\"\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        File ffprobe = new File(dir, "ffprobe.sh");
+        String probeScript = "#!/bin/sh\n"
+                + "for last; do true; done\n"
+                + "cat \"$last.json\"\n";
+        Files.write(ffprobe.toPath(), probeScript.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffprobe.setExecutable(true));
+        operation = VideoOperation.builder(ffmpeg.getAbsolutePath())
+                .withMediaProbe(new MediaProbe(ffprobe.getAbsolutePath()));
+    }
+
+    private String video(String name, String codec, int width, int height, String fps, double duration, boolean audio)
+            throws IOException {
+        return video(name, codec, "High", width, height, fps, duration, audio);
+    }
+
+    private String video(String name, String codec, String profile, int width, int height, String fps, double duration,
+                         boolean audio) throws IOException {
+        return video(name, codec, profile, "SHA256:" + profile, width, height, fps, duration, audio);
+    }
+
+    private String video(String name, String codec, String profile, String hash, int width, int height, String fps,
+                         double duration, boolean audio) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), name.getBytes(StandardCharsets.UTF_8));
+        String json = "{\"streams\": [{\"index\": 0, \"codec_type\": \"video\", \"codec_name\": \"" + codec + "\", "
+                + "\"pix_fmt\": \"yuv420p\", \"width\": " + width + ", \"height\": " + height + ", "
+                + "\"profile\": \"" + profile + "\", \"level\": 31, \"extradata_hash\": \"" + hash + "\", \"time_base\": \"1/15360\", "
+                + "\"avg_frame_rate\": \"" + fps + "\"}"
+                + (audio ? ", {\"index\": 1, \"codec_type\": \"audio\", \"codec_name\": \"aac\", \"sample_rate\": \"44100\", \"channels\": 2}" : "")
+                + "], \"format\": {\"duration\": \"" + duration + "\"}}";
+        Files.write(new File(dir, name + ".json").toPath(), json.getBytes(StandardCharsets.UTF_8));
+        return file.getAbsolutePath();
+    }
+
+    @Test
+    public void normalizeTest() throws IOException {
+        String a = video("a.mov", "h264", 720, 1280, "30/1", 20, true);
+        String b = video("b.mov", "hevc", 1080, 1920, "30/1", 5, true);
+        String c = video("c.mov", "h264", 720, 1280, "30000/1001", 3, false);
+        String d = video("d.mov", "h264", 720, 1280, "30/1", 8, true);
+        String e = video("e.mov", "h264", 1920, 1080, "30/1", 10, true);
+        File out = new File(dir, "out.mp4");
+
+        Result result = operation.normalizeConcat(Arrays.asList(a, b, c, d, e)).parallelism(2).execute(out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        List<String> lines = Files.readAllLines(log.toPath());
+        // 只有 b、c、e 转码，a、d 复制转封装为TS，最后拼接一次
+        Assert.assertEquals(6, lines.size());
+        for (String input : Arrays.asList(a, d)) {
+            String line = line(lines.subList(0, 5), input);
+            Assert.assertTrue(line, line.contains("-c copy -bsf:v h264_mp4toannexb -f mpegts"));
+            Assert.assertFalse(line, line.contains("scale="));
+        }
+        for (String input : Arrays.asList(b, c, e)) {
+            String line = line(lines.subList(0, 5), input);
+            Assert.assertTrue(line, line.contains("scale=720:1280"));
+            Assert.assertTrue(line, line.contains("fps=30/1 "));
+            // 档次和级别与不转码的视频一致
+            Assert.assertTrue(line, line.contains("-profile:v high -level 3.1 "));
+            Assert.assertTrue(line, line.contains("-f mpegts"));
+        }
+        Assert.assertTrue(line(lines, c).contains("anullsrc"));
+        String concat = lines.get(5);
+        Assert.assertTrue(concat, concat.contains("-f concat"));
+        Assert.assertTrue(concat, concat.contains("-c copy -tag:v avc3 -bsf:a aac_adtstoasc"));
+    }
+
+    private static String line(List<String> lines, String input) {
+        for (String line : lines) {
+            if(line.contains("-i " + input + " ")) {
+                return line;
+            }
+        }
+        throw new AssertionError("no command for " + input);
+    }
+
+    @Test
+    public void copyTest() throws IOException {
+        String a = video("a.mp4", "h264", 720, 1280, "30000/1001", 20, true);
+        String b = video("b.mp4", "h264", 720, 1280, "30000/1001", 5, true);
+        File out = new File(dir, "out.mp4");
+
+        Result result = operation.normalizeConcat(Arrays.asList(a, b)).execute(out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        // 参数和SPS/PPS都一致时只拼接
+        List<String> lines = Files.readAllLines(log.toPath());
+        Assert.assertEquals(1, lines.size());
+        Assert.assertTrue(lines.get(0).contains("-f concat"));
+    }
+
+    @Test
+    public void extradataTest() throws IOException {
+        String a = video("a.mp4", "h264", "High", "SHA256:aa", 720, 1280, "30000/1001", 20, true);
+        String b = video("b.mp4", "h264", "High", "SHA256:bb", 720, 1280, "30000/1001", 5, true);
+        File out = new File(dir, "out.mkv");
+
+        Result result = operation.normalizeConcat(Arrays.asList(a, b)).execute(out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        // 编码参数长度相同但SPS/PPS不同，不转码，转封装为TS后拼接
+        List<String> lines = Files.readAllLines(log.toPath());
+        Assert.assertEquals(3, lines.size());
+        for (String line : lines.subList(0, 2)) {
+            Assert.assertTrue(line, line.contains("h264_mp4toannexb"));
+            Assert.assertFalse(line, line.contains("-c:v"));
+        }
+        Assert.assertTrue(lines.get(2).contains("-f concat"));
+        // 不是MP4时不需要 avc3
+        Assert.assertFalse(lines.get(2).contains("avc3"));
+    }
+
+    @Test
+    public void profileTest() throws IOException {
+        String a = video("a.mp4", "h264", "High", 720, 1280, "30000/1001", 20, true);
+        String b = video("b.mp4", "h264", "Main", 720, 1280, "30000/1001", 5, true);
+        File out = new File(dir, "out.mp4");
+
+        Result result = operation.normalizeConcat(Arrays.asList(a, b)).execute(out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        // 档次不同时SPS/PPS不同，都转封装为TS，不转码
+        List<String> lines = Files.readAllLines(log.toPath());
+        Assert.assertEquals(3, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).contains("h264_mp4toannexb"));
+        Assert.assertTrue(lines.get(1), lines.get(1).contains("h264_mp4toannexb"));
+    }
+
+    @Test
+    public void frameRateTest() throws IOException {
+        String a = video("a.mp4", "h264", 720, 1280, "30000/1001", 20, true);
+        String b = video("b.mp4", "hevc", 720, 1280, "30000/1001", 5, true);
+        File out = new File(dir, "out.mp4");
+
+        Result result = operation.normalizeConcat(Arrays.asList(a, b)).execute(out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        // 帧率使用分数
+        List<String> lines = Files.readAllLines(log.toPath());
+        Assert.assertEquals(3, lines.size());
+        Assert.assertTrue(line(lines, b).contains("fps=30000/1001 "));
+    }
+
+    @Test(timeout = 30000)
+    public void singleThreadAsyncExecutorTest() throws Exception {
+        String a = video("a.mov", "h264", 720, 1280, "30/1", 20, true);
+        String b = video("b.mov", "hevc", 1080, 1920, "30/1", 5, true);
+        File out = new File(dir, "out.mp4");
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            // 外层任务占用异步线程池唯一的线程，内部的获取信息和并行转码不能等待这个线程池
+            VideoOperation async = operation.withAsyncExecutor(single);
+            Future<Result> future = single.submit(() -> async.normalizeConcat(Arrays.asList(a, b)).execute(out.getAbsolutePath()));
+            Assert.assertEquals(Integer.valueOf(0), future.get(20, TimeUnit.SECONDS).getCode());
+        } finally {
+            single.shutdownNow();
+        }
+    }
+}
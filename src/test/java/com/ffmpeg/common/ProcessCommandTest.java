@@ -0,0 +1,74 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.common.FFmpegTask;
+import com.ffmpeg.common.common.ProcessCommand;
+import com.ffmpeg.common.common.ProcessReaper;
+import com.ffmpeg.common.response.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author alan.chen
+ * @date 2020/7/14 4:10 PM
+ */
+public class ProcessCommandTest {
+
+    @Test
+    public void timeoutTest() {
+        FFmpegTask task = new FFmpegTask(Arrays.asList("sleep", "10"));
+        task.setTimeoutMillis(200);
+        long start = System.currentTimeMillis();
+        Result result = ProcessCommand.launch(task);
+        Assert.assertEquals(Integer.valueOf(Result.CODE_TIMEOUT), result.getCode());
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(0, ProcessReaper.runningCount());
+    }
+
+    @Test
+    public void cancelTest() throws InterruptedException {
+        CancelToken token = new CancelToken();
+        FFmpegTask task = new FFmpegTask(Arrays.asList("sleep", "10"));
+        task.setCancelToken(token);
+        CompletableFuture<Result> future = CompletableFuture.supplyAsync(() -> ProcessCommand.launch(task));
+        while (ProcessReaper.runningCount() == 0) {
+            Thread.sleep(10);
+        }
+        token.cancel();
+        Assert.assertEquals(Integer.valueOf(Result.CODE_CANCELLED), future.join().getCode());
+
+        // 已取消的句柄不再启动进程
+        Result result = ProcessCommand.launch(task);
+        Assert.assertEquals(Integer.valueOf(Result.CODE_CANCELLED), result.getCode());
+    }
+
+    @Test
+    public void cancelClosedStreamTest() throws InterruptedException {
+        CancelToken token = new CancelToken();
+        FFmpegTask task = new FFmpegTask(Arrays.asList("sleep", "10"));
+        task.setCancelToken(token);
+        // 取消后才开始读取stdout，此时流已经被JDK关闭，仍然返回取消结果
+        task.setStdoutHandler(stdout -> {
+            while (!token.isCancelled()) {
+                Thread.yield();
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            while (stdout.read() != -1) {
+                // 读取到结束
+            }
+        });
+        CompletableFuture<Result> future = CompletableFuture.supplyAsync(() -> ProcessCommand.launch(task));
+        while (ProcessReaper.runningCount() == 0) {
+            Thread.sleep(10);
+        }
+        token.cancel();
+        Assert.assertEquals(Integer.valueOf(Result.CODE_CANCELLED), future.join().getCode());
+    }
+}
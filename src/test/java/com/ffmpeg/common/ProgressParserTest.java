@@ -0,0 +1,64 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.progress.Progress;
+import com.ffmpeg.common.progress.ProgressParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author alan.chen
+ * @date 2020/7/10 3:20 PM
+ */
+public class ProgressParserTest {
+
+    private static final String PROGRESS_OUTPUT = "frame=120\n" +
+            "fps=29.97\n" +
+            "stream_0_0_q=28.0\n" +
+            "bitrate=1534.7kbits/s\n" +
+            "total_size=786480\n" +
+            "out_time_us=4100000\n" +
+            "out_time_ms=4100000\n" +
+            "out_time=00:00:04.100000\n" +
+            "dup_frames=0\n" +
+            "drop_frames=0\n" +
+            "speed=2.05x\n" +
+            "progress=continue\n" +
+            "frame=250\n" +
+            "fps=30.00\n" +
+            "bitrate=N/A\n" +
+            "total_size=N/A\n" +
+            "out_time_us=8333333\n" +
+            "speed=   2.1x\n" +
+            "progress=end\n";
+
+    @Test
+    public void parseProgressTest() throws IOException {
+        List<Progress> list = new ArrayList<>();
+        ProgressParser parser = new ProgressParser(progress -> list.add(progress.copy()));
+        parser.handle(new ByteArrayInputStream(PROGRESS_OUTPUT.getBytes(StandardCharsets.US_ASCII)));
+
+        Assert.assertEquals(2, list.size());
+        Progress first = list.get(0);
+        Assert.assertEquals(120, first.getFrame());
+        Assert.assertEquals(29.97, first.getFps(), 0.0001);
+        Assert.assertEquals(1534.7, first.getBitrate(), 0.0001);
+        Assert.assertEquals(786480, first.getTotalSize());
+        Assert.assertEquals(4100000, first.getOutTimeUs());
+        Assert.assertEquals(2.05, first.getSpeed(), 0.0001);
+        Assert.assertFalse(first.isEnd());
+
+        Progress last = list.get(1);
+        Assert.assertEquals(250, last.getFrame());
+        Assert.assertEquals(-1, last.getBitrate(), 0);
+        Assert.assertEquals(-1, last.getTotalSize());
+        Assert.assertEquals(8333333, last.getOutTimeUs());
+        Assert.assertEquals(2.1, last.getSpeed(), 0.0001);
+        Assert.assertTrue(last.isEnd());
+    }
+}
@@ -0,0 +1,72 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 使用shell脚本模拟ffmpeg，stdout输出3帧半 10x10 的灰度数据
+ *
+ * @author alan.chen
+ * @date 2020/8/10 5:10 PM
+ */
+public class RawFrameTest {
+
+    @Test
+    public void rawFramesTest() throws IOException {
+        File dir = Files.createTempDirectory("ffmpeg_frame_test").toFile();
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "head -c 350 /dev/zero | tr '\\000' '\\177'\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+
+        List<Double> timestamps = new ArrayList<>();
+        Result result = VideoOperation.builder(ffmpeg.getAbsolutePath()).rawFrames("/server/test/in.mp4")
+                .size(10, 10).fps(2).start(10)
+                .execute(frame -> {
+                    Assert.assertTrue(frame.getBuffer().isDirect());
+                    Assert.assertEquals(100, frame.getBuffer().remaining());
+                    Assert.assertEquals(127, frame.getBuffer().get(99));
+                    timestamps.add(frame.getTimestamp());
+                });
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        Assert.assertEquals(3, timestamps.size());
+        Assert.assertEquals(11.0, timestamps.get(2), 0.0001);
+    }
+
+    @Test(timeout = 30000)
+    public void consumerFailureTest() throws IOException {
+        File dir = Files.createTempDirectory("ffmpeg_frame_test").toFile();
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        // 输出远超管道缓冲区的数据，回调失败后进程需要被终止
+        String script = "#!/bin/sh\n"
+                + "exec head -c 50000000 /dev/zero\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+
+        AtomicInteger frames = new AtomicInteger();
+        try {
+            VideoOperation.builder(ffmpeg.getAbsolutePath()).rawFrames("/server/test/in.mp4")
+                    .size(10, 10)
+                    .execute(frame -> {
+                        if(frames.incrementAndGet() == 2) {
+                            throw new IllegalStateException("consumer failed");
+                        }
+                    });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("consumer failed", e.getMessage());
+        }
+        Assert.assertEquals(2, frames.get());
+    }
+}
@@ -0,0 +1,155 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.probe.MediaProbe;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * 使用shell脚本模拟的ffprobe（读取数据包时输出关键帧，否则输出视频旁边的 .json 文件）和ffmpeg（记录参数，向最后一个参数写入数据）
+ *
+ * @author alan.chen
+ * @date 2020/8/6 5:10 PM
+ */
+public class SmartCutTest {
+
+    private File dir;
+
+    private File log;
+
+    private VideoOperation operation;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_smartcut_test").toFile();
+        log = new File(dir, "log");
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "echo \"$*\" >> '" + log.getAbsolutePath() + "'\n"
+                + "for last; do true; done\n"
+                + "echo ffmpeg > \"$last\"\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        File ffprobe = new File(dir, "ffprobe.sh");
+        String probeScript = "#!/bin/sh\n"
+                + "for last; do true; done\n"
+                + "case \"$*\" in\n"
+                + "  *dts_time*) printf '0.000000,0.000000,48,K_\\n2.002000,2.002000,5000,K_\\n4.004000,4.004000,10000,K_\\n"
+                + "6.006000,6.006000,15000,K_\\n' ;;\n"
+                + "  *) cat \"$last.json\" ;;\n"
+                + "esac\n";
+        Files.write(ffprobe.toPath(), probeScript.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffprobe.setExecutable(true));
+        MediaProbe probe = new MediaProbe(ffprobe.getAbsolutePath());
+        probe.setKeyframeScanSeconds(0);
+        probe.setKeyframeIndexDir(new File(dir, "index").getAbsolutePath());
+        operation = VideoOperation.builder(ffmpeg.getAbsolutePath()).withMediaProbe(probe);
+    }
+
+    private String video(String name, String codec) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), name.getBytes(StandardCharsets.UTF_8));
+        String json = "{\"streams\": [{\"index\": 0, \"codec_type\": \"video\", \"codec_name\": \"" + codec + "\", "
+                + "\"pix_fmt\": \"yuv420p\", \"width\": 1280, \"height\": 720, \"bit_rate\": \"2000000\"}, "
+                + "{\"index\": 1, \"codec_type\": \"audio\", \"codec_name\": \"aac\", \"sample_rate\": \"44100\", \"channels\": 2}"
+                + "], \"format\": {\"duration\": \"10.0\"}}";
+        Files.write(new File(dir, name + ".json").toPath(), json.getBytes(StandardCharsets.UTF_8));
+        return file.getAbsolutePath();
+    }
+
+    private List<String> lines() throws IOException {
+        return Files.readAllLines(log.toPath());
+    }
+
+    private static String find(List<String> lines, String... parts) {
+        for (String line : lines) {
+            boolean match = true;
+            for (String part : parts) {
+                match &= line.contains(part);
+            }
+            if(match) {
+                return line;
+            }
+        }
+        throw new AssertionError("no command contains all of " + String.join(", ", parts) + "\n" + String.join("\n", lines));
+    }
+
+    @Test
+    public void segmentTest() throws IOException {
+        String input = video("in.mp4", "h264");
+        File out = new File(dir, "out.ts");
+
+        Result result = operation.smartCut(input, 1, 5, out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        List<String> lines = lines();
+        // 开头、中间、结尾三段，最后拼接一次
+        Assert.assertEquals(4, lines.size());
+        String head = find(lines, "-ss 1.000000 ", "-t 1.002000 ", "-c:v libx264 -crf 18");
+        Assert.assertTrue(head, head.contains("-f mpegts"));
+        String copy = find(lines, "-ss 2.002000 ", "-t 2.002000 ", "-c:v copy");
+        Assert.assertTrue(copy, copy.contains("-an"));
+        find(lines, "-ss 4.004000 ", "-t 0.996000 ", "-c:v libx264");
+        String concat = lines.get(3);
+        Assert.assertTrue(concat, concat.contains("-f concat -safe 0"));
+        Assert.assertTrue(concat, concat.contains("-ss 1.000000 -t 4.000000 -i " + input));
+        Assert.assertTrue(concat, concat.contains("-map 0:v -map 1:a? -c:v copy -acodec aac"));
+        Assert.assertTrue(concat, concat.endsWith(out.getAbsolutePath()));
+    }
+
+    @Test
+    public void mp4EncodeTest() throws IOException {
+        String input = video("in.mp4", "h264");
+        File out = new File(dir, "out.mp4");
+
+        // MP4只能保存一份编码参数，开头不在关键帧上时整段重新编码
+        Result result = operation.smartCut(input, 1, 5, out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        List<String> lines = lines();
+        Assert.assertEquals(1, lines.size());
+        String line = lines.get(0);
+        Assert.assertTrue(line, line.contains("-ss 1.000000 -i " + input + " -t 4.000000 -map 0:v:0 -map 0:a?"));
+        Assert.assertTrue(line, line.contains("-c:v libx264"));
+        Assert.assertFalse(line, line.contains("concat"));
+    }
+
+    @Test
+    public void mp4CopyTest() throws IOException {
+        String input = video("in.mp4", "h264");
+        File out = new File(dir, "out.mp4");
+
+        // 开头和结尾都在关键帧上时只复制
+        Result result = operation.smartCut(input, 2.002, 4.004, out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        List<String> lines = lines();
+        Assert.assertEquals(2, lines.size());
+        find(lines, "-ss 2.002000 ", "-c:v copy -f mpegts");
+        Assert.assertTrue(lines.get(1).contains("-f concat"));
+        Assert.assertFalse(String.join("\n", lines).contains("libx264"));
+    }
+
+    @Test
+    public void unknownEncoderTest() throws IOException {
+        String input = video("in.mp4", "vp9");
+        File out = new File(dir, "out.ts");
+
+        // 没有对应的编码器时不把解码器名称当作编码器，使用输出格式默认的编码器
+        Result result = operation.smartCut(input, 1, 5, out.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        List<String> lines = lines();
+        Assert.assertEquals(1, lines.size());
+        Assert.assertFalse(lines.get(0), lines.get(0).contains("-c:v"));
+        Assert.assertTrue(lines.get(0), lines.get(0).contains("-b:v 2000000"));
+    }
+}
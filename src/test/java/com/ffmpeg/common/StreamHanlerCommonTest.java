@@ -0,0 +1,129 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.common.CancelToken;
+import com.ffmpeg.common.common.FFmpegTask;
+import com.ffmpeg.common.common.Pipes;
+import com.ffmpeg.common.common.ProcessCommand;
+import com.ffmpeg.common.common.TailBuffer;
+import com.ffmpeg.common.response.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author alan.chen
+ * @date 2020/7/8 4:30 PM
+ */
+public class StreamHanlerCommonTest {
+
+    @Test
+    public void tailBufferTest() {
+        TailBuffer buffer = new TailBuffer(8);
+        byte[] bytes = "line1\nline2\nline3\n".getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            buffer.write(new byte[]{b}, 0, 1);
+        }
+        Assert.assertEquals(8, buffer.size());
+        Assert.assertEquals("line3\n", buffer.toString(StandardCharsets.UTF_8));
+
+        TailBuffer large = new TailBuffer(8);
+        large.write(bytes, 0, bytes.length);
+        Assert.assertEquals("line3\n", large.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void drainStdoutAndStderrTest() {
+        // stdout写入远超管道缓冲区的数据，不能阻塞进程
+        Result result = ProcessCommand.launch(Arrays.asList("sh", "-c",
+                "head -c 4000000 /dev/zero; echo done >&2"));
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        Assert.assertEquals("done", result.getErrMessage());
+    }
+
+    @Test(timeout = 30000)
+    public void failingStdoutHandlerTest() {
+        // 处理器抛出异常后进程仍在写stdout，不能阻塞在读取stderr上
+        FFmpegTask task = new FFmpegTask(Arrays.asList("sh", "-c", "head -c 10000000 /dev/zero; echo done >&2"));
+        task.setStdoutHandler(stdout -> {
+            stdout.read(new byte[1024]);
+            throw new IllegalStateException("handler failed");
+        });
+        try {
+            ProcessCommand.launch(task);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof ExecutionException);
+            Assert.assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void stderrStatsTest() {
+        String stderr = "  Duration: 00:01:02.50, start: 0.000000, bitrate: 4132 kb/s\\n"
+                + "frame=   10 fps=0.0 q=28.0 size=       1kB time=00:00:00.40 bitrate=  20.5kbits/s speed=0.8x    \\r"
+                + "frame=   25 fps= 24 q=28.0 size=       2kB time=00:00:01.00 bitrate=  16.4kbits/s speed=1.52x    \\n"
+                + "[h264 @ 0x7f] Error while decoding stream #0:0: Invalid data found when processing input\\n";
+        Result result = ProcessCommand.launch(Arrays.asList("sh", "-c", "printf '" + stderr + "' >&2"));
+        Assert.assertEquals(62.5, result.getDuration(), 0.001);
+        Assert.assertEquals(25, result.getFrames());
+        Assert.assertEquals(1.0, result.getTime(), 0.001);
+        Assert.assertEquals(1.52, result.getSpeed(), 0.001);
+        Assert.assertEquals(1, result.getErrorLines());
+        Assert.assertTrue(result.getErrMessage().endsWith("processing input"));
+    }
+
+    @Test
+    public void pipeStdinToStdoutTest() {
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        FFmpegTask task = new FFmpegTask(Arrays.asList("cat"));
+        task.setStdin(Channels.newChannel(new ByteArrayInputStream(data)));
+        task.setStdoutHandler(Pipes.toChannel(Channels.newChannel(output)));
+        Result result = ProcessCommand.launch(task);
+
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        Assert.assertArrayEquals(data, output.toByteArray());
+    }
+
+    @Test(timeout = 30000)
+    public void stderrFailureWaitsForStdoutTest() throws InterruptedException {
+        CancelToken token = new CancelToken();
+        AtomicBoolean handlerStarted = new AtomicBoolean();
+        AtomicBoolean handlerFinished = new AtomicBoolean();
+        FFmpegTask task = new FFmpegTask(Arrays.asList("sh", "-c", "exec yes >&2"));
+        task.setCancelToken(token);
+        // 取消后stderr被关闭，读取stderr失败时stdout线程仍在执行，返回前必须等待它结束
+        task.setStdoutHandler(stdout -> {
+            handlerStarted.set(true);
+            try {
+                while (!token.isCancelled()) {
+                    Thread.yield();
+                }
+                long end = System.currentTimeMillis() + 500;
+                while (System.currentTimeMillis() < end) {
+                    Thread.yield();
+                }
+            } finally {
+                handlerFinished.set(true);
+            }
+        });
+        CompletableFuture<Result> future = CompletableFuture.supplyAsync(() -> ProcessCommand.launch(task));
+        while (!handlerStarted.get()) {
+            Thread.sleep(10);
+        }
+        token.cancel();
+        Assert.assertEquals(Integer.valueOf(Result.CODE_CANCELLED), future.join().getCode());
+        Assert.assertTrue(handlerFinished.get());
+    }
+}
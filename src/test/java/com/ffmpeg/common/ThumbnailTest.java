@@ -0,0 +1,119 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.probe.MediaProbe;
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 使用shell脚本模拟的ffprobe（读取数据包时输出关键帧，否则输出视频旁边的 .json 文件）和ffmpeg（记录参数，
+ * 向最后一个参数写入数据，时间点为99秒时模拟超出视频时长不生成图片）
+ *
+ * @author alan.chen
+ * @date 2020/7/31 10:20 AM
+ */
+public class ThumbnailTest {
+
+    private File dir;
+
+    private File log;
+
+    private String input;
+
+    private VideoOperation operation;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_thumb_test").toFile();
+        log = new File(dir, "log");
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "echo \"$*\" >> '" + log.getAbsolutePath() + "'\n"
+                + "case \"$*\" in *'-ss 99.000000 '*) exit 0 ;; esac\n"
+                + "for last; do true; done\n"
+                + "echo jpg > \"$last\"\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        File ffprobe = new File(dir, "ffprobe.sh");
+        String probeScript = "#!/bin/sh\n"
+                + "for last; do true; done\n"
+                + "case \"$*\" in\n"
+                + "  *dts_time*) printf '0.000000,0.000000,48,K_\\n2.002000,2.002000,5000,K_\\n6.006000,6.006000,15000,K_\\n' ;;\n"
+                + "  *) cat \"$last.json\" ;;\n"
+                + "esac\n";
+        Files.write(ffprobe.toPath(), probeScript.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffprobe.setExecutable(true));
+
+        File video = new File(dir, "in.mp4");
+        Files.write(video.toPath(), new byte[100]);
+        String json = "{\"streams\": [{\"index\": 0, \"codec_type\": \"video\", \"codec_name\": \"h264\", "
+                + "\"width\": 1280, \"height\": 720}], \"format\": {\"duration\": \"10.0\"}}";
+        Files.write(new File(dir, "in.mp4.json").toPath(), json.getBytes(StandardCharsets.UTF_8));
+        input = video.getAbsolutePath();
+
+        MediaProbe probe = new MediaProbe(ffprobe.getAbsolutePath());
+        probe.setKeyframeScanSeconds(0);
+        probe.setKeyframeIndexDir(new File(dir, "index").getAbsolutePath());
+        operation = VideoOperation.builder(ffmpeg.getAbsolutePath()).withMediaProbe(probe);
+    }
+
+    private List<String> sortedLines() throws IOException {
+        List<String> lines = new ArrayList<>(Files.readAllLines(log.toPath()));
+        Collections.sort(lines);
+        return lines;
+    }
+
+    @Test
+    public void atTest() throws IOException {
+        File out = new File(dir, "covers");
+        Map<String, Result> results = operation.thumbnails(input).at(600, 1.5).scale("160", "-2").parallelism(2)
+                .execute(out.getAbsolutePath());
+
+        // 按时间点顺序命名，-ss 在 -i 之前，只解码一帧
+        List<String> lines = sortedLines();
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals("-ss 1.500000 -y -i " + input + " -frames:v 1 -vf scale=160:-2 -q:v 2 "
+                + new File(out, "002.jpg").getAbsolutePath(), lines.get(0));
+        Assert.assertEquals("-ss 600.000000 -y -i " + input + " -frames:v 1 -vf scale=160:-2 -q:v 2 "
+                + new File(out, "001.jpg").getAbsolutePath(), lines.get(1));
+        Assert.assertEquals(2, results.size());
+        for (Result result : results.values()) {
+            Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        }
+    }
+
+    @Test
+    public void everyTest() throws IOException {
+        File out = new File(dir, "covers");
+        operation.thumbnails(input).every(4).snapToKeyframe(true).execute(out.getAbsolutePath());
+
+        // 0、4、8秒，对齐到之前的关键帧 0、2.002、6.006
+        List<String> lines = sortedLines();
+        Assert.assertEquals(3, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).startsWith("-ss 0.000000 "));
+        Assert.assertTrue(lines.get(1), lines.get(1).startsWith("-ss 2.002000 ") && lines.get(1).endsWith("002.jpg"));
+        Assert.assertTrue(lines.get(2), lines.get(2).startsWith("-ss 6.006000 ") && lines.get(2).endsWith("003.jpg"));
+        Assert.assertFalse(String.join("\n", lines).contains("-vf"));
+    }
+
+    @Test
+    public void outputMissingTest() {
+        File out = new File(dir, "covers");
+        Map<String, Result> results = operation.thumbnails(input).at(1, 99).execute(out.getAbsolutePath());
+
+        // 进程成功但没有生成图片
+        Assert.assertEquals(Integer.valueOf(0), results.get(new File(out, "001.jpg").getAbsolutePath()).getCode());
+        Assert.assertEquals(Integer.valueOf(Result.CODE_OUTPUT_MISSING), results.get(new File(out, "002.jpg").getAbsolutePath()).getCode());
+    }
+}
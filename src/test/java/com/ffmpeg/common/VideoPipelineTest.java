@@ -0,0 +1,92 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.response.Result;
+import com.ffmpeg.common.video.VideoOperation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * 使用shell脚本模拟的ffmpeg，每次执行记录参数，并向最后一个参数（输出文件）写入数据
+ *
+ * @author alan.chen
+ * @date 2020/7/29 6:20 PM
+ */
+public class VideoPipelineTest {
+
+    private File dir;
+
+    private File log;
+
+    private VideoOperation operation;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_pipeline_test").toFile();
+        log = new File(dir, "log");
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "echo \"$*\" >> '" + log.getAbsolutePath() + "'\n"
+                + "for last; do true; done\n"
+                + "echo ffmpeg > \"$last\"\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        operation = VideoOperation.builder(ffmpeg.getAbsolutePath());
+    }
+
+    @Test
+    public void pipelineTest() throws IOException {
+        String input = new File(dir, "in.mp4").getAbsolutePath();
+        String output = new File(dir, "out.mp4").getAbsolutePath();
+
+        Result result = operation.pipeline(input)
+                .crop("1080", "1080", "0", "420")
+                .scale("720", "720")
+                .fps(15)
+                .rotate(2, null, null)
+                .outputOptions("-vcodec", "h264")
+                .execute(output);
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        // 所有步骤合并为一个滤镜链，只执行一次
+        List<String> lines = Files.readAllLines(log.toPath());
+        Assert.assertEquals(1, lines.size());
+        Assert.assertEquals("-y -i " + input + " -vf crop=1080:1080:0:420,scale=720:720,fps=15,rotate=PI/2 -vcodec h264 " + output,
+                lines.get(0));
+    }
+
+    @Test
+    public void noFilterTest() throws IOException {
+        String input = new File(dir, "in.mp4").getAbsolutePath();
+        String output = new File(dir, "out.mkv").getAbsolutePath();
+
+        operation.pipeline(input).outputOptions("-c", "copy").execute(output);
+        Assert.assertEquals("-y -i " + input + " -c copy " + output, Files.readAllLines(log.toPath()).get(0));
+    }
+
+    @Test(expected = FFMpegException.class)
+    public void illegalRotateTest() {
+        operation.pipeline(new File(dir, "in.mp4").getAbsolutePath()).rotate(3, null, null);
+    }
+
+    @Test
+    public void bgmNoOriginTest() throws IOException {
+        String input = new File(dir, "in.mp4").getAbsolutePath();
+        String bgm = new File(dir, "bgm.mp3").getAbsolutePath();
+        String output = new File(dir, "out.mp4").getAbsolutePath();
+
+        Result result = operation.convertorWithBgmNoOriginCommon(input, output, null, bgm, 7.1);
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        // 不再生成去除音频的中间文件，只启动一个进程
+        List<String> lines = Files.readAllLines(log.toPath());
+        Assert.assertEquals(1, lines.size());
+        Assert.assertEquals("-y -i " + input + " -i " + bgm + " -map 0:v -map 1:a -c:v copy -t 7.1 " + output, lines.get(0));
+    }
+}
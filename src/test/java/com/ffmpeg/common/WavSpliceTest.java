@@ -0,0 +1,130 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.audio.AudioOperation;
+import com.ffmpeg.common.response.Result;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * WAV文件直接裁剪和拼接，ffmpeg路径不存在，走ffmpeg时抛出异常
+ *
+ * @author alan.chen
+ * @date 2020/8/9 2:40 PM
+ */
+public class WavSpliceTest {
+
+    private File dir;
+
+    private AudioOperation operation;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_wav_test").toFile();
+        operation = AudioOperation.builder(new File(dir, "ffmpeg").getAbsolutePath());
+    }
+
+    /**
+     * 8000Hz 单声道 16位，带一个LIST块，采样值为采样序号
+     */
+    private File wav(String name, int seconds, int sampleRate) throws IOException {
+        return wav(name, seconds, sampleRate, 1);
+    }
+
+    /**
+     * @param formatTag 格式编号，数据仍然按16位采样写入
+     */
+    private File wav(String name, int seconds, int sampleRate, int formatTag) throws IOException {
+        int samples = seconds * sampleRate;
+        ByteBuffer buffer = ByteBuffer.allocate(12 + 24 + 12 + 8 + samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(buffer.capacity() - 8).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16).putShort((short) formatTag).putShort((short) 1)
+                .putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16);
+        buffer.put("LIST".getBytes()).putInt(4).put("INFO".getBytes());
+        buffer.put("data".getBytes()).putInt(samples * 2);
+        for (int i = 0; i < samples; i++) {
+            buffer.putShort((short) i);
+        }
+        File file = new File(dir, name);
+        Files.write(file.toPath(), buffer.array());
+        return file;
+    }
+
+    @Test
+    public void cutTest() throws IOException {
+        File input = wav("in.wav", 3, 8000);
+        File output = new File(dir, "cut.wav");
+        Result result = operation.audioCut(input.getAbsolutePath(), output.getAbsolutePath(), "00:00:01", "00:00:02");
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(output.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(44 + 16000, data.capacity());
+        Assert.assertEquals(16000, data.getInt(40));
+        Assert.assertEquals(8000, data.getShort(44));
+
+        // 结束时间超出时长
+        operation.audioCut(input.getAbsolutePath(), output.getAbsolutePath(), "00:00:02", "00:01:00");
+        Assert.assertEquals(44 + 16000, output.length());
+    }
+
+    @Test
+    public void concatTest() throws IOException {
+        File a = wav("a.wav", 1, 8000);
+        File b = wav("b.wav", 2, 8000);
+        File output = new File(dir, "concat.wav");
+        Result result = operation.audioConcat(output.getAbsolutePath(), a.getAbsolutePath(), b.getAbsolutePath());
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+        Assert.assertEquals(44 + 48000, output.length());
+    }
+
+    @Test
+    public void concatFallbackTest() throws IOException {
+        File a = wav("a.wav", 1, 8000);
+        File c = wav("c.wav", 1, 16000);
+        File output = new File(dir, "concat.wav");
+        // 采样率不同时使用ffmpeg
+        try {
+            operation.audioConcat(output.getAbsolutePath(), a.getAbsolutePath(), c.getAbsolutePath());
+            Assert.fail("ffmpeg expected");
+        } catch (FFMpegException e) {
+            Assert.assertFalse(output.exists());
+        }
+    }
+
+    @Test
+    public void adpcmFallbackTest() throws IOException {
+        // IMA ADPCM：一个块对齐单元包括多个采样，不能按采样计算偏移，使用ffmpeg
+        File input = wav("adpcm.wav", 3, 8000, 0x11);
+        File output = new File(dir, "cut.wav");
+        try {
+            operation.audioCut(input.getAbsolutePath(), output.getAbsolutePath(), "00:00:01", "00:00:02");
+            Assert.fail("ffmpeg expected");
+        } catch (FFMpegException e) {
+            Assert.assertFalse(output.exists());
+        }
+    }
+
+    @Test
+    public void floatFactTest() throws IOException {
+        // IEEE浮点直接裁剪，写入fact块
+        File input = wav("float.wav", 3, 8000, 3);
+        File output = new File(dir, "cut.wav");
+        Result result = operation.audioCut(input.getAbsolutePath(), output.getAbsolutePath(), "00:00:01", "00:00:02");
+        Assert.assertEquals(Integer.valueOf(0), result.getCode());
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(output.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(56 + 16000, data.capacity());
+        Assert.assertEquals(data.capacity() - 8, data.getInt(4));
+        Assert.assertEquals("fact", new String(data.array(), 36, 4, StandardCharsets.US_ASCII));
+        Assert.assertEquals(8000, data.getInt(44));
+        Assert.assertEquals(16000, data.getInt(52));
+        Assert.assertEquals(8000, data.getShort(56));
+    }
+}
@@ -0,0 +1,94 @@
+package com.ffmpeg.common;
+
+import com.ffmpeg.common.audio.AudioOperation;
+import com.ffmpeg.common.audio.Waveform;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * 使用shell脚本模拟的ffmpeg，stdout输出准备好的s16le采样数据
+ *
+ * @author alan.chen
+ * @date 2020/8/11 3:10 PM
+ */
+public class WaveformTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ffmpeg_waveform_test").toFile();
+    }
+
+    private AudioOperation operation(short[] samples) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (short sample : samples) {
+            buffer.putShort(sample);
+        }
+        File pcm = new File(dir, "samples.pcm");
+        Files.write(pcm.toPath(), buffer.array());
+        File ffmpeg = new File(dir, "ffmpeg.sh");
+        String script = "#!/bin/sh\n"
+                + "cat '" + pcm.getAbsolutePath() + "'\n";
+        Files.write(ffmpeg.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(ffmpeg.setExecutable(true));
+        return AudioOperation.builder(ffmpeg.getAbsolutePath());
+    }
+
+    @Test
+    public void rampTest() throws IOException {
+        short[] samples = new short[10000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i - 5000);
+        }
+        Waveform waveform = operation(samples).waveform("in.mp3").buckets(10).execute();
+        Assert.assertEquals(10000, waveform.getSamples());
+        Assert.assertEquals(1.25, waveform.getDuration(), 0.0001);
+        Assert.assertEquals(10, waveform.getBucketCount());
+        Assert.assertEquals(-5000, waveform.getMin()[0]);
+        Assert.assertEquals(4999, waveform.getMax()[9]);
+        // 区间连续，不重叠
+        for (int i = 1; i < 10; i++) {
+            Assert.assertEquals(waveform.getMax()[i - 1] + 1, waveform.getMin()[i]);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        waveform.writeTo(out);
+        Assert.assertEquals(24 + 10 * 6, out.size());
+        Waveform read = Waveform.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertArrayEquals(waveform.getMin(), read.getMin());
+        Assert.assertArrayEquals(waveform.getMax(), read.getMax());
+        Assert.assertArrayEquals(waveform.getRms(), read.getRms(), 1f / Short.MAX_VALUE);
+        Assert.assertEquals(10000, read.getSamples());
+    }
+
+    @Test
+    public void rmsTest() throws IOException {
+        short[] samples = new short[3001];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (i % 2 == 0 ? 16384 : -16384);
+        }
+        Waveform waveform = operation(samples).waveform("in.mp3").buckets(7).execute();
+        Assert.assertEquals(7, waveform.getBucketCount());
+        for (int i = 0; i < 7; i++) {
+            Assert.assertEquals(0.5f, waveform.getRms()[i], 0.0001f);
+            Assert.assertEquals(-16384, waveform.getMin()[i]);
+            Assert.assertEquals(16384, waveform.getMax()[i]);
+        }
+
+        // 采样数少于区间数
+        Waveform small = operation(new short[]{1, 2, 3}).waveform("in.mp3").buckets(10).execute();
+        Assert.assertEquals(3, small.getBucketCount());
+        Assert.assertEquals(2, small.getMax()[1]);
+    }
+}